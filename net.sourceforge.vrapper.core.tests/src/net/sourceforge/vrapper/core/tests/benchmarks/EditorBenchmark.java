@@ -0,0 +1,453 @@
+package net.sourceforge.vrapper.core.tests.benchmarks;
+
+import static net.sourceforge.vrapper.keymap.vim.ConstructorWrappers.parseKeyStrokes;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.vrapper.core.tests.utils.CommandLineUIStub;
+import net.sourceforge.vrapper.core.tests.utils.DumbPosition;
+import net.sourceforge.vrapper.core.tests.utils.TestCursorAndSelection;
+import net.sourceforge.vrapper.core.tests.utils.TestSearchService;
+import net.sourceforge.vrapper.core.tests.utils.TestTextContent;
+import net.sourceforge.vrapper.keymap.KeyStroke;
+import net.sourceforge.vrapper.platform.FileService;
+import net.sourceforge.vrapper.platform.HistoryService;
+import net.sourceforge.vrapper.platform.Platform;
+import net.sourceforge.vrapper.platform.PlatformSpecificStateProvider;
+import net.sourceforge.vrapper.platform.PlatformVrapperLifecycleListener;
+import net.sourceforge.vrapper.platform.ServiceProvider;
+import net.sourceforge.vrapper.platform.UnderlyingEditorSettings;
+import net.sourceforge.vrapper.platform.UserInterfaceService;
+import net.sourceforge.vrapper.platform.ViewportService;
+import net.sourceforge.vrapper.utils.DefaultKeyMapProvider;
+import net.sourceforge.vrapper.utils.Position;
+import net.sourceforge.vrapper.utils.Search;
+import net.sourceforge.vrapper.utils.SearchResult;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
+import net.sourceforge.vrapper.utils.ViewPortInformation;
+import net.sourceforge.vrapper.vim.DefaultConfigProvider;
+import net.sourceforge.vrapper.vim.DefaultEditorAdaptor;
+import net.sourceforge.vrapper.vim.EditorAdaptor;
+import net.sourceforge.vrapper.vim.SimpleGlobalConfiguration;
+import net.sourceforge.vrapper.vim.SimpleLocalConfiguration;
+import net.sourceforge.vrapper.vim.TextObjectProvider;
+import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
+import net.sourceforge.vrapper.vim.register.DefaultRegisterManager;
+
+import org.mockito.Mockito;
+
+/**
+ * Measures time and heap allocation of whole key sequences typed into a real
+ * {@link DefaultEditorAdaptor}, with its modes, key maps, registers and command line, over large
+ * documents: a 1 MB Java source, a log of 100000 lines and 1 MB of minified JavaScript. Each
+ * scenario types its keys into a fresh copy of its document several times and reports the median
+ * time and the average allocation.
+ *
+ * <p>Not a unit test: run it as a Java application with the core, core tests and Mockito on the
+ * classpath. Arguments:
+ * <ul>
+ * <li><tt>-out FILE</tt> writes the results to <tt>FILE</tt>,</li>
+ * <li><tt>-baseline FILE</tt> compares the results with those written by an earlier run and
+ *      exits with status 1 if a scenario got more than {@link #TOLERANCE_PERCENT} % slower or
+ *      allocates more than {@link #ALLOCATION_TOLERANCE_PERCENT} % more,</li>
+ * <li>any other argument runs only the scenarios whose name contains it.</li>
+ * </ul>
+ * Scenarios run after each other in one JVM, so only compare runs of the same scenarios.
+ * Unlike {@link net.sourceforge.vrapper.core.tests.utils.VimTestCase}, nothing but the platform
+ * services is mocked, so that the numbers are not dominated by Mockito. Searches run over the
+ * text content instead of a copy of the text, as they do in Eclipse. Allocation is read from the
+ * HotSpot thread allocation counter, so those numbers are only meaningful on a HotSpot-based JVM.
+ */
+public class EditorBenchmark {
+
+    private static final int DOCUMENT_SIZE = 1024 * 1024;
+    private static final int LOG_LINES = 100000;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 15;
+    private static final int TOLERANCE_PERCENT = 25;
+    /** Allocation doesn't depend on the load of the machine, so it is held to a tighter limit. */
+    private static final int ALLOCATION_TOLERANCE_PERCENT = 10;
+
+    private static final String JAVA = createJavaSource();
+    private static final String LOG = createLog();
+    private static final String MINIFIED = createMinifiedScript();
+
+    private final TestCursorAndSelection cursorAndSelection;
+    private final TestTextContent content;
+    private final EditorAdaptor adaptor;
+
+    public static void main(String[] args) throws IOException {
+        File out = null;
+        File baseline = null;
+        List<String> filters = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-out".equals(args[i]) && i + 1 < args.length) {
+                out = new File(args[++i]);
+            } else if ("-baseline".equals(args[i]) && i + 1 < args.length) {
+                baseline = new File(args[++i]);
+            } else {
+                filters.add(args[i]);
+            }
+        }
+        Map<String, Result> results = new HashMap<String, Result>();
+        List<String> names = new ArrayList<String>();
+        for (Scenario scenario : createScenarios()) {
+            if (matches(scenario.name, filters)) {
+                Result result = scenario.run();
+                results.put(scenario.name, result);
+                names.add(scenario.name);
+                System.out.printf("  %-28s %9.3f ms/op %10.1f ops/s %12d bytes/op%n",
+                        scenario.name, result.millis, 1000 / result.millis, result.bytes);
+            }
+        }
+        if (out != null) {
+            write(out, names, results);
+        }
+        if (baseline != null && ! compare(read(baseline), names, results)) {
+            System.exit(1);
+        }
+    }
+
+    private static List<Scenario> createScenarios() {
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        // Motions
+        scenarios.add(new Scenario("java w/b/e", JAVA, 0, "", "1000w1000b1000e"));
+        scenarios.add(new Scenario("java W/B/E", JAVA, 0, "", "1000W1000B1000E"));
+        scenarios.add(new Scenario("minified w/b", MINIFIED, 0, "", "1000w1000b"));
+        scenarios.add(new Scenario("log j/k/$/0", LOG, 0, "", "5000j$5000k0"));
+        // Searches
+        scenarios.add(new Scenario("java /search n", JAVA, 0, "", "/computeValue(<CR>200n"));
+        scenarios.add(new Scenario("java * #", JAVA, JAVA.indexOf("counter"), "", "*50n#50N"));
+        scenarios.add(new Scenario("log /regex", LOG, 0, "", "/ERROR.*timeout<CR>20n"));
+        scenarios.add(new Scenario("minified /search N", MINIFIED, MINIFIED.length() - 1, "",
+                "?return<CR>200n"));
+        // Ex commands
+        scenarios.add(new Scenario("log :%s", LOG, 0, "", ":%s/ms$/millis/<CR>"));
+        scenarios.add(new Scenario("log :%s //g", LOG, 0, "", ":%s/worker-\\d/thread/g<CR>"));
+        scenarios.add(new Scenario("log :g//d", LOG, 0, "", ":g/DEBUG/d<CR>"));
+        scenarios.add(new Scenario("log :g//s", LOG, 0, "", ":g/WARN/s/Request/Call/<CR>"));
+        scenarios.add(new Scenario("log :sort", LOG, 0, "", ":sort<CR>"));
+        scenarios.add(new Scenario("java :sort u", JAVA, 0, "", ":sort u<CR>"));
+        // Text objects
+        int middle = JAVA.indexOf("\"value ", JAVA.length() / 2) + 2;
+        scenarios.add(new Scenario("java text objects", JAVA, middle, "",
+                "yi\"ya(yi{yiWyapyi(di{"));
+        int scriptMiddle = MINIFIED.indexOf("b+c", MINIFIED.length() / 2);
+        scenarios.add(new Scenario("minified text objects", MINIFIED, scriptMiddle, "",
+                "yi{ya(yiwya{"));
+        // Editing
+        scenarios.add(new Scenario("java macro", JAVA, 0, "qa0f=r:jq", "500@a"));
+        scenarios.add(new Scenario("java dot repeat", JAVA, 0, "cwabc<ESC>", "500j.500j."));
+        StringBuilder typing = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            typing.append("Oint jj = kk + j;;jk");
+        }
+        scenarios.add(new Scenario("java remapped typing", JAVA, 0,
+                ":inoremap jk <lt>ESC><CR>:imap ;; <lt>ESC>A;<CR>:inoremap kj <lt>ESC>o<CR>"
+                        + ":nnoremap <lt>Space>w <lt>C-w><CR>:nmap Y y$<CR>",
+                typing.toString()));
+        return scenarios;
+    }
+
+    private EditorBenchmark() {
+        DefaultEditorAdaptor.SHOULD_READ_RC_FILE = false;
+        cursorAndSelection = new TestCursorAndSelection();
+        content = new TestTextContent(cursorAndSelection);
+        cursorAndSelection.setContent(content);
+        List<DefaultConfigProvider> configProviders = Collections.emptyList();
+        SimpleLocalConfiguration configuration = new SimpleLocalConfiguration(configProviders,
+                new SimpleGlobalConfiguration(configProviders));
+
+        Platform platform = mock(Platform.class);
+        FileService fileService = mock(FileService.class);
+        when(fileService.isEditable()).thenReturn(true);
+        when(fileService.checkModifiable()).thenReturn(true);
+        UserInterfaceService userInterfaceService = mock(UserInterfaceService.class);
+        when(userInterfaceService.getCommandLineUI(Mockito.any(EditorAdaptor.class)))
+                .thenReturn(new CommandLineUIStub());
+        ViewportService viewportService = mock(ViewportService.class);
+        when(viewportService.getViewPortInformation()).thenReturn(new ViewPortInformation(0, 50));
+        when(platform.getCursorService()).thenReturn(cursorAndSelection);
+        when(platform.getSelectionService()).thenReturn(cursorAndSelection);
+        when(platform.getModelContent()).thenReturn(content);
+        when(platform.getViewContent()).thenReturn(content);
+        when(platform.getViewportService()).thenReturn(viewportService);
+        when(platform.getUserInterfaceService()).thenReturn(userInterfaceService);
+        when(platform.getFileService()).thenReturn(fileService);
+        when(platform.getHistoryService()).thenReturn(mock(HistoryService.class));
+        when(platform.getKeyMapProvider()).thenReturn(new DefaultKeyMapProvider());
+        when(platform.getServiceProvider()).thenReturn(mock(ServiceProvider.class));
+        when(platform.getConfiguration()).thenReturn(configuration);
+        when(platform.getSearchAndReplaceService()).thenReturn(
+                new ContentSearchService(content, configuration));
+        when(platform.getUnderlyingEditorSettings()).thenReturn(
+                mock(UnderlyingEditorSettings.class));
+        when(platform.getPlatformSpecificStateProvider(Mockito.<TextObjectProvider>any()))
+                .thenReturn(mock(PlatformSpecificStateProvider.class));
+        adaptor = new DefaultEditorAdaptor(platform, new DefaultRegisterManager(), true,
+                Collections.<PlatformVrapperLifecycleListener>emptyList());
+    }
+
+    private void reset(String text, int offset) {
+        content.setText(text);
+        cursorAndSelection.setPosition(new DumbPosition(offset), StickyColumnPolicy.ON_CHANGE);
+    }
+
+    /** Types the keys, inserting what Vrapper passes on like the editor would. */
+    private void type(List<KeyStroke> keys) {
+        for (KeyStroke key : keys) {
+            if ( ! adaptor.handleKey(key) && key.getCharacter() != KeyStroke.SPECIAL_KEY) {
+                int offset = cursorAndSelection.getPosition().getModelOffset();
+                content.replace(offset, 0, String.valueOf(key.getCharacter()));
+            }
+        }
+    }
+
+    private static boolean matches(String name, List<String> filters) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<KeyStroke> keys(String s) {
+        List<KeyStroke> result = new ArrayList<KeyStroke>();
+        for (KeyStroke key : parseKeyStrokes(s)) {
+            result.add(key);
+        }
+        return result;
+    }
+
+    private static long allocatedBytes(ThreadMXBean threadBean, long threadId) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId);
+        }
+        return 0;
+    }
+
+    private static void write(File file, List<String> names, Map<String, Result> results)
+            throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            for (String name : names) {
+                Result result = results.get(name);
+                writer.println(name + '\t' + result.millis + '\t' + result.bytes);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new HashMap<String, Result>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3) {
+                    results.put(fields[0],
+                            new Result(Double.parseDouble(fields[1]), Long.parseLong(fields[2])));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    /** @return <code>false</code> if a scenario got worse than the tolerances allow. */
+    private static boolean compare(Map<String, Result> baseline, List<String> names,
+            Map<String, Result> results) {
+        boolean passed = true;
+        System.out.println("Compared with the baseline:");
+        for (String name : names) {
+            Result before = baseline.get(name);
+            if (before == null) {
+                continue;
+            }
+            Result after = results.get(name);
+            double timeChange = (after.millis - before.millis) * 100 / before.millis;
+            double bytesChange = before.bytes == 0 ? 0
+                    : (after.bytes - before.bytes) * 100.0 / before.bytes;
+            boolean regression = timeChange > TOLERANCE_PERCENT
+                    || bytesChange > ALLOCATION_TOLERANCE_PERCENT;
+            passed &= ! regression;
+            System.out.printf("  %-28s %+7.1f %% time %+7.1f %% bytes%s%n", name,
+                    timeChange, bytesChange, regression ? "  REGRESSION" : "");
+        }
+        return passed;
+    }
+
+    private static String createJavaSource() {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder(DOCUMENT_SIZE + 1024);
+        sb.append("package com.example.generated;\n\nimport java.util.List;\n\n");
+        sb.append("/**\n * Generated class. It does nothing useful. Really!\n */\n");
+        sb.append("public class Generated {\n\n");
+        int method = 0;
+        while (sb.length() < DOCUMENT_SIZE) {
+            sb.append("    /** Computes value number ").append(method).append(". */\n");
+            sb.append("    public int method").append(method).append("(int first, int second) {\n");
+            sb.append("        int counter = 0;\n");
+            sb.append("        for (int i = 0; i < first; i++) {\n");
+            sb.append("            counter += computeValue(first, second) + ")
+                    .append(random.nextInt(100)).append("; // Add it up.\n");
+            sb.append("        }\n");
+            sb.append("        log(\"value \" + counter, List.of(first, second));\n");
+            sb.append("        return counter;\n");
+            sb.append("    }\n\n");
+            method++;
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static String createLog() {
+        Random random = new Random(2);
+        String[] levels = { "INFO", "INFO", "INFO", "DEBUG", "DEBUG", "WARN", "ERROR" };
+        String[] messages = { "completed in", "timeout after", "queued for", "retried after" };
+        StringBuilder sb = new StringBuilder(LOG_LINES * 100);
+        for (int i = 0; i < LOG_LINES; i++) {
+            int millis = i * 37;
+            sb.append(String.format("2019-05-21 %02d:%02d:%02d.%03d %-5s [worker-%d] "
+                    + "com.example.Service - Request %d %s %d ms\n",
+                    millis / 3600000 % 24, millis / 60000 % 60, millis / 1000 % 60, millis % 1000,
+                    levels[random.nextInt(levels.length)], random.nextInt(8),
+                    random.nextInt(1000000), messages[random.nextInt(messages.length)],
+                    random.nextInt(5000)));
+        }
+        return sb.toString();
+    }
+
+    private static String createMinifiedScript() {
+        Random random = new Random(3);
+        StringBuilder sb = new StringBuilder(DOCUMENT_SIZE + 100);
+        while (sb.length() < DOCUMENT_SIZE) {
+            sb.append("var a").append(random.nextInt(1000))
+                    .append("=function(b,c){return b+c};if(!a(1,2)){a=[null,\"x\"]}");
+        }
+        return sb.toString();
+    }
+
+    private static class Result {
+        final double millis;
+        final long bytes;
+
+        Result(double millis, long bytes) {
+            this.millis = millis;
+            this.bytes = bytes;
+        }
+    }
+
+    /** A key sequence typed into a fresh copy of a document. */
+    private static class Scenario {
+        final String name;
+        final String document;
+        final int offset;
+        final String setUp;
+        final String keys;
+
+        Scenario(String name, String document, int offset, String setUp, String keys) {
+            this.name = name;
+            this.document = document;
+            this.offset = offset;
+            this.setUp = setUp;
+            this.keys = keys;
+        }
+
+        Result run() {
+            EditorBenchmark editor = new EditorBenchmark();
+            editor.reset(document, offset);
+            editor.type(keys(setUp));
+            List<KeyStroke> keyStrokes = keys(keys);
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                editor.reset(document, offset);
+                editor.type(keyStrokes);
+            }
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            long[] times = new long[ROUNDS];
+            long bytes = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                editor.reset(document, offset);
+                long startBytes = allocatedBytes(threadBean, threadId);
+                long startTime = System.nanoTime();
+                editor.type(keyStrokes);
+                times[i] = System.nanoTime() - startTime;
+                bytes += allocatedBytes(threadBean, threadId) - startBytes;
+            }
+            // The median is less affected by garbage collections and other processes.
+            Arrays.sort(times);
+            return new Result(times[ROUNDS / 2] / 1e6, bytes / ROUNDS);
+        }
+    }
+
+    /**
+     * Searches through the text content like the Eclipse search service does through the
+     * document, without copying the text for every search.
+     */
+    private static class ContentSearchService extends TestSearchService {
+
+        private final TestTextContent content;
+
+        ContentSearchService(TestTextContent content, SimpleLocalConfiguration configuration) {
+            super(content, configuration);
+            this.content = content;
+        }
+
+        @Override
+        public SearchResult find(Search search, Position start) {
+            int flags = search.isRegExSearch() ? 0 : Pattern.LITERAL;
+            if ( ! search.isCaseSensitive()) {
+                flags |= Pattern.CASE_INSENSITIVE;
+            }
+            String keyword = search.getKeyword();
+            if (search.isRegExSearch()) {
+                keyword = keyword.replaceAll("\\\\<", "\\\\b").replaceAll("\\\\>", "\\\\b");
+            }
+            Matcher matcher = Pattern.compile(keyword, flags)
+                    .matcher(new TextContentCharSequence(content));
+            int offset = start.getModelOffset();
+            int found = -1;
+            int end = -1;
+            if (search.isBackward()) {
+                matcher.region(0, offset);
+                while (matcher.find()) {
+                    found = matcher.start();
+                    end = matcher.end();
+                }
+            } else if (matcher.find(offset)) {
+                found = matcher.start();
+                end = matcher.end();
+            }
+            if (found < 0) {
+                return new SearchResult(null, null);
+            }
+            return new SearchResult(start.setModelOffset(found), start.setModelOffset(end));
+        }
+    }
+}
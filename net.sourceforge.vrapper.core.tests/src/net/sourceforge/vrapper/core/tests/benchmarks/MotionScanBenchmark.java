@@ -0,0 +1,194 @@
+package net.sourceforge.vrapper.core.tests.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.vrapper.core.tests.utils.DumbPosition;
+import net.sourceforge.vrapper.platform.CursorService;
+import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
+import net.sourceforge.vrapper.utils.Position;
+import net.sourceforge.vrapper.utils.Space;
+import net.sourceforge.vrapper.utils.TextRange;
+import net.sourceforge.vrapper.vim.DefaultConfigProvider;
+import net.sourceforge.vrapper.vim.EditorAdaptor;
+import net.sourceforge.vrapper.vim.SimpleGlobalConfiguration;
+import net.sourceforge.vrapper.vim.SimpleLocalConfiguration;
+import net.sourceforge.vrapper.vim.commands.motions.CountAwareMotion;
+import net.sourceforge.vrapper.vim.commands.motions.FindCharMotion;
+import net.sourceforge.vrapper.vim.commands.motions.MoveBigWORDRight;
+import net.sourceforge.vrapper.vim.commands.motions.MoveWordEndRight;
+import net.sourceforge.vrapper.vim.commands.motions.MoveWordLeft;
+import net.sourceforge.vrapper.vim.commands.motions.MoveWordRight;
+import net.sourceforge.vrapper.vim.commands.motions.SentenceMotion;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Measures time and heap allocation of the scanning motions over a 1 MB buffer.
+ *
+ * <p>Not a unit test: run it as a Java application with the core, core tests and Mockito on the
+ * classpath. Allocation is read from the HotSpot thread allocation counter, so the numbers are
+ * only meaningful on a HotSpot-based JVM.
+ */
+public class MotionScanBenchmark {
+
+    private static final int DOCUMENT_SIZE = 1024 * 1024;
+    private static final int COUNT = 1000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        TextContent source = new StringTextContent(repeat(
+                "    int someVariable = computeValue(first, second) + 42; // A comment. Another one!\n"));
+        EditorAdaptor editorAdaptor = createEditorAdaptor(source);
+        System.out.println("1 MB source file:");
+        run("w", MoveWordRight.INSTANCE, editorAdaptor, 0);
+        run("W", MoveBigWORDRight.INSTANCE, editorAdaptor, 0);
+        run("e", MoveWordEndRight.INSTANCE, editorAdaptor, 0);
+        run("b", MoveWordLeft.INSTANCE, editorAdaptor, source.getTextLength() - 1);
+        run(")", SentenceMotion.FORWARD, editorAdaptor, 0);
+
+        TextContent minified = new StringTextContent(repeat(
+                "var a=function(b,c){return b+c};if(!a(1,2)){a=null}"));
+        editorAdaptor = createEditorAdaptor(minified);
+        System.out.println("1 MB single line:");
+        run("w", MoveWordRight.INSTANCE, editorAdaptor, 0);
+        run("b", MoveWordLeft.INSTANCE, editorAdaptor, minified.getTextLength() - 1);
+        run("f!", new FindCharMotion('!', false, false), editorAdaptor, 0);
+    }
+
+    private static String repeat(String s) {
+        StringBuilder sb = new StringBuilder(DOCUMENT_SIZE + s.length());
+        while (sb.length() < DOCUMENT_SIZE) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static void run(String name, CountAwareMotion motion, EditorAdaptor editorAdaptor, int from)
+            throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Position start = new DumbPosition(from);
+        // Warm up.
+        for (int i = 0; i < 5; i++) {
+            motion.destination(editorAdaptor, COUNT, start);
+        }
+        long bytes = allocatedBytes(threadBean, threadId);
+        long time = System.nanoTime();
+        int destination = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            destination = motion.destination(editorAdaptor, COUNT, start).getModelOffset();
+        }
+        time = System.nanoTime() - time;
+        bytes = allocatedBytes(threadBean, threadId) - bytes;
+        System.out.printf("  %-3s %d%s from %7d to %7d: %8.3f ms, %10d bytes allocated%n",
+                name, COUNT, name, from, destination,
+                time / 1e6 / ROUNDS, bytes / ROUNDS);
+    }
+
+    private static long allocatedBytes(ThreadMXBean threadBean, long threadId) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId);
+        }
+        return 0;
+    }
+
+    private static EditorAdaptor createEditorAdaptor(TextContent content) {
+        List<DefaultConfigProvider> configProviders = Collections.emptyList();
+        SimpleLocalConfiguration configuration = new SimpleLocalConfiguration(configProviders,
+                new SimpleGlobalConfiguration(configProviders));
+        CursorService cursorService = mock(CursorService.class);
+        when(cursorService.newPositionForModelOffset(org.mockito.Matchers.anyInt())).thenAnswer(
+                new Answer<Position>() {
+                    @Override
+                    public Position answer(InvocationOnMock invocation) throws Throwable {
+                        return new DumbPosition((Integer) invocation.getArguments()[0]);
+                    }
+                });
+        EditorAdaptor editorAdaptor = mock(EditorAdaptor.class);
+        when(editorAdaptor.getModelContent()).thenReturn(content);
+        when(editorAdaptor.getConfiguration()).thenReturn(configuration);
+        when(editorAdaptor.getCursorService()).thenReturn(cursorService);
+        return editorAdaptor;
+    }
+
+    /** Read-only content with a line index, so that line lookups don't dominate the results. */
+    private static class StringTextContent implements TextContent {
+
+        private final String text;
+        private final int[] lineStarts;
+        private final int numberOfLines;
+
+        public StringTextContent(String text) {
+            this.text = text;
+            int[] starts = new int[1024];
+            int lines = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    if (lines == starts.length) {
+                        starts = Arrays.copyOf(starts, lines * 2);
+                    }
+                    starts[lines++] = i + 1;
+                }
+            }
+            lineStarts = starts;
+            numberOfLines = lines;
+        }
+
+        public LineInformation getLineInformation(int line) {
+            int begin = lineStarts[line];
+            int end = line + 1 < numberOfLines ? lineStarts[line + 1] - 1 : text.length();
+            return new LineInformation(line, begin, end - begin);
+        }
+
+        public LineInformation getLineInformationOfOffset(int offset) {
+            int line = Arrays.binarySearch(lineStarts, 0, numberOfLines, offset);
+            return getLineInformation(line >= 0 ? line : -line - 2);
+        }
+
+        public int getNumberOfLines() {
+            return numberOfLines;
+        }
+
+        public String getText(int index, int length) {
+            return text.substring(index, index + length);
+        }
+
+        public String getText(TextRange range) {
+            return getText(range.getLeftBound().getModelOffset(), range.getModelLength());
+        }
+
+        public int getTextLength() {
+            return text.length();
+        }
+
+        public Space getSpace() {
+            return Space.MODEL;
+        }
+
+        public void replace(int index, int length, String s) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void replace(MultiEdit edits) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void smartInsert(int index, String s) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void smartInsert(String s) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
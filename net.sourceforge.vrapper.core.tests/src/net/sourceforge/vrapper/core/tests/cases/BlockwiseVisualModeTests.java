@@ -12,12 +12,14 @@ import net.sourceforge.vrapper.platform.SelectionService;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.TextRange;
 import net.sourceforge.vrapper.vim.Options;
+import net.sourceforge.vrapper.vim.commands.BlockPasteHelper;
 import net.sourceforge.vrapper.vim.commands.BlockWiseSelection;
 import net.sourceforge.vrapper.vim.commands.Command;
 import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 import net.sourceforge.vrapper.vim.modes.BlockwiseVisualMode;
 import net.sourceforge.vrapper.vim.modes.NormalMode;
 import net.sourceforge.vrapper.vim.register.DefaultRegisterManager;
+import net.sourceforge.vrapper.vim.register.TextBlockRegisterContent;
 
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -464,5 +466,30 @@ public class BlockwiseVisualModeTests extends CommandTestCase {
 		executeCommand(forKeySeq("3<"));
 		assertCommandResult(initial,
 				"\t aha  \t\t ", 'p', "atterna baz4");
-	}
+	}
+
+	@Test
+	public void test_blockPaste() {
+		// P at the second column, short block lines are padded.
+		assertBlockPaste("aabbcd\ne12fgh\ni3 jkl\n", 17, 1, 0, "abcd\nefgh\nijkl", 1);
+		// p with a count.
+		assertBlockPaste("abababcd\nef1212gh\nij3 3 kl\n", 24, 2, 1, "abcd\nefgh\nijkl", 1);
+		// The block is pasted at the line ends.
+		assertBlockPaste("abcdab\nefgh12\nijkl3\n", 19, 1, 1, "abcd\nefgh\nijkl", 3);
+		// Lines are added past the end of the document.
+		assertBlockPaste("abcd\nabefgh\n12\n3\n", 16, 1, 0, "abcd\nefgh", 5);
+	}
+
+	private void assertBlockPaste(String expected, int expectedCursor, int count, int startOfs,
+			String text, int offset) {
+		TextBlockRegisterContent rect = new TextBlockRegisterContent(1, "\n");
+		rect.appendLine("ab");
+		rect.appendLine("12");
+		rect.appendLine("3");
+		content.setText(text);
+		Position pos = adaptor.getCursorService().newPositionForModelOffset(offset);
+		int cursor = BlockPasteHelper.execute(adaptor, count, startOfs, true, rect, pos);
+		assertEquals(expected, content.getText());
+		assertEquals(expectedCursor, cursor);
+	}
 }
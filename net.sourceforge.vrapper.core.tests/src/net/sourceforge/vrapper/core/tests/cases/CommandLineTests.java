@@ -5,10 +5,14 @@ import static org.hamcrest.CoreMatchers.hasItems;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
@@ -41,6 +45,7 @@ import net.sourceforge.vrapper.vim.commands.TextOperation;
 import net.sourceforge.vrapper.vim.commands.TextOperationTextObjectCommand;
 import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 import net.sourceforge.vrapper.vim.modes.NormalMode;
+import net.sourceforge.vrapper.vim.modes.commandline.CommandLineHistory;
 import net.sourceforge.vrapper.vim.modes.commandline.CommandLineMode;
 import net.sourceforge.vrapper.vim.modes.commandline.CommandLineParser;
 import net.sourceforge.vrapper.vim.modes.commandline.ComplexOptionEvaluator;
@@ -179,6 +184,67 @@ public class CommandLineTests extends VimTestCase {
 		assertEquals("one Two three two", content.getText());
 	}
 
+	@Test
+	public void testSubstitutionOnRange() throws CommandExecutionException {
+		when(platform.getSearchAndReplaceService()).thenReturn(new TestSearchService(content, configuration));
+		super.installSaneRegisterManager();
+
+		content.setText("foo foo\nbar\nfoo bar foo\nfoo");
+		makeSubstitution("%s/foo/x/").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+		assertEquals("x foo\nbar\nx bar foo\nx", content.getText());
+
+		content.setText("foo foo\nbar\nfoo bar foo\nfoo");
+		makeSubstitution("%s/foo/x/g").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+		assertEquals("x x\nbar\nx bar x\nx", content.getText());
+
+		// Groups, and a range not including the first and last line
+		content.setText("a1\na2\na3\na4");
+		makeSubstitution("s/a(\\d)/\\1b$1/").execute(adaptor,
+		        SimpleLineRange.betweenPositions(adaptor, new DumbPosition(3), new DumbPosition(6)));
+		assertEquals("a1\n2b2\n3b3\na4", content.getText());
+
+		// Counting only
+		content.setText("foo foo\nbar\nfoo");
+		makeSubstitution("%s/foo/x/gn").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+		assertEquals("foo foo\nbar\nfoo", content.getText());
+		verify(userInterfaceService).setInfoMessage("3 matches on 2 lines");
+
+		// Matches across lines continue on the line after the match
+		content.setText("a\nb\na\nb\na");
+		makeSubstitution("%s/a\\nb/x/").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+		assertEquals("x\nx\na", content.getText());
+	}
+
+	@Test
+	public void testSubstitutionReplacementEscapes() throws CommandExecutionException {
+		when(platform.getSearchAndReplaceService()).thenReturn(new TestSearchService(content, configuration));
+		super.installSaneRegisterManager();
+
+		String text = "Foo bar\nFOO bar\nfoo bar\nfOO bar";
+		// Replacement, then the expected text. Escapes are interpreted like Eclipse's
+		// FindReplaceDocumentAdapter does for a single-line :s.
+		String[][] cases = {
+				{ "<$2\\1>", "<ooF> bar\n<OOF> bar\n<oof> bar\n<OOf> bar" },
+				// \C retains the case of the match: all upper, all lower or first upper.
+				{ "\\C$1x$2y", "Fxooy bar\nFXOOY bar\nfxooy bar\nfxOOy bar" },
+				{ "\\Cab\\1c", "AbFc bar\nABFC bar\nabfc bar\nabfc bar" },
+				{ "\\Cq$1", "QF bar\nQF bar\nqf bar\nqf bar" },
+				{ "\\C\\x61b", "Ab bar\nAB bar\nab bar\nab bar" },
+				{ "\\x41\\u00e9\\cJ\\a\\e\\f", "A\u00e9\n\u0007\u001b\f bar\nA\u00e9\n\u0007\u001b\f bar\n"
+						+ "A\u00e9\n\u0007\u001b\f bar\nA\u00e9\n\u0007\u001b\f bar" },
+				// A digit after $0 or \0 is literal, $12 is $1 followed by 2.
+				{ "$0\\0$00\\01", "FooFooFoo0Foo1 bar\nFOOFOOFOO0FOO1 bar\nfoofoofoo0foo1 bar\nfOOfOOfOO0fOO1 bar" },
+				{ "\\12$12", "F2F2 bar\nF2F2 bar\nf2f2 bar\nf2f2 bar" },
+				{ "\\k\\\\\\$", "k\\$ bar\nk\\$ bar\nk\\$ bar\nk\\$ bar" },
+				{ "\\R", "\n bar\n\n bar\n\n bar\n\n bar" } };
+		for (String[] replacement : cases) {
+			content.setText(text);
+			makeSubstitution("%s/(\\w)(\\w+)/" + replacement[0] + "/").execute(adaptor,
+					SimpleLineRange.entireFile(adaptor));
+			assertEquals(replacement[0], replacement[1], content.getText());
+		}
+	}
+
 	private SubstitutionOperation makeSubstitution(String command) {
         SubstitutionDefinition definition = new SubstitutionDefinition(command, registerManager);
         return new SubstitutionOperation(definition);
@@ -389,6 +455,16 @@ public class CommandLineTests extends VimTestCase {
     	new SortOperation("x").execute(adaptor, 0, defaultRange);
     	assertEquals("xx\n1\n2\n3\na\nb\nc\n10", content.getText());
     	
+    	// Binary and octal numbers are read in their radix, so long numbers which are equal
+    	// when read as decimal doubles still sort by value.
+    	content.setText("10000000000000000001\n10000000000000000000\n11");
+    	new SortOperation("b").execute(adaptor, 0, defaultRange);
+    	assertEquals("11\n10000000000000000000\n10000000000000000001", content.getText());
+    	
+    	content.setText("10000000000000001\n10000000000000000\n7");
+    	new SortOperation("o").execute(adaptor, 0, defaultRange);
+    	assertEquals("7\n10000000000000000\n10000000000000001", content.getText());
+    	
     	content.setText("bb3\naa4\ncc2\ndd1");
     	new SortOperation("").execute(adaptor, 0, defaultRange);
     	assertEquals("aa4\nbb3\ncc2\ndd1", content.getText());
@@ -537,6 +613,32 @@ public class CommandLineTests extends VimTestCase {
     	assertEquals("two three", content.getText());
     }
 
+    @Test
+    public void testExCommandOnSeveralBlocks() throws CommandExecutionException {
+        content.setText("a1\nb\na2\na3\nc\na4\nd");
+        new ExCommandOperation("g/a/d").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+        assertEquals("b\nc\nd", content.getText());
+
+        content.setText("a1\nb\na2\na3\nc");
+        new ExCommandOperation("g/a/normal yyp").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+        assertEquals("a1\na1\nb\na2\na2\na3\na3\nc", content.getText());
+    }
+
+    @Test
+    public void testExCommandSubstitution() throws CommandExecutionException {
+        when(platform.getSearchAndReplaceService()).thenReturn(new TestSearchService(content, configuration));
+        super.installSaneRegisterManager();
+
+        content.setText("a1 a1\nb1\na2\nb2");
+        new ExCommandOperation("g/a/s/\\d/x/").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+        assertEquals("ax a1\nb1\nax\nb2", content.getText());
+        verify(userInterfaceService).setInfoMessage("2 substitutions on 2 lines");
+
+        content.setText("a1 a1\nb1\na2\nb2");
+        new ExCommandOperation("v/a/s/\\d/x/g").execute(adaptor, SimpleLineRange.entireFile(adaptor));
+        assertEquals("a1 a1\nbx\na2\nbx", content.getText());
+    }
+
     @Test
     public void testNormalCommandMacro() throws CommandExecutionException {
 
@@ -635,6 +737,44 @@ public class CommandLineTests extends VimTestCase {
         assertEquals("let @q=\"iOk<CR>\"jj", adaptor.getCommandLine().getContents());
     }
 
+    @Test
+    public void testCommandLineHistory() throws IOException {
+        CommandLineHistory history = CommandLineHistory.INSTANCE;
+        File file = File.createTempFile("vrapper-history", null);
+        file.delete();
+        try {
+            history.setStorage(file);
+            history.setCapacity(3);
+            history.setMode("test");
+            for (String command : new String[] { "ab", "b", "a", "c", "b" }) {
+                history.append(command);
+            }
+            // "b" is kept once, "ab" is the oldest and dropped.
+            history.setTemp("a");
+            assertEquals("a", history.getPrevious());
+            assertNull(history.getPrevious());
+            assertEquals("a", history.getNext());
+            history.setTemp("");
+            assertEquals("b", history.getPrevious());
+            assertEquals("c", history.getPrevious());
+            assertEquals("b", history.getNext());
+            assertEquals("", history.getNext());
+
+            history.flush();
+            history.setStorage(file);
+            history.setMode("test");
+            history.setTemp("");
+            assertEquals("b", history.getPrevious());
+            assertEquals("c", history.getPrevious());
+            assertEquals("a", history.getPrevious());
+            assertNull(history.getPrevious());
+        } finally {
+            history.setStorage(null);
+            history.setCapacity(CommandLineHistory.DEFAULT_CAPACITY);
+            file.delete();
+        }
+    }
+
     private <T> void assertSetOption(Option<T> o, String invalid, T... values) {
 
         for (String name : o.getAllNames()) {
@@ -2,11 +2,11 @@ package net.sourceforge.vrapper.core.tests.cases;
 
 import static net.sourceforge.vrapper.keymap.vim.ConstructorWrappers.key;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
+import net.sourceforge.vrapper.keymap.CompiledKeyMap;
 import net.sourceforge.vrapper.keymap.KeyMap;
 import net.sourceforge.vrapper.keymap.KeyStroke;
 import net.sourceforge.vrapper.keymap.Remapping;
@@ -83,20 +83,26 @@ public class KeyMapTests extends TestCase {
         assertEquals(next.getValue(), mapping);
     }
 
-    /*
-     * Provides root access. haha!
-     */
-    @SuppressWarnings("unchecked")
     private State<Remapping> su(KeyMap map) throws Exception {
-        Field root = KeyMap.class.getDeclaredField("root");
-        root.setAccessible(true);
-        return (State<Remapping>) root.get(map);
+        return map.compile().getRoot();
     }
 
     private int getTransitions(State<Remapping> state) throws Exception {
-        Class<?> clazz = KeyMap.class.getDeclaredClasses()[0];
-        Field f = clazz.getDeclaredField("transitions");
-        f.setAccessible(true);
-        return ((Integer)f.get(state)).intValue();
+        return ((CompiledKeyMap.Node) state).getKeyCount();
+    }
+
+    @Test
+    public void testCompiledKeyMapIsShared() throws Exception {
+        KeyMap other = new KeyMap("other");
+        map.addMapping(createStrokeList("ab"), mapping);
+        other.addMapping(createStrokeList("ab"), new SimpleRemapping(key('h')));
+        assertSame(map.compile(), other.compile());
+
+        other.addMapping(createStrokeList("c"), mapping);
+        assertNotSame(map.compile(), other.compile());
+        assertNull(other.press(key('b')));
+        assertNull(other.press(key('c')).getNextState());
+        assertEquals(mapping, other.press(key('c')).getValue());
+        assertNull(other.press(key('a')).getValue());
     }
 }
@@ -1,5 +1,11 @@
 package net.sourceforge.vrapper.core.tests.cases;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import static net.sourceforge.vrapper.keymap.vim.ConstructorWrappers.parseKeyStrokes;
+
 import org.junit.Test;
 
 import net.sourceforge.vrapper.core.tests.utils.CommandTestCase;
@@ -103,6 +109,45 @@ public class MacroTests extends CommandTestCase {
 				"", EOF, "");
 	}
 
+	@Test public void testCompiledMacro() {
+		//the register prefix is a command which leaves the mode waiting for more keys
+		checkCommand(forKeySeq("qc\"aylx\"apq3@c"),
+				"Ala ",'m', "a kota",
+				"Ala a ko",'m', "ta");
+		assertThat(adaptor.getMacroCompiler().getLastReport(),
+				containsString("@c: 3 runs, 2 compiled"));
+
+		//macros entering insert mode are played as keys
+		checkCommand(forKeySeq("qdix<ESC>q2@d"),
+				"Ala ",'m', "a kota",
+				"Ala ",'x', "xxma kota");
+		assertThat(adaptor.getMacroCompiler().getLastReport(),
+				containsString("@d: 2 runs, 0 compiled"));
+		assertThat(adaptor.getMacroCompiler().getLastReport(),
+				containsString("played as keys because it switches to"));
+	}
+
+	@Test public void testCompiledNormalCommand() {
+		//@q is compiled as the command queuing the macro, which is compiled on its own
+		content.setText("abc\nabc\nabc");
+		type(parseKeyStrokes("qqxq"));
+		type(parseKeyStrokes(":%normal @q<CR>"));
+		assertEquals("c\nbc\nbc", content.getText());
+		assertThat(adaptor.getMacroCompiler().getLastReport(),
+				containsString(":normal: 3 runs, 2 compiled"));
+		assertThat(adaptor.getMacroCompiler().getLastReport(),
+				containsString("@q: 3 runs, 1 compiled"));
+
+		//text typed in insert mode is always played as keys
+		content.setText("a\nb\nc");
+		type(parseKeyStrokes(":%normal Ax<CR>"));
+		assertEquals("ax\nbx\ncx", content.getText());
+		assertThat(adaptor.getMacroCompiler().getLastReport(),
+				containsString(":normal: 3 runs, 0 compiled"));
+		assertThat(adaptor.getMacroCompiler().getLastReport(),
+				containsString("played as keys because it switches to"));
+	}
+
 	@Test public void testRecursiveMacro() {
 		// This should simply abort with a CommandExecutionException.
 		// If it runs with infinite recursion that it would raise a StackOverFlowError.
@@ -3,12 +3,21 @@ package net.sourceforge.vrapper.core.tests.cases;
 import static org.mockito.Mockito.*;
 import static net.sourceforge.vrapper.keymap.vim.ConstructorWrappers.parseKeyStrokes;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import net.sourceforge.vrapper.core.tests.utils.DumbPosition;
 import net.sourceforge.vrapper.core.tests.utils.TestSearchService;
 import net.sourceforge.vrapper.core.tests.utils.VisualTestCase;
 import net.sourceforge.vrapper.vim.Options;
+import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 import net.sourceforge.vrapper.vim.modes.NormalMode;
 import net.sourceforge.vrapper.vim.register.DefaultRegisterManager;
 
@@ -349,4 +358,42 @@ public class SearchModeTests extends VisualTestCase {
                 "I couldn't live without this\nfull-range t", 'h', "ree-linear variable.",
                 "I couldn't live wi", 'o', "ut this\nfull-range three-linear variable.");
     }
+
+    @Test
+    public void testIncrementalSearch() {
+        final List<Runnable> pending = new ArrayList<Runnable>();
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                pending.add((Runnable) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(userInterfaceService).runLater(Mockito.anyInt(), Mockito.any(Runnable.class));
+        // Global options are mocked to be off.
+        doReturn(true).when(configuration).get(Options.INCREMENTAL_SEARCH);
+        content.setText("I couldn't live without this\nfull-range three-linear variable.");
+        adaptor.setPosition(new DumbPosition(2), StickyColumnPolicy.NEVER);
+
+        // Typing doesn't search, the search runs afterwards for the last keyword only.
+        type(parseKeyStrokes("/th"));
+        Assert.assertEquals(2, adaptor.getPosition().getModelOffset());
+        runAll(pending);
+        Assert.assertEquals(18, adaptor.getPosition().getModelOffset());
+
+        // An invalid regex finds nothing and goes back to where the search started.
+        type(parseKeyStrokes("\\("));
+        runAll(pending);
+        Assert.assertEquals(2, adaptor.getPosition().getModelOffset());
+
+        type(parseKeyStrokes("<BS><BS>ree<CR>"));
+        Assert.assertTrue(pending.size() > 0);
+        runAll(pending);
+        Assert.assertEquals(40, adaptor.getPosition().getModelOffset());
+    }
+
+    private static void runAll(List<Runnable> pending) {
+        while ( ! pending.isEmpty()) {
+            pending.remove(0).run();
+        }
+    }
 }
@@ -1,17 +1,42 @@
 package net.sourceforge.vrapper.core.tests.cases;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import net.sourceforge.vrapper.core.tests.utils.TestCursorAndSelection;
+import net.sourceforge.vrapper.core.tests.utils.TestTextContent;
+import net.sourceforge.vrapper.log.LatencyStatistics;
+import net.sourceforge.vrapper.log.LatencyStatistics.Histogram;
+import net.sourceforge.vrapper.platform.VrapperPlatformException;
+import net.sourceforge.vrapper.utils.BracketIndex;
+import net.sourceforge.vrapper.utils.DocumentSnapshot;
 import net.sourceforge.vrapper.utils.ExplodedPattern;
+import net.sourceforge.vrapper.utils.GapBufferTextContent;
+import net.sourceforge.vrapper.utils.KeywordClass;
+import net.sourceforge.vrapper.utils.LineDiff;
+import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
+import net.sourceforge.vrapper.utils.ParallelMergeSort;
+import net.sourceforge.vrapper.utils.SearchMatchIndex;
 import net.sourceforge.vrapper.utils.StringUtils;
 import net.sourceforge.vrapper.utils.StringUtils.PatternHolder;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
+import net.sourceforge.vrapper.utils.VimRegexTranslator;
+import net.sourceforge.vrapper.utils.VimUtils;
+import net.sourceforge.vrapper.utils.XmlTagIndex;
+import net.sourceforge.vrapper.utils.XmlTagIndex.Tag;
 
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 public class UtilityTests {
 
@@ -175,4 +200,487 @@ public class UtilityTests {
         Assert.assertEquals("", holder.remainder);
 
     }
+
+    @Test
+    public void testKeywordClass() {
+        KeywordClass keywords = new KeywordClass("a-zA-Z0-9_\u00C0-\u017F");
+        Assert.assertTrue(keywords.isKeyword('a'));
+        Assert.assertTrue(keywords.isKeyword('Z'));
+        Assert.assertTrue(keywords.isKeyword('_'));
+        Assert.assertTrue(keywords.isKeyword('\u00E9'));
+        Assert.assertTrue(keywords.isKeyword('\u0151'));
+        Assert.assertFalse(keywords.isKeyword('-'));
+        Assert.assertFalse(keywords.isKeyword(' '));
+        Assert.assertFalse(keywords.isKeyword('\u0180'));
+        Assert.assertFalse(keywords.isKeyword('\uCE45'));
+
+        KeywordClass nonWhitespace = new KeywordClass("\\S");
+        Assert.assertTrue(nonWhitespace.isKeyword('-'));
+        Assert.assertTrue(nonWhitespace.isKeyword('\uCE45'));
+        Assert.assertFalse(nonWhitespace.isKeyword('\t'));
+
+        Assert.assertSame(KeywordClass.forPattern("a-z"), KeywordClass.forPattern("a-z"));
+    }
+
+    @Test
+    public void testTextContentCharSequence() {
+        TestTextContent content = new TestTextContent(null);
+        content.setText("first line\r\nsecond line\nthird");
+        TextContentCharSequence text = new TextContentCharSequence(content, 4);
+        Assert.assertEquals(content.getTextLength(), text.length());
+        // Forward, then backward over the whole text with a window smaller than a line.
+        for (int i = 0; i < text.length(); i++) {
+            Assert.assertEquals(content.getText().charAt(i), text.charAt(i));
+        }
+        for (int i = text.length() - 1; i >= 0; i--) {
+            Assert.assertEquals(content.getText().charAt(i), text.charAt(i));
+        }
+        Assert.assertEquals("line", text.subSequence(6, 10).toString());
+        Assert.assertEquals(content.getText(), text.toString());
+
+        Assert.assertEquals(2, VimUtils.startsWithNewLine(text, 10));
+        Assert.assertEquals(1, VimUtils.startsWithNewLine(text, 11));
+        Assert.assertEquals(0, VimUtils.startsWithNewLine(text, 12));
+        Assert.assertEquals(2, VimUtils.endsWithNewLine(text, 12));
+        Assert.assertEquals(1, VimUtils.endsWithNewLine(text, 24));
+        Assert.assertEquals(0, VimUtils.endsWithNewLine(text, 0));
+    }
+
+    @Test
+    public void testVimRegexTranslator() {
+        VimRegexTranslator translator = new VimRegexTranslator(2);
+        Assert.assertEquals("(?<![a-z])foo[a-z]*(?![a-z])", translator.translate("\\<foo\\k*\\>", "a-z"));
+        Assert.assertEquals("a(?>\\r\\n?|\\n)b\\\\R", translator.translate("a\\Rb\\\\R", "a-z"));
+
+        Pattern pattern = translator.compile("\\<ab\\>", "a-z", false);
+        Assert.assertTrue(pattern.matcher("x AB.").find());
+        Assert.assertFalse(pattern.matcher("abc").find());
+        Assert.assertSame(pattern, translator.compile("\\<ab\\>", "a-z", false));
+        Assert.assertEquals(1, translator.getHits());
+        Assert.assertEquals(1, translator.getMisses());
+        // Case sensitivity and 'iskeyword' are part of the key.
+        Assert.assertNotSame(pattern, translator.compile("\\<ab\\>", "a-z", true));
+        Assert.assertNotSame(pattern, translator.compile("\\<ab\\>", "a-c", false));
+        // Capacity is 2, the least recently used entry is gone.
+        Assert.assertNotSame(pattern, translator.compile("\\<ab\\>", "a-z", false));
+        Assert.assertEquals(4, translator.getMisses());
+    }
+
+    @Test
+    public void testParallelMergeSort() {
+        // Pairs of (key, original index), sorted on the key only
+        int size = ParallelMergeSort.PARALLEL_THRESHOLD * 3 + 7;
+        Integer[][] values = new Integer[size][];
+        for (int i = 0; i < size; i++) {
+            values[i] = new Integer[] { (i * 7919) % 1000, i };
+        }
+        ParallelMergeSort.sort(values, new Comparator<Integer[]>() {
+            @Override
+            public int compare(Integer[] o1, Integer[] o2) {
+                return o1[0] - o2[0];
+            }
+        });
+        for (int i = 1; i < size; i++) {
+            Assert.assertTrue(values[i - 1][0] <= values[i][0]);
+            if (values[i - 1][0].equals(values[i][0])) {
+                Assert.assertTrue("sort must be stable", values[i - 1][1] < values[i][1]);
+            }
+        }
+    }
+
+    @Test
+    public void testGapBufferTextContent() {
+        GapBufferTextContent content = new GapBufferTextContent(null, "a\r\nb\rc\n");
+        Assert.assertEquals(4, content.getNumberOfLines());
+        assertLine(content, 0, 0, 1);
+        assertLine(content, 1, 3, 1);
+        assertLine(content, 2, 5, 1);
+        assertLine(content, 3, 7, 0);
+        Assert.assertEquals(0, content.getLineInformationOfOffset(2).getNumber());
+
+        // "\r" followed by an inserted "\n" becomes a single delimiter, and splits when separated.
+        content.replace(5, 0, "\n");
+        Assert.assertEquals("a\r\nb\r\nc\n", content.getText());
+        Assert.assertEquals(4, content.getNumberOfLines());
+        assertLine(content, 2, 6, 1);
+        content.replace(5, 0, "x");
+        Assert.assertEquals(5, content.getNumberOfLines());
+        assertLine(content, 2, 5, 1);
+        assertLine(content, 3, 7, 1);
+        try {
+            content.replace(content.getTextLength() + 1, 0, "x");
+            Assert.fail("replacing after the end of the text must fail");
+        } catch (VrapperPlatformException e) {
+            // Expected, the text is unchanged.
+        }
+        Assert.assertEquals("a\r\nb\rx\nc\n", content.getText());
+
+        // Random edits, compared with line information computed from scratch.
+        Random random = new Random(42);
+        String[] pieces = { "\r", "\n", "\r\n", "ab", "c", "" };
+        for (int i = 0; i < 2000; i++) {
+            int length = content.getTextLength();
+            int index = random.nextInt(length + 1);
+            int deleted = random.nextInt(Math.min(4, length - index) + 1);
+            content.replace(index, deleted, pieces[random.nextInt(pieces.length)]);
+            String text = content.getText();
+            String[] lines = text.split("\r\n|\r|\n", -1);
+            Assert.assertEquals(text, lines.length, content.getNumberOfLines());
+            int offset = 0;
+            for (int line = 0; line < lines.length; line++) {
+                assertLine(content, line, offset, lines[line].length());
+                offset += lines[line].length();
+                offset += text.startsWith("\r\n", offset) ? 2 : offset < text.length() ? 1 : 0;
+            }
+        }
+    }
+
+    private static void assertLine(GapBufferTextContent content, int line, int begin, int length) {
+        LineInformation info = content.getLineInformation(line);
+        Assert.assertEquals(begin, info.getBeginOffset());
+        Assert.assertEquals(length, info.getLength());
+        Assert.assertEquals(line, content.getLineInformationOfOffset(begin + length).getNumber());
+    }
+
+    @Test
+    public void testBracketIndex() {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        String alphabet = "(){}[]<>\\ab\n";
+        for (int i = 0; i < 20000; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        GapBufferTextContent content = new GapBufferTextContent(null, text.toString());
+        BracketIndex index = content.getBracketIndex();
+        String targets = "(]{<";
+        for (int i = 0; i < 300; i++) {
+            if (i % 3 == 0) {
+                int offset = random.nextInt(content.getTextLength());
+                int length = random.nextInt(Math.min(10, content.getTextLength() - offset));
+                content.replace(offset, length, alphabet.substring(random.nextInt(6)));
+            }
+            String current = content.getText();
+            int offset = random.nextInt(current.length());
+            char target = targets.charAt(random.nextInt(targets.length()));
+            boolean backwards = "({[<".indexOf(target) >= 0;
+            char pair = backwards ? ")}]>".charAt("({[<".indexOf(target)) : "({[<".charAt(")}]>".indexOf(target));
+            boolean ignoreEscape = random.nextBoolean();
+            int depth = 1 + random.nextInt(3);
+            Assert.assertTrue(BracketIndex.supports(target, pair, backwards));
+            Assert.assertEquals(findUnmatched(current, offset, target, pair, backwards, ignoreEscape, depth),
+                    index.findUnmatched(content, offset, target, backwards, ignoreEscape, depth));
+        }
+        Assert.assertFalse(BracketIndex.supports(')', '(', true));
+        Assert.assertFalse(BracketIndex.supports('"', '\0', false));
+    }
+
+    private static int findUnmatched(String text, int offset, char target, char pair,
+            boolean backwards, boolean ignoreEscape, int depth) {
+        int step = backwards ? -1 : 1;
+        for (int i = offset + step; i >= 0 && i < text.length(); i += step) {
+            char c = text.charAt(i);
+            if (( ! ignoreEscape && i > 0 && text.charAt(i - 1) == '\\') || (c != target && c != pair)) {
+                continue;
+            }
+            depth += c == target ? -1 : 1;
+            if (depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testXmlTagIndex() {
+        Pattern tagPattern = Pattern.compile("(?:(<(?!%|!)(<(?=%)|(?<=%)>|[^<]){0,1000}(?<!%|/)>))",
+                Pattern.DOTALL);
+        Random random = new Random(5);
+        String[] fragments = { "<a>", "</a>", "<b x='1'>", "</b>", "<%", "%>", "<!--", "/>", "<",
+                ">", "text", "\n", " ", "%", "/" };
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            text.append(fragments[random.nextInt(fragments.length)]);
+            if (i == 700) {
+                text.append("<long");
+                for (int j = 0; j < 1100; j++) {
+                    text.append(j % 80 == 0 ? '>' : 'x');
+                }
+            }
+        }
+        GapBufferTextContent content = new GapBufferTextContent(null, text.toString());
+        XmlTagIndex index = content.getXmlTagIndex();
+        for (int i = 0; i < 400; i++) {
+            if (i % 4 == 0) {
+                int offset = random.nextInt(content.getTextLength());
+                int length = random.nextInt(Math.min(8, content.getTextLength() - offset));
+                content.replace(offset, length, fragments[random.nextInt(fragments.length)]);
+            }
+            String current = content.getText();
+            int offset = random.nextInt(current.length() + 1);
+
+            Matcher matcher = tagPattern.matcher(current.substring(offset));
+            Tag next = index.findNext(content, offset);
+            if (matcher.find()) {
+                Assert.assertEquals(offset + matcher.start(), next.start);
+                Assert.assertEquals(offset + matcher.end(), next.end);
+                Assert.assertEquals(matcher.group(), next.text);
+            } else {
+                Assert.assertNull(next);
+            }
+
+            matcher = tagPattern.matcher(current.substring(0, offset));
+            int start = -1;
+            int end = -1;
+            while (matcher.find()) {
+                start = matcher.start();
+                end = matcher.end();
+            }
+            Tag previous = index.findPrevious(content, offset);
+            if (start >= 0) {
+                Assert.assertEquals(start, previous.start);
+                Assert.assertEquals(end, previous.end);
+            } else {
+                Assert.assertNull(previous);
+            }
+        }
+        Assert.assertEquals("b", new Tag(0, 9, "</b x=1>").getName());
+    }
+
+    @Test
+    public void testSearchMatchIndex() {
+        Pattern pattern = Pattern.compile("ab+|\\bc|x\ny");
+        Random random = new Random(7);
+        String[] fragments = { "a", "b", "c", "ab", "x", "\n", "y", " ", "abbb" };
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 6000; i++) {
+            text.append(fragments[random.nextInt(fragments.length)]);
+        }
+        GapBufferTextContent content = new GapBufferTextContent(null, text.toString());
+        SearchMatchIndex index = content.getSearchMatchIndex();
+        for (int i = 0; i < 300; i++) {
+            if (i % 3 == 0) {
+                int offset = random.nextInt(content.getTextLength());
+                int length = random.nextInt(Math.min(6, content.getTextLength() - offset));
+                content.replace(offset, length, fragments[random.nextInt(fragments.length)]);
+            }
+            String current = content.getText();
+            List<int[]> matches = new ArrayList<int[]>();
+            Matcher matcher = pattern.matcher(current);
+            for (int from = 0; from <= current.length() && matcher.find(from); from = matcher.start() + 1) {
+                matches.add(new int[] { matcher.start(), matcher.end() });
+            }
+            int offset = random.nextInt(current.length() + 1);
+            int[] expectedNext = null;
+            int[] expectedPrevious = null;
+            int number = 0;
+            for (int[] match : matches) {
+                if (match[0] <= offset) {
+                    expectedPrevious = match;
+                    number++;
+                } else if (expectedNext == null) {
+                    expectedNext = match;
+                }
+            }
+            if (expectedPrevious != null && expectedPrevious[0] == offset) {
+                expectedNext = expectedPrevious;
+            }
+            if (i % 2 == 0) {
+                assertMatch(expectedNext, index.findNext(content, pattern, offset));
+                assertMatch(expectedPrevious, index.findPrevious(content, pattern, offset));
+            } else {
+                assertMatch(expectedPrevious, index.findPrevious(content, pattern, offset));
+                assertMatch(expectedNext, index.findNext(content, pattern, offset));
+            }
+            if (i % 10 == 0) {
+                int[] count = index.count(content, pattern, offset, Long.MAX_VALUE);
+                Assert.assertEquals(number, count[0]);
+                Assert.assertEquals(matches.size(), count[1]);
+            }
+        }
+        // Another pattern drops the index, nothing can be counted without time.
+        Assert.assertArrayEquals(new int[] { -1, -1 },
+                index.count(content, Pattern.compile("b"), 0, System.nanoTime() - 1));
+        Assert.assertNull(index.findNext(content, Pattern.compile("q"), 0));
+        Assert.assertTrue(index.isIndexing(Pattern.compile("q")));
+        Assert.assertFalse(index.isIndexing(pattern));
+    }
+
+    @Test
+    public void testSearchMatchIndexAfterChange() {
+        GapBufferTextContent content = new GapBufferTextContent(null, "hell world\nxx hello\n");
+        SearchMatchIndex index = content.getSearchMatchIndex();
+        Pattern pattern = Pattern.compile("hello");
+        assertMatch(new int[] { 14, 19 }, index.findNext(content, pattern, 0));
+        // The new match starts four characters before the change.
+        content.replace(4, 0, "o");
+        assertMatch(new int[] { 0, 5 }, index.findNext(content, pattern, 0));
+        assertMatch(new int[] { 15, 20 }, index.findNext(content, pattern, 1));
+
+        // A look-ahead may depend on the next line, the index is dropped.
+        pattern = Pattern.compile("x(?=\\s+hello)");
+        assertMatch(new int[] { 13, 14 }, index.findNext(content, pattern, 0));
+        content.replace(0, 0, "x\n");
+        assertMatch(new int[] { 0, 1 }, index.findNext(content, pattern, 0));
+    }
+
+    @Test
+    public void testSearchMatchIndexLargeText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            text.append(i < 20000 ? 'a' : 'b');
+        }
+        text.append("c\nab");
+        GapBufferTextContent content = new GapBufferTextContent(null, text.toString());
+        SearchMatchIndex index = content.getSearchMatchIndex();
+        // Matches reaching out of a search region, found by searching a growing region.
+        assertMatch(new int[] { 0, 20000 }, index.findNext(content, Pattern.compile("a+"), 0));
+        assertMatch(new int[] { 19999, 20500 },
+                index.findNext(content, Pattern.compile("ab{1,500}"), 0));
+        // A failed search doesn't look for matches longer than the overhang.
+        Pattern pattern = Pattern.compile("\\ba+b+c|b$");
+        assertMatch(new int[] { 40003, 40004 }, index.findNext(content, pattern, 0));
+        Assert.assertNull(index.findPrevious(content, pattern, 40002));
+        Assert.assertArrayEquals(new int[] { 0, 1 },
+                index.count(content, pattern, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testSearchMatchIndexDeadline() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 4 * 1024 * 1024) {
+            text.append("a line without the word\n");
+        }
+        text.append("needle\n");
+        GapBufferTextContent content = new GapBufferTextContent(null, text.toString());
+        SearchMatchIndex index = content.getSearchMatchIndex();
+        Pattern pattern = Pattern.compile("needle");
+        int[] match = SearchMatchIndex.NOT_DONE;
+        for (int i = 0; i < 10000 && match == SearchMatchIndex.NOT_DONE; i++) {
+            // Each slice must keep what it has searched, even if it is shorter than one search.
+            match = index.findNext(content, pattern, 0, System.nanoTime() + 100 * 1000);
+        }
+        assertMatch(new int[] { text.length() - 7, text.length() - 1 }, match);
+    }
+
+    private static void assertMatch(int[] expected, int[] actual) {
+        if (expected == null) {
+            Assert.assertNull(actual);
+        } else {
+            Assert.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testLineDiff() {
+        Random random = new Random(11);
+        String[] words = { "a\n", "b\n", "c\n", "d\r\n", "e" };
+        for (int i = 0; i < 200; i++) {
+            StringBuilder oldText = new StringBuilder();
+            StringBuilder newText = new StringBuilder();
+            for (int j = random.nextInt(30); j > 0; j--) {
+                String word = words[random.nextInt(words.length)];
+                oldText.append(word);
+                newText.append(random.nextInt(5) == 0 ? words[random.nextInt(words.length)] : word);
+            }
+            TestCursorAndSelection cursor = new TestCursorAndSelection();
+            TestTextContent content = new TestTextContent(cursor);
+            content.setText("x\n" + oldText + "y");
+            LineDiff.apply(content, 2, oldText.toString(), newText.toString());
+            Assert.assertEquals("x\n" + newText + "y", content.getText());
+        }
+        GapBufferTextContent content = Mockito.spy(new GapBufferTextContent(null, "1\n2\n3\n4\n5\n"));
+        Assert.assertEquals(2, LineDiff.apply(content, 0, "1\n2\n3\n4\n5\n", "1\nb\n3\n4\nd\n5\n"));
+        Assert.assertEquals("1\nb\n3\n4\nd\n5\n", content.getText());
+        Mockito.verify(content, Mockito.times(1)).replace(Mockito.any(MultiEdit.class));
+        Assert.assertEquals(0, LineDiff.apply(content, 0, "1\n", "1\n"));
+    }
+
+    @Test
+    public void testMultiEdit() {
+        GapBufferTextContent content = new GapBufferTextContent(null, "one\ntwo\nthree\n");
+        MultiEdit edits = new MultiEdit();
+        // Added out of order, offsets refer to the original text.
+        edits.replace(8, 5, "3");
+        edits.insert(0, "1 ");
+        edits.replace(4, 3, "2");
+        edits.insert(0, "-");
+        edits.insert(8, "+");
+        Assert.assertEquals(5, edits.size());
+        Assert.assertEquals(9, edits.getNewOffset(3));
+        content.replace(edits);
+        Assert.assertEquals("1 -one\n2\n+3\n", content.getText());
+        Assert.assertEquals(4, content.getNumberOfLines());
+
+        // Applying each edit on its own gives the same text.
+        content.setText("one\ntwo\nthree\n");
+        edits.applyEach(content);
+        Assert.assertEquals("1 -one\n2\n+3\n", content.getText());
+
+        try {
+            edits.insert(10, "x");
+            Assert.fail("Overlapping edit accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDocumentSnapshot() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        GapBufferTextContent content = new GapBufferTextContent(null, text.toString());
+        DocumentSnapshot snapshot = new DocumentSnapshot(content);
+        snapshot.open();
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(content.getTextLength() + 1);
+            int length = Math.min(random.nextInt(40), content.getTextLength() - offset);
+            LineInformation expected = content.getLineInformationOfOffset(offset);
+            LineInformation actual = snapshot.getLineInformationOfOffset(offset);
+            Assert.assertEquals(expected.getNumber(), actual.getNumber());
+            Assert.assertEquals(expected.getBeginOffset(), actual.getBeginOffset());
+            Assert.assertEquals(expected.getLength(), actual.getLength());
+            Assert.assertEquals(content.getText(offset, length), snapshot.getText(offset, length));
+            Assert.assertEquals(content.getNumberOfLines(), snapshot.getNumberOfLines());
+            if (i % 100 == 0) {
+                // Changes made behind the snapshot's back drop the caches as well.
+                content.replace(offset, length, i % 200 == 0 ? "x\ny" : "");
+            } else if (i % 100 == 50) {
+                snapshot.replace(offset, length, "\r\n");
+            }
+        }
+        Assert.assertEquals(content.getTextLength(), snapshot.getTextLength());
+        snapshot.close();
+        Assert.assertFalse(snapshot.isOpen());
+    }
+
+    @Test
+    public void testLatencyStatistics() {
+        LatencyStatistics.reset();
+        Assert.assertNull(LatencyStatistics.start());
+        LatencyStatistics.setEnabled(true);
+        try {
+            for (int i = 0; i < 3; i++) {
+                LatencyStatistics.start().stop(LatencyStatistics.COMMAND, "Test");
+            }
+        } finally {
+            LatencyStatistics.setEnabled(false);
+        }
+        Assert.assertNull(LatencyStatistics.getHistogram(LatencyStatistics.MODE, "Test"));
+        Histogram histogram = LatencyStatistics.getHistogram(LatencyStatistics.COMMAND, "Test");
+        Assert.assertEquals(3, histogram.getCount());
+        long inBuckets = 0;
+        for (int i = 0; i < 14; i++) {
+            inBuckets += histogram.getBucket(i);
+        }
+        Assert.assertEquals(3, inBuckets);
+        Assert.assertTrue(histogram.getMaxNanos() <= histogram.getTotalNanos());
+        Assert.assertTrue(LatencyStatistics.getReport().contains("Test"));
+        Assert.assertEquals("UtilityTests", LatencyStatistics.nameOf(this));
+        Assert.assertTrue(LatencyStatistics.nameOf(new Object() { }).startsWith("UtilityTests$"));
+        LatencyStatistics.reset();
+        Assert.assertNull(LatencyStatistics.getHistogram(LatencyStatistics.COMMAND, "Test"));
+    }
 }
@@ -3,21 +3,30 @@ package net.sourceforge.vrapper.core.tests.cases;
 import static net.sourceforge.vrapper.keymap.vim.ConstructorWrappers.key;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import net.sourceforge.vrapper.core.tests.utils.VimTestCase;
 import net.sourceforge.vrapper.keymap.KeyMap;
 import net.sourceforge.vrapper.keymap.KeyStroke;
 import net.sourceforge.vrapper.keymap.Remapping;
+import net.sourceforge.vrapper.keymap.SimpleRemapping;
 import net.sourceforge.vrapper.vim.commands.Command;
 import net.sourceforge.vrapper.vim.modes.NormalMode;
 import net.sourceforge.vrapper.vim.modes.commandline.CommandLineMode;
 import net.sourceforge.vrapper.vim.modes.commandline.CommandLineParser;
+import net.sourceforge.vrapper.vim.modes.commandline.CompiledConfigurationFile;
 
 import org.junit.Test;
 
@@ -49,6 +58,91 @@ public class VrapperRCTests extends VimTestCase {
         assertMappingEquals(map.press(key('\u00e4')).getValue(), key('z'), key('z'));
     }
 
+    @Test
+    public void testCompiledConfigurationFile() throws Exception {
+        File config = File.createTempFile("vrapperrc", null);
+        config.deleteOnExit();
+        writeFile(config, "\" comment\n"
+                + "set ignorecase\n"
+                + "if has('gui')\n"
+                + "  nmap a b\n"
+                + "endif\n"
+                + ":nnoremap Q dd\n"
+                + "setlocal tw=40\n"
+                + "au \"Other Editor\" nnoremap Z zz\n");
+        CompiledConfigurationFile compiled = CompiledConfigurationFile.get(config);
+        assertEquals(Arrays.asList("set ignorecase", "nnoremap Q dd", "setlocal tw=40",
+                "au \"Other Editor\" nnoremap Z zz"), compiled.getCommands());
+        assertTrue(compiled.isGlobal(0));
+        assertTrue(compiled.isGlobal(1));
+        assertFalse(compiled.isGlobal(2));
+        assertFalse(compiled.isGlobal(3));
+        assertSame(compiled, CompiledConfigurationFile.get(config));
+
+        CommandLineParser parser = new CommandLineMode(adaptor).createParser();
+        KeyMap map = keyMapProvider.getKeyMap(NormalMode.KEYMAP_NAME);
+        compiled.configure(adaptor, parser);
+        assertMappingEquals(map.press(key('Q')).getValue(), key('d'), key('d'));
+
+        // Later editors get a copy of the keymaps, changes of one editor don't leak into others.
+        map.addMapping(Arrays.asList(key('X')), new SimpleRemapping(Arrays.asList(key('x')), false));
+        compiled.configure(adaptor, parser);
+        assertMappingEquals(map.press(key('Q')).getValue(), key('d'), key('d'));
+        assertNull(map.press(key('X')));
+
+        writeFile(config, "nnoremap Q yy\n");
+        config.setLastModified(config.lastModified() + 2000);
+        assertNotSame(compiled, CompiledConfigurationFile.get(config));
+    }
+
+    @Test
+    public void testCompiledConfigurationFileOrder() throws Exception {
+        File config = File.createTempFile("vrapperrc", null);
+        config.deleteOnExit();
+        // Mixes a global and an editor-local option, so it and the commands after it keep the
+        // order of the file.
+        writeFile(config, "set ignorecase number\n"
+                + "nnoremap Q dd\n"
+                + "set ignorecase modifiable\n"
+                + "nnoremap W dd\n");
+        CompiledConfigurationFile compiled = CompiledConfigurationFile.get(config);
+        assertTrue(compiled.isGlobal(0));
+        assertTrue(compiled.isGlobal(1));
+        assertFalse(compiled.isGlobal(2));
+        assertFalse(compiled.isGlobal(3));
+
+        // Not recognized as setting the leader, mappings must not run before it.
+        writeFile(config, "set ignorecase\n"
+                + "let g:mapleader=','\n"
+                + "nnoremap <Leader>a dd\n");
+        config.setLastModified(config.lastModified() + 2000);
+        compiled = CompiledConfigurationFile.get(config);
+        assertTrue(compiled.isGlobal(0));
+        assertFalse(compiled.isGlobal(1));
+        assertFalse(compiled.isGlobal(2));
+
+        // Commands which only change the editor may run after the global ones.
+        writeFile(config, "set ignorecase\n"
+                + "setlocal modifiable\n"
+                + "let @x=foo\n"
+                + "nnoremap Q dd\n");
+        config.setLastModified(config.lastModified() + 2000);
+        compiled = CompiledConfigurationFile.get(config);
+        assertTrue(compiled.isGlobal(0));
+        assertFalse(compiled.isGlobal(1));
+        assertFalse(compiled.isGlobal(2));
+        assertTrue(compiled.isGlobal(3));
+    }
+
+    private void writeFile(File file, String content) throws Exception {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
     private void assertMappingEquals(Remapping re, KeyStroke... strokes) {
         Iterator<KeyStroke> it = re.getKeyStrokes().iterator();
         for (KeyStroke s : strokes) {
@@ -24,20 +24,7 @@ public class TestSearchService implements SearchAndReplaceService {
     /** Case-sensitive search only. */
     public SearchResult find(Search search, Position start) {
         String stack = content.getText();
-        String needle = search.getKeyword();
-        int patternFlags = 0;
-        if ( ! search.isRegExSearch()) {
-            patternFlags = Pattern.LITERAL;
-        }
-        else {
-            //fake out word-boundary regex for '*' and '#' tests
-            //(real service replaces with 'iskeyword' value)
-            needle = needle.replaceAll("\\\\<", "\\\\b").replaceAll("\\\\>", "\\\\b");
-        }
-        if ( ! search.isCaseSensitive()) {
-            patternFlags |= Pattern.CASE_INSENSITIVE;
-        }
-        Pattern pattern = Pattern.compile(needle, patternFlags);
+        Pattern pattern = getSearchPattern(search);
         Matcher matcher = pattern.matcher(stack);
         
         Position resultPosition = null;
@@ -57,6 +44,23 @@ public class TestSearchService implements SearchAndReplaceService {
         return result;
     }
 
+    public Pattern getSearchPattern(Search search) {
+        String needle = search.getKeyword();
+        int patternFlags = 0;
+        if ( ! search.isRegExSearch()) {
+            patternFlags = Pattern.LITERAL;
+        }
+        else {
+            //fake out word-boundary regex for '*' and '#' tests
+            //(real service replaces with 'iskeyword' value)
+            needle = needle.replaceAll("\\\\<", "\\\\b").replaceAll("\\\\>", "\\\\b");
+        }
+        if ( ! search.isCaseSensitive()) {
+            patternFlags |= Pattern.CASE_INSENSITIVE;
+        }
+        return Pattern.compile(needle, patternFlags);
+    }
+
     /**
      * Test replace stub.
      */
@@ -95,6 +99,14 @@ public class TestSearchService implements SearchAndReplaceService {
         return nMatches;
     }
 
+    public Pattern getSubstitutionPattern(String toFind, String flags) {
+        int patternFlags = Pattern.MULTILINE;
+        if ( ! isCaseSensitive(toFind, flags)) {
+            patternFlags |= Pattern.CASE_INSENSITIVE;
+        }
+        return Pattern.compile(toFind, patternFlags);
+    }
+
 	public boolean isCaseSensitive(String toFind, String flags) {
         boolean caseSensitive = !sharedConfiguration.get(Options.IGNORE_CASE)
             || (sharedConfiguration.get(Options.SMART_CASE)
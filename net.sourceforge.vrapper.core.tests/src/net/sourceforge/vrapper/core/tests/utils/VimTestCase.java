@@ -16,6 +16,7 @@ import net.sourceforge.vrapper.platform.FileService;
 import net.sourceforge.vrapper.platform.GlobalConfiguration;
 import net.sourceforge.vrapper.platform.HistoryService;
 import net.sourceforge.vrapper.platform.KeyMapProvider;
+import net.sourceforge.vrapper.platform.LongRunningTask;
 import net.sourceforge.vrapper.platform.Platform;
 import net.sourceforge.vrapper.platform.PlatformSpecificStateProvider;
 import net.sourceforge.vrapper.platform.PlatformVrapperLifecycleListener;
@@ -35,6 +36,7 @@ import net.sourceforge.vrapper.vim.Options;
 import net.sourceforge.vrapper.vim.SimpleGlobalConfiguration;
 import net.sourceforge.vrapper.vim.SimpleLocalConfiguration;
 import net.sourceforge.vrapper.vim.TextObjectProvider;
+import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
 import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 import net.sourceforge.vrapper.vim.register.DefaultRegisterManager;
 import net.sourceforge.vrapper.vim.register.RegisterManager;
@@ -106,6 +108,7 @@ public class VimTestCase {
             }
         }).when(userInterfaceService).setErrorMessage(Mockito.anyString());
         when(userInterfaceService.getCommandLineUI(Mockito.any(EditorAdaptor.class))).thenReturn(new CommandLineUIStub());
+        stubRunWithProgress();
         when(platform.getCursorService()).thenReturn(cursorAndSelection);
         when(platform.getSelectionService()).thenReturn(cursorAndSelection);
         when(platform.getModelContent()).thenReturn(content);
@@ -139,6 +142,30 @@ public class VimTestCase {
         adaptor = wrapped;
     }
 
+    /** Runs long running tasks right away, on the calling thread. */
+    private void stubRunWithProgress() {
+        try {
+            Mockito.doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    LongRunningTask task = (LongRunningTask) invocation.getArguments()[1];
+                    task.run(new LongRunningTask.Monitor() {
+                        @Override
+                        public boolean isCanceled() {
+                            return false;
+                        }
+                        @Override
+                        public void setMessage(String message) {
+                        }
+                    });
+                    return null;
+                }
+            }).when(userInterfaceService).runWithProgress(Mockito.anyString(), Mockito.any(LongRunningTask.class));
+        } catch (CommandExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Before
     public void setUp() {
         initMocks();
@@ -0,0 +1,184 @@
+package net.sourceforge.vrapper.keymap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable trie of remappings, compiled from a {@link KeyMap} whenever its mappings change.
+ *
+ * <p>Key strokes are interned to small integer ids, each node keeps the ids of its children in a
+ * sorted array. A node is its own {@link Transition} and {@link State}, so pressing a key doesn't
+ * allocate anything and {@link net.sourceforge.vrapper.vim.KeyStrokeTranslator} only has to keep
+ * a pointer to the current node.
+ *
+ * <p>Editors usually source the same <tt>.vrapperrc</tt>, which results in identical keymaps.
+ * Compiled keymaps are therefore shared between all {@link KeyMap}s with the same mappings.
+ *
+ * @see KeyMap#compile()
+ */
+public class CompiledKeyMap {
+
+    private static final int SHARED_CACHE_SIZE = 32;
+
+    private static final ConcurrentMap<KeyStroke, Integer> KEY_IDS = new ConcurrentHashMap<KeyStroke, Integer>();
+    private static final AtomicInteger NEXT_KEY_ID = new AtomicInteger();
+
+    private static final Map<List<Object>, CompiledKeyMap> SHARED =
+            new LinkedHashMap<List<Object>, CompiledKeyMap>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, CompiledKeyMap> eldest) {
+                    return size() > SHARED_CACHE_SIZE;
+                }
+            };
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final int[] NO_KEYS = new int[0];
+
+    private final Node root;
+
+    private CompiledKeyMap(Node root) {
+        this.root = root;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Compiles the mappings below <code>root</code>, or returns an already compiled keymap with
+     * the same mappings.
+     */
+    static CompiledKeyMap compile(HashMapState<Remapping> root) {
+        List<Object> signature = new ArrayList<Object>();
+        Node node = compileNode(null, root, signature);
+        synchronized (SHARED) {
+            CompiledKeyMap shared = SHARED.get(signature);
+            if (shared == null) {
+                shared = new CompiledKeyMap(node);
+                SHARED.put(signature, shared);
+            }
+            return shared;
+        }
+    }
+
+    private static Node compileNode(Remapping value, HashMapState<Remapping> state, List<Object> signature) {
+        if (value != null) {
+            List<KeyStroke> strokes = new ArrayList<KeyStroke>();
+            for (KeyStroke stroke : value.getKeyStrokes()) {
+                strokes.add(stroke);
+            }
+            signature.add(strokes);
+            signature.add(Boolean.valueOf(value.isRecursive()));
+        }
+        if (state == null || state.map.isEmpty()) {
+            signature.add(NO_KEYS.length);
+            return new Node(value, NO_KEYS, NO_CHILDREN);
+        }
+        int size = state.map.size();
+        int[] keys = new int[size];
+        KeyStroke[] strokes = new KeyStroke[size];
+        int i = 0;
+        for (KeyStroke stroke : state.map.keySet()) {
+            keys[i] = internKey(stroke);
+            strokes[i++] = stroke;
+        }
+        sortByKey(keys, strokes);
+        signature.add(size);
+        Node[] children = new Node[size];
+        for (i = 0; i < size; i++) {
+            Transition<Remapping> transition = state.map.get(strokes[i]);
+            signature.add(strokes[i]);
+            children[i] = compileNode(transition.getValue(),
+                    (HashMapState<Remapping>) transition.getNextState(), signature);
+        }
+        return new Node(value, keys, children);
+    }
+
+    private static void sortByKey(int[] keys, KeyStroke[] strokes) {
+        // Insertion sort, nodes rarely have more than a few dozen children.
+        for (int i = 1; i < keys.length; i++) {
+            int key = keys[i];
+            KeyStroke stroke = strokes[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                strokes[j + 1] = strokes[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            strokes[j + 1] = stroke;
+        }
+    }
+
+    private static int internKey(KeyStroke stroke) {
+        Integer id = KEY_IDS.get(stroke);
+        if (id == null) {
+            Integer newId = Integer.valueOf(NEXT_KEY_ID.getAndIncrement());
+            id = KEY_IDS.putIfAbsent(stroke, newId);
+            if (id == null) {
+                id = newId;
+            }
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Node of the trie. Returned by {@link #press(KeyStroke)} of its parent as the transition
+     * to itself.
+     */
+    public static class Node implements State<Remapping>, Transition<Remapping> {
+
+        private final Remapping value;
+        private final int[] keys;
+        private final Node[] children;
+
+        private Node(Remapping value, int[] keys, Node[] children) {
+            this.value = value;
+            this.keys = keys;
+            this.children = children;
+        }
+
+        public Transition<Remapping> press(KeyStroke key) {
+            if (keys.length == 0) {
+                return null;
+            }
+            Integer id = KEY_IDS.get(key);
+            if (id == null) {
+                // Not part of any mapping.
+                return null;
+            }
+            int index = Arrays.binarySearch(keys, id.intValue());
+            return index >= 0 ? children[index] : null;
+        }
+
+        public State<Remapping> union(State<Remapping> other) {
+            return new UnionState<Remapping>(this, other);
+        }
+
+        public Remapping getValue() {
+            return value;
+        }
+
+        public State<Remapping> getNextState() {
+            return children.length > 0 ? this : null;
+        }
+
+        /** @return number of keys which continue a mapping from this node. */
+        public int getKeyCount() {
+            return keys.length;
+        }
+
+        @Override
+        public String toString() {
+            return "CompiledKeyMap.Node(" + value + ", " + keys.length + " keys)";
+        }
+    }
+}
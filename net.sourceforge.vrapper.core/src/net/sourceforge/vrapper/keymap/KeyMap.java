@@ -2,6 +2,7 @@ package net.sourceforge.vrapper.keymap;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import net.sourceforge.vrapper.keymap.vim.ConstructorWrappers;
 
@@ -28,6 +29,10 @@ public class KeyMap {
     }
 
     private KeyMapState root = new KeyMapState();
+    /** Trie used for lookups, compiled lazily after the mappings have changed. */
+    private volatile CompiledKeyMap compiled;
+    /** Whether {@link #root} may be used by another keymap and must be copied before a change. */
+    private boolean shared;
     private final String mapid;
 
     public KeyMap(String id) {
@@ -43,7 +48,8 @@ public class KeyMap {
      *            the mapping
      */
     public void addMapping(Iterable<KeyStroke> strokes, Remapping mapping) {
-        root.addMapping(strokes.iterator(), mapping);
+        ownRoot().addMapping(strokes.iterator(), mapping);
+        compiled = null;
     }
 
     /**
@@ -53,7 +59,8 @@ public class KeyMap {
      *            the keystrokes to unmap
      */
     public void removeMapping(Iterable<KeyStroke> strokes) {
-        root.removeMapping(strokes.iterator());
+        ownRoot().removeMapping(strokes.iterator());
+        compiled = null;
     }
 
     /**
@@ -61,10 +68,44 @@ public class KeyMap {
      */
     public void clear() {
         root = new KeyMapState();
+        shared = false;
+        compiled = null;
+    }
+
+    /**
+     * Replaces all mappings of this keymap by those of <code>other</code>. The mappings are only
+     * copied when one of the keymaps is changed afterwards.
+     */
+    public void copyFrom(KeyMap other) {
+        root = other.root;
+        compiled = other.compiled;
+        shared = true;
+        other.shared = true;
+    }
+
+    private KeyMapState ownRoot() {
+        if (shared) {
+            root = root.copy();
+            shared = false;
+        }
+        return root;
     }
 
     public Transition<Remapping> press(KeyStroke key) {
-        return root.press(key);
+        return compile().getRoot().press(key);
+    }
+
+    /**
+     * @return immutable trie of the current mappings. It is shared with other keymaps which have
+     *      the same mappings.
+     */
+    public CompiledKeyMap compile() {
+        CompiledKeyMap result = compiled;
+        if (result == null) {
+            result = CompiledKeyMap.compile(root);
+            compiled = result;
+        }
+        return result;
     }
 
     public String getMapId() {
@@ -79,6 +120,20 @@ public class KeyMap {
 
         int transitions = 0;
 
+        private KeyMapState copy() {
+            KeyMapState result = new KeyMapState();
+            result.transitions = transitions;
+            for (Map.Entry<KeyStroke, Transition<Remapping>> entry : map.entrySet()) {
+                Transition<Remapping> trans = entry.getValue();
+                KeyMapState next = (KeyMapState) trans.getNextState();
+                if (next != null) {
+                    trans = new SimpleTransition<Remapping>(trans.getValue(), next.copy());
+                }
+                result.map.put(entry.getKey(), trans);
+            }
+            return result;
+        }
+
         private void addMapping(Iterator<KeyStroke> strokes, Remapping mapping) {
             KeyStroke first = strokes.next();
             Transition<Remapping> trans = map.get(first);
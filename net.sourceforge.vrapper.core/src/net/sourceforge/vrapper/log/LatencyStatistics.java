@@ -0,0 +1,278 @@
+package net.sourceforge.vrapper.log;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects how long Vrapper takes to handle keys, for finding out why typing lags.
+ *
+ * <p>Code to be measured asks for a {@link Timer} and stops it when done:
+ * <pre>
+ * LatencyStatistics.Timer timer = LatencyStatistics.start();
+ * try {
+ *     ...
+ * } finally {
+ *     if (timer != null) {
+ *         timer.stop(LatencyStatistics.COMMAND, LatencyStatistics.nameOf(command));
+ *     }
+ * }
+ * </pre>
+ * While collection is disabled {@link #start()} returns <code>null</code>, so all the measured
+ * code pays for is reading a flag. Measurements are kept per category and name in histograms
+ * with buckets growing by powers of two, together with the bytes allocated by the thread where
+ * the JVM reports them.
+ */
+public class LatencyStatistics {
+
+    /** Whole key events as dispatched by the platform, by mode. */
+    public static final String DISPATCH = "dispatch";
+    /** Keys handled by the editor adaptor, mappings included, by mode. */
+    public static final String MODE = "mode";
+    /** Lookups of a key in the mappings of a mode, by key map. */
+    public static final String MAPPING = "mapping";
+    /** Commands executed by a mode, by command class. */
+    public static final String COMMAND = "command";
+
+    /** Upper bound of the first bucket, in microseconds. */
+    private static final int FIRST_BUCKET_MICROS = 16;
+    private static final int BUCKETS = 14;
+
+    private static volatile boolean enabled;
+    private static volatile long dumpIntervalMillis;
+    private static long lastDump;
+    private static final Map<String, Histogram> histograms = new TreeMap<String, Histogram>();
+
+    private LatencyStatistics() { /* NOP */ }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Starts or stops collecting. What was collected so far is kept. */
+    public static void setEnabled(boolean enabled) {
+        LatencyStatistics.enabled = enabled;
+    }
+
+    /**
+     * Sets how often the statistics are written to the log, 0 to never write them. The log is
+     * only written while keys are measured, there is no thread of its own.
+     */
+    public static void setDumpInterval(int seconds) {
+        dumpIntervalMillis = Math.max(0, seconds) * 1000L;
+    }
+
+    /** @return a started timer, <code>null</code> if collection is disabled. */
+    public static Timer start() {
+        return enabled ? new Timer() : null;
+    }
+
+    /** @return short name of the class of <code>object</code>, also for anonymous classes. */
+    public static String nameOf(Object object) {
+        if (object == null) {
+            return "null";
+        }
+        String name = object.getClass().getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /** Drops everything collected. */
+    public static synchronized void reset() {
+        histograms.clear();
+    }
+
+    /** @return the histogram of <code>name</code> in <code>category</code>, null if empty. */
+    public static synchronized Histogram getHistogram(String category, String name) {
+        Histogram histogram = histograms.get(category + ' ' + name);
+        return histogram == null ? null : histogram.copy();
+    }
+
+    private static synchronized void record(String category, String name, long nanos, long bytes) {
+        String key = category + ' ' + name;
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new Histogram(category, name);
+            histograms.put(key, histogram);
+        }
+        histogram.add(nanos, bytes);
+        long interval = dumpIntervalMillis;
+        if (interval > 0) {
+            long now = System.currentTimeMillis();
+            if (lastDump == 0) {
+                lastDump = now;
+            } else if (now - lastDump >= interval) {
+                lastDump = now;
+                VrapperLog.info("Vrapper latency statistics:\n" + getReport());
+            }
+        }
+    }
+
+    /** @return a table of all histograms, one line for each, sorted by category and name. */
+    public static synchronized String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %-36s %7s %9s %9s %9s %10s  %s\n", "category", "name",
+                "count", "avg(us)", "p95(us)", "max(us)", "avg bytes",
+                "buckets (<" + FIRST_BUCKET_MICROS + "us, x2 each)"));
+        for (Histogram histogram : histograms.values()) {
+            sb.append(histogram).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Counts the bytes allocated by the current thread. Only loaded by the first {@link Timer},
+     * so that nothing is looked up while collection is disabled.
+     */
+    private static final class AllocationCounter {
+        private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        private static final Method allocatedBytesMethod = findAllocatedBytesMethod();
+
+        private static Method findAllocatedBytesMethod() {
+            // Only some JVMs count allocations. Use reflection to not depend on com.sun.management.
+            try {
+                Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+                if (sunBean.isInstance(threadBean)) {
+                    return sunBean.getMethod("getThreadAllocatedBytes", long.class);
+                }
+            } catch (Exception e) {
+                // Not available, allocations are not counted.
+            } catch (LinkageError e) {
+                // Same.
+            }
+            return null;
+        }
+
+        private static long allocatedBytes() {
+            if (allocatedBytesMethod == null) {
+                return -1;
+            }
+            try {
+                return (Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+    }
+
+    /** Measures one piece of work, see {@link LatencyStatistics#start()}. */
+    public static final class Timer {
+        private final long startNanos;
+        private final long startBytes;
+
+        private Timer() {
+            startBytes = AllocationCounter.allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        /** Records the time since the timer was started under <code>name</code>. */
+        public void stop(String category, String name) {
+            long nanos = System.nanoTime() - startNanos;
+            long bytes = startBytes < 0 ? -1 : AllocationCounter.allocatedBytes() - startBytes;
+            record(category, name, nanos, bytes);
+        }
+    }
+
+    /** Latencies measured for one name in one category. */
+    public static final class Histogram {
+        private final String category;
+        private final String name;
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long totalBytes;
+        private long countedBytes;
+
+        private Histogram(String category, String name) {
+            this.category = category;
+            this.name = name;
+        }
+
+        private void add(long nanos, long bytes) {
+            long micros = nanos / 1000;
+            int bucket = 0;
+            for (long bound = FIRST_BUCKET_MICROS; micros >= bound && bucket < BUCKETS - 1; bound *= 2) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (bytes >= 0) {
+                totalBytes += bytes;
+                countedBytes++;
+            }
+        }
+
+        private Histogram copy() {
+            Histogram result = new Histogram(category, name);
+            System.arraycopy(buckets, 0, result.buckets, 0, BUCKETS);
+            result.count = count;
+            result.totalNanos = totalNanos;
+            result.maxNanos = maxNanos;
+            result.totalBytes = totalBytes;
+            result.countedBytes = countedBytes;
+            return result;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /** @return average bytes allocated, -1 if the JVM doesn't count them. */
+        public long getAverageBytes() {
+            return countedBytes == 0 ? -1 : totalBytes / countedBytes;
+        }
+
+        /**
+         * @return number of measurements in bucket <code>index</code>: bucket 0 holds those
+         *      below 16 microseconds and each further one twice as much as the one before.
+         */
+        public long getBucket(int index) {
+            return buckets[index];
+        }
+
+        /**
+         * @return upper bound of the bucket holding the <code>percent</code> percentile, at most
+         *      the longest time measured.
+         */
+        public long getPercentileMicros(int percent) {
+            long wanted = (count * percent + 99) / 100;
+            long seen = 0;
+            long bound = FIRST_BUCKET_MICROS;
+            for (int i = 0; i < BUCKETS - 1; i++, bound *= 2) {
+                seen += buckets[i];
+                if (seen >= wanted) {
+                    return Math.min(bound, maxNanos / 1000);
+                }
+            }
+            return maxNanos / 1000;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            int last = BUCKETS - 1;
+            while (last > 0 && buckets[last] == 0) {
+                last--;
+            }
+            for (int i = 0; i <= last; i++) {
+                sb.append(i == 0 ? "" : " ").append(buckets[i]);
+            }
+            long averageBytes = getAverageBytes();
+            return String.format("%-8s %-36s %7d %9d %9d %9d %10s  %s", category, name, count,
+                    count == 0 ? 0 : totalNanos / count / 1000, getPercentileMicros(95),
+                    maxNanos / 1000, averageBytes < 0 ? "?" : String.valueOf(averageBytes), sb);
+        }
+    }
+}
@@ -134,6 +134,10 @@ public interface Configuration {
             return new Option<Integer>(id, defaultValue, null, alias);
         }
 
+        public static final Option<Integer> globalInteger(String id, int defaultValue, String... alias) {
+            return new Option<Integer>(id, OptionScope.GLOBAL, defaultValue, null, alias);
+        }
+
         public String getId() {
             return id;
         }
@@ -0,0 +1,26 @@
+package net.sourceforge.vrapper.platform;
+
+/**
+ * Work which may take long enough that the user should see its progress and be able to cancel
+ * it, like running an external filter. Started with
+ * {@link UserInterfaceService#runWithProgress(String, LongRunningTask)}.
+ */
+public interface LongRunningTask {
+
+    /**
+     * Progress reporting and cancellation. May be called from any thread.
+     */
+    interface Monitor {
+        /** @return whether the user asked to cancel the task. */
+        boolean isCanceled();
+
+        /** Shows what the task is currently doing. */
+        void setMessage(String message);
+    }
+
+    /**
+     * Runs the task. This may happen outside the UI thread, the task must not access the editor.
+     * A canceled task should return as soon as possible.
+     */
+    void run(Monitor monitor) throws Exception;
+}
@@ -1,5 +1,7 @@
 package net.sourceforge.vrapper.platform;
 
+import java.util.regex.Pattern;
+
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.Search;
 import net.sourceforge.vrapper.utils.SearchResult;
@@ -16,6 +18,13 @@ public interface SearchAndReplaceService {
      * @return the index of the searched string.
      */
 	SearchResult find(Search search, Position start);
+
+	/**
+	 * Compiles the pattern which {@link #find(Search, Position)} looks for in forward searches,
+	 * so that all matches of a search can be indexed.
+	 * @throws java.util.regex.PatternSyntaxException if the search is not a valid regex
+	 */
+	Pattern getSearchPattern(Search search);
 	
 	/**
 	 * Perform a search and replace.
@@ -28,6 +37,16 @@ public interface SearchAndReplaceService {
 	 */
     int replace(int start, int end, String toFind, String replace, String flags);
 
+    /**
+     * Compiles the pattern used by {@link #replace(int, int, String, String, String)}, applying
+     * the same regex conversions and case sensitivity rules. Used for substitutions which match
+     * many lines with one compiled pattern.
+     * @param toFind String to find
+     * @param flags Regex flags like 'i' for insensitive case
+     * @throws java.util.regex.PatternSyntaxException if <code>toFind</code> is not a valid regex
+     */
+    Pattern getSubstitutionPattern(String toFind, String flags);
+
     /**
      * Perform a single text substitution (with regex support)
      * @param start - model index to start looking
@@ -1,6 +1,7 @@
 package net.sourceforge.vrapper.platform;
 
 import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
 import net.sourceforge.vrapper.utils.Space;
 import net.sourceforge.vrapper.utils.TextRange;
 
@@ -41,6 +42,15 @@ public interface TextContent {
      */
     void replace(int index, int length, String s);
 
+    /**
+     * Applies all edits as one change of the text, e.g. a single undo step and a single redraw
+     * in an editor. Offsets of the edits refer to the text before the change.
+     *
+     * @param edits
+     *            the edits to apply.
+     */
+    void replace(MultiEdit edits);
+
     /**
      * Uses the underlying editors smart insert if available.
      *
@@ -1,6 +1,7 @@
 package net.sourceforge.vrapper.platform;
 
 import net.sourceforge.vrapper.vim.EditorAdaptor;
+import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
 
 /**
  * Provides access to vim-like mechanisms for showing information about the
@@ -76,4 +77,18 @@ public interface UserInterfaceService {
      * @param editorAdaptor
      */
     CommandLineUI getCommandLineUI(EditorAdaptor editorAdaptor);
+
+    /**
+     * Runs a task while showing its progress and letting the user cancel it. Returns when the
+     * task has finished or has been canceled. No keys are passed to the editor meanwhile.
+     * @throws CommandExecutionException if the task failed or has been canceled, or if the text
+     *      of the editor changed while the task ran, so that its result must not be applied.
+     */
+    void runWithProgress(String name, LongRunningTask task) throws CommandExecutionException;
+
+    /**
+     * Runs a task on the UI thread once the current input has been handled, waiting at least
+     * <code>delayMillis</code> milliseconds. The task may never run, e.g. if the editor is closed.
+     */
+    void runLater(int delayMillis, Runnable task);
 }
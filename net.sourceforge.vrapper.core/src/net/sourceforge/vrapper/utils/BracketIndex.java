@@ -0,0 +1,314 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Index of the brackets <tt>()</tt>, <tt>[]</tt>, <tt>{}</tt> and <tt>&lt;&gt;</tt> of a buffer,
+ * used to find unmatched brackets for <tt>%</tt>, <tt>[(</tt>, <tt>]}</tt> and the bracket
+ * text objects without reading the text one character at a time.
+ *
+ * <p>The text is split into chunks which are scanned lazily, the first time a search reaches them.
+ * Besides the bracket positions, each chunk stores for every bracket pair its net nesting change
+ * and the lowest nesting level reached when crossing it in either direction, so a search skips
+ * all chunks in which the bracket it looks for can't be. An edit only drops the chunks it touches;
+ * they are scanned again when needed.
+ *
+ * <p>The index is owned by a {@link TextContent} which implements {@link Provider} and must call
+ * {@link #textChanged(int, int, int)} after every change of its text. Searches read the text from
+ * the content they are given.
+ */
+public class BracketIndex {
+
+    /**
+     * Implemented by text contents which keep a bracket index up to date. Decorators return the
+     * index of the decorated content, which may be null.
+     */
+    public interface Provider {
+        BracketIndex getBracketIndex();
+    }
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final String OPEN = "([{<";
+    private static final String CLOSE = ")]}>";
+
+    // Summary values per pair and escape mode.
+    private static final int NET = 0;
+    private static final int MIN_FORWARD = 1;
+    private static final int MIN_BACKWARD = 2;
+    private static final int SUMMARY_SIZE = 3;
+
+    /** Chunks in text order. Null until the first search. */
+    private List<Chunk> chunks;
+
+    /** @return the index of <code>content</code>, or null if it doesn't keep one. */
+    public static BracketIndex of(TextContent content) {
+        return content instanceof Provider ? ((Provider) content).getBracketIndex() : null;
+    }
+
+    /**
+     * @return whether a search for <code>target</code> which skips balanced pairs with
+     *      <code>pair</code> can be answered by the index: <code>target</code> must be a closing
+     *      bracket when searching forward and an opening one when searching backwards.
+     */
+    public static boolean supports(char target, char pair, boolean backwards) {
+        int index = backwards ? OPEN.indexOf(target) : CLOSE.indexOf(target);
+        return index >= 0 && (backwards ? CLOSE : OPEN).charAt(index) == pair;
+    }
+
+    /**
+     * Must be called by the owner after its text changed.
+     * @param offset start of the change.
+     * @param removedLength number of characters removed at <code>offset</code>.
+     * @param insertedLength number of characters inserted at <code>offset</code>.
+     */
+    public synchronized void textChanged(int offset, int removedLength, int insertedLength) {
+        if (chunks == null) {
+            return;
+        }
+        int oldLength = getIndexedLength();
+        if (offset + removedLength > oldLength) {
+            chunks = null;
+            return;
+        }
+        int delta = insertedLength - removedLength;
+        if (chunks.isEmpty()) {
+            if (insertedLength > 0) {
+                chunks.add(new Chunk(0, insertedLength));
+            }
+            return;
+        }
+        // Whether a bracket is escaped depends on the character before it, so the character
+        // following the change is affected as well.
+        int first = findChunk(Math.min(offset, oldLength - 1));
+        int last = findChunk(Math.min(offset + removedLength, oldLength - 1));
+        int start = chunks.get(first).start;
+        Chunk lastChunk = chunks.get(last);
+        int length = lastChunk.start + lastChunk.length + delta - start;
+        for (int i = last; i >= first; i--) {
+            chunks.remove(i);
+        }
+        if (length > 0) {
+            chunks.add(first, new Chunk(start, length));
+            first++;
+        }
+        for (int i = first; i < chunks.size(); i++) {
+            chunks.get(i).start += delta;
+        }
+    }
+
+    /** Drops all information, e.g. when the whole text has been replaced. */
+    public synchronized void clear() {
+        chunks = null;
+    }
+
+    /**
+     * Finds the unmatched <code>target</code> bracket after (or before) <code>offset</code>,
+     * skipping balanced pairs.
+     * @param content the text of the index' owner.
+     * @param offset the search starts at the character after (or before) this offset.
+     * @param target bracket to find, see {@link #supports(char, char, boolean)}.
+     * @param backwards search direction.
+     * @param ignoreEscape if false, brackets preceded by a backslash are skipped.
+     * @param depth number of unmatched targets to pass, 1 finds the first one.
+     * @return the offset of the bracket, or -1 if there is none.
+     */
+    public synchronized int findUnmatched(TextContent content, int offset, char target,
+            boolean backwards, boolean ignoreEscape, int depth) {
+        int textLength = content.getTextLength();
+        if (chunks == null || getIndexedLength() != textLength) {
+            chunks = new ArrayList<Chunk>();
+            if (textLength > 0) {
+                chunks.add(new Chunk(0, textLength));
+            }
+        }
+        int pairIndex = backwards ? OPEN.indexOf(target) : CLOSE.indexOf(target);
+        int summaryBase = (pairIndex * 2 + (ignoreEscape ? 0 : 1)) * SUMMARY_SIZE;
+        int from = backwards ? offset - 1 : offset + 1;
+        if (from < 0 || from >= textLength) {
+            return -1;
+        }
+        int i = findChunk(from);
+        while (i >= 0 && i < chunks.size()) {
+            i = ensureScanned(content, i, from, backwards);
+            Chunk chunk = chunks.get(i);
+            boolean whole = backwards ? from >= chunk.start + chunk.length - 1 : from <= chunk.start;
+            int[] summary = chunk.summary;
+            int min = summary[summaryBase + (backwards ? MIN_BACKWARD : MIN_FORWARD)];
+            if (whole && depth + min > 0) {
+                // The target can't be in this chunk.
+                int net = summary[summaryBase + NET];
+                depth += backwards ? -net : net;
+            } else {
+                char open = OPEN.charAt(pairIndex);
+                char close = CLOSE.charAt(pairIndex);
+                int count = chunk.brackets.length;
+                for (int j = backwards ? count - 1 : 0; j >= 0 && j < count; j += backwards ? -1 : 1) {
+                    int position = chunk.start + chunk.offsets[j];
+                    if (backwards ? position > from : position < from) {
+                        continue;
+                    }
+                    char c = chunk.brackets[j];
+                    if ((c != open && c != close) || ( ! ignoreEscape && chunk.escaped[j])) {
+                        continue;
+                    }
+                    if (c == target) {
+                        if (--depth == 0) {
+                            return position;
+                        }
+                    } else {
+                        depth++;
+                    }
+                }
+            }
+            i += backwards ? -1 : 1;
+        }
+        return -1;
+    }
+
+    private int getIndexedLength() {
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+        Chunk last = chunks.get(chunks.size() - 1);
+        return last.start + last.length;
+    }
+
+    /** @return the index of the chunk containing <code>offset</code>. */
+    private int findChunk(int offset) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks.get(middle).start <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Scans chunk <code>i</code> if needed. Chunks longer than {@link #CHUNK_SIZE} are split first.
+     * @return the index of the (possibly split) chunk containing <code>offset</code>, or the
+     *      piece nearest to it if the chunk doesn't contain it.
+     */
+    private int ensureScanned(TextContent content, int i, int offset, boolean backwards) {
+        Chunk chunk = chunks.get(i);
+        if (chunk.summary != null) {
+            return i;
+        }
+        if (chunk.length > CHUNK_SIZE) {
+            chunks.remove(i);
+            int end = chunk.start + chunk.length;
+            int pieces = 0;
+            for (int start = chunk.start; start < end; start += CHUNK_SIZE) {
+                chunks.add(i + pieces++, new Chunk(start, Math.min(CHUNK_SIZE, end - start)));
+            }
+            if (offset >= end) {
+                i += pieces - 1;
+            } else if (offset > chunk.start) {
+                i += (offset - chunk.start) / CHUNK_SIZE;
+            }
+            chunk = chunks.get(i);
+        }
+        chunk.scan(content);
+        return i;
+    }
+
+    private static class Chunk {
+        int start;
+        final int length;
+        /** Bracket characters of the chunk, null until scanned. */
+        char[] brackets;
+        /** Offsets of the brackets relative to the chunk start. */
+        int[] offsets;
+        /** Whether each bracket is preceded by a backslash. */
+        boolean[] escaped;
+        /** {@link #NET}, {@link #MIN_FORWARD} and {@link #MIN_BACKWARD} per pair and escape mode. */
+        int[] summary;
+
+        Chunk(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        void scan(TextContent content) {
+            int textStart = Math.max(0, start - 1);
+            String text = content.getText(textStart, start + length - textStart);
+            int shift = start - textStart;
+            int count = 0;
+            char[] foundBrackets = new char[16];
+            int[] foundOffsets = new int[16];
+            boolean[] foundEscaped = new boolean[16];
+            for (int i = shift; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (OPEN.indexOf(c) < 0 && CLOSE.indexOf(c) < 0) {
+                    continue;
+                }
+                if (count == foundBrackets.length) {
+                    int size = count * 2;
+                    char[] grownBrackets = new char[size];
+                    int[] grownOffsets = new int[size];
+                    boolean[] grownEscaped = new boolean[size];
+                    System.arraycopy(foundBrackets, 0, grownBrackets, 0, count);
+                    System.arraycopy(foundOffsets, 0, grownOffsets, 0, count);
+                    System.arraycopy(foundEscaped, 0, grownEscaped, 0, count);
+                    foundBrackets = grownBrackets;
+                    foundOffsets = grownOffsets;
+                    foundEscaped = grownEscaped;
+                }
+                foundBrackets[count] = c;
+                foundOffsets[count] = i - shift;
+                foundEscaped[count] = i > 0 && text.charAt(i - 1) == '\\';
+                count++;
+            }
+            brackets = new char[count];
+            offsets = new int[count];
+            escaped = new boolean[count];
+            System.arraycopy(foundBrackets, 0, brackets, 0, count);
+            System.arraycopy(foundOffsets, 0, offsets, 0, count);
+            System.arraycopy(foundEscaped, 0, escaped, 0, count);
+            summarize();
+        }
+
+        private void summarize() {
+            int[] result = new int[OPEN.length() * 2 * SUMMARY_SIZE];
+            for (int pair = 0; pair < OPEN.length(); pair++) {
+                for (int mode = 0; mode < 2; mode++) {
+                    boolean skipEscaped = mode == 1;
+                    int base = (pair * 2 + mode) * SUMMARY_SIZE;
+                    int level = 0;
+                    int min = 0;
+                    for (int i = 0; i < brackets.length; i++) {
+                        int weight = weight(pair, i, skipEscaped);
+                        level += weight;
+                        min = Math.min(min, level);
+                    }
+                    result[base + NET] = level;
+                    result[base + MIN_FORWARD] = min;
+                    level = 0;
+                    min = 0;
+                    for (int i = brackets.length - 1; i >= 0; i--) {
+                        level -= weight(pair, i, skipEscaped);
+                        min = Math.min(min, level);
+                    }
+                    result[base + MIN_BACKWARD] = min;
+                }
+            }
+            summary = result;
+        }
+
+        /** @return +1 for an opening bracket of the pair, -1 for a closing one, 0 otherwise. */
+        private int weight(int pair, int i, boolean skipEscaped) {
+            if (skipEscaped && escaped[i]) {
+                return 0;
+            }
+            char c = brackets[i];
+            return c == OPEN.charAt(pair) ? 1 : c == CLOSE.charAt(pair) ? -1 : 0;
+        }
+    }
+}
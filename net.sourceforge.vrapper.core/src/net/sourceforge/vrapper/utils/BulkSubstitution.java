@@ -0,0 +1,409 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Substitution over a range of lines in a single pass, for <tt>:%s</tt> and other multi-line
+ * ranges.
+ *
+ * <p>The pattern is compiled once by the caller and matched over the whole range with one
+ * {@link Matcher}. Replacements are collected in memory and written back as a few large edits
+ * instead of one document change per match. The semantics are the same as running a substitution
+ * on each line separately: a match must start on a line of the range (not on its line break), and
+ * without the 'g' flag only the first match of each line is replaced.
+ *
+ * <p>The replacement is interpreted like Eclipse's <tt>FindReplaceDocumentAdapter</tt>
+ * does for single-line substitutions, so that both give the same result:
+ * <ul>
+ * <li><tt>$n</tt> and <tt>\n</tt> (for a digit <tt>n</tt>) insert a group. Further digits are taken
+ * as long as they form a valid group number, except after <tt>0</tt>.</li>
+ * <li><tt>\R</tt> inserts a newline. <tt>\r</tt>, <tt>\n</tt>, <tt>\t</tt>, <tt>\f</tt>,
+ * <tt>\a</tt> and <tt>\e</tt> insert the respective control characters.</li>
+ * <li><tt>\xhh</tt>, <tt>&#92;uhhhh</tt> and <tt>\cX</tt> insert the given character.</li>
+ * <li><tt>\C</tt> makes the following literal text take the case of the match: upper or lower case
+ * if the match is, otherwise upper case for the next character if the match starts with one.</li>
+ * <li>Any other escaped character is inserted literally.</li>
+ * </ul>
+ * Where the adapter fails, e.g. for a reference to a group which doesn't exist, the text is
+ * inserted literally instead.
+ */
+public class BulkSubstitution {
+
+    /**
+     * Unchanged text between two matches up to this length is rewritten as part of a single edit.
+     * Longer stretches are left alone so that markers and positions in them stay intact.
+     */
+    private static final int MAX_EDIT_GAP = 4096;
+
+    private static final int WINDOW_SIZE = 8192;
+
+    /** How literal text of the replacement is changed after <tt>\C</tt>. */
+    private static final int CASE_MIXED = 0;
+    private static final int CASE_UPPER = 1;
+    private static final int CASE_LOWER = 2;
+    private static final int CASE_FIRST_UPPER = 3;
+
+    private final Pattern pattern;
+    private final List<Part> replacement;
+    private final boolean global;
+    private final boolean countOnly;
+    private int substitutionCount;
+    private int lineCount;
+
+    /**
+     * @param pattern compiled search pattern.
+     * @param replace replacement string in Eclipse regex replace syntax.
+     * @param newline string inserted for <tt>\R</tt>.
+     * @param flags substitution flags, 'g' replaces all matches of a line and 'n' only counts them.
+     */
+    public BulkSubstitution(Pattern pattern, String replace, String newline, String flags) {
+        this.pattern = pattern;
+        this.replacement = parseReplacement(replace, newline, pattern.matcher("").groupCount());
+        this.global = flags.contains("g");
+        this.countOnly = flags.contains("n");
+    }
+
+    /**
+     * Runs the substitution on lines <code>startLine</code> up to and including
+     * <code>endLine</code>.
+     */
+    public void execute(TextContent content, int startLine, int endLine) {
+        substitutionCount = 0;
+        lineCount = 0;
+
+        int textLength = content.getTextLength();
+        Matcher matcher = createMatcher(content);
+
+        LineInformation line = content.getLineInformation(startLine);
+        matcher.region(line.getBeginOffset(), textLength);
+        int lastCountedLine = -1;
+        List<Edit> edits = new ArrayList<Edit>();
+        Edit edit = null;
+
+        while (matcher.find()) {
+            int start = matcher.start();
+            if (start > line.getEndOffset()) {
+                line = content.getLineInformationOfOffset(start);
+            }
+            if (line.getNumber() > endLine) {
+                break;
+            }
+            if (start >= line.getEndOffset()) {
+                // A search limited to the line never finds a match starting on its line break.
+                if ( ! nextLine(content, matcher, line, endLine, textLength)) {
+                    break;
+                }
+                line = content.getLineInformation(line.getNumber() + 1);
+                continue;
+            }
+
+            substitutionCount++;
+            if (lastCountedLine != line.getNumber()) {
+                lineCount++;
+                lastCountedLine = line.getNumber();
+            }
+            int end = matcher.end();
+            edit = addMatch(content, matcher, edits, edit);
+
+            if ( ! global) {
+                // Continue on the line after the one where the match ended.
+                LineInformation lastLine = line;
+                if (end > line.getEndOffset()) {
+                    lastLine = content.getLineInformationOfOffset(end);
+                    if (end == lastLine.getBeginOffset()) {
+                        // Match consumed the line break only, the next line is still to do.
+                        lastLine = content.getLineInformation(lastLine.getNumber() - 1);
+                    }
+                }
+                if ( ! nextLine(content, matcher, lastLine, endLine, textLength)) {
+                    break;
+                }
+                line = content.getLineInformation(lastLine.getNumber() + 1);
+            }
+        }
+
+        applyEdits(content, edits);
+    }
+
+    /**
+     * Runs the substitution on the given lines only, like <tt>:g/pattern/s//</tt> does. The
+     * semantics for each line are the same as for a range; a line whose start has been consumed
+     * by a match on a previous line is only searched after the end of that match.
+     * @param lines line numbers in ascending order.
+     */
+    public void execute(TextContent content, int[] lines) {
+        substitutionCount = 0;
+        lineCount = 0;
+
+        int textLength = content.getTextLength();
+        Matcher matcher = createMatcher(content);
+        List<Edit> edits = new ArrayList<Edit>();
+        Edit edit = null;
+        int consumed = 0;
+
+        for (int lineNumber : lines) {
+            LineInformation line = content.getLineInformation(lineNumber);
+            matcher.region(Math.max(line.getBeginOffset(), consumed), textLength);
+            boolean lineCounted = false;
+            while (matcher.find() && matcher.start() < line.getEndOffset()) {
+                substitutionCount++;
+                if ( ! lineCounted) {
+                    lineCount++;
+                    lineCounted = true;
+                }
+                consumed = matcher.end();
+                edit = addMatch(content, matcher, edits, edit);
+                if ( ! global) {
+                    break;
+                }
+            }
+        }
+
+        applyEdits(content, edits);
+    }
+
+    private Matcher createMatcher(TextContent content) {
+        Matcher matcher = pattern.matcher(new TextContentCharSequence(content, WINDOW_SIZE));
+        // Matches may look at and extend into the text outside of the range, like a regular find.
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        return matcher;
+    }
+
+    /**
+     * Adds the replacement for the current match to the last edit, or to a new one if the
+     * unchanged text in between is too long.
+     * @return the edit the replacement was added to.
+     */
+    private Edit addMatch(TextContent content, Matcher matcher, List<Edit> edits, Edit edit) {
+        if (countOnly) {
+            return edit;
+        }
+        int start = matcher.start();
+        if (edit == null || start - edit.end > MAX_EDIT_GAP) {
+            edit = new Edit(start);
+            edits.add(edit);
+        } else {
+            edit.text.append(content.getText(edit.end, start - edit.end));
+        }
+        appendReplacement(matcher, edit.text);
+        edit.end = matcher.end();
+        return edit;
+    }
+
+    private static void applyEdits(TextContent content, List<Edit> edits) {
+        // Apply back to front so that the offsets of the remaining edits stay valid.
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            Edit edit = edits.get(i);
+            content.replace(edit.start, edit.end - edit.start, edit.text.toString());
+        }
+    }
+
+    /** Restarts the matcher at the beginning of the line following <code>line</code>. */
+    private static boolean nextLine(TextContent content, Matcher matcher, LineInformation line,
+            int endLine, int textLength) {
+        int next = line.getNumber() + 1;
+        if (next > endLine || next >= content.getNumberOfLines()) {
+            return false;
+        }
+        matcher.region(content.getLineInformation(next).getBeginOffset(), textLength);
+        return true;
+    }
+
+    /** @return number of matches replaced (or counted with the 'n' flag). */
+    public int getSubstitutionCount() {
+        return substitutionCount;
+    }
+
+    /** @return number of lines with at least one match. */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    private void appendReplacement(Matcher matcher, StringBuilder sb) {
+        int caseMode = CASE_MIXED;
+        for (Part part : replacement) {
+            if (part.kind == Part.GROUP) {
+                String group = matcher.group(part.group);
+                if (group != null) {
+                    sb.append(group);
+                }
+                if (part.retainsCase && caseMode == CASE_FIRST_UPPER) {
+                    // The adapter passes the group number through \C like literal text.
+                    caseMode = CASE_MIXED;
+                }
+            } else if (part.kind == Part.RETAIN_CASE) {
+                caseMode = getCaseMode(matcher.group());
+            } else if ( ! part.retainsCase || caseMode == CASE_MIXED) {
+                sb.append(part.text);
+            } else if (caseMode == CASE_UPPER) {
+                sb.append(part.text.toUpperCase());
+            } else if (caseMode == CASE_LOWER) {
+                sb.append(part.text.toLowerCase());
+            } else {
+                sb.append(part.text.substring(0, 1).toUpperCase()).append(part.text, 1, part.text.length());
+                caseMode = CASE_MIXED;
+            }
+        }
+    }
+
+    private static int getCaseMode(String found) {
+        if (found.toUpperCase().equals(found)) {
+            return CASE_UPPER;
+        } else if (found.toLowerCase().equals(found)) {
+            return CASE_LOWER;
+        } else if (Character.isUpperCase(found.charAt(0))) {
+            return CASE_FIRST_UPPER;
+        }
+        return CASE_MIXED;
+    }
+
+    private static List<Part> parseReplacement(String replace, String newline, int groupCount) {
+        ReplacementParser parser = new ReplacementParser();
+        int length = replace.length();
+        int i = 0;
+        while (i < length) {
+            char c = replace.charAt(i++);
+            if (c == '\\' && i < length) {
+                c = replace.charAt(i++);
+                int value;
+                if (c == '0') {
+                    // A digit after \0 is literal, as after $0.
+                    parser.addGroup(0, false);
+                } else if (c >= '1' && c <= '9' && c - '0' <= groupCount) {
+                    int end = groupEnd(replace, i - 1, groupCount);
+                    parser.addGroup(Integer.parseInt(replace.substring(i - 1, end)), end > i);
+                    i = end;
+                } else if (c == 'R') {
+                    parser.addText(newline, false);
+                } else if ("rntfae".indexOf(c) >= 0) {
+                    parser.addText(String.valueOf("\r\n\t\f\u0007\u001b".charAt("rntfae".indexOf(c))), false);
+                } else if (c == 'c' && i < length) {
+                    parser.addText(String.valueOf((char) (replace.charAt(i++) ^ 64)), true);
+                } else if (c == 'x' && (value = parseHex(replace, i, 2)) >= 0) {
+                    parser.addText(String.valueOf((char) value), true);
+                    i += 2;
+                } else if (c == 'u' && (value = parseHex(replace, i, 4)) >= 0) {
+                    parser.addText(String.valueOf((char) value), true);
+                    i += 4;
+                } else if (c == 'C') {
+                    parser.add(new Part(Part.RETAIN_CASE, null, 0, false));
+                } else {
+                    parser.addText(String.valueOf(c), false);
+                }
+            } else if (c == '$' && i < length && Character.isDigit(replace.charAt(i))
+                    && replace.charAt(i) - '0' <= groupCount) {
+                // Digits are taken like Matcher.appendReplacement does, but $0 is never followed
+                // by more digits, like in the adapter.
+                int end = replace.charAt(i) == '0' ? i + 1 : groupEnd(replace, i, groupCount);
+                parser.addGroup(Integer.parseInt(replace.substring(i, end)), true);
+                i = end;
+            } else {
+                parser.addText(String.valueOf(c), true);
+            }
+        }
+        return parser.finish();
+    }
+
+    /** @return the end of the longest valid group number starting at <code>start</code>. */
+    private static int groupEnd(String replace, int start, int groupCount) {
+        int end = start + 1;
+        int group = replace.charAt(start) - '0';
+        while (end < replace.length() && Character.isDigit(replace.charAt(end))
+                && group * 10 + replace.charAt(end) - '0' <= groupCount) {
+            group = group * 10 + replace.charAt(end++) - '0';
+        }
+        return end;
+    }
+
+    /** @return the value of <code>digits</code> hex digits at <code>start</code>, -1 if invalid. */
+    private static int parseHex(String replace, int start, int digits) {
+        if (start + digits > replace.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + digits; i++) {
+            int digit = Character.digit(replace.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Part of a replacement: a group, text or the start of taking the case of the match. Text and
+     * group numbers which the adapter passes through <tt>\C</tt> retain the case of the match.
+     */
+    private static class Part {
+        static final int GROUP = 0;
+        static final int TEXT = 1;
+        static final int RETAIN_CASE = 2;
+
+        final int kind;
+        final String text;
+        final int group;
+        final boolean retainsCase;
+
+        Part(int kind, String text, int group, boolean retainsCase) {
+            this.kind = kind;
+            this.text = text;
+            this.group = group;
+            this.retainsCase = retainsCase;
+        }
+    }
+
+    /** Collects the parts of a replacement, joining adjacent text of the same kind. */
+    private static class ReplacementParser {
+        private final List<Part> parts = new ArrayList<Part>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean textRetainsCase;
+
+        void addText(String added, boolean retainsCase) {
+            if (retainsCase != textRetainsCase) {
+                flush();
+                textRetainsCase = retainsCase;
+            }
+            text.append(added);
+        }
+
+        void addGroup(int group, boolean retainsCase) {
+            add(new Part(Part.GROUP, null, group, retainsCase));
+        }
+
+        void add(Part part) {
+            flush();
+            parts.add(part);
+        }
+
+        List<Part> finish() {
+            flush();
+            return parts;
+        }
+
+        private void flush() {
+            if (text.length() > 0) {
+                parts.add(new Part(Part.TEXT, text.toString(), 0, textRetainsCase));
+                text.setLength(0);
+            }
+        }
+    }
+
+    /** Replacement of the text between <code>start</code> and <code>end</code>. */
+    private static class Edit {
+        final int start;
+        int end;
+        final StringBuilder text = new StringBuilder();
+
+        Edit(int start) {
+            this.start = start;
+            this.end = start;
+        }
+    }
+}
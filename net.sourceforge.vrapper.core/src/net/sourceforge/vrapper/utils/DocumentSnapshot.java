@@ -0,0 +1,223 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Caches what commands read from a {@link TextContent} while they run. Motions and text objects
+ * ask for the same lines and characters many times, which costs a trip through the document and
+ * a new {@link LineInformation} each time in an editor.
+ *
+ * <p>The snapshot is opened by the editor adaptor while it handles a key. While it is open, line
+ * information is kept by line number and line start, and text is read in chunks of
+ * {@link #CHUNK_SIZE} characters. All caches are dropped on the first change of the text, whether
+ * it is made through this object or not: the decorated content must implement {@link Source} so
+ * that changes can be detected. Otherwise, and while the snapshot is closed, all calls go straight
+ * to the decorated content.
+ */
+public class DocumentSnapshot implements TextContent, BracketIndex.Provider, XmlTagIndex.Provider,
+        SearchMatchIndex.Provider {
+
+    /**
+     * Implemented by text contents which count the changes of their text. Decorators return the
+     * stamp of the decorated content.
+     */
+    public interface Source {
+        /** @return a value which changes with every change of the text, -1 if unknown. */
+        long getModificationStamp();
+    }
+
+    public static final int CHUNK_SIZE = 1024;
+    private static final int MAX_CHUNKS = 16;
+
+    private final TextContent target;
+    private int openCount;
+    /** Modification stamp of the cached text, -1 if nothing is cached. */
+    private long stamp = -1;
+    private int textLength = -1;
+    private int numberOfLines = -1;
+    private final Map<Integer, LineInformation> linesByNumber = new HashMap<Integer, LineInformation>();
+    private final TreeMap<Integer, LineInformation> linesByOffset = new TreeMap<Integer, LineInformation>();
+    private final Map<Integer, String> chunks = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<Integer, String> eldest) {
+            return size() > MAX_CHUNKS;
+        }
+    };
+
+    public DocumentSnapshot(TextContent target) {
+        this.target = target;
+    }
+
+    /** @return the modification stamp of <code>content</code>, -1 if it doesn't count changes. */
+    public static long stampOf(TextContent content) {
+        return content instanceof Source ? ((Source) content).getModificationStamp() : -1;
+    }
+
+    /** Starts caching. Calls may be nested, each one must be followed by {@link #close()}. */
+    public void open() {
+        openCount++;
+    }
+
+    /** Stops caching when the outermost {@link #open()} is closed. */
+    public void close() {
+        if (openCount > 0 && --openCount == 0) {
+            invalidate();
+        }
+    }
+
+    public boolean isOpen() {
+        return openCount > 0;
+    }
+
+    /** Drops everything cached. */
+    public void invalidate() {
+        stamp = -1;
+        textLength = -1;
+        numberOfLines = -1;
+        linesByNumber.clear();
+        linesByOffset.clear();
+        chunks.clear();
+    }
+
+    /** @return whether the caches may be used, after dropping them if the text changed. */
+    private boolean isCaching() {
+        if (openCount == 0) {
+            return false;
+        }
+        long current = stampOf(target);
+        if (current != stamp) {
+            invalidate();
+            stamp = current;
+        }
+        return current != -1;
+    }
+
+    private LineInformation cacheLine(LineInformation line) {
+        linesByNumber.put(line.getNumber(), line);
+        linesByOffset.put(line.getBeginOffset(), line);
+        return line;
+    }
+
+    @Override
+    public LineInformation getLineInformation(int line) {
+        if ( ! isCaching()) {
+            return target.getLineInformation(line);
+        }
+        LineInformation result = linesByNumber.get(line);
+        return result != null ? result : cacheLine(target.getLineInformation(line));
+    }
+
+    @Override
+    public LineInformation getLineInformationOfOffset(int offset) {
+        if ( ! isCaching()) {
+            return target.getLineInformationOfOffset(offset);
+        }
+        Entry<Integer, LineInformation> entry = linesByOffset.floorEntry(offset);
+        if (entry != null && offset <= entry.getValue().getEndOffset()) {
+            return entry.getValue();
+        }
+        // Offsets in line delimiters are left to the decorated content.
+        return cacheLine(target.getLineInformationOfOffset(offset));
+    }
+
+    @Override
+    public int getNumberOfLines() {
+        if ( ! isCaching()) {
+            return target.getNumberOfLines();
+        }
+        if (numberOfLines < 0) {
+            numberOfLines = target.getNumberOfLines();
+        }
+        return numberOfLines;
+    }
+
+    @Override
+    public int getTextLength() {
+        if ( ! isCaching()) {
+            return target.getTextLength();
+        }
+        if (textLength < 0) {
+            textLength = target.getTextLength();
+        }
+        return textLength;
+    }
+
+    @Override
+    public String getText(int index, int length) {
+        if ( ! isCaching() || index < 0 || length < 0) {
+            return target.getText(index, length);
+        }
+        int chunkStart = index - index % CHUNK_SIZE;
+        if (index + length > chunkStart + CHUNK_SIZE || index + length > getTextLength()) {
+            return target.getText(index, length);
+        }
+        String chunk = chunks.get(chunkStart);
+        if (chunk == null) {
+            chunk = target.getText(chunkStart, Math.min(CHUNK_SIZE, getTextLength() - chunkStart));
+            chunks.put(chunkStart, chunk);
+        }
+        return chunk.substring(index - chunkStart, index - chunkStart + length);
+    }
+
+    @Override
+    public String getText(TextRange range) {
+        return getText(range.getLeftBound().getModelOffset(), range.getModelLength());
+    }
+
+    @Override
+    public void replace(int index, int length, String s) {
+        invalidate();
+        target.replace(index, length, s);
+    }
+
+    @Override
+    public void replace(MultiEdit edits) {
+        invalidate();
+        target.replace(edits);
+    }
+
+    @Override
+    public void smartInsert(int index, String s) {
+        invalidate();
+        target.smartInsert(index, s);
+    }
+
+    @Override
+    public void smartInsert(String s) {
+        invalidate();
+        target.smartInsert(s);
+    }
+
+    @Override
+    public Space getSpace() {
+        return target.getSpace();
+    }
+
+    @Override
+    public BracketIndex getBracketIndex() {
+        return BracketIndex.of(target);
+    }
+
+    @Override
+    public XmlTagIndex getXmlTagIndex() {
+        return XmlTagIndex.of(target);
+    }
+
+    @Override
+    public SearchMatchIndex getSearchMatchIndex() {
+        return SearchMatchIndex.of(target);
+    }
+
+    @Override
+    public String toString() {
+        return target.toString();
+    }
+}
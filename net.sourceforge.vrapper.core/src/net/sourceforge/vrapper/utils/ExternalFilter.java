@@ -0,0 +1,165 @@
+package net.sourceforge.vrapper.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import net.sourceforge.vrapper.platform.LongRunningTask;
+
+/**
+ * Runs an external program with some text on its standard input and collects its output, for
+ * <tt>:!</tt>, <tt>:r !</tt> and similar commands.
+ *
+ * <p>Standard input, output and error are each pumped by their own thread through a fixed-size
+ * buffer, so a program which writes before it has read all of its input can't dead-lock with
+ * Vrapper. Error output is only kept up to {@link #MAX_ERROR_LENGTH} characters. The calling thread
+ * waits for the program, reports progress and kills the program when the task is canceled.
+ *
+ * <p>Meant to be started through
+ * {@link net.sourceforge.vrapper.platform.UserInterfaceService#runWithProgress(String, LongRunningTask)};
+ * the results are available once it returns.
+ */
+public class ExternalFilter implements LongRunningTask {
+
+    public static final int BUFFER_SIZE = 8192;
+    public static final int MAX_ERROR_LENGTH = 64 * 1024;
+    private static final long POLL_MILLIS = 100;
+
+    private final String[] command;
+    private final String input;
+
+    private final StringBuilder output = new StringBuilder();
+    private final StringBuilder errors = new StringBuilder();
+    private volatile long written;
+    private volatile IOException failure;
+    private int exitValue = -1;
+    private boolean canceled;
+
+    /**
+     * @param command program and its arguments.
+     * @param input text written to the standard input of the program, or null to close it right
+     *      away.
+     */
+    public ExternalFilter(String[] command, String input) {
+        this.command = command;
+        this.input = input;
+    }
+
+    @Override
+    public void run(Monitor monitor) throws IOException, InterruptedException {
+        final Process process = ProcessHelper.start(command);
+        Thread stdin = new Thread("Vrapper filter input") {
+            @Override
+            public void run() {
+                writeInput(process);
+            }
+        };
+        Thread stdout = pump("Vrapper filter output", process.getInputStream(), output, Integer.MAX_VALUE);
+        Thread stderr = pump("Vrapper filter errors", process.getErrorStream(), errors, MAX_ERROR_LENGTH);
+        stdin.start();
+        stdout.start();
+        stderr.start();
+        try {
+            while (stdout.isAlive()) {
+                if (monitor.isCanceled()) {
+                    canceled = true;
+                    process.destroy();
+                    break;
+                }
+                monitor.setMessage(getProgressMessage());
+                stdout.join(POLL_MILLIS);
+            }
+            stdout.join();
+            stderr.join();
+            stdin.join();
+            exitValue = process.waitFor();
+        } finally {
+            process.destroy();
+        }
+        if (failure != null && ! canceled) {
+            throw failure;
+        }
+    }
+
+    private void writeInput(Process process) {
+        try {
+            Writer writer = new OutputStreamWriter(process.getOutputStream());
+            try {
+                if (input != null) {
+                    for (int start = 0; start < input.length(); start += BUFFER_SIZE) {
+                        int end = Math.min(start + BUFFER_SIZE, input.length());
+                        writer.write(input, start, end - start);
+                        written = end;
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            // The program doesn't read all of its input (e.g. 'head') or was killed.
+        }
+    }
+
+    private Thread pump(String name, final InputStream stream, final StringBuilder target, final int limit) {
+        return new Thread(name) {
+            @Override
+            public void run() {
+                try {
+                    Reader reader = new InputStreamReader(stream);
+                    try {
+                        char[] buffer = new char[BUFFER_SIZE];
+                        int read;
+                        while ((read = reader.read(buffer)) >= 0) {
+                            synchronized (target) {
+                                target.append(buffer, 0, Math.max(0, Math.min(read, limit - target.length())));
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                } catch (IOException e) {
+                    if (target == output) {
+                        failure = e;
+                    }
+                }
+            }
+        };
+    }
+
+    private String getProgressMessage() {
+        int read;
+        synchronized (output) {
+            read = output.length();
+        }
+        if (input == null) {
+            return "read " + (read / 1024) + " KB";
+        }
+        return "written " + (written / 1024) + " of " + (input.length() / 1024) + " KB, read "
+                + (read / 1024) + " KB";
+    }
+
+    /** @return the standard output of the program. */
+    public String getOutput() {
+        synchronized (output) {
+            return output.toString();
+        }
+    }
+
+    /** @return the start of the error output of the program. */
+    public String getErrors() {
+        synchronized (errors) {
+            return errors.toString();
+        }
+    }
+
+    public int getExitValue() {
+        return exitValue;
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+}
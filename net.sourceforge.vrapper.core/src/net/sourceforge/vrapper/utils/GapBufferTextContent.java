@@ -0,0 +1,315 @@
+package net.sourceforge.vrapper.utils;
+
+import net.sourceforge.vrapper.platform.CursorService;
+import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.platform.VrapperPlatformException;
+
+/**
+ * In-memory {@link TextContent} for running the core engine without an editor, e.g. for batch
+ * editing, benchmarks and tests.
+ *
+ * <p>The text is kept in a gap buffer. Line start offsets are kept in a second gap buffer whose
+ * gap follows the last edited line: starts before the gap are absolute offsets, starts after it
+ * are stored relative to the end of the text, so an edit doesn't have to update the lines after
+ * it. Line lookups are binary searches; edits cost the size of the edit plus the distance from the
+ * previous edit. Lines can be delimited by <tt>\n</tt>, <tt>\r\n</tt> and <tt>\r</tt>, like in an
+ * Eclipse document. A {@link BracketIndex}, an {@link XmlTagIndex} and a {@link SearchMatchIndex}
+ * of the text are kept up to date, and changes are counted for {@link DocumentSnapshot}.
+ */
+public class GapBufferTextContent implements TextContent, BracketIndex.Provider,
+        XmlTagIndex.Provider, SearchMatchIndex.Provider, DocumentSnapshot.Source {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private final CursorService cursorService;
+    private final BracketIndex bracketIndex = new BracketIndex();
+    private final XmlTagIndex xmlTagIndex = new XmlTagIndex();
+    private final SearchMatchIndex searchMatchIndex = new SearchMatchIndex();
+
+    private char[] text;
+    private int gapStart;
+    private int gapEnd;
+
+    private int[] lineStarts;
+    private int lineGapStart;
+    private int lineGapEnd;
+
+    private long modificationStamp;
+
+    /**
+     * @param cursorService used by {@link #smartInsert(String)} to find the cursor position.
+     *      May be null if that method isn't used.
+     */
+    public GapBufferTextContent(CursorService cursorService) {
+        this.cursorService = cursorService;
+        setText("");
+    }
+
+    public GapBufferTextContent(CursorService cursorService, String content) {
+        this.cursorService = cursorService;
+        setText(content);
+    }
+
+    /** Replaces the whole text. */
+    public void setText(String content) {
+        int length = content.length();
+        text = new char[Math.max(MIN_CAPACITY, length + length / 2)];
+        content.getChars(0, length, text, 0);
+        gapStart = length;
+        gapEnd = text.length;
+
+        lineStarts = new int[MIN_CAPACITY];
+        lineStarts[0] = 0;
+        lineGapStart = 1;
+        lineGapEnd = lineStarts.length;
+        addLineStarts(0, length);
+        bracketIndex.clear();
+        xmlTagIndex.clear();
+        searchMatchIndex.clear();
+        modificationStamp++;
+    }
+
+    /** @return the whole text. */
+    public String getText() {
+        return getText(0, getTextLength());
+    }
+
+    @Override
+    public LineInformation getLineInformation(int line) {
+        if (line < 0 || line >= getNumberOfLines()) {
+            throw new VrapperPlatformException("Line is out of range: " + line);
+        }
+        int begin = getLineStart(line);
+        int end;
+        if (line + 1 < getNumberOfLines()) {
+            end = getLineStart(line + 1) - 1;
+            if (end > begin && charAt(end) == '\n' && charAt(end - 1) == '\r') {
+                end--;
+            }
+        } else {
+            end = getTextLength();
+        }
+        return new LineInformation(line, begin, end - begin);
+    }
+
+    @Override
+    public LineInformation getLineInformationOfOffset(int offset) {
+        if (offset < 0 || offset > getTextLength()) {
+            throw new VrapperPlatformException("Offset is out of range: " + offset);
+        }
+        return getLineInformation(getLineOfOffset(offset));
+    }
+
+    @Override
+    public int getNumberOfLines() {
+        return lineStarts.length - (lineGapEnd - lineGapStart);
+    }
+
+    @Override
+    public int getTextLength() {
+        return text.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public String getText(int index, int length) {
+        if (index < 0 || length < 0 || index + length > getTextLength()) {
+            throw new VrapperPlatformException("Failed to get text " + index
+                    + " (" + length + " chars)");
+        }
+        int end = index + length;
+        if (end <= gapStart) {
+            return new String(text, index, length);
+        }
+        int gapLength = gapEnd - gapStart;
+        if (index >= gapStart) {
+            return new String(text, index + gapLength, length);
+        }
+        char[] chars = new char[length];
+        System.arraycopy(text, index, chars, 0, gapStart - index);
+        System.arraycopy(text, gapEnd, chars, gapStart - index, end - gapStart);
+        return new String(chars);
+    }
+
+    @Override
+    public String getText(TextRange range) {
+        return getText(range.getLeftBound().getModelOffset(), range.getModelLength());
+    }
+
+    @Override
+    public void replace(int index, int length, String s) {
+        int textLength = getTextLength();
+        if (index < 0 || length < 0 || index + length > textLength) {
+            throw new VrapperPlatformException("Failed to replace " + index
+                    + " (" + length + " chars)");
+        }
+        // Lines starting after the character before the edit up to the line holding its end may
+        // change: a "\r" before the edit can be joined with a "\n" inserted after it.
+        int first = getLineOfOffset(Math.max(0, index - 1));
+        int last = getLineOfOffset(index + length);
+        moveLineGap(first + 1);
+        lineGapEnd += last - first;
+
+        moveGap(index);
+        gapEnd += length;
+        int inserted = s.length();
+        ensureGap(inserted);
+        s.getChars(0, inserted, text, gapStart);
+        gapStart += inserted;
+
+        int scanEnd = lineGapEnd < lineStarts.length ? getLineStart(first + 1) : getTextLength();
+        addLineStarts(getLineStart(first), scanEnd);
+        // Bump the stamp first so that the indexes don't read stale snapshots.
+        modificationStamp++;
+        bracketIndex.textChanged(index, length, inserted);
+        xmlTagIndex.textChanged(index, length, inserted);
+        searchMatchIndex.textChanged(index, length, inserted);
+    }
+
+    /** Applies the edits as a single replacement of the text from the first to the last edit. */
+    @Override
+    public void replace(MultiEdit edits) {
+        if (edits.size() == 1) {
+            replace(edits.getOffset(0), edits.getLength(0), edits.getText(0));
+        } else if ( ! edits.isEmpty()) {
+            int start = edits.getStart();
+            replace(start, edits.getEnd() - start, edits.getReplacement(this));
+        }
+    }
+
+    @Override
+    public BracketIndex getBracketIndex() {
+        return bracketIndex;
+    }
+
+    @Override
+    public XmlTagIndex getXmlTagIndex() {
+        return xmlTagIndex;
+    }
+
+    @Override
+    public SearchMatchIndex getSearchMatchIndex() {
+        return searchMatchIndex;
+    }
+
+    @Override
+    public long getModificationStamp() {
+        return modificationStamp;
+    }
+
+    @Override
+    public void smartInsert(int index, String s) {
+        replace(index, 0, s);
+    }
+
+    @Override
+    public void smartInsert(String s) {
+        smartInsert(cursorService.getPosition().getModelOffset(), s);
+    }
+
+    @Override
+    public Space getSpace() {
+        return Space.MODEL;
+    }
+
+    @Override
+    public String toString() {
+        return "GapBufferTextContent(" + getText() + ")";
+    }
+
+    private char charAt(int offset) {
+        return offset < gapStart ? text[offset] : text[offset + gapEnd - gapStart];
+    }
+
+    private int getLineStart(int line) {
+        return line < lineGapStart
+                ? lineStarts[line]
+                : lineStarts[line + lineGapEnd - lineGapStart] + getTextLength();
+    }
+
+    private int getLineOfOffset(int offset) {
+        int low = 0;
+        int high = getNumberOfLines() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (getLineStart(middle) <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Inserts the starts of lines following the line delimiters in [<code>from</code>,
+     * <code>to</code>) at the line gap. A delimiter ending at <code>to</code> is skipped if a line
+     * already starts there.
+     */
+    private void addLineStarts(int from, int to) {
+        boolean lineAtEnd = lineGapEnd < lineStarts.length;
+        for (int i = from; i < to; i++) {
+            char c = charAt(i);
+            if (c == '\r' && i + 1 < to && charAt(i + 1) == '\n') {
+                i++;
+            } else if (c != '\r' && c != '\n') {
+                continue;
+            }
+            if (i + 1 == to && lineAtEnd) {
+                break;
+            }
+            if (lineGapStart == lineGapEnd) {
+                growLineGap();
+            }
+            lineStarts[lineGapStart++] = i + 1;
+        }
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int count = gapStart - index;
+            System.arraycopy(text, index, text, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (index > gapStart) {
+            int count = index - gapStart;
+            System.arraycopy(text, gapEnd, text, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void ensureGap(int required) {
+        if (gapEnd - gapStart >= required) {
+            return;
+        }
+        int length = getTextLength() + required;
+        char[] grown = new char[Math.max(MIN_CAPACITY, length + length / 2)];
+        int after = text.length - gapEnd;
+        System.arraycopy(text, 0, grown, 0, gapStart);
+        System.arraycopy(text, gapEnd, grown, grown.length - after, after);
+        text = grown;
+        gapEnd = grown.length - after;
+    }
+
+    private void moveLineGap(int line) {
+        int textLength = getTextLength();
+        if (line < lineGapStart) {
+            while (lineGapStart > line) {
+                lineStarts[--lineGapEnd] = lineStarts[--lineGapStart] - textLength;
+            }
+        } else {
+            while (lineGapStart < line) {
+                lineStarts[lineGapStart++] = lineStarts[lineGapEnd++] + textLength;
+            }
+        }
+    }
+
+    private void growLineGap() {
+        int[] grown = new int[lineStarts.length * 2];
+        int after = lineStarts.length - lineGapEnd;
+        System.arraycopy(lineStarts, 0, grown, 0, lineGapStart);
+        System.arraycopy(lineStarts, lineGapEnd, grown, grown.length - after, after);
+        lineStarts = grown;
+        lineGapEnd = grown.length - after;
+    }
+}
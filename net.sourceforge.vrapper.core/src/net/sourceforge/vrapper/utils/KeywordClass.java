@@ -0,0 +1,86 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled form of an <tt>iskeyword</tt> value, answering whether a character is a keyword
+ * character without running a regex for every character scanned by a word motion.
+ *
+ * <p>The option value is used as the body of a regex character class, e.g.
+ * <tt>a-zA-Z0-9_</tt>. Latin-1 characters are evaluated once when the class is created and stored
+ * in a bitmap; higher code points are resolved lazily, one 256-character page at a time. Classes
+ * are shared between threads, e.g. the UI thread and background jobs, so pages are published
+ * through an {@link AtomicReferenceArray}.
+ */
+public class KeywordClass {
+
+    private static final int PAGE_SIZE = 256;
+    private static final int PAGE_WORDS = PAGE_SIZE / 64;
+
+    /** Cache for {@link #forPattern(String)}, which is used by callers not having a configuration. */
+    private static volatile KeywordClass lastUsed;
+
+    private final String iskeyword;
+    private final Pattern pattern;
+    /** One bitmap per page of the Basic Multilingual Plane, <code>null</code> until first use. */
+    private final AtomicReferenceArray<long[]> pages =
+            new AtomicReferenceArray<long[]>((Character.MAX_VALUE + 1) / PAGE_SIZE);
+
+    public KeywordClass(String iskeyword) {
+        this.iskeyword = iskeyword;
+        this.pattern = Pattern.compile("[" + iskeyword + "]");
+        pages.set(0, computePage(0));
+    }
+
+    /**
+     * Returns a compiled class for the given <tt>iskeyword</tt> value, reusing the last one
+     * requested if the value didn't change.
+     */
+    public static KeywordClass forPattern(String iskeyword) {
+        KeywordClass cached = lastUsed;
+        if (cached == null || ! cached.iskeyword.equals(iskeyword)) {
+            cached = new KeywordClass(iskeyword);
+            lastUsed = cached;
+        }
+        return cached;
+    }
+
+    public String getPattern() {
+        return iskeyword;
+    }
+
+    public boolean isKeyword(char c) {
+        int pageIndex = c / PAGE_SIZE;
+        long[] page = pages.get(pageIndex);
+        if (page == null) {
+            // Racing threads compute the same page, the first one stored is used by all.
+            pages.compareAndSet(pageIndex, null, computePage(pageIndex));
+            page = pages.get(pageIndex);
+        }
+        int bit = c % PAGE_SIZE;
+        return (page[bit / 64] & (1L << (bit % 64))) != 0;
+    }
+
+    private long[] computePage(int pageIndex) {
+        long[] page = new long[PAGE_WORDS];
+        StringBuilder sb = new StringBuilder(1);
+        sb.append(' ');
+        Matcher matcher = pattern.matcher(sb);
+        int first = pageIndex * PAGE_SIZE;
+        for (int bit = 0; bit < PAGE_SIZE; bit++) {
+            sb.setCharAt(0, (char) (first + bit));
+            matcher.reset(sb);
+            if (matcher.matches()) {
+                page[bit / 64] |= 1L << (bit % 64);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public String toString() {
+        return "KeywordClass(" + iskeyword + ")";
+    }
+}
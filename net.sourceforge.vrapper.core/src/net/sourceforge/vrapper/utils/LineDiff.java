@@ -0,0 +1,189 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Replaces a block of text by a new version, changing only the lines which differ. Used when
+ * applying the output of an external filter, so that markers, folds and the undo history of the
+ * unchanged lines are kept and the editor only has to redraw what changed.
+ *
+ * <p>Lines common to the start and the end of both versions are skipped, the rest is compared with
+ * Myers' O(ND) algorithm. If the versions differ in more than {@link #MAX_EDITS} lines, the
+ * differing part is replaced in one go instead. The changed lines are applied together as one
+ * {@link MultiEdit}.
+ */
+public class LineDiff {
+
+    public static final int MAX_EDITS = 500;
+
+    private LineDiff() { }
+
+    /**
+     * Changes <code>oldText</code>, found in <code>content</code> at <code>offset</code>, into
+     * <code>newText</code>, with a single {@link TextContent#replace(MultiEdit)} call.
+     * @return the number of replacements in the edit.
+     */
+    public static int apply(TextContent content, int offset, String oldText, String newText) {
+        if (oldText.equals(newText)) {
+            return 0;
+        }
+        List<String> oldLines = splitLines(oldText);
+        List<String> newLines = splitLines(newText);
+        int prefix = 0;
+        int prefixLength = 0;
+        int common = Math.min(oldLines.size(), newLines.size());
+        while (prefix < common && oldLines.get(prefix).equals(newLines.get(prefix))) {
+            prefixLength += oldLines.get(prefix).length();
+            prefix++;
+        }
+        int suffix = 0;
+        common -= prefix;
+        while (suffix < common && oldLines.get(oldLines.size() - 1 - suffix)
+                .equals(newLines.get(newLines.size() - 1 - suffix))) {
+            suffix++;
+        }
+        List<String> a = oldLines.subList(prefix, oldLines.size() - suffix);
+        List<String> b = newLines.subList(prefix, newLines.size() - suffix);
+
+        int[] starts = new int[a.size() + 1];
+        starts[0] = offset + prefixLength;
+        for (int i = 0; i < a.size(); i++) {
+            starts[i + 1] = starts[i] + a.get(i).length();
+        }
+        int[][] matches = match(a, b);
+        if (matches == null) {
+            content.replace(starts[0], starts[a.size()] - starts[0], join(b, 0, b.size()));
+            return 1;
+        }
+        // Matches are ordered from the end, the gaps between them are added from the start so
+        // that the edits stay sorted.
+        MultiEdit edits = new MultiEdit();
+        int x = 0;
+        int y = 0;
+        for (int i = matches.length; i >= 0; i--) {
+            int matchX = i > 0 ? matches[i - 1][0] : a.size();
+            int matchY = i > 0 ? matches[i - 1][1] : b.size();
+            if (x < matchX || y < matchY) {
+                edits.replace(starts[x], starts[matchX] - starts[x], join(b, y, matchY));
+            }
+            x = matchX + 1;
+            y = matchY + 1;
+        }
+        content.replace(edits);
+        return edits.size();
+    }
+
+    /**
+     * Splits <code>text</code> into lines, keeping the line delimiters <tt>\n</tt>,
+     * <tt>\r\n</tt> and <tt>\r</tt>. The last line is empty if the text ends with a delimiter.
+     */
+    static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                i++;
+            } else if (c != '\r' && c != '\n') {
+                continue;
+            }
+            lines.add(text.substring(start, i + 1));
+            start = i + 1;
+        }
+        lines.add(text.substring(start));
+        return lines;
+    }
+
+    private static String join(List<String> lines, int from, int to) {
+        StringBuilder result = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            result.append(lines.get(i));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Finds a longest common subsequence of <code>a</code> and <code>b</code>.
+     * @return pairs of matching indices, from the last to the first one, or null if more than
+     *      {@link #MAX_EDITS} insertions and deletions are needed.
+     */
+    private static int[][] match(List<String> a, List<String> b) {
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        int[] x = toIds(a, ids);
+        int[] y = toIds(b, ids);
+        int n = x.length;
+        int m = y.length;
+        int max = Math.min(n + m, MAX_EDITS);
+        int shift = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<int[]>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(v.clone());
+            for (int k = -d; k <= d; k += 2) {
+                int i;
+                if (k == -d || (k != d && v[shift + k - 1] < v[shift + k + 1])) {
+                    i = v[shift + k + 1];
+                } else {
+                    i = v[shift + k - 1] + 1;
+                }
+                int j = i - k;
+                while (i < n && j < m && x[i] == y[j]) {
+                    i++;
+                    j++;
+                }
+                v[shift + k] = i;
+                if (i >= n && j >= m) {
+                    return backtrack(trace, shift, n, m);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int[][] backtrack(List<int[]> trace, int shift, int n, int m) {
+        List<int[]> matches = new ArrayList<int[]>();
+        int i = n;
+        int j = m;
+        for (int d = trace.size() - 1; d >= 0; d--) {
+            int[] v = trace.get(d);
+            int k = i - j;
+            int previousK;
+            if (d == 0) {
+                previousK = 0;
+            } else if (k == -d || (k != d && v[shift + k - 1] < v[shift + k + 1])) {
+                previousK = k + 1;
+            } else {
+                previousK = k - 1;
+            }
+            int previousI = d == 0 ? 0 : v[shift + previousK];
+            int previousJ = previousI - previousK;
+            while (i > previousI && j > previousJ) {
+                i--;
+                j--;
+                matches.add(new int[] { i, j });
+            }
+            i = previousI;
+            j = previousJ;
+        }
+        return matches.toArray(new int[matches.size()][]);
+    }
+
+    private static int[] toIds(List<String> lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            String line = lines.get(i);
+            Integer id = ids.get(line);
+            if (id == null) {
+                id = ids.size();
+                ids.put(line, id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+}
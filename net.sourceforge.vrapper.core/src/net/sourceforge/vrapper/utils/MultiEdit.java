@@ -0,0 +1,136 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Replacements in a {@link TextContent} which are applied together as one change by
+ * {@link TextContent#replace(MultiEdit)}, e.g. the changes of a blockwise operation on every line
+ * of the block.
+ *
+ * <p>All offsets refer to the text before any of the edits is applied, so an operation can read
+ * the text and collect its edits line by line without keeping track of the earlier ones. Edits
+ * must not overlap. Insertions at the same offset end up in the order they were added, and before
+ * a replacement starting there.
+ */
+public class MultiEdit {
+
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private final List<String> texts = new ArrayList<String>();
+    private int size;
+
+    /**
+     * Adds a replacement of <code>length</code> characters at <code>offset</code>.
+     * @throws IllegalArgumentException if it overlaps an edit added before.
+     */
+    public MultiEdit replace(int offset, int length, String text) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Bad edit at " + offset + " (" + length + " chars)");
+        }
+        // Keep the edits sorted, after the insertions at the same offset.
+        int index = size;
+        while (index > 0 && (offsets[index - 1] > offset
+                || (offsets[index - 1] == offset && lengths[index - 1] > 0))) {
+            index--;
+        }
+        if ((index > 0 && offsets[index - 1] + lengths[index - 1] > offset)
+                || (index < size && offset + length > offsets[index])
+                || (index < size && length > 0 && offsets[index] == offset)) {
+            throw new IllegalArgumentException("Edit at " + offset + " (" + length
+                    + " chars) overlaps another one");
+        }
+        if (size == offsets.length) {
+            int[] grownOffsets = new int[size * 2];
+            int[] grownLengths = new int[size * 2];
+            System.arraycopy(offsets, 0, grownOffsets, 0, size);
+            System.arraycopy(lengths, 0, grownLengths, 0, size);
+            offsets = grownOffsets;
+            lengths = grownLengths;
+        }
+        System.arraycopy(offsets, index, offsets, index + 1, size - index);
+        System.arraycopy(lengths, index, lengths, index + 1, size - index);
+        offsets[index] = offset;
+        lengths[index] = length;
+        texts.add(index, text);
+        size++;
+        return this;
+    }
+
+    /** Adds an insertion of <code>text</code> at <code>offset</code>. */
+    public MultiEdit insert(int offset, String text) {
+        return replace(offset, 0, text);
+    }
+
+    /** @return number of edits. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return offset of edit <code>index</code>, edits are sorted by offset. */
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    /** @return number of characters replaced by edit <code>index</code>. */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /** @return replacement text of edit <code>index</code>. */
+    public String getText(int index) {
+        return texts.get(index);
+    }
+
+    /** @return offset of the replacement text of edit <code>index</code> after all edits. */
+    public int getNewOffset(int index) {
+        int offset = offsets[index];
+        for (int i = 0; i < index; i++) {
+            offset += texts.get(i).length() - lengths[i];
+        }
+        return offset;
+    }
+
+    /** @return start of the first edit. */
+    public int getStart() {
+        return size == 0 ? 0 : offsets[0];
+    }
+
+    /** @return end of the last edit in the original text. */
+    public int getEnd() {
+        return size == 0 ? 0 : offsets[size - 1] + lengths[size - 1];
+    }
+
+    /**
+     * @return the text which replaces <code>[getStart(), getEnd())</code> of <code>content</code>
+     *      when all edits are applied. Lets a content apply the edits as a single replacement.
+     */
+    public String getReplacement(TextContent content) {
+        StringBuilder result = new StringBuilder();
+        int position = getStart();
+        for (int i = 0; i < size; i++) {
+            if (offsets[i] > position) {
+                result.append(content.getText(position, offsets[i] - position));
+            }
+            result.append(texts.get(i));
+            position = offsets[i] + lengths[i];
+        }
+        return result.toString();
+    }
+
+    /**
+     * Applies the edits with one {@link TextContent#replace(int, int, String)} call each, from the
+     * last one to the first. For contents which can't do better.
+     */
+    public void applyEach(TextContent content) {
+        for (int i = size - 1; i >= 0; i--) {
+            content.replace(offsets[i], lengths[i], texts.get(i));
+        }
+    }
+}
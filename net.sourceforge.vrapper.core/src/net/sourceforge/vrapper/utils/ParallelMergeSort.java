@@ -0,0 +1,101 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stable sort which sorts chunks of large arrays on several threads and merges them afterwards.
+ * Small arrays, or a machine with a single processor, use {@link Arrays#sort(Object[], Comparator)}.
+ */
+public class ParallelMergeSort {
+
+    /** Arrays shorter than this are sorted on the calling thread. */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private ParallelMergeSort() { /* NOP */ }
+
+    public static <T> void sort(final T[] array, final Comparator<? super T> comparator) {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                array.length / (PARALLEL_THRESHOLD / 2));
+        if (array.length < PARALLEL_THRESHOLD || threads < 2) {
+            Arrays.sort(array, comparator);
+            return;
+        }
+
+        final int[] bounds = new int[threads + 1];
+        for (int i = 0; i <= threads; i++) {
+            bounds[i] = (int) ((long) array.length * i / threads);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> chunks = new ArrayList<Future<?>>(threads);
+            for (int i = 0; i < threads; i++) {
+                final int from = bounds[i];
+                final int to = bounds[i + 1];
+                chunks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        Arrays.sort(array, from, to, comparator);
+                    }
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sort interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sort failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        // Merge neighbouring chunks until a single one is left.
+        T[] source = array;
+        T[] target = Arrays.copyOf(array, array.length);
+        int[] runs = bounds;
+        while (runs.length > 2) {
+            int[] merged = new int[runs.length / 2 + 1];
+            int m = 0;
+            int i = 0;
+            for (; i + 2 < runs.length; i += 2) {
+                merge(source, target, runs[i], runs[i + 1], runs[i + 2], comparator);
+                merged[m++] = runs[i];
+            }
+            if (i + 1 < runs.length) {
+                // Odd number of runs, copy the last one as it is.
+                System.arraycopy(source, runs[i], target, runs[i], runs[i + 1] - runs[i]);
+                merged[m++] = runs[i];
+            }
+            merged[m++] = array.length;
+            runs = Arrays.copyOf(merged, m);
+            T[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != array) {
+            System.arraycopy(source, 0, array, 0, array.length);
+        }
+    }
+
+    /** Merges [from, middle) and [middle, to) of source into target. Ties take the left element. */
+    private static <T> void merge(T[] source, T[] target, int from, int middle, int to,
+            Comparator<? super T> comparator) {
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && comparator.compare(source[left], source[right]) <= 0)) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+}
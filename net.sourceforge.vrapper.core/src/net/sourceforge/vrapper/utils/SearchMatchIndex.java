@@ -0,0 +1,499 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Index of the matches of a search pattern in a buffer, used by <tt>n</tt>, <tt>N</tt>,
+ * <tt>*</tt>, <tt>#</tt> and <tt>gn</tt> to go from match to match and to count the matches
+ * without searching the text again for every step.
+ *
+ * <p>A match is found at every offset where {@link Matcher#find(int)} finds one, so it knows the
+ * same matches as a forward search started from each offset. The index remembers which ranges of
+ * the text have been searched together with the matches starting in them. A lookup only searches
+ * the ranges it needs which haven't been searched yet, so going through all matches searches the
+ * text once. Counting the matches searches the rest of the text with a time limit; what has been
+ * searched is kept, so a later count continues from there.
+ *
+ * <p>Each {@link Matcher#find()} only looks for match starts in a region of {@link #CHUNK_SIZE}
+ * characters plus {@link #MAX_MATCH_LENGTH} for a match to end in, so a single search doesn't run
+ * much past the deadline on a large text. A failed search marks the chunk as searched, so matches
+ * longer than {@link #MAX_MATCH_LENGTH} may be missed there. If a match was found but the matcher
+ * hit the end of the region, the match might be longer with more text and the search is repeated
+ * with a region growing up to {@link #MAX_OVERHANG} characters past the chunk; a match reaching
+ * further is cut off.
+ *
+ * <p>The index is owned by a {@link TextContent} which implements {@link Provider} and must call
+ * {@link #textChanged(int, int, int)} after every change of its text. A change forgets the matches
+ * on the changed lines and those reaching into the change, and marks these lines as not searched;
+ * matches elsewhere are moved. This is only correct for patterns whose matches lie within a line
+ * and only look at the line terminators around it, see {@link #isLineLocal(Pattern)}. For other
+ * patterns, e.g. with <tt>\s</tt> or a look-ahead, a change drops the index. Lookups with another
+ * pattern drop the index too.
+ */
+public class SearchMatchIndex {
+
+    /**
+     * Implemented by text contents which keep a search match index up to date. Decorators return
+     * the index of the decorated content, which may be null.
+     */
+    public interface Provider {
+        SearchMatchIndex getSearchMatchIndex();
+    }
+
+    /** Returned by lookups with a deadline if it passed before the match was known. */
+    public static final int[] NOT_DONE = new int[0];
+
+    /** Number of characters in which a single search looks for match starts. */
+    private static final int CHUNK_SIZE = 16 * 1024;
+    /** Number of characters a match may first extend past the chunk in which it starts. */
+    private static final int MAX_MATCH_LENGTH = 1024;
+    /** Number of characters a found match may at most extend past the chunk in which it starts. */
+    private static final int MAX_OVERHANG = 64 * MAX_MATCH_LENGTH;
+    /** Size of the range searched first when looking for a match before an offset. */
+    private static final int BACKWARD_WINDOW = 4096;
+    private static final int READ_WINDOW_SIZE = 4096;
+
+    /** Flags and text of the indexed pattern, null if nothing is indexed. */
+    private String patternKey;
+    /** Whether the indexed pattern is line-local, so that changes can be handled line by line. */
+    private boolean lineLocal;
+    private int indexedLength;
+    /** Start and end offsets of the known matches, sorted by start. */
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int size;
+    private int maxMatchLength;
+    /** Searched ranges: all matches starting in [key, value] are known. */
+    private TreeMap<Integer, Integer> searched = new TreeMap<Integer, Integer>();
+    /** Pattern and text of the last request, and a matcher over them created when needed. */
+    private Pattern pattern;
+    private TextContent content;
+    private Matcher matcher;
+
+    /** @return the index of <code>content</code>, or null if it doesn't keep one. */
+    public static SearchMatchIndex of(TextContent content) {
+        return content instanceof Provider ? ((Provider) content).getSearchMatchIndex() : null;
+    }
+
+    /**
+     * Must be called by the owner after its text changed, once the owner returns the new text.
+     * @param offset start of the change.
+     * @param removedLength number of characters removed at <code>offset</code>.
+     * @param insertedLength number of characters inserted at <code>offset</code>.
+     */
+    public synchronized void textChanged(int offset, int removedLength, int insertedLength) {
+        if (patternKey == null) {
+            return;
+        }
+        int delta = insertedLength - removedLength;
+        if ( ! lineLocal || offset + removedLength > indexedLength
+                || content.getTextLength() != indexedLength + delta) {
+            clear();
+            return;
+        }
+        // Old offsets of the lines to search again.
+        int low = content.getLineInformationOfOffset(offset).getBeginOffset();
+        int high = content.getLineInformationOfOffset(offset + insertedLength).getEndOffset() - delta;
+        int reach = low;
+        for (int i = firstAtOrAfter(reach) - 1; i >= 0 && starts[i] >= reach - maxMatchLength; i--) {
+            if (ends[i] >= reach) {
+                low = starts[i];
+            }
+        }
+        int from = firstAtOrAfter(low);
+        int to = firstAtOrAfter(high + 1);
+        System.arraycopy(starts, to, starts, from, size - to);
+        System.arraycopy(ends, to, ends, from, size - to);
+        size -= to - from;
+        for (int i = from; i < size; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+        }
+        TreeMap<Integer, Integer> moved = new TreeMap<Integer, Integer>();
+        for (Entry<Integer, Integer> range : searched.entrySet()) {
+            int start = range.getKey();
+            int end = range.getValue();
+            if (end < low) {
+                moved.put(start, end);
+            } else if (start > high) {
+                moved.put(start + delta, end + delta);
+            } else {
+                if (start < low) {
+                    moved.put(start, low - 1);
+                }
+                if (end > high) {
+                    moved.put(high + 1 + delta, end + delta);
+                }
+            }
+        }
+        searched = moved;
+        indexedLength += delta;
+        matcher = null;
+    }
+
+    /** Drops all information, e.g. when the whole text has been replaced. */
+    public synchronized void clear() {
+        patternKey = null;
+        indexedLength = 0;
+        size = 0;
+        maxMatchLength = 0;
+        searched.clear();
+        matcher = null;
+    }
+
+    /**
+     * @param content the text of the index' owner.
+     * @return start and end offset of the first match of <code>pattern</code> starting at or
+     *      after <code>offset</code>, null if there is none.
+     */
+    public synchronized int[] findNext(TextContent content, Pattern pattern, int offset) {
+        return findNext(content, pattern, offset, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #findNext(TextContent, Pattern, int)}, but stops searching when the deadline
+     * has passed. What has been searched is kept, so calling it again continues from there.
+     * @param deadline value of {@link System#nanoTime()} after which searching stops.
+     * @return the match, null if there is none or {@link #NOT_DONE} if the deadline has passed.
+     */
+    public synchronized int[] findNext(TextContent content, Pattern pattern, int offset, long deadline) {
+        prepare(content, pattern);
+        int position = Math.max(0, offset);
+        while (position <= indexedLength) {
+            Entry<Integer, Integer> range = searched.floorEntry(position);
+            if (range != null && range.getValue() >= position) {
+                int i = firstAtOrAfter(position);
+                if (i < size && starts[i] <= range.getValue()) {
+                    return new int[] { starts[i], ends[i] };
+                }
+                position = range.getValue() + 1;
+            } else if (System.nanoTime() > deadline) {
+                return NOT_DONE;
+            } else {
+                search(position, 1, deadline);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param content the text of the index' owner.
+     * @return start and end offset of the last match of <code>pattern</code> starting at or
+     *      before <code>offset</code>, null if there is none.
+     */
+    public synchronized int[] findPrevious(TextContent content, Pattern pattern, int offset) {
+        return findPrevious(content, pattern, offset, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #findPrevious(TextContent, Pattern, int)}, but stops searching when the
+     * deadline has passed. What has been searched is kept, so calling it again continues from there.
+     * @param deadline value of {@link System#nanoTime()} after which searching stops.
+     * @return the match, null if there is none or {@link #NOT_DONE} if the deadline has passed.
+     */
+    public synchronized int[] findPrevious(TextContent content, Pattern pattern, int offset, long deadline) {
+        prepare(content, pattern);
+        int position = Math.min(offset, indexedLength);
+        int window = BACKWARD_WINDOW;
+        while (position >= 0) {
+            Entry<Integer, Integer> range = searched.floorEntry(position);
+            if (range != null && range.getValue() >= position) {
+                int i = firstAtOrAfter(position + 1) - 1;
+                if (i >= 0 && starts[i] >= range.getKey()) {
+                    return new int[] { starts[i], ends[i] };
+                }
+                position = range.getKey() - 1;
+            } else {
+                // Patterns can only be searched forward, search a growing range before position.
+                if ( ! fill(Math.max(0, position - window + 1), position, deadline)) {
+                    return NOT_DONE;
+                }
+                window *= 2;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param content the text of the index' owner.
+     * @return start and end offset of the last match of <code>pattern</code> starting at or
+     *      before <code>offset</code> if it contains <code>offset</code>, null otherwise.
+     */
+    public synchronized int[] findMatchAt(TextContent content, Pattern pattern, int offset) {
+        int[] match = findPrevious(content, pattern, offset);
+        return match != null && match[1] > offset ? match : null;
+    }
+
+    /**
+     * Counts the matches of <code>pattern</code>, searching the text until the deadline.
+     * @param content the text of the index' owner.
+     * @param matchStart start offset of the current match.
+     * @param deadline value of {@link System#nanoTime()} after which searching stops.
+     * @return the number of the current match, counting from 1, and the total number of matches.
+     *      Either is -1 if the text couldn't be searched far enough in time.
+     */
+    public synchronized int[] count(TextContent content, Pattern pattern, int matchStart, long deadline) {
+        prepare(content, pattern);
+        int number = -1;
+        int total = -1;
+        if (fill(0, matchStart, deadline)) {
+            number = firstAtOrAfter(matchStart + 1);
+            if (fill(matchStart, indexedLength, deadline)) {
+                total = size;
+            }
+        }
+        return new int[] { number, total };
+    }
+
+    /**
+     * @return whether the index holds the matches of <code>pattern</code>. Background lookups
+     *      use this to stop once another lookup took over the index, instead of dropping what
+     *      the other one found.
+     */
+    public synchronized boolean isIndexing(Pattern pattern) {
+        return keyOf(pattern).equals(patternKey);
+    }
+
+    private static String keyOf(Pattern pattern) {
+        return pattern.flags() + "/" + pattern.pattern();
+    }
+
+    /** Drops the index if it is for another pattern or text. */
+    private void prepare(TextContent content, Pattern pattern) {
+        String key = keyOf(pattern);
+        int length = content.getTextLength();
+        if ( ! key.equals(patternKey) || length != indexedLength) {
+            clear();
+            patternKey = key;
+            lineLocal = isLineLocal(pattern);
+            indexedLength = length;
+        }
+        if (content != this.content) {
+            this.content = content;
+            matcher = null;
+        }
+        this.pattern = pattern;
+    }
+
+    /**
+     * @return whether every match of <code>pattern</code> lies within a line and only depends on
+     *      the text of this line and the line terminators around it. Look-arounds are only
+     *      allowed on a single character class, which is what <tt>\&lt;</tt> and <tt>\&gt;</tt>
+     *      are translated to. Anything which might match a line terminator is refused.
+     */
+    static boolean isLineLocal(Pattern pattern) {
+        String text = pattern.pattern();
+        if ((pattern.flags() & Pattern.DOTALL) != 0) {
+            return false;
+        } else if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return text.indexOf('\n') < 0 && text.indexOf('\r') < 0;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return false;
+            } else if (c == '\\' && i + 1 < text.length()) {
+                i++;
+                // Escapes which match or may produce a line terminator.
+                if ("nrRsWDvHXxuc0pPNQ".indexOf(text.charAt(i)) >= 0) {
+                    return false;
+                }
+            } else if (c == '[' && text.startsWith("[^", i)) {
+                return false;
+            } else if (text.startsWith("(?", i) && ! text.startsWith("(?:", i)
+                    && ! isSingleCharacterLookaround(text, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return whether a look-around on one character class starts at <code>index</code>. */
+    private static boolean isSingleCharacterLookaround(String text, int index) {
+        int classStart;
+        if (text.startsWith("(?<![", index) || text.startsWith("(?<=[", index)) {
+            classStart = index + 4;
+        } else if (text.startsWith("(?![", index) || text.startsWith("(?=[", index)) {
+            classStart = index + 3;
+        } else {
+            return false;
+        }
+        for (int i = classStart + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                return false;
+            } else if (c == ']') {
+                return text.startsWith(")", i + 1);
+            }
+        }
+        return false;
+    }
+
+    private Matcher getMatcher() {
+        if (matcher == null) {
+            matcher = pattern.matcher(new TextContentCharSequence(content, READ_WINDOW_SIZE));
+            // Regions must give the same matches as searching the whole text.
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+        }
+        return matcher;
+    }
+
+    /**
+     * Searches all ranges between <code>from</code> and <code>to</code> which haven't been searched.
+     * @return whether they all have been searched before the deadline.
+     */
+    private boolean fill(int from, int to, long deadline) {
+        int position = from;
+        while (position <= to) {
+            Entry<Integer, Integer> range = searched.floorEntry(position);
+            if (range != null && range.getValue() >= position) {
+                position = range.getValue() + 1;
+            } else if (System.nanoTime() > deadline) {
+                return false;
+            } else {
+                position = search(position, Integer.MAX_VALUE, deadline);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches from <code>from</code>, which must not have been searched, up to the next searched
+     * range. Stops early after <code>maxMatches</code> matches or when the deadline has passed.
+     * @return the offset after the range which has been searched.
+     */
+    private int search(int from, int maxMatches, long deadline) {
+        Matcher matcher = getMatcher();
+        Integer nextSearched = searched.higherKey(from);
+        int gapEnd = nextSearched == null ? indexedLength : nextSearched - 1;
+        int insertAt = firstAtOrAfter(from);
+        int[] foundStarts = new int[Math.min(maxMatches, 16)];
+        int[] foundEnds = new int[foundStarts.length];
+        int found = 0;
+        int position = from;
+        int searchedTo = from - 1;
+        int beyondStart = -1;
+        int beyondEnd = -1;
+        while (position <= indexedLength) {
+            int chunkEnd = Math.min(indexedLength, position + CHUNK_SIZE);
+            int overhang = MAX_MATCH_LENGTH;
+            int regionEnd = Math.min(indexedLength, chunkEnd + overhang);
+            matcher.region(position, regionEnd);
+            boolean matched = matcher.find();
+            while (matched && matcher.hitEnd() && regionEnd < indexedLength
+                    && overhang < MAX_OVERHANG) {
+                // The match might be longer, or start earlier, with more text.
+                overhang *= 2;
+                regionEnd = Math.min(indexedLength, chunkEnd + overhang);
+                matcher.region(position, regionEnd);
+                matched = matcher.find();
+            }
+            if ( ! matched) {
+                // A failed search always hits the end, but more text can only add matches
+                // starting in the overhang or longer than it.
+                searchedTo = regionEnd == indexedLength ? indexedLength : chunkEnd;
+                if (searchedTo >= gapEnd || System.nanoTime() > deadline) {
+                    break;
+                }
+                position = searchedTo + 1;
+                continue;
+            }
+            int start = matcher.start();
+            if (start > gapEnd) {
+                // The match is known already unless it is in a later unsearched range.
+                searchedTo = start;
+                beyondStart = start;
+                beyondEnd = matcher.end();
+                break;
+            }
+            if (found == foundStarts.length) {
+                int[] grownStarts = new int[found * 2];
+                int[] grownEnds = new int[found * 2];
+                System.arraycopy(foundStarts, 0, grownStarts, 0, found);
+                System.arraycopy(foundEnds, 0, grownEnds, 0, found);
+                foundStarts = grownStarts;
+                foundEnds = grownEnds;
+            }
+            foundStarts[found] = start;
+            foundEnds[found] = matcher.end();
+            found++;
+            searchedTo = start;
+            position = start + 1;
+            if (found >= maxMatches || System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        insert(insertAt, foundStarts, foundEnds, found);
+        if (beyondStart >= 0) {
+            int i = firstAtOrAfter(beyondStart);
+            if (i == size || starts[i] != beyondStart) {
+                insert(i, new int[] { beyondStart }, new int[] { beyondEnd }, 1);
+            }
+        }
+        if (searchedTo >= from) {
+            addSearched(from, searchedTo);
+        }
+        return searchedTo + 1;
+    }
+
+    private void insert(int index, int[] newStarts, int[] newEnds, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (size + count > starts.length) {
+            int capacity = Math.max(size + count, starts.length * 2);
+            int[] grownStarts = new int[capacity];
+            int[] grownEnds = new int[capacity];
+            System.arraycopy(starts, 0, grownStarts, 0, size);
+            System.arraycopy(ends, 0, grownEnds, 0, size);
+            starts = grownStarts;
+            ends = grownEnds;
+        }
+        System.arraycopy(starts, index, starts, index + count, size - index);
+        System.arraycopy(ends, index, ends, index + count, size - index);
+        System.arraycopy(newStarts, 0, starts, index, count);
+        System.arraycopy(newEnds, 0, ends, index, count);
+        size += count;
+        for (int i = 0; i < count; i++) {
+            maxMatchLength = Math.max(maxMatchLength, newEnds[i] - newStarts[i]);
+        }
+    }
+
+    /** Marks [<code>start</code>, <code>end</code>] as searched, merging adjacent ranges. */
+    private void addSearched(int start, int end) {
+        Entry<Integer, Integer> before = searched.floorEntry(start);
+        if (before != null && before.getValue() >= start - 1) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Entry<Integer, Integer> next;
+        while ((next = searched.ceilingEntry(start)) != null && next.getKey() <= end + 1) {
+            end = Math.max(end, next.getValue());
+            searched.remove(next.getKey());
+        }
+        searched.put(start, end);
+    }
+
+    /** @return the index of the first known match starting at or after <code>offset</code>. */
+    private int firstAtOrAfter(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
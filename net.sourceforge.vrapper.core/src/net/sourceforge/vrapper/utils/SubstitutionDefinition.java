@@ -1,8 +1,8 @@
 package net.sourceforge.vrapper.utils;
 
-import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import net.sourceforge.vrapper.vim.Options;
 import net.sourceforge.vrapper.vim.register.RegisterManager;
 
 /**
@@ -72,20 +72,12 @@ public class SubstitutionDefinition {
         }
 		
 		//before attempting substitution, is this regex even valid?
+		//The actual 'iskeyword' value doesn't matter here, '\k' only has to translate to something.
 		try {
-		    Pattern.compile(find);
+		    VimRegexTranslator.INSTANCE.compile(find, Options.KEYWORDS.getDefaultValue(), true);
 		}
 		catch(PatternSyntaxException e) {
-		    //** UGLY HACK **
-            //Vim uses '\k' to insert the 'iskeyword' value into a regex.
-            //Unfortunately, Java's regex has reserved '\k' for named capturing groups.
-		    //If we hit an error about '\k' being used outside of capturing groups
-		    //just ignore it and pretend we passed the validation check.
-		    //Hopefully the user didn't have any *other* regex errors...
-
-		    if( ! e.getDescription().startsWith("\\k")) {
-                throw new IllegalArgumentException(e.getDescription());
-		    }
+		    throw new IllegalArgumentException(e.getDescription());
 		}
     }
 
@@ -0,0 +1,85 @@
+package net.sourceforge.vrapper.utils;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Read-only {@link CharSequence} view of a {@link TextContent}, meant for motions which scan the
+ * text one character at a time.
+ *
+ * <p>Characters are fetched from the underlying content in windows of a configurable size, so
+ * scanning the text forward or backward only costs one {@link TextContent#getText(int, int)} call
+ * per window instead of one per character. The window is moved in the direction of the last
+ * access, keeping a few characters of the opposite side so that look-arounds (newline detection,
+ * regex look-behind) don't cause it to be refetched.
+ *
+ * <p>Indices are model offsets. The length is taken when the view is created: the view must not
+ * be used anymore once the content has been modified.
+ */
+public class TextContentCharSequence implements CharSequence {
+
+    public static final int DEFAULT_WINDOW_SIZE = 256;
+
+    private final TextContent content;
+    private final int length;
+    private final int windowSize;
+    /** Number of characters kept behind the access direction when moving the window. */
+    private final int slack;
+    private String window = "";
+    private int windowStart;
+
+    public TextContentCharSequence(TextContent content) {
+        this(content, DEFAULT_WINDOW_SIZE);
+    }
+
+    public TextContentCharSequence(TextContent content, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        this.content = content;
+        this.length = content.getTextLength();
+        this.windowSize = windowSize;
+        this.slack = Math.min(4, windowSize / 4);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        int windowIndex = index - windowStart;
+        if (windowIndex < 0 || windowIndex >= window.length()) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " not in [0, " + length + ")");
+            }
+            if (index < windowStart) {
+                // Scanning backward, let the window end just after the requested character.
+                int end = Math.min(length, index + 1 + slack);
+                fill(Math.max(0, end - windowSize));
+            } else {
+                fill(Math.max(0, index - slack));
+            }
+            windowIndex = index - windowStart;
+        }
+        return window.charAt(windowIndex);
+    }
+
+    private void fill(int start) {
+        windowStart = start;
+        window = content.getText(start, Math.min(windowSize, length - start));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start >= windowStart && end <= windowStart + window.length()) {
+            return window.substring(start - windowStart, end - windowStart);
+        }
+        return content.getText(start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return content.getText(0, length);
+    }
+}
@@ -13,7 +13,8 @@ import net.sourceforge.vrapper.vim.Options;
  * Makes a {@link TextContent} ignore changes depending on the current value of the
  * {@link Options#MODIFIABLE} setting.
  */
-public class UnmodifiableTextContentDecorator implements TextContent {
+public class UnmodifiableTextContentDecorator implements TextContent, BracketIndex.Provider,
+        XmlTagIndex.Provider, SearchMatchIndex.Provider, DocumentSnapshot.Source {
     
     private TextContent textContent;
     private boolean modifiable = true;
@@ -57,6 +58,13 @@ public class UnmodifiableTextContentDecorator implements TextContent {
         }
     }
 
+    @Override
+    public void replace(MultiEdit edits) {
+        if (allowChanges()) {
+            textContent.replace(edits);
+        }
+    }
+
     @Override
     public void smartInsert(int index, String s) {
         if (allowChanges()) {
@@ -91,6 +99,26 @@ public class UnmodifiableTextContentDecorator implements TextContent {
         return textContent.getSpace();
     }
 
+    @Override
+    public BracketIndex getBracketIndex() {
+        return BracketIndex.of(textContent);
+    }
+
+    @Override
+    public XmlTagIndex getXmlTagIndex() {
+        return XmlTagIndex.of(textContent);
+    }
+
+    @Override
+    public SearchMatchIndex getSearchMatchIndex() {
+        return SearchMatchIndex.of(textContent);
+    }
+
+    @Override
+    public long getModificationStamp() {
+        return DocumentSnapshot.stampOf(textContent);
+    }
+
     protected boolean allowChanges() {
         if (modifiable && fileService.isEditable() && fileService.checkModifiable()) {
             return true;
@@ -0,0 +1,127 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Translates Vim regex syntax into Java regex syntax and caches the compiled patterns.
+ *
+ * <p>Searching, highlighting, substitutions and <tt>:g</tt> all translate the same few patterns
+ * over and over (<tt>n</tt>, <tt>*</tt> and highlighting on every keypress), so both the
+ * translated string and the compiled {@link Pattern} are kept in a bounded LRU cache keyed by the
+ * pattern, the <tt>iskeyword</tt> value and the case sensitivity.
+ *
+ * <p>This is the single place where Vim regex syntax is converted. Supported so far:
+ * <ul>
+ *   <li><tt>\k</tt>: a character of the 'iskeyword' setting</li>
+ *   <li><tt>\&lt;</tt> and <tt>\&gt;</tt>: word boundaries according to 'iskeyword'</li>
+ *   <li><tt>\R</tt>: any line delimiter, like Eclipse's find/replace</li>
+ * </ul>
+ * (Feature pending... add support for 'magic' and 'very magic')
+ */
+public class VimRegexTranslator {
+
+    public static final VimRegexTranslator INSTANCE = new VimRegexTranslator(64);
+
+    private final Map<String, String> translations;
+    private final Map<String, Pattern> patterns;
+    private int hits;
+    private int misses;
+
+    public VimRegexTranslator(final int capacity) {
+        translations = new LruMap<String>(capacity);
+        patterns = new LruMap<Pattern>(capacity);
+    }
+
+    /**
+     * Converts a Vim regex to Java syntax.
+     * @param vimPattern pattern as typed by the user.
+     * @param iskeyword value of the 'iskeyword' option used for <tt>\k</tt>, <tt>\&lt;</tt> and
+     *      <tt>\&gt;</tt>.
+     */
+    public synchronized String translate(String vimPattern, String iskeyword) {
+        String key = iskeyword + '\0' + vimPattern;
+        String result = translations.get(key);
+        if (result == null) {
+            result = convert(vimPattern, iskeyword);
+            translations.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the translated and compiled form of a Vim regex, with the same flags Eclipse uses
+     * for regex searches in a document (<tt>^</tt> and <tt>$</tt> match at line boundaries).
+     * @throws PatternSyntaxException if the translated pattern is invalid.
+     */
+    public synchronized Pattern compile(String vimPattern, String iskeyword, boolean caseSensitive) {
+        String key = (caseSensitive ? 'I' : 'i') + iskeyword + '\0' + vimPattern;
+        Pattern result = patterns.get(key);
+        if (result == null) {
+            misses++;
+            int flags = Pattern.MULTILINE;
+            if ( ! caseSensitive) {
+                flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+            }
+            result = Pattern.compile(translate(vimPattern, iskeyword), flags);
+            patterns.put(key, result);
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /** @return number of {@link #compile(String, String, boolean)} calls answered from the cache. */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /** @return number of {@link #compile(String, String, boolean)} calls which had to compile. */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        translations.clear();
+        patterns.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    private static String convert(String keyword, String boundaries) {
+        //'\k' inserts the character class of the 'iskeyword' setting
+        keyword = keyword.replaceAll("\\\\k", "["+boundaries+"]");
+
+        //In Vim, '\<' and '\>' is the regex for word boundaries. We need to
+        //replace this with valid regex for the Java regex engine.
+        //We *could* just use '\b' for the Java equivalent 'word boundaries'
+        //regex flag but we need to use the 'iskeyword' setting in case
+        //it doesn't match any default word boundary behavior.
+
+        //using look-aheads and look-behinds to make sure we don't select
+        //the word boundary as part of the match
+        keyword = keyword.replaceAll("\\\\<", "(?<!["+boundaries+"])");
+        keyword = keyword.replaceAll("\\\\>", "(?!["+boundaries+"])");
+
+        //'\R' matches any line delimiter, as in Eclipse's find/replace, but only
+        //if it is preceded by zero or an even number of backslashes
+        return keyword.replaceAll("((^|[^\\\\])(\\\\\\\\)*)(\\\\R)", "$1(?>\\\\r\\\\n?|\\\\n)");
+    }
+
+    private static class LruMap<V> extends LinkedHashMap<String, V> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        public LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
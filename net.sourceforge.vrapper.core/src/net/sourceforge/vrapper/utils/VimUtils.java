@@ -8,6 +8,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import net.sourceforge.vrapper.keymap.KeyStroke;
 import net.sourceforge.vrapper.keymap.KeyStroke.Modifier;
@@ -34,6 +35,15 @@ public class VimUtils {
 
     public static final Pattern COMPILED_PATTERN_DELIM_PATTERN = Pattern.compile(VimConstants.PATTERN_DELIM_PATTERN);
 
+    /**
+     * Array copy of {@link VimConstants#NEWLINE}, iterating over it doesn't allocate. Built from
+     * {@link NewLine} because VimConstants needs this class to initialize its own constants.
+     */
+    private static final String[] NEWLINES = createNewlines();
+
+    /** Keyword class used to find WORDs, which end at the nearest whitespace. */
+    private static final KeywordClass NON_WHITESPACE = new KeywordClass("\\S");
+
     /**
      * This static variable shouldn't be permanently used, it's only here to
      * have a trigger value for conditional breakpoints.
@@ -139,13 +149,13 @@ public class VimUtils {
         int max = line.getEndOffset();
         int first = -1;
         int last = -1;
-        String s;
         boolean found = false;
-        String keywords = wholeWord ? "\\S" : editorAdaptor.getConfiguration().get(Options.KEYWORDS);
+        KeywordClass keywords = wholeWord ? NON_WHITESPACE : editorAdaptor.getConfiguration().getKeywordClass();
+        // Fetch the line once instead of requesting every character separately.
+        String lineText = p.getText(min, max - min);
 
         if (index < max) {
-            s = p.getText(index, 1);
-            if (Utils.characterType(s.charAt(0), keywords) == Utils.WORD) {
+            if (Utils.characterType(lineText.charAt(index - min), keywords) == Utils.WORD) {
                 found = true;
                 first = index;
                 last = index;
@@ -153,8 +163,7 @@ public class VimUtils {
         }
         while (index < max-1) {
             index += 1;
-            s = p.getText(index, 1);
-            if(Utils.characterType(s.charAt(0), keywords) == Utils.WORD) {
+            if(Utils.characterType(lineText.charAt(index - min), keywords) == Utils.WORD) {
                 last = index;
                 if(!found) {
                     first = index;
@@ -168,14 +177,13 @@ public class VimUtils {
             index = first;
             while (index > min) {
                 index -= 1;
-                s = p.getText(index, 1);
-                if(Utils.characterType(s.charAt(0), keywords) == Utils.WORD) {
+                if(Utils.characterType(lineText.charAt(index - min), keywords) == Utils.WORD) {
                     first = index;
                 } else {
                     break;
                 }
             }
-            word = p.getText(first, last-first+1);
+            word = lineText.substring(first - min, last + 1 - min);
         }
         return word;
     }
@@ -215,6 +223,56 @@ public class VimUtils {
     	return nlLen;
     }
 
+    private static String[] createNewlines() {
+        Set<String> newlines = new HashSet<String>();
+        for (NewLine newline : NewLine.values()) {
+            newlines.add(newline.nl);
+        }
+        return newlines.toArray(new String[newlines.size()]);
+    }
+
+    /**
+     * Returns the length of the longest newline starting at <code>index</code> in the given
+     * sequence, or 0 if there is none. Unlike {@link #startsWithNewLine(String)} this doesn't need
+     * a substring.
+     */
+    public static int startsWithNewLine(CharSequence s, int index) {
+        int nlLen = 0;
+        for (String newline : NEWLINES) {
+            if (newline.length() > nlLen && regionMatches(s, index, newline)) {
+                nlLen = newline.length();
+            }
+        }
+        return nlLen;
+    }
+
+    /**
+     * Returns the length of the longest newline ending just before <code>end</code> in the given
+     * sequence, or 0 if there is none. Unlike {@link #endsWithNewLine(String)} this doesn't need
+     * a substring.
+     */
+    public static int endsWithNewLine(CharSequence s, int end) {
+        int nlLen = 0;
+        for (String newline : NEWLINES) {
+            if (newline.length() > nlLen && regionMatches(s, end - newline.length(), newline)) {
+                nlLen = newline.length();
+            }
+        }
+        return nlLen;
+    }
+
+    private static boolean regionMatches(CharSequence s, int index, String expected) {
+        if (index < 0 || index + expected.length() > s.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (s.charAt(index + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Replaces all combinations of newline characters in a string with another string.
      */
@@ -249,7 +307,15 @@ public class VimUtils {
      */
     public static boolean isLineBlank(final TextContent content, final int lineNo) {
         final LineInformation line = content.getLineInformation(lineNo);
-        return VimUtils.isBlank(content.getText(line.getBeginOffset(), line.getLength()));
+        // Scan in small windows, long lines starting with text don't need to be copied entirely.
+        final CharSequence text = new TextContentCharSequence(content, 64);
+        for (int i = line.getBeginOffset(); i < line.getEndOffset(); i++) {
+            // Same definition of whitespace as String.trim() used by isBlank.
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
     }
     
     /**
@@ -341,8 +407,29 @@ public class VimUtils {
     	return Collections.unmodifiableList(new ArrayList<T>(Arrays.asList(content)));
     }
 
+    /**
+     * Searches from <code>position</code>, continuing from the other end of the document if
+     * nothing is found and 'wrapscan' is set. Uses the {@link SearchMatchIndex} of the document
+     * if it has one.
+     */
     public static SearchResult wrapAroundSearch(final EditorAdaptor vim, final Search search,
             final Position position) {
+        final TextContent content = vim.getModelContent();
+        final SearchMatchIndex matchIndex = SearchMatchIndex.of(content);
+        final Pattern pattern = matchIndex == null ? null : getSearchPattern(vim, search);
+        if (pattern != null) {
+            int offset = position.getModelOffset();
+            int[] match = search.isBackward()
+                    ? matchIndex.findPrevious(content, pattern, offset)
+                    : matchIndex.findNext(content, pattern, offset);
+            if (match == null && vim.getConfiguration().get(Options.WRAP_SCAN)) {
+                match = search.isBackward()
+                        ? matchIndex.findPrevious(content, pattern, content.getTextLength())
+                        : matchIndex.findNext(content, pattern, 0);
+            }
+            return match == null ? new SearchResult(null, null)
+                    : new SearchResult(position.setModelOffset(match[0]), position.setModelOffset(match[1]));
+        }
         final SearchAndReplaceService searcher = vim.getSearchAndReplaceService();
         SearchResult result = searcher.find(search, position);
         if (!result.isFound() && vim.getConfiguration().get(Options.WRAP_SCAN)) {
@@ -354,6 +441,21 @@ public class VimUtils {
         return result;
     }
 
+    /**
+     * @return the pattern of <code>search</code> for looking it up in a {@link SearchMatchIndex},
+     *      or null if the search is invalid or can't be indexed.
+     */
+    public static Pattern getSearchPattern(EditorAdaptor vim, Search search) {
+        if (search.isSelectionSearch()) {
+            return null;
+        }
+        try {
+            return vim.getSearchAndReplaceService().getSearchPattern(search);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
     /**
      * Similar to wrapAroundSearch but only searches within last selection
      */
@@ -0,0 +1,294 @@
+package net.sourceforge.vrapper.utils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.vrapper.platform.TextContent;
+
+/**
+ * Index of the XML and HTML tags of a buffer, used by the tag text objects <tt>it</tt> and
+ * <tt>at</tt> and by the tag operations of the surround plugin.
+ *
+ * <p>Tags are recognized like {@link net.sourceforge.vrapper.vim.commands.XmlTagDelimitedText}
+ * always did, which tolerates malformed markup: a tag starts with a <tt>&lt;</tt> not followed by
+ * <tt>%</tt> or <tt>!</tt> and ends with the last <tt>&gt;</tt> not preceded by <tt>%</tt> or
+ * <tt>/</tt> which comes before the next <tt>&lt;</tt> (except for <tt>&lt;%</tt>), at most 1000
+ * characters later. Whether a character can start or end a tag only depends on the character and
+ * its neighbours, so the index keeps three sorted position lists: tag starts, tag ends and the
+ * <tt>&lt;</tt> characters which limit a tag. The lists are built with one pass over the text the
+ * first time they are needed. An edit only drops the positions around it, they are scanned again
+ * before the next search.
+ *
+ * <p>The index is owned by a {@link TextContent} which implements {@link Provider} and must call
+ * {@link #textChanged(int, int, int)} after every change of its text. Searches read the text from
+ * the content they are given.
+ */
+public class XmlTagIndex {
+
+    /**
+     * Implemented by text contents which keep a tag index up to date. Decorators return the index
+     * of the decorated content, which may be null.
+     */
+    public interface Provider {
+        XmlTagIndex getXmlTagIndex();
+    }
+
+    /** Maximum number of characters between the <tt>&lt;</tt> and <tt>&gt;</tt> of a tag. */
+    public static final int MAX_TAG_CONTENT = 1000;
+
+    /** Tag start: '&lt;' not followed by '%' or '!'. */
+    private PositionList starts;
+    /** Tag end: '&gt;' not preceded by '%' or '/'. */
+    private PositionList ends;
+    /** '&lt;' not followed by '%', a tag can't contain these. */
+    private PositionList barriers;
+    private int indexedLength;
+    /** Range which must be scanned again before the next search, -1 if there is none. */
+    private int dirtyStart = -1;
+    private int dirtyEnd;
+
+    /** A tag found in the text. */
+    public static class Tag {
+
+        private static final Pattern NAME_PATTERN = Pattern.compile("</?([^\\s]*).*?>", Pattern.DOTALL);
+
+        /** Offset of the '&lt;'. */
+        public final int start;
+        /** Offset after the '&gt;'. */
+        public final int end;
+        /** The text of the tag. */
+        public final String text;
+        private String name;
+
+        public Tag(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        public boolean isCloseTag() {
+            return text.startsWith("</");
+        }
+
+        /** @return the name of the tag, without attributes. */
+        public String getName() {
+            if (name == null) {
+                Matcher matcher = NAME_PATTERN.matcher(text);
+                name = matcher.find() ? matcher.group(1) : "";
+            }
+            return name;
+        }
+    }
+
+    /** @return the index of <code>content</code>, or null if it doesn't keep one. */
+    public static XmlTagIndex of(TextContent content) {
+        return content instanceof Provider ? ((Provider) content).getXmlTagIndex() : null;
+    }
+
+    /**
+     * Must be called by the owner after its text changed.
+     * @param offset start of the change.
+     * @param removedLength number of characters removed at <code>offset</code>.
+     * @param insertedLength number of characters inserted at <code>offset</code>.
+     */
+    public synchronized void textChanged(int offset, int removedLength, int insertedLength) {
+        if (starts == null) {
+            return;
+        }
+        if (offset + removedLength > indexedLength) {
+            clear();
+            return;
+        }
+        int delta = insertedLength - removedLength;
+        // A change affects the classification of the characters next to it.
+        int removedStart = Math.max(0, offset - 1);
+        int removedEnd = offset + removedLength + 1;
+        starts.remove(removedStart, removedEnd, delta);
+        ends.remove(removedStart, removedEnd, delta);
+        barriers.remove(removedStart, removedEnd, delta);
+        int start = removedStart;
+        int end = offset + insertedLength + 1;
+        if (dirtyStart >= 0) {
+            start = Math.min(start, mapOffset(dirtyStart, offset, removedLength, insertedLength, offset));
+            end = Math.max(end, mapOffset(dirtyEnd, offset, removedLength, insertedLength,
+                    offset + insertedLength));
+        }
+        indexedLength += delta;
+        dirtyStart = start;
+        dirtyEnd = Math.min(end, indexedLength);
+    }
+
+    /**
+     * @return where <code>position</code> is after a change.
+     * @param removedResult result if <code>position</code> was in the removed text.
+     */
+    private static int mapOffset(int position, int offset, int removedLength, int insertedLength,
+            int removedResult) {
+        if (position <= offset) {
+            return position;
+        } else if (position >= offset + removedLength) {
+            return position + insertedLength - removedLength;
+        }
+        return removedResult;
+    }
+
+    /** Drops all information, e.g. when the whole text has been replaced. */
+    public synchronized void clear() {
+        starts = null;
+        ends = null;
+        barriers = null;
+        dirtyStart = -1;
+    }
+
+    /**
+     * @return the first tag starting at or after <code>from</code>, or null if there is none.
+     */
+    public synchronized Tag findNext(TextContent content, int from) {
+        update(content);
+        for (int i = starts.lowerBound(from); i < starts.size; i++) {
+            int start = starts.values[i];
+            int end = findEnd(start, indexedLength);
+            if (end >= 0) {
+                return new Tag(start, end, content.getText(start, end - start));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the last tag which lies completely before <code>limit</code>, or null if there is
+     *      none.
+     */
+    public synchronized Tag findPrevious(TextContent content, int limit) {
+        update(content);
+        for (int i = starts.lowerBound(limit) - 1; i >= 0; i--) {
+            int start = starts.values[i];
+            int end = findEnd(start, limit);
+            if (end >= 0) {
+                return new Tag(start, end, content.getText(start, end - start));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the offset after the '&gt;' of the tag starting at <code>start</code> when the text
+     *      is cut at <code>limit</code>, or -1 if it isn't a tag.
+     */
+    private int findEnd(int start, int limit) {
+        int barrier = barriers.lowerBound(start + 1);
+        int bound = barrier < barriers.size ? barriers.values[barrier] : indexedLength;
+        bound = Math.min(Math.min(bound, limit), start + MAX_TAG_CONTENT + 2);
+        int last = ends.lowerBound(bound) - 1;
+        if (last >= 0 && ends.values[last] > start) {
+            return ends.values[last] + 1;
+        }
+        return -1;
+    }
+
+    private void update(TextContent content) {
+        int textLength = content.getTextLength();
+        if (starts == null || indexedLength != textLength) {
+            starts = new PositionList();
+            ends = new PositionList();
+            barriers = new PositionList();
+            indexedLength = textLength;
+            dirtyStart = -1;
+            scan(content, 0, textLength);
+        } else if (dirtyStart >= 0) {
+            starts.remove(dirtyStart, dirtyEnd, 0);
+            ends.remove(dirtyStart, dirtyEnd, 0);
+            barriers.remove(dirtyStart, dirtyEnd, 0);
+            scan(content, dirtyStart, dirtyEnd);
+            dirtyStart = -1;
+        }
+    }
+
+    /** Adds the positions in <code>[from, to)</code>, which must not be in the lists yet. */
+    private void scan(TextContent content, int from, int to) {
+        int textStart = Math.max(0, from - 1);
+        int textEnd = Math.min(indexedLength, to + 1);
+        String text = content.getText(textStart, textEnd - textStart);
+        PositionList foundStarts = new PositionList();
+        PositionList foundEnds = new PositionList();
+        PositionList foundBarriers = new PositionList();
+        for (int offset = from; offset < to; offset++) {
+            int i = offset - textStart;
+            char c = text.charAt(i);
+            if (c == '<') {
+                char next = i + 1 < text.length() ? text.charAt(i + 1) : '\0';
+                if (next != '%') {
+                    foundBarriers.add(offset);
+                    if (next != '!') {
+                        foundStarts.add(offset);
+                    }
+                }
+            } else if (c == '>') {
+                char previous = i > 0 ? text.charAt(i - 1) : '\0';
+                if (previous != '%' && previous != '/') {
+                    foundEnds.add(offset);
+                }
+            }
+        }
+        starts.insert(foundStarts);
+        ends.insert(foundEnds);
+        barriers.insert(foundBarriers);
+    }
+
+    /** Growable sorted array of offsets. */
+    private static class PositionList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+
+        /** @return the index of the first value which is not smaller than <code>offset</code>. */
+        int lowerBound(int offset) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] < offset) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /** Removes the values in <code>[from, to)</code> and adds <code>delta</code> to the later ones. */
+        void remove(int from, int to, int delta) {
+            int first = lowerBound(from);
+            int last = lowerBound(to);
+            System.arraycopy(values, last, values, first, size - last);
+            size -= last - first;
+            for (int i = first; i < size; i++) {
+                values[i] += delta;
+            }
+        }
+
+        /** Inserts <code>other</code>, whose values must all lie between two values of this list. */
+        void insert(PositionList other) {
+            if (other.size == 0) {
+                return;
+            }
+            int index = lowerBound(other.values[0]);
+            if (size + other.size > values.length) {
+                int[] grown = new int[Math.max(values.length * 2, size + other.size)];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            System.arraycopy(values, index, values, index + other.size, size - index);
+            System.arraycopy(other.values, 0, values, index, other.size);
+            size += other.size;
+        }
+    }
+}
@@ -2,11 +2,8 @@ package net.sourceforge.vrapper.vim;
 
 import static java.lang.String.format;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -20,6 +17,7 @@ import net.sourceforge.vrapper.keymap.KeyStroke;
 import net.sourceforge.vrapper.keymap.SpecialKey;
 import net.sourceforge.vrapper.keymap.vim.ConstructorWrappers;
 import net.sourceforge.vrapper.keymap.vim.SimpleKeyStroke;
+import net.sourceforge.vrapper.log.LatencyStatistics;
 import net.sourceforge.vrapper.log.VrapperLog;
 import net.sourceforge.vrapper.platform.BufferAndTabService;
 import net.sourceforge.vrapper.platform.CommandLineUI;
@@ -42,6 +40,7 @@ import net.sourceforge.vrapper.platform.UserInterfaceService;
 import net.sourceforge.vrapper.platform.ViewportService;
 import net.sourceforge.vrapper.platform.VrapperPlatformException;
 import net.sourceforge.vrapper.utils.ContentType;
+import net.sourceforge.vrapper.utils.DocumentSnapshot;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.Search;
@@ -70,6 +69,7 @@ import net.sourceforge.vrapper.vim.modes.TempNormalMode;
 import net.sourceforge.vrapper.vim.modes.TempVisualMode;
 import net.sourceforge.vrapper.vim.modes.VisualMode;
 import net.sourceforge.vrapper.vim.modes.commandline.CommandLineMode;
+import net.sourceforge.vrapper.vim.modes.commandline.CompiledConfigurationFile;
 import net.sourceforge.vrapper.vim.modes.commandline.CommandLineParser;
 import net.sourceforge.vrapper.vim.modes.commandline.HighlightSearch;
 import net.sourceforge.vrapper.vim.modes.commandline.MessageMode;
@@ -89,7 +89,8 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
     private static final String WINDOWS_CONFIG_FILE_NAME = "_vrapperrc";
     protected EditorMode currentMode;
     private final Map<String, EditorMode> modeMap = new HashMap<String, EditorMode>();
-    private final TextContent modelContent;
+    /** Model content, caching reads while a key is handled. */
+    private final DocumentSnapshot modelContent;
     private final TextContent viewContent;
     private final CursorService cursorService;
     private final SelectionService selectionService;
@@ -112,6 +113,7 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
     private final HighlightingService highlightingService;
     private MacroRecorder macroRecorder;
     private MacroPlayer macroPlayer;
+    private MacroCompiler macroCompiler;
     private Deque<String> macroStack;
     private Deque<String> mappingStack;
     boolean abortRecursion;
@@ -129,8 +131,8 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
             final boolean isActive, List<PlatformVrapperLifecycleListener> lifecycleListeners) {
         this.configuration = editor.getConfiguration();
         userInterfaceService = editor.getUserInterfaceService();
-        this.modelContent = new UnmodifiableTextContentDecorator(editor.getModelContent(),
-                                    configuration, editor);
+        this.modelContent = new DocumentSnapshot(new UnmodifiableTextContentDecorator(
+                                    editor.getModelContent(), configuration, editor));
         this.viewContent = new UnmodifiableTextContentDecorator(editor.getViewContent(),
                                     configuration, editor);
         this.cursorService = editor.getCursorService();
@@ -269,18 +271,18 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
             String overrideVrapperRcFile = System.getProperty("vrapper.vrapperrc");
             boolean alternateRCLoaded = false;
             
-            // sourceConfigurationFile method will resolve relatively to user home dir
+            // loadConfigurationFile method will resolve relatively to user home dir
             if (overrideVrapperRcFile != null && overrideVrapperRcFile.trim().length() > 0) {
-                alternateRCLoaded =  sourceConfigurationFile(overrideVrapperRcFile.trim());
+                alternateRCLoaded = configureFrom(overrideVrapperRcFile.trim());
                 if ( ! alternateRCLoaded) {
                     VrapperLog.error("Failed to load alternate vrapperrc [" + overrideVrapperRcFile + "]");
                 }
             }
             if ( ! alternateRCLoaded) {
                 String filename = CONFIG_FILE_NAME;
-                if ( ! sourceConfigurationFile(filename)) { //if no .vrapperrc, look for _vrapperrc
+                if ( ! configureFrom(filename)) { //if no .vrapperrc, look for _vrapperrc
                     filename = WINDOWS_CONFIG_FILE_NAME;
-                    if ( ! sourceConfigurationFile(filename)) {
+                    if ( ! configureFrom(filename)) {
                         VrapperLog.info("No " + CONFIG_FILE_NAME + " or " + WINDOWS_CONFIG_FILE_NAME
                                 + " found.");
                     }
@@ -291,8 +293,41 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
         }
     }
 
+    /**
+     * Configures this new editor from a cached configuration file, see
+     * {@link CompiledConfigurationFile#configure(EditorAdaptor, CommandLineParser)}.
+     * @return whether the file exists.
+     */
+    private boolean configureFrom(String filename) {
+        File config = resolveConfigurationFile(filename);
+        if ( ! config.exists()) {
+            return false;
+        }
+        CompiledConfigurationFile compiled = loadConfigurationFile(config);
+        if (compiled != null) {
+            CommandLineMode cmdLineMode = (CommandLineMode) modeMap.get(CommandLineMode.NAME);
+            compiled.configure(this, cmdLineMode.createParser());
+        }
+        return true;
+    }
+
     @Override
     public boolean sourceConfigurationFile(final String filename) {
+        File config = resolveConfigurationFile(filename);
+        if(config.exists()) {
+            CompiledConfigurationFile compiled = loadConfigurationFile(config);
+            if (compiled != null) {
+                CommandLineMode cmdLineMode = (CommandLineMode) modeMap.get(CommandLineMode.NAME);
+                compiled.source(this, cmdLineMode.createParser());
+            }
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    private File resolveConfigurationFile(String filename) {
         File config = new File(filename);
         if( ! config.isAbsolute()) {
             final File homeDir = new File(System.getProperty("user.home"));
@@ -303,81 +338,15 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
                 config = new File(homeDir, filename);
             }
         }
+        return config;
+    }
 
-        int lineNr = 0;
-        if(config.exists()) {
-        	BufferedReader reader = null;
-        	try {
-        		reader = new BufferedReader(new InputStreamReader(
-        					new FileInputStream(config), "UTF-8"));
-        		String line;
-        		CommandLineMode cmdLineMode = (CommandLineMode) modeMap.get(CommandLineMode.NAME);
-        		final CommandLineParser parser = cmdLineMode.createParser();
-        		String trimmed;
-        		while((line = reader.readLine()) != null) {
-        		    lineNr++;
-        			//*** skip over everything in a .vimrc file that we don't support ***//
-        			trimmed = line.trim().toLowerCase();
-        			//ignore comments and key mappings we don't support
-        			if(trimmed.equals("") || trimmed.startsWith("\"") || trimmed.contains("<silent>")) {
-        				continue;
-        			}
-        			if(trimmed.startsWith("if")) {
-        				//skip all conditional statements
-        				while((line = reader.readLine()) != null) {
-        					if(line.trim().toLowerCase().startsWith("endif")) {
-        						break;
-        					}
-        				}
-        				continue; //skip "endif" line
-        			}
-        			if(trimmed.startsWith("func")) {
-        				//skip all function declarations
-        				while((line = reader.readLine()) != null) {
-        					if(line.trim().toLowerCase().startsWith("endfunc")) {
-        						break;
-        					}
-        				}
-        				continue; //skip "endfunction" line
-        			}
-        			if(trimmed.startsWith("try")) {
-        				//skip all try declarations
-        				while((line = reader.readLine()) != null) {
-        					if(line.trim().toLowerCase().startsWith("endtry")) {
-        						break;
-        					}
-        				}
-        				continue; //skip "endtry" line
-        			}
-        			if(trimmed.startsWith(":")) {
-        			    //leading ':' is optional, skip it if it exists
-        			    line = line.substring(line.indexOf(':') +1);
-        			}
-        			//attempt to parse this line
-        			Command c = parser.parseAndExecute(null, line.trim());
-        			if (c != null) {
-        			    c.execute(this);
-        			}
-        			
-        		}
-        	} catch (final IOException e) {
-        		VrapperLog.error("Failed to parse .vrapperrc", e);
-        	} catch (CommandExecutionException e) {
-        		VrapperLog.error("Failed to execute command on line " + lineNr
-        				+ " of .vrapperrc", e);
-            } finally {
-        		if(reader != null) {
-        			try {
-        				reader.close();
-        			} catch (final IOException e) {
-        				VrapperLog.error("Failed to close reader to .vrapperrc");
-        			}
-        		}
-        	}
-        	return true;
-        }
-        else {
-        	return false;
+    private CompiledConfigurationFile loadConfigurationFile(File config) {
+        try {
+            return CompiledConfigurationFile.get(config);
+        } catch (final IOException e) {
+            VrapperLog.error("Failed to parse .vrapperrc", e);
+            return null;
         }
     }
 
@@ -437,6 +406,7 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
 
     @Override
     public boolean handleKey(final KeyStroke key) {
+        modelContent.open();
         try {
             macroRecorder.handleKey(key);
             return handleKeyOffRecord(key);
@@ -451,9 +421,13 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
             return true;
 
         } finally {
+            modelContent.close();
             macroStack.clear();
             mappingStack.clear();
             macroPlayer = null;
+            if (macroCompiler != null) {
+                macroCompiler.reset();
+            }
             abortRecursion = false;
             if (recursionErrorMessage != null) {
                 userInterfaceService.setErrorMessage(recursionErrorMessage);
@@ -464,7 +438,23 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
 
     @Override
     public boolean handleKeyOffRecord(final KeyStroke key) {
-        final boolean result = handleKey0(key);
+        final LatencyStatistics.Timer timer = LatencyStatistics.start();
+        // The mode may change while the key is handled, the time belongs to the one it was sent to.
+        final String modeName = timer == null || currentMode == null ? null : currentMode.getName();
+        final boolean result;
+        try {
+            result = handleKey0(key);
+        } finally {
+            if (timer != null) {
+                timer.stop(LatencyStatistics.MODE, String.valueOf(modeName));
+            }
+        }
+        playPendingMacro();
+        return result;
+    }
+
+    /** Plays the macros queued by the last command, e.g. by <tt>@q</tt>. */
+    void playPendingMacro() {
         if (macroPlayer != null) {
             // while playing back one macro, another macro might be called
             // recursively. we need a fresh macro player for that.
@@ -472,7 +462,6 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
             macroPlayer = null;
             player.play(macroStack);
         }
-        return result;
     }
 
     @Override
@@ -682,6 +671,19 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
         return macroPlayer;
     }
 
+    @Override
+    public MacroCompiler getMacroCompiler() {
+        if (macroCompiler == null) {
+            macroCompiler = new MacroCompiler(this);
+        }
+        return macroCompiler;
+    }
+
+    /** @return whether the keys handled last could still be the start of a mapping. */
+    boolean isMappingPending() {
+        return keyStrokeTranslator.isPending();
+    }
+
     @Override
     public void stopMacrosAndMappings() {
         stopMacrosAndMappings(null);
@@ -722,7 +724,15 @@ public class DefaultEditorAdaptor implements EditorAdaptor {
                 map = keyMapProvider.getKeyMap(keyMapName);
             }
             if (map != null) {
-                final boolean inMapping = keyStrokeTranslator.processKeyStroke(map, key);
+                final LatencyStatistics.Timer timer = LatencyStatistics.start();
+                final boolean inMapping;
+                try {
+                    inMapping = keyStrokeTranslator.processKeyStroke(map, key);
+                } finally {
+                    if (timer != null) {
+                        timer.stop(LatencyStatistics.MAPPING, keyMapName);
+                    }
+                }
                 if (inMapping) {
                     final Queue<RemappedKeyStroke> resultingKeyStrokes =
                         keyStrokeTranslator.resultingKeyStrokes();
@@ -70,6 +70,7 @@ public interface EditorAdaptor {
      *      due to deep nesting or certain recursive usage.
      */
     MacroPlayer getMacroPlayer(String macroName) throws CommandExecutionException;
+    MacroCompiler getMacroCompiler();
     void stopMacrosAndMappings();
     void stopMacrosAndMappings(String errorMessage);
     PlatformSpecificStateProvider getPlatformSpecificStateProvider();
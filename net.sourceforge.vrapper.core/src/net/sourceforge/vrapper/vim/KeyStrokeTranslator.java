@@ -103,6 +103,11 @@ public class KeyStrokeTranslator {
         return mappingSucceeded;
     }
 
+    /** @return whether the keys processed so far could still be the start of a mapping. */
+    public boolean isPending() {
+        return currentState != null;
+    }
+
     private void prependUnconsumed() {
         //Check if any unmatched keys are in the global map 
         for (int i = 0; i < unconsumedKeyStrokes.size(); i++) {
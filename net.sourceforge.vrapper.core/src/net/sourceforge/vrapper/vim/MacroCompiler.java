@@ -0,0 +1,234 @@
+package net.sourceforge.vrapper.vim;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.sourceforge.vrapper.keymap.KeyStroke;
+import net.sourceforge.vrapper.keymap.State;
+import net.sourceforge.vrapper.keymap.vim.ConstructorWrappers;
+import net.sourceforge.vrapper.log.VrapperLog;
+import net.sourceforge.vrapper.vim.commands.Command;
+import net.sourceforge.vrapper.vim.modes.CommandBasedMode;
+import net.sourceforge.vrapper.vim.modes.EditorMode;
+import net.sourceforge.vrapper.vim.modes.NormalMode;
+
+/**
+ * Plays the key strokes of macros and of the <tt>:normal</tt> command.
+ *
+ * <p>The first time a sequence of keys is played, the commands it runs in normal mode are
+ * recorded. Later runs of the same keys execute these commands directly instead of passing every
+ * key through the mappings and the key maps of the mode again, which makes <tt>1000@q</tt> or
+ * <tt>:%normal @q</tt> much faster. Playing another macro is recorded as the command queuing it,
+ * which is compiled on its own when it is played. Keys which switch modes (e.g. to insert text)
+ * or leave a command pending are always played as keys; the reason is kept for the report. This
+ * includes any macro which types text, since insert mode handles every key on its own.
+ *
+ * <p>Compiled macros are only kept until the key typed by the user is handled, so changes of
+ * mappings and options are picked up by the next macro.
+ */
+public class MacroCompiler {
+
+    private static final int CACHE_SIZE = 16;
+
+    private final DefaultEditorAdaptor editorAdaptor;
+    private final Map<String, CompiledMacro> cache = new LinkedHashMap<String, CompiledMacro>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, CompiledMacro> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final Map<String, Statistics> statistics = new LinkedHashMap<String, Statistics>();
+    private Recording recording;
+    private CommandBasedMode recordingMode;
+    private String lastReport;
+
+    MacroCompiler(DefaultEditorAdaptor editorAdaptor) {
+        this.editorAdaptor = editorAdaptor;
+    }
+
+    /**
+     * Plays <code>keys</code> once, like they were typed but without recording them.
+     * @param name name of the macro, used in the report.
+     */
+    public void play(String name, Iterable<KeyStroke> keys) {
+        long start = System.nanoTime();
+        String text = ConstructorWrappers.keyStrokesToString(keys);
+        CommandBasedMode mode = getIdleNormalMode();
+        CompiledMacro compiled = cache.get(text);
+        boolean direct = false;
+        if (recording != null) {
+            playNested(keys);
+        } else if (mode == null) {
+            playKeys(keys);
+        } else if (compiled == null) {
+            compiled = compile(mode, keys);
+            cache.put(text, compiled);
+        } else if (compiled.fallbackReason != null) {
+            playKeys(keys);
+        } else {
+            run(compiled, mode);
+            direct = true;
+        }
+        Statistics stats = statistics.get(name);
+        if (stats == null) {
+            stats = new Statistics();
+            statistics.put(name, stats);
+        }
+        stats.runs++;
+        stats.nanos += System.nanoTime() - start;
+        if (direct) {
+            stats.compiledRuns++;
+        } else if (mode == null) {
+            stats.fallbackReason = "doesn't start in normal mode";
+        } else if (compiled != null && compiled.fallbackReason != null) {
+            stats.fallbackReason = compiled.fallbackReason;
+        }
+    }
+
+    /**
+     * @return timing and fallback reasons of the macros played for the last key typed by the
+     *      user, or null if no macro was played yet.
+     */
+    public String getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Drops all compiled macros and logs the report. Called when the key typed by the user has
+     * been handled.
+     */
+    void reset() {
+        cache.clear();
+        if (statistics.isEmpty()) {
+            return;
+        }
+        StringBuilder report = new StringBuilder();
+        for (Entry<String, Statistics> entry : statistics.entrySet()) {
+            Statistics stats = entry.getValue();
+            if (report.length() > 0) {
+                report.append("; ");
+            }
+            report.append(entry.getKey()).append(": ").append(stats.runs).append(" runs, ")
+                    .append(stats.compiledRuns).append(" compiled, ")
+                    .append(stats.nanos / stats.runs / 1000).append(" us per run");
+            if (stats.fallbackReason != null) {
+                report.append(", played as keys because it ").append(stats.fallbackReason);
+            }
+        }
+        statistics.clear();
+        lastReport = report.toString();
+        VrapperLog.debug("Macro playback " + lastReport);
+    }
+
+    private CommandBasedMode getIdleNormalMode() {
+        EditorMode mode = editorAdaptor.getCurrentMode();
+        if (mode instanceof NormalMode && NormalMode.NAME.equals(mode.getName())
+                && ((NormalMode) mode).isIdle() && ! editorAdaptor.isMappingPending()) {
+            return (NormalMode) mode;
+        }
+        return null;
+    }
+
+    private void playKeys(Iterable<KeyStroke> keys) {
+        for (KeyStroke key : keys) {
+            if (editorAdaptor.abortRecursion) {
+                break;
+            }
+            editorAdaptor.handleKeyOffRecord(new RemappedKeyStroke(key, true));
+        }
+    }
+
+    /**
+     * Plays a macro started by the one being compiled. Its commands aren't recorded, they are
+     * run again by replaying the command which queued the macro.
+     */
+    private void playNested(Iterable<KeyStroke> keys) {
+        recordingMode.setCommandListener(null);
+        try {
+            playKeys(keys);
+        } finally {
+            recordingMode.setCommandListener(recording);
+        }
+    }
+
+    private void run(CompiledMacro compiled, CommandBasedMode mode) {
+        for (int i = 0; i < compiled.commands.size() && ! editorAdaptor.abortRecursion; i++) {
+            mode.replayCommand(compiled.commands.get(i), compiled.states.get(i));
+            // Like after a typed key, e.g. @q only queues the macro.
+            editorAdaptor.playPendingMacro();
+        }
+    }
+
+    /** Plays <code>keys</code> while recording the commands they run. */
+    private CompiledMacro compile(CommandBasedMode mode, Iterable<KeyStroke> keys) {
+        Recording current = new Recording();
+        recording = current;
+        recordingMode = mode;
+        mode.setCommandListener(current);
+        editorAdaptor.getListeners().addEventListener(current);
+        try {
+            playKeys(keys);
+        } finally {
+            editorAdaptor.getListeners().removeEventListener(current);
+            mode.setCommandListener(null);
+            recording = null;
+            recordingMode = null;
+        }
+        String reason = current.fallbackReason;
+        if (reason == null && editorAdaptor.abortRecursion) {
+            reason = "was aborted";
+        }
+        if (reason == null && getIdleNormalMode() != mode) {
+            reason = "leaves a command or mapping pending";
+        }
+        if (reason != null) {
+            return new CompiledMacro(null, null, reason);
+        }
+        return new CompiledMacro(current.commands, current.states, null);
+    }
+
+    private static class CompiledMacro {
+        /** Commands reported by the mode, null entries are unrecognized keys. */
+        final List<Command> commands;
+        final List<State<Command>> states;
+        /** Why the keys can't be compiled, null if they can. */
+        final String fallbackReason;
+
+        CompiledMacro(List<Command> commands, List<State<Command>> states, String fallbackReason) {
+            this.commands = commands;
+            this.states = states;
+            this.fallbackReason = fallbackReason;
+        }
+    }
+
+    private static class Recording extends VrapperEventAdapter implements CommandBasedMode.CommandListener {
+        final List<Command> commands = new ArrayList<Command>();
+        final List<State<Command>> states = new ArrayList<State<Command>>();
+        String fallbackReason;
+
+        @Override
+        public void commandRun(Command command, State<Command> nextState) {
+            commands.add(command);
+            states.add(nextState);
+        }
+
+        @Override
+        public void modeAboutToSwitch(EditorMode currentMode, EditorMode newMode) {
+            if (fallbackReason == null) {
+                fallbackReason = "switches to " + newMode.getName();
+            }
+        }
+    }
+
+    private static class Statistics {
+        int runs;
+        int compiledRuns;
+        long nanos;
+        String fallbackReason;
+    }
+}
@@ -1,5 +1,6 @@
 package net.sourceforge.vrapper.vim;
 
+import java.util.Collections;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.Queue;
@@ -22,13 +23,13 @@ import net.sourceforge.vrapper.vim.modes.EditorMode;
 public class MacroPlayer {
 
     private final String macroName;
-    private final Queue<KeyStroke> playlist;
+    private final Queue<Iterable<KeyStroke>> playlist;
     private final DefaultEditorAdaptor editorAdaptor;
 
     MacroPlayer (DefaultEditorAdaptor editorAdaptor, String macroName) {
         this.macroName = macroName;
         this.editorAdaptor = editorAdaptor;
-        playlist = new LinkedList<KeyStroke>();
+        playlist = new LinkedList<Iterable<KeyStroke>>();
     }
 
     public String getMacroName() {
@@ -39,16 +40,16 @@ public class MacroPlayer {
      * Adds a key stroke to the playlist. May be called by commands.
      */
     public void add(KeyStroke stroke) {
-        playlist.add(new RemappedKeyStroke(stroke, true));
+        playlist.add(Collections.singletonList(stroke));
     }
 
     /**
-     * Adds a list of keystrokes to the playlist. May be called by commands.
+     * Adds a list of keystrokes to the playlist. May be called by commands. Each list is played by
+     * the {@link MacroCompiler}, so a macro which is added several times only has to be
+     * interpreted once.
      */
     public void add(Iterable<KeyStroke> macro) {
-        for (KeyStroke stroke : macro) {
-            playlist.add(new RemappedKeyStroke(stroke, true));
-        }
+        playlist.add(macro);
     }
 
     /**
@@ -67,7 +68,7 @@ public class MacroPlayer {
             editorAdaptor.getHistory().beginCompoundChange();
             editorAdaptor.getHistory().lock(historyLock);
             while (! editorAdaptor.abortRecursion && ! playlist.isEmpty()) {
-                editorAdaptor.handleKeyOffRecord(playlist.poll());
+                editorAdaptor.getMacroCompiler().play("@" + macroName, playlist.poll());
             }
         } finally {
             editorAdaptor.getHistory().unlock(historyLock);
@@ -7,6 +7,7 @@ import java.util.Set;
 
 import net.sourceforge.vrapper.platform.Configuration.Option;
 import net.sourceforge.vrapper.vim.commands.Selection;
+import net.sourceforge.vrapper.vim.modes.commandline.CommandLineHistory;
 import net.sourceforge.vrapper.vim.modes.commandline.HighlightSearch;
 import net.sourceforge.vrapper.vim.register.RegisterManager;
 
@@ -33,7 +34,10 @@ public interface Options {
     public static final Option<Boolean> START_NORMAL_MODE     = bool("startnormalmode",   false, "snm");
     public static final Option<Boolean> UNDO_MOVES_CURSOR     = bool("undomovescursor",  true,  "umvc");
     public static final Option<Boolean> WRAP_SCAN             = bool("wrapscan",     true,  "ws");
+    // Show the number of the match and the match count like "[3/12]" after a search.
+    public static final Option<Boolean> SEARCH_COUNT          = bool("searchcount",  true);
     public static final Option<Boolean> DEBUGLOG        = globalBool("debuglog",     false);
+    public static final Option<Boolean> VRAPPER_STATS   = globalBool("vrapperstats", false);
     public static final Option<Boolean> LINE_NUMBERS    = globalBool("number",       false, "nu");
     public static final Option<Boolean> SHOW_WHITESPACE = globalBool("list",         false, "l");
     public static final Option<Boolean> SPELL           = globalBool("spell",        true);
@@ -49,7 +53,7 @@ public interface Options {
             INCREMENTAL_SEARCH, LINE_NUMBERS, SHOW_WHITESPACE, IM_DISABLE,
             VISUAL_MOUSE, EXIT_LINK_MODE, CLEAN_INDENT, AUTO_CHDIR, HIGHLIGHT_CURSOR_LINE,
             CONTENT_ASSIST_MODE, START_NORMAL_MODE, UNDO_MOVES_CURSOR, DEBUGLOG, MODIFIABLE,
-            GLOBAL_REGISTERS, WRAP_SCAN, SPELL);
+            GLOBAL_REGISTERS, WRAP_SCAN, SPELL, VRAPPER_STATS, SEARCH_COUNT);
 
     // String options:
     public static final Option<String> SYNC_MODIFIABLE = globalString("syncmodifiable", "nosync", "nosync, matchreadonly", "syncma");
@@ -88,7 +92,11 @@ public interface Options {
     //       Changing this value should change the Eclipse configuration too. -- BRD
     public static final Option<Integer> TAB_STOP      = integer("tabstop",     8, "ts");
     public static final Option<Integer> SHIFT_WIDTH   = integer("shiftwidth",  8, "sw");
+    // Seconds between dumps of the latency statistics to the log, 0 to never dump them.
+    public static final Option<Integer> VRAPPER_STATS_INTERVAL = globalInteger("vrapperstatsinterval", 0);
+    public static final Option<Integer> HISTORY       = globalInteger("history", CommandLineHistory.DEFAULT_CAPACITY, "hi");
 
     @SuppressWarnings("unchecked")
-    public static final Set<Option<Integer>> INT_OPTIONS = set(SCROLL_JUMP, SCROLL, SCROLL_OFFSET, TEXT_WIDTH, SOFT_TAB, TAB_STOP, SHIFT_WIDTH);
+    public static final Set<Option<Integer>> INT_OPTIONS = set(SCROLL_JUMP, SCROLL, SCROLL_OFFSET, TEXT_WIDTH, SOFT_TAB, TAB_STOP, SHIFT_WIDTH,
+            VRAPPER_STATS_INTERVAL, HISTORY);
 }
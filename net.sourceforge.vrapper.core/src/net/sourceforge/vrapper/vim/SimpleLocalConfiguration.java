@@ -6,6 +6,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.sourceforge.vrapper.platform.Configuration;
 import net.sourceforge.vrapper.platform.SimpleConfiguration;
+import net.sourceforge.vrapper.utils.KeywordClass;
 
 /** Wraps a {@link Configuration}, allowing to notify {@link ConfigurationListener}. */
 public class SimpleLocalConfiguration extends SimpleConfiguration implements LocalConfiguration {
@@ -15,6 +16,7 @@ public class SimpleLocalConfiguration extends SimpleConfiguration implements Loc
     protected List<ConfigurationListener> listeners =
             new CopyOnWriteArrayList<ConfigurationListener>();
     private boolean listenersEnabled;
+    private KeywordClass keywordClass;
 
     public SimpleLocalConfiguration(List<DefaultConfigProvider> defaultConfigProviders,
             Configuration sharedConfiguration) {
@@ -68,6 +70,17 @@ public class SimpleLocalConfiguration extends SimpleConfiguration implements Loc
         }
     }
     
+    @Override
+    public KeywordClass getKeywordClass() {
+        // iskeyword may also be changed through the shared configuration, so compare the value
+        // instead of relying on listeners.
+        String iskeyword = get(Options.KEYWORDS);
+        if (keywordClass == null || ! keywordClass.getPattern().equals(iskeyword)) {
+            keywordClass = new KeywordClass(iskeyword);
+        }
+        return keywordClass;
+    }
+
     public void setListenersEnabled(boolean enabled) {
         listenersEnabled = enabled;
     }
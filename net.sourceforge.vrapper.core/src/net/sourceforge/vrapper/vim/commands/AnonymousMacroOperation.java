@@ -10,7 +10,6 @@ import net.sourceforge.vrapper.utils.LineRange;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.SimpleLineRange;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
-import net.sourceforge.vrapper.vim.RemappedKeyStroke;
 import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 import net.sourceforge.vrapper.vim.modes.NormalMode;
 
@@ -68,9 +67,7 @@ public class AnonymousMacroOperation extends AbstractLinewiseOperation {
 					editorAdaptor.setPosition(lineStart, StickyColumnPolicy.NEVER);
 				}
 				
-				for (KeyStroke key : parsed) {
-					editorAdaptor.handleKeyOffRecord(new RemappedKeyStroke(key, true));
-				}
+				editorAdaptor.getMacroCompiler().play(":normal", parsed);
 				
 				if ( ! NormalMode.NAME.equals(editorAdaptor.getCurrentModeName())) {
 					editorAdaptor.changeModeSafely(NormalMode.NAME);
@@ -0,0 +1,23 @@
+package net.sourceforge.vrapper.vim.commands;
+
+import net.sourceforge.vrapper.utils.MultiEdit;
+import net.sourceforge.vrapper.utils.TextRange;
+import net.sourceforge.vrapper.vim.EditorAdaptor;
+
+/**
+ * A {@link TextOperation} which can describe its changes of a region as edits instead of applying
+ * them. Blockwise selections use this to change all lines of the block in one go.
+ */
+public interface BatchTextOperation extends TextOperation {
+
+    /**
+     * Adds the changes of the operation on <code>region</code> to <code>edits</code>, without
+     * touching the text, the cursor or the registers.
+     *
+     * @param editorAdaptor editor reference.
+     * @param region part of a single line, as in the lines of a blockwise selection.
+     * @param edits collects the changes, with offsets in the unchanged text.
+     */
+    public void addEdits(EditorAdaptor editorAdaptor, int count, TextRange region, MultiEdit edits)
+            throws CommandExecutionException;
+}
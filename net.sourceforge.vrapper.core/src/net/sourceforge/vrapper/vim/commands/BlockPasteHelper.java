@@ -3,6 +3,7 @@ package net.sourceforge.vrapper.vim.commands;
 import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.StringUtils;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
@@ -29,6 +30,12 @@ abstract public class BlockPasteHelper {
         }
     }
 
+    /**
+     * Pastes the block in <code>registerContent</code> with its top left corner at the visual
+     * offset of <code>pos</code>. The changes of all lines are collected first and applied as one
+     * {@link MultiEdit}, so the text is only read before it changes.
+     * @return the offset for the cursor after the paste.
+     */
     static public int execute(EditorAdaptor editorAdaptor, int count,
             int startOfs, boolean placeCursorAfter, RegisterContent registerContent, Position pos) {
         final CursorService cursorService = editorAdaptor.getCursorService();
@@ -38,57 +45,83 @@ abstract public class BlockPasteHelper {
         final TextBlockRegisterContent rect = (TextBlockRegisterContent) registerContent;
         int newCursorOfs = cursorService.shiftPositionForModelOffset(
                 pos.getModelOffset(), startOfs, false).getModelOffset();
-        final int vWidth = rect.getVisualWidth();
+        final int vOffset = cursorService.getVisualOffset(pos);
+        final int blockWidth = cursorService.visualWidthToChars(rect.getVisualWidth());
+        final int lastLine = content.getNumberOfLines() - 1;
+        final String newLine = editorAdaptor.getConfiguration().getNewLine();
+        final MultiEdit edits = new MultiEdit();
+        // Lines past the end of the document are appended as a whole.
+        final StringBuilder appended = new StringBuilder();
+        int cursorEdit = -1;
         for (int i = 0; i < rect.getNumLines(); ++i) {
-            Position pastePos;
-            if (startLine + i >= content.getNumberOfLines() - 1) {
-                // Insert a new empty line if at the of the document.
-                content.replace(content.getTextLength(), 0,
-                        editorAdaptor.getConfiguration().getNewLine());
-            }
-            LineInformation pasteLine = content.getLineInformation(startLine + i);
-            int vOffset = cursorService.getVisualOffset(pos);
-            for (int c = 0; c < count; ++c) {
-                pastePos = cursorService.getPositionByVisualOffset(startLine + i, vOffset);
+            final int lineNo = startLine + i;
+            final StringBuilder insertion = new StringBuilder();
+            int insertOfs;
+            if (lineNo <= lastLine) {
+                final LineInformation pasteLine = content.getLineInformation(lineNo);
+                final Position pastePos = cursorService.getPositionByVisualOffset(lineNo, vOffset);
                 if (pastePos == null) {
-                    pastePos = cursorService.newPositionForModelOffset(pasteLine.getEndOffset());
-                    final int lineEndVOfs = cursorService.getVisualOffset(pastePos);
                     //
                     // "Extend" the paste line with spaces until it reaches vOffset.
                     //
-                    final int padding = cursorService.visualWidthToChars(vOffset - lineEndVOfs);
-                    content.replace(pasteLine.getEndOffset(), 0, StringUtils.multiply(" ", padding));
-                    pastePos = pastePos.addModelOffset(padding);
+                    final Position lineEnd = cursorService.newPositionForModelOffset(pasteLine.getEndOffset());
+                    final int padding = cursorService.visualWidthToChars(vOffset - cursorService.getVisualOffset(lineEnd));
+                    insertion.append(StringUtils.multiply(" ", padding));
+                    insertOfs = pasteLine.getEndOffset();
+                } else {
+                    insertOfs = pastePos.getModelOffset();
                 }
-                // Refresh line information if extended.
-                pasteLine = content.getLineInformation(startLine + i);
-                if (startOfs > 0 && pasteLine.getEndOffset() == pastePos.getModelOffset()) {
-                    content.replace(pasteLine.getEndOffset(), 0, " ");
+                if (startOfs > 0 && insertOfs == pasteLine.getEndOffset()) {
+                    insertion.append(' ');
+                } else {
+                    insertOfs += startOfs;
                 }
-                //
-                // Paste after the character at vOffset.
-                //
-                final String blockLine = rect.getLine(i);
-                content.replace(pastePos.addModelOffset(startOfs).getModelOffset(), 0, blockLine);
-                //
-                // Right-pad with spaces if block-line is shorter and not at EOL.
-                //
-                pastePos = pastePos.addModelOffset(blockLine.length());
-                if (pastePos.getModelOffset() + startOfs < (pasteLine.getEndOffset() + blockLine.length()) || c != count - 1) {
-                    final int vEndOfs = cursorService.getVisualOffset(pastePos);
-                    final int padding = cursorService.visualWidthToChars(vOffset + vWidth - vEndOfs) + 1;
-                    content.replace(pastePos.addModelOffset(startOfs).getModelOffset(), 0,
-                            StringUtils.multiply(" ", padding));
-                    pastePos = pastePos.addModelOffset(padding);
+                appendBlockLine(insertion, rect.getLine(i), count, blockWidth,
+                        insertOfs == pasteLine.getEndOffset());
+                edits.insert(insertOfs, insertion.toString());
+                cursorEdit = edits.size() - 1;
+                if (lineNo == lastLine) {
+                    // Insert a new empty line if at the of the document.
+                    appended.append(newLine);
                 }
-                // Set vOffset for the next block line for count > 1.
-                vOffset = cursorService.getVisualOffset(pastePos);
-                if (placeCursorAfter) {
-                    newCursorOfs = pastePos.getModelOffset() + startOfs;
+            } else {
+                final int lineStartVOfs = cursorService.getVisualOffset(cursorService
+                        .newPositionForModelOffset(content.getLineInformation(lastLine).getBeginOffset()));
+                insertion.append(StringUtils.multiply(" ", cursorService.visualWidthToChars(vOffset - lineStartVOfs)));
+                if (startOfs > 0) {
+                    insertion.append(' ');
                 }
+                appendBlockLine(insertion, rect.getLine(i), count, blockWidth, true);
+                appended.append(insertion).append(newLine);
+            }
+        }
+        if (appended.length() > 0) {
+            edits.insert(content.getTextLength(), appended.toString());
+        }
+        content.replace(edits);
+        if (placeCursorAfter && cursorEdit >= 0) {
+            if (startLine + rect.getNumLines() - 1 > lastLine) {
+                newCursorOfs = edits.getNewOffset(edits.size() - 1) + appended.length() - newLine.length();
+            } else {
+                newCursorOfs = edits.getNewOffset(cursorEdit) + edits.getText(cursorEdit).length();
             }
         }
         return newCursorOfs;
     }
 
+    /**
+     * Appends <code>count</code> copies of a block line, each right-padded with spaces to the
+     * width of the block unless it is the last one at the end of the line.
+     */
+    private static void appendBlockLine(StringBuilder insertion, String blockLine, int count,
+            int blockWidth, boolean atEndOfLine) {
+        final String padding = StringUtils.multiply(" ", blockWidth - blockLine.length() + 1);
+        for (int c = 0; c < count; ++c) {
+            insertion.append(blockLine);
+            if (c != count - 1 || ! atEndOfLine) {
+                insertion.append(padding);
+            }
+        }
+    }
+
 }
\ No newline at end of file
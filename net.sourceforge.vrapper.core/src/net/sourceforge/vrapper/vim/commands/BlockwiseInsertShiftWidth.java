@@ -5,6 +5,7 @@ import java.util.Arrays;
 import net.sourceforge.vrapper.log.VrapperLog;
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
 import net.sourceforge.vrapper.utils.StringUtils;
 import net.sourceforge.vrapper.utils.TextRange;
 import net.sourceforge.vrapper.utils.VimUtils;
@@ -16,7 +17,7 @@ import net.sourceforge.vrapper.vim.Options;
  * replace every &lt;tabstop&gt; spaces with a TAB character if &lt;expandtab&gt; is
  * disabled.
  */
-public class BlockwiseInsertShiftWidth implements TextOperation {
+public class BlockwiseInsertShiftWidth implements BatchTextOperation {
 
 	public static final TextOperation INSERT = new BlockwiseInsertShiftWidth(true);
 	public static final TextOperation REMOVE = new BlockwiseInsertShiftWidth(false);
@@ -29,6 +30,14 @@ public class BlockwiseInsertShiftWidth implements TextOperation {
 
 	@Override
 	public void execute(EditorAdaptor editorAdaptor, int count, TextObject textObject) throws CommandExecutionException {
+		MultiEdit edits = new MultiEdit();
+		addEdits(editorAdaptor, count, textObject.getRegion(editorAdaptor, Counted.NO_COUNT_GIVEN), edits);
+		editorAdaptor.getModelContent().replace(edits);
+	}
+
+	@Override
+	public void addEdits(EditorAdaptor editorAdaptor, int count, TextRange region, MultiEdit edits)
+			throws CommandExecutionException {
 		int tabstop = editorAdaptor.getConfiguration().get(Options.TAB_STOP);
 		tabstop = Math.max(1, tabstop);
 		int shiftwidth = editorAdaptor.getConfiguration().get(Options.SHIFT_WIDTH);
@@ -44,7 +53,6 @@ public class BlockwiseInsertShiftWidth implements TextOperation {
 		String replaceTab = new String(new char[tabstop]).replace('\0', ' ');
 		String replaceShiftWidth = new String(new char[shiftwidth]).replace('\0', ' ');
 
-		TextRange region = textObject.getRegion(editorAdaptor, Counted.NO_COUNT_GIVEN);
 		TextContent model = editorAdaptor.getModelContent();
 		LineInformation line = model.getLineInformationOfOffset(
 				region.getLeftBound().getModelOffset());
@@ -63,18 +71,18 @@ public class BlockwiseInsertShiftWidth implements TextOperation {
 				if ( ! expandtab) {
 					coalesceTabs("", indent, tabstop, 0, new int[]{ 0 });
 				}
-				model.replace(line.getBeginOffset(), 0, indent.toString());
+				edits.insert(line.getBeginOffset(), indent.toString());
 			} // else: we have nothing to do for shift left, line is empty.
 
 		} else {
-			doIt(editorAdaptor, model, region, line, tabstop, shiftwidth, expandtab, replaceTab,
-				replaceShiftWidth);
+			doIt(model, region, line, tabstop, shiftwidth, expandtab, replaceTab, replaceShiftWidth,
+				edits);
 		}
 	}
 
-	private void doIt(EditorAdaptor editorAdaptor, TextContent model, TextRange region,
-			LineInformation line, int tabstop, int shiftwidth,
-			boolean expandtab, String replaceTab, String replaceShiftWidth) throws CommandExecutionException {
+	private void doIt(TextContent model, TextRange region, LineInformation line, int tabstop,
+			int shiftwidth, boolean expandtab, String replaceTab, String replaceShiftWidth,
+			MultiEdit edits) throws CommandExecutionException {
 		String contents = model.getText(line.getBeginOffset(), line.getLength());
 		int leftOff = region.getLeftBound().getModelOffset() - line.getBeginOffset();
 		int beginIndent = leftOff;
@@ -101,7 +109,7 @@ public class BlockwiseInsertShiftWidth implements TextOperation {
 			if ( ! expandtab) {
 				coalesceTabs(contents, indent, tabstop, beginIndent, visualOffsets);
 			}
-			model.replace(line.getBeginOffset() + beginIndent, indentLength, indent.toString());
+			edits.replace(line.getBeginOffset() + beginIndent, indentLength, indent.toString());
 
 		} else if (VimUtils.isWhiteSpace(contents.substring(leftOff, leftOff + 1))) {
 			StringBuilder replace = new StringBuilder();
@@ -136,7 +144,7 @@ public class BlockwiseInsertShiftWidth implements TextOperation {
 			}
 
 			int replacedChars = endIndent - beginReplace;
-			model.replace(line.getBeginOffset() + beginReplace, replacedChars, replace.toString());
+			edits.replace(line.getBeginOffset() + beginReplace, replacedChars, replace.toString());
 		} // else if there is no whitespace at the start of the block, nothing needs to be done!
 	}
 
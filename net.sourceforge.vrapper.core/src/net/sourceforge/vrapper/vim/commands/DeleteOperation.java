@@ -5,6 +5,7 @@ import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.ContentType;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.LineRange;
+import net.sourceforge.vrapper.utils.MultiEdit;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.SimpleLineRange;
 import net.sourceforge.vrapper.utils.StartEndTextRange;
@@ -15,7 +16,8 @@ import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 import net.sourceforge.vrapper.vim.register.RegisterContent;
 import net.sourceforge.vrapper.vim.register.RegisterManager;
 
-public class DeleteOperation extends SimpleTextOperation implements LineWiseOperation {
+public class DeleteOperation extends SimpleTextOperation implements LineWiseOperation,
+        BatchTextOperation {
 
     public static final DeleteOperation INSTANCE = new DeleteOperation();
 
@@ -68,6 +70,13 @@ public class DeleteOperation extends SimpleTextOperation implements LineWiseOper
         return this;
     }
 
+    @Override
+    public void addEdits(EditorAdaptor editorAdaptor, int count, TextRange region, MultiEdit edits) {
+        if (region.getModelLength() > 0) {
+            edits.replace(region.getLeftBound().getModelOffset(), region.getModelLength(), "");
+        }
+    }
+
     public static void doIt(EditorAdaptor editorAdaptor, TextRange range, ContentType contentType) {
     	if(range == null) {
     		return;
@@ -1,16 +1,25 @@
 package net.sourceforge.vrapper.vim.commands;
 
+import java.util.Arrays;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import net.sourceforge.vrapper.log.VrapperLog;
 import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.LineRange;
+import net.sourceforge.vrapper.utils.MultiEdit;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.SimpleLineRange;
 import net.sourceforge.vrapper.utils.SubstitutionDefinition;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
+import net.sourceforge.vrapper.utils.VimRegexTranslator;
+import net.sourceforge.vrapper.utils.VimUtils;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
+import net.sourceforge.vrapper.vim.Options;
+import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 
 /**
  * Takes a user-defined String such as:
@@ -31,6 +40,7 @@ import net.sourceforge.vrapper.vim.EditorAdaptor;
 public class ExCommandOperation extends AbstractLinewiseOperation {
 
 	protected static final String NEXTLINE_MARK = CursorService.INTERNAL_MARK_PREFIX + "-ex-nextline";
+	private static final int MATCH_WINDOW_SIZE = 8192;
 
 	String originalDefinition;
 
@@ -107,7 +117,13 @@ public class ExCommandOperation extends AbstractLinewiseOperation {
 				throw new CommandExecutionException("No search pattern given and no active search!");
 			}
 		}
-		Pattern regex = Pattern.compile(pattern);
+		Pattern regex;
+		try {
+			regex = VimRegexTranslator.INSTANCE.compile(pattern,
+					editorAdaptor.getConfiguration().get(Options.KEYWORDS), true);
+		} catch (PatternSyntaxException e) {
+			throw new CommandExecutionException("Invalid pattern: " + e.getDescription());
+		}
 
 		if (definition.length() <= patternEnd + 1) {
 			// pattern was defined, but no command
@@ -158,24 +174,34 @@ public class ExCommandOperation extends AbstractLinewiseOperation {
 	}
 
 	private void executeExCommand(LineRange lineRange, boolean findMatch,
-			Pattern regex, LineWiseOperation operation, EditorAdaptor editorAdaptor) {
+			Pattern regex, LineWiseOperation operation, EditorAdaptor editorAdaptor)
+			throws CommandExecutionException {
 
-		/** Starting line, inclusive. */
-		int startLine = lineRange.getStartLine();
-		/** Ending line, inclusive. */
-		int endLine = lineRange.getEndLine();
 		TextContent modelContent = editorAdaptor.getModelContent();
-		LineInformation line = modelContent.getLineInformation(startLine);
+		//First pass: find all lines to work on before changing anything, like Vim does
+		int[] lines = findLines(regex, findMatch, modelContent,
+				lineRange.getStartLine(), lineRange.getEndLine());
+		if (lines.length == 0) {
+			return;
+		}
 
 		editorAdaptor.getHistory().beginCompoundChange();
 		editorAdaptor.getHistory().lock("ex-command");
 		try {
-			if (startLine == endLine) {
-				processLine(regex, findMatch, operation, line, editorAdaptor);
+			//Second pass: run the command on those lines
+			if (operation == DeleteOperation.INSTANCE) {
+				deleteLines(lines, editorAdaptor);
+			}
+			else if (operation instanceof YankOperation && ! ((YankOperation) operation).isAppending()) {
+				//every yank overwrites the previous one, only the last one is visible
+				executeOnLine(operation, lines[lines.length - 1], editorAdaptor);
+			}
+			else if (operation instanceof SubstitutionOperation
+					&& ((SubstitutionOperation) operation).executeOnLines(editorAdaptor, lines)) {
+				//done in a single batched edit
 			}
 			else {
-				processMultipleLines(regex, findMatch, operation, line, editorAdaptor, startLine,
-						endLine, modelContent);
+				processLines(lines, operation, editorAdaptor);
 			}
 		} finally {
 			editorAdaptor.getHistory().unlock("ex-command");
@@ -183,65 +209,131 @@ public class ExCommandOperation extends AbstractLinewiseOperation {
 		}
 	}
 
-	private void processMultipleLines(Pattern regex, boolean findMatch,
-			LineWiseOperation operation, LineInformation line, EditorAdaptor editorAdaptor, 
-			int startLine, int endLine, TextContent modelContent) {
-		int linesProcessed = 0;
-		int nLines = modelContent.getNumberOfLines();
-		// Hard limit ( + 1 because endLine is inclusive )
-		int maxLinesToProcess = endLine - startLine + 1;
+	/**
+	 * Scans lines <code>startLine</code> up to and including <code>endLine</code> in a single
+	 * pass. Every line is matched on its own, as if the pattern was searched in the line's text.
+	 * @return numbers of the lines which match (or don't match if <code>findMatch</code> is false).
+	 */
+	private static int[] findLines(Pattern regex, boolean findMatch, TextContent content,
+			int startLine, int endLine) {
+		Matcher matcher = regex.matcher(new TextContentCharSequence(content, MATCH_WINDOW_SIZE));
+		int[] lines = new int[16];
+		int count = 0;
+		for (int i = startLine; i <= endLine; i++) {
+			LineInformation line = content.getLineInformation(i);
+			matcher.region(line.getBeginOffset(), line.getEndOffset());
+			if (matcher.find() == findMatch) {
+				if (count == lines.length) {
+					lines = Arrays.copyOf(lines, count * 2);
+				}
+				lines[count++] = i;
+			}
+		}
+		return Arrays.copyOf(lines, count);
+	}
+
+	/**
+	 * Deletes the given lines. The last line is deleted by {@link DeleteOperation} so that the
+	 * registers and cursor end up as after deleting each line separately. The other lines are
+	 * deleted in blocks of consecutive lines, all of them as a single {@link MultiEdit}.
+	 */
+	private void deleteLines(int[] lines, EditorAdaptor editorAdaptor)
+			throws CommandExecutionException {
+		TextContent content = editorAdaptor.getModelContent();
 		CursorService cs = editorAdaptor.getCursorService();
+		executeOnLine(DeleteOperation.INSTANCE, lines[lines.length - 1], editorAdaptor);
+		int cursor = cs.getPosition().getModelOffset();
 
-		while (linesProcessed < maxLinesToProcess && line != null) {
-			nLines = modelContent.getNumberOfLines();
-			if (nLines > line.getNumber() + 1) {
-				LineInformation nextLine = modelContent.getLineInformation(line.getNumber() + 1);
-				cs.setMark(NEXTLINE_MARK, cs.newPositionForModelOffset(nextLine.getBeginOffset()));
+		MultiEdit edits = new MultiEdit();
+		int newCursor = cursor;
+		int removedBeforeCursor = 0;
+		int blockStart = 0;
+		while (blockStart < lines.length - 1) {
+			int blockEnd = blockStart;
+			while (blockEnd + 1 < lines.length - 1 && lines[blockEnd + 1] == lines[blockEnd] + 1) {
+				blockEnd++;
+			}
+			int start = content.getLineInformation(lines[blockStart]).getBeginOffset();
+			int end;
+			if (lines[blockEnd] + 1 < content.getNumberOfLines()) {
+				end = content.getLineInformation(lines[blockEnd] + 1).getBeginOffset();
 			} else {
-				// Remove mark for exit condition
-				cs.deleteMark(NEXTLINE_MARK);
+				//block now ends the file, remove the newline before it instead
+				end = content.getTextLength();
+				if (lines[blockStart] > 0) {
+					start = content.getLineInformation(lines[blockStart] - 1).getEndOffset();
+				}
 			}
-			processLine(regex, findMatch, operation, line, editorAdaptor);
-			Position nextLineStart = cs.getMark(NEXTLINE_MARK);
-			// Try to guess our position if user ran something like 2d and removed next line
-			int updatedNLines = modelContent.getNumberOfLines();
-			if (nextLineStart == null && nLines > updatedNLines) {
-				// Do nothing except check end of document - "line" object should stay the same if still in bounds
-				if (line.getNumber() >= updatedNLines) {
-					line = null;
+			edits.replace(start, end - start, "");
+			if (cursor >= end) {
+				removedBeforeCursor += end - start;
+			} else if (cursor > start) {
+				newCursor = start;
+			}
+			blockStart = blockEnd + 1;
+		}
+		if ( ! edits.isEmpty()) {
+			content.replace(edits);
+		}
+		cursor = newCursor - removedBeforeCursor;
+
+		//same cursor placement as DeleteOperation
+		LineInformation line = content.getLineInformationOfOffset(Math.min(cursor, content.getTextLength()));
+		int indent = VimUtils.getIndent(content, line).length();
+		cs.setPosition(cs.newPositionForModelOffset(line.getBeginOffset() + indent),
+				StickyColumnPolicy.ON_CHANGE);
+	}
+
+	/**
+	 * Runs the operation on each line, in order. Only the next line to process is tracked with
+	 * a mark, which gives how far the operation has moved the lines after it. If the mark is
+	 * gone, the lines are moved by the change in line count and the next line is assumed to be
+	 * deleted if the line count went down.
+	 */
+	private void processLines(int[] lines, LineWiseOperation operation, EditorAdaptor editorAdaptor) {
+		TextContent content = editorAdaptor.getModelContent();
+		CursorService cs = editorAdaptor.getCursorService();
+		//number of lines added (or removed if negative) before the lines still to process
+		int shift = 0;
+		int line = lines[0];
+		try {
+			for (int i = 0; i < lines.length; i++) {
+				int nLines = content.getNumberOfLines();
+				boolean hasNext = i + 1 < lines.length && lines[i + 1] + shift < nLines;
+				if (hasNext) {
+					int nextLineStart = content.getLineInformation(lines[i + 1] + shift).getBeginOffset();
+					cs.setMark(NEXTLINE_MARK, cs.newPositionForModelOffset(nextLineStart));
+				}
+				if (line >= 0) {
+					try {
+						executeOnLine(operation, line, editorAdaptor);
+					} catch (CommandExecutionException e) {
+					}
+				}
+				if ( ! hasNext) {
+					break;
 				}
-			} else if (nextLineStart == null) {
-				// Either we ran out of lines or somebody replaced the contents of the next
-				// line (and the mark) without the file getting shorter
-				if (line.getNumber() + 1 >= updatedNLines) {
-					line = null;
+				Position mark = cs.getMark(NEXTLINE_MARK);
+				if (mark == null) {
+					//either the next line was deleted or its contents were replaced, assume the
+					//lines after it only moved by the change in line count
+					int added = content.getNumberOfLines() - nLines;
+					shift += added;
+					line = added < 0 ? -1 : lines[i + 1] + shift;
 				} else {
-					// Assume that line + 1 is our target.
-					line = modelContent.getLineInformation(line.getNumber() + 1);
+					line = content.getLineInformationOfOffset(mark.getModelOffset()).getNumber();
+					shift = line - lines[i + 1];
 				}
-			} else {
-				line = modelContent.getLineInformationOfOffset(nextLineStart.getModelOffset());
 			}
-			linesProcessed++;
+		} finally {
+			cs.deleteMark(NEXTLINE_MARK);
 		}
-		cs.deleteMark(NEXTLINE_MARK);
 	}
 
-	private boolean processLine(Pattern regex, boolean findMatch, LineWiseOperation operation,
-			LineInformation line, EditorAdaptor editorAdaptor) {
-		boolean operationPerformed = false;
-		String text = editorAdaptor.getModelContent().getText(line.getBeginOffset(), line.getLength());
-
-		boolean matches = regex.matcher(text).find();
-		if( (findMatch && matches) || (!findMatch && !matches) ) {
-			try {
-				LineRange singleLine = SimpleLineRange.singleLineInModel(editorAdaptor, line);
-				operation.execute(editorAdaptor, singleLine);
-				operationPerformed = true;
-			} catch (CommandExecutionException e) {
-			}
-		}
-		return operationPerformed;
+	private void executeOnLine(LineWiseOperation operation, int line, EditorAdaptor editorAdaptor)
+			throws CommandExecutionException {
+		LineInformation lineInfo = editorAdaptor.getModelContent().getLineInformation(line);
+		operation.execute(editorAdaptor, SimpleLineRange.singleLineInModel(editorAdaptor, lineInfo));
 	}
 
 }
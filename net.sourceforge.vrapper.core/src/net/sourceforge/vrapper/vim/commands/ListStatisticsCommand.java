@@ -0,0 +1,47 @@
+package net.sourceforge.vrapper.vim.commands;
+
+import net.sourceforge.vrapper.log.LatencyStatistics;
+import net.sourceforge.vrapper.vim.EditorAdaptor;
+
+/**
+ * :vrapperstats [reset]
+ * List the latency statistics collected while the 'vrapperstats' option is set,
+ * or drop them with the reset argument.
+ */
+public class ListStatisticsCommand extends AbstractMessagesCommand {
+
+    public static final String RESET = "reset";
+
+    private final String argument;
+
+    public ListStatisticsCommand(String argument) {
+        this.argument = argument.trim();
+    }
+
+    @Override
+    public void execute(EditorAdaptor editorAdaptor) throws CommandExecutionException {
+        if (RESET.equals(argument)) {
+            LatencyStatistics.reset();
+            editorAdaptor.getUserInterfaceService().setInfoMessage("Statistics cleared");
+        } else if (argument.length() > 0) {
+            throw new CommandExecutionException("Invalid argument: " + argument);
+        } else {
+            super.execute(editorAdaptor);
+        }
+    }
+
+    @Override
+    protected String getMessages(EditorAdaptor editorAdaptor) throws CommandExecutionException {
+        StringBuilder sb = new StringBuilder();
+        if ( ! LatencyStatistics.isEnabled()) {
+            sb.append("Collection is off, use :set vrapperstats to turn it on.\n");
+        }
+        sb.append(LatencyStatistics.getReport());
+        return sb.toString();
+    }
+
+    @Override
+    public boolean isClipped() {
+        return true;
+    }
+}
@@ -1,14 +1,12 @@
 package net.sourceforge.vrapper.vim.commands;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.sourceforge.vrapper.log.VrapperLog;
 import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.ExternalFilter;
+import net.sourceforge.vrapper.utils.LineDiff;
 import net.sourceforge.vrapper.utils.LineRange;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.ProcessHelper;
@@ -20,7 +18,7 @@ import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 
 /**
  * Filters a number of lines through an external program. Used to implement
- * <code>:&lt;range&gt;!&lt;filter&gt;</code>.
+ * <code>:&lt;range&gt;!&lt;filter&gt;</code>. Only the lines changed by the filter are replaced.
  */
 public class PipeExternalOperation extends AbstractLinewiseOperation {
 
@@ -76,38 +74,30 @@ public class PipeExternalOperation extends AbstractLinewiseOperation {
 
         TextContent txt = editorAdaptor.getModelContent();
         int position = range.getLeftBound().getModelOffset();
-        int length = range.getModelLength();
         String s = txt.getText(range);
         try {
-            Process p = ProcessHelper.start(ProcessHelper.splitArgs(externalCommand));
-            BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            BufferedWriter stdOut   = new BufferedWriter(new OutputStreamWriter(p.getOutputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-            boolean endsWithNL = s.endsWith(editorAdaptor.getConfiguration().getNewLine());
-            stdOut.write(s);
-            if (!endsWithNL) {
-                stdOut.write(editorAdaptor.getConfiguration().getNewLine());
-            }
-            stdOut.close();
-            s = ProcessHelper.ReadProcessOutput(stdInput);
-            if (p.waitFor() != 0) {
-                StringBuffer errorMsg = new StringBuffer();
-                while ((s = stdError.readLine()) != null) {
-                    errorMsg.append('\n');
-                    errorMsg.append(s);
-                }
-                VrapperLog.error("!<cmd> failed with code " + p.exitValue() + " command: " + externalCommand + errorMsg);
+            String newLine = editorAdaptor.getConfiguration().getNewLine();
+            boolean endsWithNL = s.endsWith(newLine);
+            ExternalFilter filter = new ExternalFilter(ProcessHelper.splitArgs(externalCommand),
+                    endsWithNL ? s : s + newLine);
+            editorAdaptor.getUserInterfaceService().runWithProgress("!" + externalCommand, filter);
+            if (filter.getExitValue() != 0) {
+                VrapperLog.error("!<cmd> failed with code " + filter.getExitValue() + " command: " + externalCommand
+                        + '\n' + filter.getErrors());
                 editorAdaptor.getUserInterfaceService().setErrorMessage(
-                        "!<cmd> failed with code " + p.exitValue() + " command: " + externalCommand + " (Check error log).");
+                        "!<cmd> failed with code " + filter.getExitValue() + " command: " + externalCommand + " (Check error log).");
             } else {
+                String result = filter.getOutput();
                 if (!endsWithNL)
                 {
-                    s = VimUtils.stripLastNewline(s);
+                    result = VimUtils.stripLastNewline(result);
                 }
-                txt.replace(position, length, s);
+                LineDiff.apply(txt, position, s, result);
                 editorAdaptor.getCursorService().setPosition(range.getLeftBound(),
                         StickyColumnPolicy.ON_CHANGE);
             }
+        } catch (CommandExecutionException e) {
+            editorAdaptor.getUserInterfaceService().setErrorMessage(e.getMessage());
         } catch (Exception e) {
             VrapperLog.error("!<cmd> failed : " + e.getMessage(), e);
             editorAdaptor.getUserInterfaceService().setErrorMessage("!<cmd> failed : " + e.getMessage());
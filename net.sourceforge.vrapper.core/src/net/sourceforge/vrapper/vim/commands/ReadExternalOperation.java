@@ -1,11 +1,10 @@
 package net.sourceforge.vrapper.vim.commands;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.sourceforge.vrapper.log.VrapperLog;
+import net.sourceforge.vrapper.utils.ExternalFilter;
 import net.sourceforge.vrapper.utils.LineRange;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.ProcessHelper;
@@ -67,26 +66,22 @@ public class ReadExternalOperation extends AbstractLinewiseOperation {
         }
 
         try {
-            Process p = ProcessHelper.start(ProcessHelper.splitArgs(externalCommand));
-            BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-            String s = ProcessHelper.ReadProcessOutput(stdInput);
-            if (p.waitFor() != 0) {
-                StringBuffer errorMsg = new StringBuffer();
-                while ((s = stdError.readLine()) != null) {
-                    errorMsg.append('\n');
-                    errorMsg.append(s);
-                }
-                VrapperLog.error("r!<cmd> failed with code " + p.exitValue() + " command: " + externalCommand + errorMsg);
+            ExternalFilter filter = new ExternalFilter(ProcessHelper.splitArgs(externalCommand), null);
+            editorAdaptor.getUserInterfaceService().runWithProgress("r!" + externalCommand, filter);
+            if (filter.getExitValue() != 0) {
+                VrapperLog.error("r!<cmd> failed with code " + filter.getExitValue() + " command: " + externalCommand
+                        + '\n' + filter.getErrors());
                 editorAdaptor.getUserInterfaceService().setErrorMessage(
-                        "r!<cmd> failed with code " + p.exitValue() + " command: " + externalCommand + " (Check error log).");
+                        "r!<cmd> failed with code " + filter.getExitValue() + " command: " + externalCommand + " (Check error log).");
             } else {
                 // Get start of line after end line
                 int position = range.getRightBound().getModelOffset();
-                editorAdaptor.getModelContent().replace(position, 0, s);
+                editorAdaptor.getModelContent().replace(position, 0, filter.getOutput());
                 editorAdaptor.getCursorService().setPosition(range.getRightBound(),
                         StickyColumnPolicy.ON_CHANGE);
             }
+        } catch (CommandExecutionException e) {
+            editorAdaptor.getUserInterfaceService().setErrorMessage(e.getMessage());
         } catch (Exception e) {
             VrapperLog.error("r!<cmd> failed : " + e.getMessage(), e);
             editorAdaptor.getUserInterfaceService().setErrorMessage("r!<cmd> failed : " + e.getMessage());
@@ -5,6 +5,7 @@ import net.sourceforge.vrapper.platform.HistoryService;
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.ContentType;
 import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.StartEndTextRange;
 import net.sourceforge.vrapper.utils.TextRange;
@@ -108,31 +109,36 @@ public class SelectionBasedTextOperationCommand extends CountAwareCommand {
                 repetition = command;
             }
             final int endLine = Math.min(block.endLine, textContent.getNumberOfLines() - 1);
-            for (int line = block.startLine + 1; line <= endLine; ++line) {
-                final Position runStart = cursorService.getPositionByVisualOffset(line, block.startVisualOffset);
-                Position runEnd = cursorService.getPositionByVisualOffset(line, block.endVisualOffset);
-                final LineInformation lineInfo = textContent.getLineInformation(line);
-                if (runEnd == null || lineInfo.getLength() == 0) {
-                    runEnd = cursorService.newPositionForModelOffset(lineInfo.getEndOffset());
-                } else {
-                    runEnd = runEnd.addModelOffset(1);
+            if (repetition instanceof BatchTextOperation) {
+                // Collect the changes of all lines and apply them at once.
+                final MultiEdit edits = new MultiEdit();
+                for (int line = block.startLine + 1; line <= endLine; ++line) {
+                    final TextRange run = getLineRun(editorAdaptor, block, line);
+                    if (run != null) {
+                        ((BatchTextOperation) repetition).addEdits(editorAdaptor, count, run, edits);
+                    }
                 }
-                if (runStart != null) {
-                    editorAdaptor.setPosition(runStart, StickyColumnPolicy.NEVER);
-                    final TextObject nextLine = new DummyTextObject(new StartEndTextRange(runStart, runEnd));
+                textContent.replace(edits);
+            } else {
+                for (int line = block.startLine + 1; line <= endLine; ++line) {
+                    final TextRange run = getLineRun(editorAdaptor, block, line);
+                    if (run != null) {
+                        editorAdaptor.setPosition(run.getStart(), StickyColumnPolicy.NEVER);
+                        final TextObject nextLine = new DummyTextObject(run);
 
-                    final RegisterContent content = lastEditRegister.getContent();
+                        final RegisterContent content = lastEditRegister.getContent();
 
-                    try {
-                        repetition.execute(editorAdaptor, count, nextLine);
-                    } finally {
-                        registers.setActiveRegister(lastActiveRegister); // return to default reg
-                    }
+                        try {
+                            repetition.execute(editorAdaptor, count, nextLine);
+                        } finally {
+                            registers.setActiveRegister(lastActiveRegister); // return to default reg
+                        }
 
-                    lastEditRegister.setContent(content);
+                        lastEditRegister.setContent(content);
 
-                    if (repetition.repetition() != null) {
-                        repetition = repetition.repetition();
+                        if (repetition.repetition() != null) {
+                            repetition = repetition.repetition();
+                        }
                     }
                 }
             }
@@ -149,6 +155,26 @@ public class SelectionBasedTextOperationCommand extends CountAwareCommand {
             editorAdaptor.setPosition(newPos, StickyColumnPolicy.ON_CHANGE);
         }
 
+        /**
+         * @return the part of <code>line</code> covered by the block, or null if the line doesn't
+         *      reach the block.
+         */
+        private static TextRange getLineRun(final EditorAdaptor editorAdaptor, final TextBlock block, final int line) {
+            final CursorService cursorService = editorAdaptor.getCursorService();
+            final Position runStart = cursorService.getPositionByVisualOffset(line, block.startVisualOffset);
+            if (runStart == null) {
+                return null;
+            }
+            Position runEnd = cursorService.getPositionByVisualOffset(line, block.endVisualOffset);
+            final LineInformation lineInfo = editorAdaptor.getModelContent().getLineInformation(line);
+            if (runEnd == null || lineInfo.getLength() == 0) {
+                runEnd = cursorService.newPositionForModelOffset(lineInfo.getEndOffset());
+            } else {
+                runEnd = runEnd.addModelOffset(1);
+            }
+            return new StartEndTextRange(runStart, runEnd);
+        }
+
     }
 
     protected final TextOperation command;
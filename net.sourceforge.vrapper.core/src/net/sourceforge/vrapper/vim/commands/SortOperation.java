@@ -1,19 +1,21 @@
 package net.sourceforge.vrapper.vim.commands;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.LineRange;
-import net.sourceforge.vrapper.utils.NumericStringComparator;
-import net.sourceforge.vrapper.utils.PatternSortComparator;
+import net.sourceforge.vrapper.utils.ParallelMergeSort;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.SimpleLineRange;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
 import net.sourceforge.vrapper.utils.VimUtils;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
 import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
@@ -118,6 +120,8 @@ public class SortOperation extends AbstractLinewiseOperation {
     private static final String UNIQUE_FLAG      = "u";
     private static final String USE_PATTERN_R    = "r";
 
+    private static final int READ_WINDOW_SIZE = 8192;
+
     // Possible configurations for sort
     /** ! - reversed sort (entered as a modifier to :sort, as :sort! */
     private boolean reversed = false;
@@ -208,43 +212,6 @@ public class SortOperation extends AbstractLinewiseOperation {
         return null;
     }
 
-    /**
-     * According to Vim behavior, sorting by number will look at the FIRST
-     * OCCURRENCE of contiguous number string on a line.
-     * The following return true:
-     *      1
-     *      9L
-     *      67 Chevy
-     *      -29
-     *      blah blah 5 blah blah
-     *      0b01010
-     *      01234567123
-     *      Ox123
-     * NOTE: These will match to the very FIRST occurrence of a number in their
-     * set. If it finds one, then we return true.
-     * 
-     * @param str
-     * @param base
-     * @return
-     */
-    private boolean hasNumber(String str, int offset) {
-    	int radix = 10;
-    	     if(binary) radix = 2;
-    	else if(octal)  radix = 8;
-    	else if(hex)    radix = 16;
-    	
-    	if(offset > 0) {
-    		str = str.substring(offset);
-    	}
-        char[] strArr = str.toCharArray();
-        for (char c : strArr) {
-            if (Character.digit(c, radix) != -1)
-                return true;
-        }
-
-        return false;
-    }
-
 	@Override
     public void execute(EditorAdaptor editorAdaptor, LineRange lineRange) throws CommandExecutionException {
         try {
@@ -276,133 +243,110 @@ public class SortOperation extends AbstractLinewiseOperation {
     /**
      * This is where the action happens.
      * 
+     * Every line is decorated with its sort key once (the text after the pattern, case-folded
+     * text or the first number), the decorated lines are sorted and the sorted text replaces the
+     * range in a single edit.
+     * 
      * @param editorAdaptor
      * @throws Exception
      */
     public void doIt(EditorAdaptor editorAdaptor, LineInformation startLine,
     		LineInformation endLine, int totalLengthOfRange) throws Exception {
-        // Throw the whole editor into an array separated by newlines
         String newline = editorAdaptor.getConfiguration().getNewLine();
         TextContent content = editorAdaptor.getModelContent();
-        int totalLinesInEditor = content.getNumberOfLines();
-        List<String> editorContentList = new ArrayList<String>();
-        Comparator<String> comp = null;
-        LineInformation line = null;
+        boolean sortOnNumber = numeric || binary || octal || hex;
+        int radix = binary ? 2 : octal ? 8 : hex ? 16 : 10;
        
         /* 
-         * Step 1: Put editor text into a sortable array
-         *         This may be the whole editor or a range
+         * Step 1: Read the range once and compute each line's sort key
          */
+        int rangeEnd = endLine.getNumber() + 1 < content.getNumberOfLines()
+                ? content.getLineInformation(endLine.getNumber() + 1).getBeginOffset()
+                : content.getTextLength();
+        TextContentCharSequence text = new TextContentCharSequence(content, READ_WINDOW_SIZE);
+        List<SortLine> candidates = new ArrayList<SortLine>();
+        List<SortLine> nonCandidates = new ArrayList<SortLine>();
+        Set<String> seen = unique ? new HashSet<String>() : null;
         for(int i = startLine.getNumber(); i <= endLine.getNumber(); ++i) {
-            line = content.getLineInformation(i);
-            String lineStr = content.getText(line.getBeginOffset(), line.getLength());
-            editorContentList.add(lineStr);
-        }
-       
-        /*
-         * Step 2: If u was specified, get all unique lines 
-         *         and remove the rest
-         */
-        if (unique) {
-        	//use a Set to remove all duplicates for us
-        	Set<String> set;
-        	if(ignoreCase) {
-        		//TreeSet can take a Comparator as an argument to constructor
-        		set = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
-        	} else {
-        		set = new TreeSet<String>();
-        	}
-        	set.addAll(editorContentList);
-            editorContentList = new ArrayList<String>(set);
-            totalLinesInEditor = editorContentList.size();
-        }
-       
-        /*
-         * Step 3: If a pattern was used, handle it
-         */
-        List<String> candidateList = editorContentList;
-        List<Integer> candidateOffsetList = new ArrayList<Integer>();
-        List<String> nonCandidateList = new ArrayList<String>();
-        if(usePattern) {
-            String candidate;
-            for (int i = 0; i < candidateList.size(); i++) {
-            	candidate = candidateList.get(i);
+            LineInformation line = content.getLineInformation(i);
+            String lineStr = text.subSequence(line.getBeginOffset(), line.getEndOffset()).toString();
 
-            	if(candidate.contains(pattern)) {
-            		candidateOffsetList.add( usePatternR ? candidate.indexOf(pattern) : candidate.indexOf(pattern) + pattern.length() );
-            	}
-            	else {
-                	candidateList.remove(i);
-                	i--;
-            		nonCandidateList.add(candidate);
-            	}
+            /*
+             * Step 2: If u was specified, only keep the first of identical lines
+             */
+            if (unique && ! seen.add(ignoreCase ? foldCase(lineStr) : lineStr)) {
+                continue;
             }
-            
-            comp = new PatternSortComparator(pattern, usePatternR);
-        }
 
-        /*
-         * Step 4: If a numeric sort was called, separate numeric vs. non-numeric
-         *         Also handle ignore case
-         */
-        if (numeric || binary || octal || hex) {
-        	String newLine = editorAdaptor.getConfiguration().getNewLine();
-        	comp = new NumericStringComparator(newLine, binary, octal, hex, pattern, usePatternR);
+            /*
+             * Step 3: If a pattern was used, lines without it are not sorted
+             */
+            int keyOffset = 0;
+            if (usePattern) {
+                int index = lineStr.indexOf(pattern);
+                if (index < 0) {
+                    nonCandidates.add(new SortLine(lineStr, i));
+                    continue;
+                }
+                keyOffset = usePatternR ? index : index + pattern.length();
+            }
 
-        	String candidate;
-        	int candidateOffset;
-            for (int i=0; i < candidateList.size(); i++) {
-            	candidate = candidateList.get(i);
-            	candidateOffset = candidateOffsetList.size() > i ? candidateOffsetList.get(i) : -1;
-                if (! hasNumber(candidate, candidateOffset)) {
-                	candidateList.remove(candidate);
-                	i--;
-                    nonCandidateList.add(candidate);
+            /*
+             * Step 4: For a numeric sort, lines without a number are not sorted
+             */
+            SortLine sortLine = new SortLine(lineStr, i);
+            if (sortOnNumber) {
+                if ( ! hasNumber(lineStr, keyOffset, radix)) {
+                    nonCandidates.add(sortLine);
+                    continue;
                 }
+                sortLine.number = getFirstNumber(lineStr, keyOffset, radix);
+            } else {
+                String key = keyOffset > 0 ? lineStr.substring(keyOffset) : lineStr;
+                sortLine.key = ignoreCase ? foldCase(key) : key;
             }
-        } else if(ignoreCase) {
-        	comp = String.CASE_INSENSITIVE_ORDER;
+            candidates.add(sortLine);
         }
-        
+
         /*
          * Step 5: Perform the actual sorting on all sortable candidates
          */
-        if(comp == null) { // normal ascii sort
-            Collections.sort(candidateList);
-        } else {
-            Collections.sort(candidateList, comp);
+        SortLine[] sorted = candidates.toArray(new SortLine[candidates.size()]);
+        ParallelMergeSort.sort(sorted, new SortLineComparator(sortOnNumber, unique, ignoreCase));
+        SortLine[] unsorted = nonCandidates.toArray(new SortLine[nonCandidates.size()]);
+        if (unique) {
+            // Identical lines used to be removed with a sorted set, keep the resulting order
+            Arrays.sort(unsorted, new SortLineComparator(false, true, ignoreCase));
         }
-        
-        // Add non-sorted rows before sorted rows, per Vim behavior
-        editorContentList = new ArrayList<String>(nonCandidateList);
-        editorContentList.addAll(candidateList);
 
+        // Add non-sorted rows before sorted rows, per Vim behavior
+        List<SortLine> result = new ArrayList<SortLine>(unsorted.length + sorted.length);
+        result.addAll(Arrays.asList(unsorted));
+        result.addAll(Arrays.asList(sorted));
         if (reversed) {
-            Collections.reverse(editorContentList);
+            Collections.reverse(result);
         }
 
         /*
-         * Step 6: Append newlines to everything but the very last line of the editor
+         * Step 6: Join the lines, the last line of the editor doesn't get a newline
          */
-        StringBuilder replacementText = new StringBuilder();
-        int count = startLine.getNumber();
-        for (String editorLine : editorContentList) {
-            if(count != totalLinesInEditor - 1) {
-                editorLine += newline;
+        boolean endsAtEof = endLine.getNumber() == content.getNumberOfLines() - 1;
+        StringBuilder replacementText = new StringBuilder(rangeEnd - startLine.getBeginOffset());
+        for (int i = 0; i < result.size(); i++) {
+            replacementText.append(result.get(i).text);
+            if (i < result.size() - 1 || ! endsAtEof) {
+                replacementText.append(newline);
             }
-            ++count;
-            replacementText.append(editorLine);
         }
         
         /*
          * Step 7: Replace the contents of the editor with the freshly sorted text
          *         This applies to a range, or the whole editor
          */
-        editorAdaptor.getModelContent().replace(
+        content.replace(
         		startLine.getBeginOffset(),
-        		totalLengthOfRange,
+        		rangeEnd - startLine.getBeginOffset(),
         		replacementText.toString()
-        		
 		);
         //put cursor at beginning of sorted text
         editorAdaptor.setPosition(
@@ -411,6 +355,122 @@ public class SortOperation extends AbstractLinewiseOperation {
         );
     }
 
+    /**
+     * According to Vim behavior, sorting by number will look at the FIRST
+     * OCCURRENCE of contiguous number string on a line.
+     * The following return true:
+     *      1
+     *      9L
+     *      67 Chevy
+     *      -29
+     *      blah blah 5 blah blah
+     *      0b01010
+     *      01234567123
+     *      Ox123
+     */
+    private static boolean hasNumber(String str, int offset, int radix) {
+        for (int i = offset; i < str.length(); i++) {
+            if (Character.digit(str.charAt(i), radix) != -1)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the first number in the string with respect to the base.
+     * In decimal mode, one leading '-' is included.
+     * @return the number, or 0 if there is no (ASCII) number.
+     */
+    private static double getFirstNumber(String str, int offset, int radix) {
+        int start = offset;
+        while (start < str.length() && ! isAsciiDigit(str.charAt(start), radix)) {
+            start++;
+        }
+        if (start == str.length()) {
+            return 0;
+        }
+        int end = start + 1;
+        while (end < str.length() && isAsciiDigit(str.charAt(end), radix)) {
+            end++;
+        }
+        if (radix == 10) {
+            if (start > offset && str.charAt(start - 1) == '-') {
+                start--;
+            }
+            return Double.parseDouble(str.substring(start, end));
+        }
+        if (end - start < 16) {
+            return Long.parseLong(str.substring(start, end), radix);
+        }
+        return new BigInteger(str.substring(start, end), radix).doubleValue();
+    }
+
+    private static boolean isAsciiDigit(char c, int radix) {
+        return c < 128 && Character.digit(c, radix) != -1;
+    }
+
+    /**
+     * Maps each character the way {@link String#CASE_INSENSITIVE_ORDER} compares it, so that
+     * comparing folded strings gives the same result.
+     */
+    private static String foldCase(String str) {
+        char[] chars = str.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /** A line of the range decorated with its sort key. */
+    private static class SortLine {
+        final String text;
+        /** Line number, keeps the sort stable. */
+        final int line;
+        /** Text to sort on, for a non-numeric sort. */
+        String key;
+        /** Number to sort on, for a numeric sort. */
+        double number;
+
+        SortLine(String text, int line) {
+            this.text = text;
+            this.line = line;
+        }
+    }
+
+    private static class SortLineComparator implements Comparator<SortLine> {
+        private final boolean numeric;
+        private final boolean unique;
+        private final boolean ignoreCase;
+
+        SortLineComparator(boolean numeric, boolean unique, boolean ignoreCase) {
+            this.numeric = numeric;
+            this.unique = unique;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public int compare(SortLine line1, SortLine line2) {
+            int result;
+            if (numeric) {
+                result = Double.compare(line1.number, line2.number);
+                // -0.0 and 0.0 are the same number
+                if (line1.number == line2.number) {
+                    result = 0;
+                }
+            } else if (line1.key != null && line2.key != null) {
+                result = line1.key.compareTo(line2.key);
+            } else {
+                result = 0;
+            }
+            if (result == 0 && unique) {
+                // Identical lines used to be removed with a sorted set, ties keep its order
+                result = ignoreCase ? String.CASE_INSENSITIVE_ORDER.compare(line1.text, line2.text)
+                        : line1.text.compareTo(line2.text);
+            }
+            return result != 0 ? result : line1.line - line2.line;
+        }
+    }
+
 	public TextOperation repetition() {
 		return null;
 	}
@@ -1,7 +1,11 @@
 package net.sourceforge.vrapper.vim.commands;
 
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 import net.sourceforge.vrapper.platform.SearchAndReplaceService;
 import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.BulkSubstitution;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.LineRange;
 import net.sourceforge.vrapper.utils.Position;
@@ -44,6 +48,15 @@ public class SubstitutionOperation extends AbstractLinewiseOperation {
 			numReplaces = performReplace(currentLine, subDef.find, subDef.replace, subDef.flags, editorAdaptor);
 			editorAdaptor.getHistory().endCompoundChange();
 		}
+		else if (isBulkSubstitution(subDef.find)) {
+			//match the whole range in one pass and apply it as a few large edits
+			BulkSubstitution substitution = createBulkSubstitution(editorAdaptor);
+			editorAdaptor.getHistory().beginCompoundChange();
+			substitution.execute(model, range.getStartLine(), range.getEndLine());
+			editorAdaptor.getHistory().endCompoundChange();
+			numReplaces = substitution.getSubstitutionCount();
+			lineReplaceCount = substitution.getLineCount();
+		}
 		else {
 			LineInformation line;
 			int lineChanges = 0;
@@ -74,6 +87,41 @@ public class SubstitutionOperation extends AbstractLinewiseOperation {
 			editorAdaptor.getHistory().endCompoundChange();
 		}
 		
+		reportResult(editorAdaptor, numReplaces, lineReplaceCount);
+	}
+
+    /**
+     * Runs the substitution on the given lines only, as a single batched edit. Used by
+     * <tt>:g/pattern/s//</tt>.
+     * @param lines line numbers in ascending order.
+     * @return <code>false</code> if the substitution can't be batched and has to be executed on
+     *      each line separately.
+     */
+    boolean executeOnLines(EditorAdaptor editorAdaptor, int[] lines) throws CommandExecutionException {
+        if ( ! isBulkSubstitution(subDef.find)) {
+            return false;
+        }
+        BulkSubstitution substitution = createBulkSubstitution(editorAdaptor);
+        editorAdaptor.getHistory().beginCompoundChange();
+        substitution.execute(editorAdaptor.getModelContent(), lines);
+        editorAdaptor.getHistory().endCompoundChange();
+        reportResult(editorAdaptor, substitution.getSubstitutionCount(), substitution.getLineCount());
+        return true;
+    }
+
+    private BulkSubstitution createBulkSubstitution(EditorAdaptor editorAdaptor)
+            throws CommandExecutionException {
+        try {
+            Pattern pattern = editorAdaptor.getSearchAndReplaceService()
+                    .getSubstitutionPattern(subDef.find, subDef.flags);
+            return new BulkSubstitution(pattern, subDef.replace,
+                    editorAdaptor.getConfiguration().getNewLine(), subDef.flags);
+        } catch (PatternSyntaxException e) {
+            throw new CommandExecutionException(e.getDescription());
+        }
+    }
+
+    private void reportResult(EditorAdaptor editorAdaptor, int numReplaces, int lineReplaceCount) {
 		if (numReplaces == 0) {
 			editorAdaptor.getUserInterfaceService().setErrorMessage("'"+subDef.find+"' not found");
 		} else {
@@ -91,7 +139,15 @@ public class SubstitutionOperation extends AbstractLinewiseOperation {
 		// [TODO] Move to substitution parser
 		editorAdaptor.getRegisterManager().setLastSubstitution(this);
 	}
-    
+
+    /**
+     * Whether the substitution can be done with {@link BulkSubstitution}. The special cases of
+     * {@link #performReplace(LineInformation, String, String, String, EditorAdaptor)} can't.
+     */
+    private static boolean isBulkSubstitution(String find) {
+        return ! find.equals("^") && ! find.equals("$") && ! find.contains("\\%V");
+    }
+
     private int performReplace(LineInformation line, String find,
     		String replace, String flags, EditorAdaptor editorAdaptor) {
     	//Eclipse regex doesn't handle '^' and '$' like Vim does.
@@ -1,6 +1,6 @@
 package net.sourceforge.vrapper.vim.commands;
 
-import java.util.regex.Pattern;
+import net.sourceforge.vrapper.utils.KeywordClass;
 
 
 public class Utils {
@@ -10,12 +10,16 @@ public class Utils {
     public static final int OTHER = 2;
 
 	public static int characterType(char chr, String iskeyword) {
+		return characterType(chr, KeywordClass.forPattern(iskeyword));
+	}
+
+	public static int characterType(char chr, KeywordClass keywords) {
 		if (Character.isWhitespace(chr))
 			return WHITESPACE;
-		else if (Pattern.matches("["+iskeyword+"]", ""+chr))
+		else if (keywords.isKeyword(chr))
 			return WORD;
 		else
 			return OTHER;
 	}
 
-}
\ No newline at end of file
+}
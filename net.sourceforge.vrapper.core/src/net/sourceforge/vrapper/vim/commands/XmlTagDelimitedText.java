@@ -9,7 +9,10 @@ import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.StartEndTextRange;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
 import net.sourceforge.vrapper.utils.TextRange;
+import net.sourceforge.vrapper.utils.XmlTagIndex;
+import net.sourceforge.vrapper.utils.XmlTagIndex.Tag;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
 
 /**
@@ -18,6 +21,8 @@ import net.sourceforge.vrapper.vim.EditorAdaptor;
  * open tag name we're looking for until we find the unbalanced closing tag after
  * the cursor.  This is to handle malformed XML documents with lingering open tags.
  * This aligns with how Vim handles things.
+ *
+ * <p>Tags are looked up in the {@link XmlTagIndex} of the buffer if it keeps one.
  */
 public class XmlTagDelimitedText implements DelimitedText {
     
@@ -33,11 +38,10 @@ public class XmlTagDelimitedText implements DelimitedText {
     private static final String XML_TAG_REGEX = "(?:(<(?!%|!)(<(?=%)|(?<=%)>|[^<]){0,1000}(?<!%|/)>))";
     private static final Pattern tagPattern = Pattern.compile(XML_TAG_REGEX, Pattern.DOTALL);
     
-    private static final String XML_NAME_REGEX = "</?([^\\s]*).*?>";
-    private static final Pattern tagNamePattern = Pattern.compile(XML_NAME_REGEX, Pattern.DOTALL);
-    
     private TextRange endTag;
     private TextRange openTag;
+    /** Text of the model content while looking for tags. */
+    private CharSequence text;
 	
     @Override
     public TextRange leftDelimiter(int offset, EditorAdaptor editorAdaptor,
@@ -57,25 +61,32 @@ public class XmlTagDelimitedText implements DelimitedText {
         if(count == 0) {
     		count = 1;
     	}
-    	
-    	Position beginningPosition = getStartingPosition(offset, editorAdaptor);
-    	
-    	Position startOpenSearch = beginningPosition.addModelOffset(1);
-    	Position startCloseSearch = beginningPosition.addModelOffset(-1);
+    	text = new TextContentCharSequence(editorAdaptor.getModelContent());
+    	try {
+    	    int beginningOffset = getStartingOffset(offset, editorAdaptor);
 
-    	for(int i=0; i < count; i++) {
-    		//Vim first looks left for an opening tag to determine what close tag to look for
-    		openTag = getUnbalancedOpenTag(startOpenSearch, editorAdaptor);
-    		String tagName = getTagName(openTag, editorAdaptor);
-    		
-    		//find the first unbalanced closing tag after start
-    		//that matches the name of the opening tag we found
-    		endTag = getUnbalancedClosingTag(startCloseSearch, tagName, editorAdaptor);
-    		
-    		//prepare for next iteration (if any)
-    		//to find the parent open and closing tags to the ones we just found
-    		startOpenSearch = openTag.getLeftBound();
-    		startCloseSearch = endTag.getRightBound();
+    	    int startOpenSearch = beginningOffset + 1;
+    	    int startCloseSearch = Math.max(0, beginningOffset - 1);
+    	    Tag open = null;
+    	    Tag close = null;
+
+    	    for(int i=0; i < count; i++) {
+    	        //Vim first looks left for an opening tag to determine what close tag to look for
+    	        open = findUnbalancedOpenTag(startOpenSearch, editorAdaptor);
+
+    	        //find the first unbalanced closing tag after start
+    	        //that matches the name of the opening tag we found
+    	        close = findUnbalancedClosingTag(startCloseSearch, open.getName(), editorAdaptor);
+
+    	        //prepare for next iteration (if any)
+    	        //to find the parent open and closing tags to the ones we just found
+    	        startOpenSearch = open.start;
+    	        startCloseSearch = close.end;
+    	    }
+    	    openTag = getRange(editorAdaptor, open);
+    	    endTag = getRange(editorAdaptor, close);
+    	} finally {
+    	    text = null;
     	}
     }
 
@@ -83,46 +94,44 @@ public class XmlTagDelimitedText implements DelimitedText {
      * Account for the possibility that we're in front of a tag (indentation) or inside an opening or closing tag.
      * @throws CommandExecutionException 
      */
-    private Position getStartingPosition(int offset, EditorAdaptor editorAdaptor) throws CommandExecutionException {
-        Position beginningPosition = editorAdaptor.getCursorService().newPositionForModelOffset(offset);
+    private int getStartingOffset(int offset, EditorAdaptor editorAdaptor) throws CommandExecutionException {
+        int beginningOffset = offset;
 
-        if (insideIndentation(beginningPosition, editorAdaptor)) {
+        if (insideIndentation(beginningOffset, editorAdaptor)) {
             // we are in the indentation at the start of a line, move to tags on the right.
-            TextRange tag = findNextTag(beginningPosition, editorAdaptor);
-            String contents = editorAdaptor.getModelContent().getText(tag);
-            if (isCloseTag(contents)) {
-                beginningPosition = tag.getLeftBound();
+            Tag tag = findNextTag(beginningOffset, editorAdaptor);
+            if (tag.isCloseTag()) {
+                beginningOffset = tag.start;
             } else {
-                beginningPosition = tag.getRightBound();
+                beginningOffset = tag.end;
             }
         } else {
             
-            if (insideOpeningTag(beginningPosition, editorAdaptor)) {
+            if (insideOpeningTag(beginningOffset, editorAdaptor)) {
                 //move to the end of the opening tag we're inside
-                while (characterAt(beginningPosition,editorAdaptor) != '>') {
-                    beginningPosition = beginningPosition.addModelOffset(1);
+                while (text.charAt(beginningOffset) != '>') {
+                    beginningOffset++;
                 }
             }
             
-            if (insideClosingTag(beginningPosition, editorAdaptor)) {
+            if (insideClosingTag(beginningOffset, editorAdaptor)) {
                 //move to the beginning of the closing tag we're inside
-                while (characterAt(beginningPosition,editorAdaptor) != '<') {
-                    beginningPosition = beginningPosition.addModelOffset(-1);
+                while (text.charAt(beginningOffset) != '<') {
+                    beginningOffset--;
                 }
             }
         }
     	
-        return beginningPosition;
+        return beginningOffset;
     }
     
-    private boolean insideIndentation(Position position, EditorAdaptor editorAdaptor) throws CommandExecutionException {
+    private boolean insideIndentation(int offset, EditorAdaptor editorAdaptor) throws CommandExecutionException {
         boolean isIndentation = false;
         
-        if (Character.isWhitespace(characterAt(position, editorAdaptor))) {
-            LineInformation currentLine = editorAdaptor.getModelContent().getLineInformationOfOffset(
-                                        position.getModelOffset());
+        if (Character.isWhitespace(text.charAt(offset))) {
+            LineInformation currentLine = editorAdaptor.getModelContent().getLineInformationOfOffset(offset);
             // Check if anything on this line before position is whitespace as well.
-            int column = position.getModelOffset() - currentLine.getBeginOffset();
+            int column = offset - currentLine.getBeginOffset();
             String lineText = editorAdaptor.getModelContent().getText(
                         currentLine.getBeginOffset(), currentLine.getLength());
 
@@ -137,8 +146,8 @@ public class XmlTagDelimitedText implements DelimitedText {
             }
             if (i < 0) {
                 // If everything on the left is whitespace, check if this is indentation for any tag to the right.
-                TextRange nextTag = findNextTag(position, editorAdaptor);
-                int tagColumn = nextTag.getLeftBound().getModelOffset() - currentLine.getBeginOffset();
+                Tag nextTag = findNextTag(offset, editorAdaptor);
+                int tagColumn = nextTag.start - currentLine.getBeginOffset();
                 if (tagColumn < lineText.length()) {
                     i = column;
                     while (i < tagColumn && Character.isWhitespace(lineText.charAt(i))) {
@@ -151,77 +160,74 @@ public class XmlTagDelimitedText implements DelimitedText {
         return isIndentation;
     }
     
-    private boolean insideOpeningTag(Position position, EditorAdaptor editorAdaptor) {
-        return insideTag(position, editorAdaptor, true);
+    private boolean insideOpeningTag(int offset, EditorAdaptor editorAdaptor) {
+        return insideTag(offset, editorAdaptor, true);
     }
     
-    private boolean insideClosingTag(Position position, EditorAdaptor editorAdaptor) {
-        return insideTag(position, editorAdaptor, false);
+    private boolean insideClosingTag(int offset, EditorAdaptor editorAdaptor) {
+        return insideTag(offset, editorAdaptor, false);
     }
     
-    private boolean insideTag(Position position, EditorAdaptor editorAdaptor, boolean openingTag) {
-        return (toRightOfTagOpener(position, editorAdaptor, openingTag) && toLeftOfTagCloser(position, editorAdaptor));
+    private boolean insideTag(int offset, EditorAdaptor editorAdaptor, boolean openingTag) {
+        return (toRightOfTagOpener(offset, openingTag) && toLeftOfTagCloser(offset));
     }
 
-    private boolean toLeftOfTagCloser(Position position, EditorAdaptor editorAdaptor) {
-        while (characterAt(position, editorAdaptor) != '>') {
-           position = position.addModelOffset(1);
-           if (position.getModelOffset() >= editorAdaptor.getModelContent().getTextLength()) {
+    private boolean toLeftOfTagCloser(int offset) {
+        while (text.charAt(offset) != '>') {
+           offset++;
+           if (offset >= text.length()) {
                return false;
            }
            
-           if (characterAt(position, editorAdaptor) == '<') {
+           if (text.charAt(offset) == '<') {
                return false;
            }
         }
         return true;
     }
 
-    private boolean toRightOfTagOpener(Position position, EditorAdaptor editorAdaptor, boolean openingTag) {
-        while (characterAt(position, editorAdaptor) != '<') {
-           position = position.addModelOffset(-1);
-           if (position.getModelOffset() < 0) {
+    private boolean toRightOfTagOpener(int offset, boolean openingTag) {
+        while (text.charAt(offset) != '<') {
+           offset--;
+           if (offset < 0) {
                return false;
            }
            
-           if (characterAt(position, editorAdaptor) == '>') {
+           if (text.charAt(offset) == '>') {
                return false;
            }
         }
         //check if the char after '<' is '/'
-        position = position.addModelOffset(1); 
+        offset++;
         if (openingTag) {
-            return characterAt(position, editorAdaptor) != '/';
+            return text.charAt(offset) != '/';
         } else {
-            return characterAt(position, editorAdaptor) == '/';
+            return text.charAt(offset) == '/';
         }
     }
 
-    private char characterAt(Position position, EditorAdaptor editorAdaptor) {
-        return editorAdaptor.getModelContent().getText(position.getModelOffset(), 1).charAt(0);
-    }
-
     /**
      * Search backwards for XML tags.  Push every close tag, pop every open tag.
      * If we get the open tag we're looking for without a matching close tag, we're inside that tag.
      */
     public TextRange getUnbalancedOpenTag(Position start, EditorAdaptor editorAdaptor) throws CommandExecutionException {
+        return getRange(editorAdaptor, findUnbalancedOpenTag(start.getModelOffset(), editorAdaptor));
+    }
+
+    private Tag findUnbalancedOpenTag(int start, EditorAdaptor editorAdaptor) throws CommandExecutionException {
     	Stack<String> closeTags = new Stack<String>();
-    	TextRange tag;
-    	String contents;
+    	Tag tag;
     	String tagName;
     	
     	while (true) { //we'll either hit a 'return' or throw an exception
     		tag = findPreviousTag(start, editorAdaptor);
-    		contents = editorAdaptor.getModelContent().getText(tag);
-    		start = tag.getLeftBound(); //prepare for next iteration
+    		start = tag.start; //prepare for next iteration
+    		tagName = tag.getName();
     		
-    		if(isCloseTag(contents)) {
-    			tagName = getTagName(tag, editorAdaptor);
+    		if(tag.isCloseTag()) {
     			closeTags.push(tagName);
     		}
     		else { //open tag
-    			tagName = getTagName(tag, editorAdaptor);
     			if(closeTags.empty()) {
     				//we hit the desired open tag before finding any close tags
     				//the cursor must be inside this tag
@@ -240,44 +246,41 @@ public class XmlTagDelimitedText implements DelimitedText {
     		}
     	}
     }
-
-    private boolean isCloseTag(String contents) {
-        return contents.startsWith("</");
-    }
     
     /**
      * Search forwards for XML tags.  Push every open tag, pop every close tag.
      * If we get a close tag without an open tag, we're inside that tag.
      */
     public TextRange getUnbalancedClosingTag(Position start, String toFindTagName, EditorAdaptor editorAdaptor) throws CommandExecutionException {
-    	Stack<String> openTags = new Stack<String>();
-    	TextRange tag;
-    	String contents;
-    	String tagName;
+        return getRange(editorAdaptor,
+                findUnbalancedClosingTag(start.getModelOffset(), toFindTagName, editorAdaptor));
+    }
+
+    private Tag findUnbalancedClosingTag(int start, String toFindTagName, EditorAdaptor editorAdaptor) throws CommandExecutionException {
+    	int openTags = 0;
+    	Tag tag;
     	
     	while (true) { //we'll either hit a 'return' or throw an exception
     		tag = findNextTag(start, editorAdaptor);
-    		contents = editorAdaptor.getModelContent().getText(tag);
-    		start = tag.getRightBound(); //prepare for next iteration
+    		start = tag.end; //prepare for next iteration
 
-    		if(isCloseTag(contents)) {
-    			tagName = getTagName(tag, editorAdaptor);
-    			if(tagName.equals(toFindTagName) && openTags.empty()) {
+    		if ( ! tag.getName().equals(toFindTagName)) {
+    		    continue;
+    		}
+    		if(tag.isCloseTag()) {
+    			if(openTags == 0) {
     				//we hit a close tag before finding any open tags
     				//the cursor must be inside this tag
     				return tag;
     			}
-    			else if(tagName.equals(toFindTagName)) {
+    			else {
     				//found the matching close tag for this open tag
     				//ignore it and keep moving
-    				openTags.pop();
+    				openTags--;
     			}
     		}
     		else { //open tag, see if we'll find it's matching close tag
-    			tagName = getTagName(tag, editorAdaptor);
-    			if (tagName.equals(toFindTagName)) {
-    			    openTags.push(tagName);
-    			}
+    		    openTags++;
     		}
     	}
     }
@@ -287,71 +290,53 @@ public class XmlTagDelimitedText implements DelimitedText {
      * Search for the next XML tag after start.  Can either be an open tag or
      * close tag.  We'll let the calling method figure out what to do with it.
      */
-    private TextRange findNextTag(Position start, EditorAdaptor editorAdaptor) throws CommandExecutionException {
+    private Tag findNextTag(int start, EditorAdaptor editorAdaptor) throws CommandExecutionException {
         TextContent content = editorAdaptor.getModelContent();
-        int startPos = start.getModelOffset();
-        String textAfterStartPos = getText(editorAdaptor, startPos, content.getTextLength());
-        return rangeForFirstXmlTagWithOffset(editorAdaptor, textAfterStartPos, startPos);
-    }
-
-    private TextRange rangeForFirstXmlTagWithOffset(EditorAdaptor editorAdaptor, String text, int startPos) throws CommandExecutionException {
-        Matcher matcher = tagPattern.matcher(text);
-        if (matcher.find()) {
-            int matchStart = matcher.start() + startPos;
-            int matchEnd = matcher.end() + startPos;
-            return getRange(editorAdaptor, matchStart, matchEnd);
+        XmlTagIndex index = XmlTagIndex.of(content);
+        Tag tag;
+        if (index != null) {
+            tag = index.findNext(content, start);
         } else {
+            tag = null;
+            String textAfterStart = content.getText(start, content.getTextLength() - start);
+            Matcher matcher = tagPattern.matcher(textAfterStart);
+            if (matcher.find()) {
+                tag = new Tag(matcher.start() + start, matcher.end() + start, matcher.group());
+            }
+        }
+        if (tag == null) {
             throw new CommandExecutionException("The cursor is not within an XML tag");
         }
+        return tag;
     }
     
     /**
      * Search for the previous XML tag before start.  Can either be an open tag or
      * close tag.  We'll let the calling method figure out what to do with it.
      */
-    private TextRange findPreviousTag(Position start, EditorAdaptor editorAdaptor) throws CommandExecutionException {
-        int startPos = start.getModelOffset();
-        String textBeforeStartPos = getText(editorAdaptor, 0, startPos);
-        return rangeForLastXmlTag(editorAdaptor, textBeforeStartPos);
-    }
-
-    private TextRange rangeForLastXmlTag(EditorAdaptor editorAdaptor, String text) throws CommandExecutionException {
-        Matcher matcher = tagPattern.matcher(text);
-        TextRange range = null;
-        while (matcher.find()) {
-            int matchStart = matcher.start();
-            int matchEnd = matcher.end();
-            range = getRange(editorAdaptor, matchStart, matchEnd);
-        }
-        
-        if (range != null) {
-            return range;
+    private Tag findPreviousTag(int start, EditorAdaptor editorAdaptor) throws CommandExecutionException {
+        TextContent content = editorAdaptor.getModelContent();
+        XmlTagIndex index = XmlTagIndex.of(content);
+        Tag tag;
+        if (index != null) {
+            tag = index.findPrevious(content, start);
         } else {
+            tag = null;
+            Matcher matcher = tagPattern.matcher(content.getText(0, start));
+            while (matcher.find()) {
+                tag = new Tag(matcher.start(), matcher.end(), matcher.group());
+            }
+        }
+        if (tag == null) {
             throw new CommandExecutionException("The cursor is not within an XML tag");
         }
+        return tag;
     }
     
-    private String getText(EditorAdaptor editorAdaptor, int from, int to) {
-        return editorAdaptor.getModelContent().getText(from, to - from);
-    }
-
-    /**
-     * @param tagRange The range the tag lies within
-     * @return The contents of the tag
-     */
-    private String getTagName(TextRange tagRange, EditorAdaptor editorAdaptor) {
-    	String contents = editorAdaptor.getModelContent().getText(tagRange);
-    	Matcher matcher = tagNamePattern.matcher(contents);
-    	if (matcher.find()) {
-    	    return matcher.group(1);
-    	}
-    	return "";
-    }
-    
-    private TextRange getRange(EditorAdaptor editorAdaptor, int start, int end) {
+    private TextRange getRange(EditorAdaptor editorAdaptor, Tag tag) {
         CursorService cursorService = editorAdaptor.getCursorService();
-        Position matchBegin = cursorService.newPositionForModelOffset(start);
-        Position matchEnd   = cursorService.newPositionForModelOffset(end);
+        Position matchBegin = cursorService.newPositionForModelOffset(tag.start);
+        Position matchEnd   = cursorService.newPositionForModelOffset(tag.end);
         return new StartEndTextRange(matchBegin, matchEnd);
     }
 }
@@ -34,6 +34,11 @@ public class YankOperation extends SimpleTextOperation implements LineWiseOperat
         this.updateCursor = updateCursor;
     }
 
+    /** @return whether this yank appends to a register instead of replacing its contents. */
+    boolean isAppending() {
+        return register != null && register.length() > 0 && Character.isUpperCase(register.charAt(0));
+    }
+
     @Override
     public void execute(EditorAdaptor editorAdaptor, TextRange region, ContentType contentType) {
         RegisterManager registerManager = editorAdaptor.getRegisterManager();
@@ -1,6 +1,8 @@
 package net.sourceforge.vrapper.vim.commands.motions;
 
 import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.BracketIndex;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
 import net.sourceforge.vrapper.vim.commands.BorderPolicy;
 import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
 
@@ -30,19 +32,29 @@ public class FindBalancedMotion extends AbstractModelSideMotion {
             throws CommandExecutionException {
         int end = getEndSearchOffset(content, offset);
         int step = backwards ? -1 : 1;
+        BracketIndex index = BracketIndex.of(content);
+        if (index != null && BracketIndex.supports(target, pair, backwards)
+                && end == (backwards ? 0 : content.getTextLength() - 1)) {
+            int found = index.findUnmatched(content, offset, target, backwards, ignoreEscape, count);
+            if (found < 0) {
+                throw new CommandExecutionException("'" + target + "' not found");
+            }
+            return upToTarget ? found : found - step;
+        }
         int depth = count;
         char current;
+        CharSequence text = new TextContentCharSequence(content);
         while (backwards ? offset > end : offset < end) {
             offset += step;
-            current = content.getText(offset, 1).charAt(0);
-            if(current == target && !isEscaped(content, offset))
+            current = text.charAt(offset);
+            if(current == target && !isEscaped(text, offset))
                 --depth;
-            else if (current == pair && !isEscaped(content, offset))
+            else if (current == pair && !isEscaped(text, offset))
                 ++depth;
             if (depth == 0)
                 break;
         }
-        if(offset >= content.getTextLength() || depth != 0 || content.getText(offset, 1).charAt(0) != target) {
+        if(offset >= content.getTextLength() || depth != 0 || text.charAt(offset) != target) {
             throw new CommandExecutionException("'" + target + "' not found");
         }
         if(!upToTarget) {
@@ -52,11 +64,11 @@ public class FindBalancedMotion extends AbstractModelSideMotion {
     }
     
     //skip over escaped delimiters
-    protected boolean isEscaped(TextContent content, int offset) {
+    protected boolean isEscaped(CharSequence text, int offset) {
         if(offset == 0 || ignoreEscape) {
             return false;
         }
-        return content.getText(offset - 1, 1).charAt(0) == '\\';
+        return text.charAt(offset - 1) == '\\';
     }
 
     protected int getEndSearchOffset(TextContent content, int offset) {
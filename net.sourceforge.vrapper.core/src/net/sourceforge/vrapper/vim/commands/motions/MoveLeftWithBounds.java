@@ -1,8 +1,6 @@
 package net.sourceforge.vrapper.vim.commands.motions;
 
 import static java.lang.Math.max;
-import static java.lang.Math.min;
-import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.VimUtils;
 
 public abstract class MoveLeftWithBounds extends MoveWithBounds {
@@ -12,12 +10,12 @@ public abstract class MoveLeftWithBounds extends MoveWithBounds {
     }
 
     @Override
-	protected int destination(int offset, TextContent content, boolean bailOff, boolean hasMoreCounts) {
+	protected int destination(int offset, CharSequence text, boolean bailOff, boolean hasMoreCounts) {
 		boolean haveMoved = false;
 		// special case - end of buffer
-		final int last = content.getTextLength() - 1;
+		final int last = text.length() - 1;
 		if (offset > last) {
-            if (atBoundary(content.getText(last, 1).charAt(0), ' ')) {
+            if (atBoundary(text.charAt(last), ' ')) {
                 return last;
             } else {
 				haveMoved = true;
@@ -31,28 +29,24 @@ public abstract class MoveLeftWithBounds extends MoveWithBounds {
         }
 
 		boolean lookingAtNL = false;
-		notFound: while (offset >= 1) {
-			int i, len = min(BUFFER_LEN, offset + 1);
-			String buffer = content.getText(offset + 1 - len, len);
-			for (i = len-1; i > 0; i--, offset--) {
-				if (atBoundary(buffer.charAt(i-1), buffer.charAt(i))) {
-                    break notFound;
-                }
-				if (stopsAtNewlines()) {
-				    String prefix = buffer.substring(0, i + (shouldStopAtLeftBoundingChar() ? 0 : 1));
-				    int nlSkip = VimUtils.endsWithNewLine(prefix);
-				    if (nlSkip != 0) {
-				        if (lookingAtNL) {
-				            ++offset;
-				            break notFound;
-				        } else {
-				            i -= nlSkip - 1;
-				            offset -= nlSkip - 1;
-				        }
-				    } 
-				    lookingAtNL = nlSkip != 0;
-				}
+		while (offset >= 1) {
+			if (atBoundary(text.charAt(offset - 1), text.charAt(offset))) {
+                break;
+            }
+			if (stopsAtNewlines()) {
+			    int prefixEnd = offset + (shouldStopAtLeftBoundingChar() ? 0 : 1);
+			    int nlSkip = VimUtils.endsWithNewLine(text, prefixEnd);
+			    if (nlSkip != 0) {
+			        if (lookingAtNL) {
+			            ++offset;
+			            break;
+			        } else {
+			            offset -= nlSkip - 1;
+			        }
+			    } 
+			    lookingAtNL = nlSkip != 0;
 			}
+			offset--;
 		}
 
 		if (shouldStopAtLeftBoundingChar()) {
@@ -1,9 +1,9 @@
 package net.sourceforge.vrapper.vim.commands.motions;
 
-import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.KeywordClass;
 import net.sourceforge.vrapper.utils.Position;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
-import net.sourceforge.vrapper.vim.Options;
 
 public abstract class MoveWithBounds extends CountAwareMotion {
     protected static final int BUFFER_LEN = 32;
@@ -11,8 +11,8 @@ public abstract class MoveWithBounds extends CountAwareMotion {
     protected abstract boolean atBoundary(char c1, char c2);
     protected abstract boolean stopsAtNewlines();
     protected abstract boolean shouldStopAtLeftBoundingChar();
-    protected abstract int destination(int offset, TextContent viewContent, boolean bailOff, boolean hasMoreCounts);
-    protected String keywords;
+    protected abstract int destination(int offset, CharSequence text, boolean bailOff, boolean hasMoreCounts);
+    protected KeywordClass keywords;
 
     private final boolean bailOff;
     
@@ -27,15 +27,17 @@ public abstract class MoveWithBounds extends CountAwareMotion {
     @Override
     public Position destination(EditorAdaptor editorAdaptor, int count, Position fromPosition) {
         //used for calls to Utils.characterType in child classes
-        keywords = editorAdaptor.getConfiguration().get(Options.KEYWORDS);
+        keywords = editorAdaptor.getConfiguration().getKeywordClass();
 
         if (count == NO_COUNT_GIVEN)
             count = 1;
 
         int offset = fromPosition.getModelOffset();
+        // Shared by all repetitions so that the text is fetched only once
+        CharSequence text = new TextContentCharSequence(editorAdaptor.getModelContent());
 
         for (int i = 0; i < count; i++)
-            offset = destination(offset, editorAdaptor.getModelContent(), bailOff && i == 0, i != count-1);
+            offset = destination(offset, text, bailOff && i == 0, i != count-1);
         
         return editorAdaptor.getCursorService().newPositionForModelOffset(offset);
     }
@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.BracketIndex;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.vim.commands.BorderPolicy;
 import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
@@ -48,10 +49,13 @@ public class ParenthesesMove extends AbstractModelSideMotion {
             // character before.
             startIndex--;
         }
-        for (int index = startIndex; index < line.getEndOffset(); index++) {
-            String c = content.getText(index, 1);
-            if (PARENTHESES.containsKey(c)) {
-                return findMatch(index, PARENTHESES.get(c), content, count);
+        if (startIndex < line.getEndOffset()) {
+            String rest = content.getText(startIndex, line.getEndOffset() - startIndex);
+            for (int i = 0; i < rest.length(); i++) {
+                String c = rest.substring(i, i + 1);
+                if (PARENTHESES.containsKey(c)) {
+                    return findMatch(startIndex + i, PARENTHESES.get(c), content, count);
+                }
             }
         }
 
@@ -190,6 +194,12 @@ public class ParenthesesMove extends AbstractModelSideMotion {
      * so we match the correct pair.
      */
     private static int findMatch(int offset, ParenthesesPair pair, TextContent content, int count) {
+        BracketIndex bracketIndex = BracketIndex.of(content);
+        if (bracketIndex != null) {
+            char target = (pair.backwards ? pair.left : pair.right).charAt(0);
+            int match = bracketIndex.findUnmatched(content, offset, target, pair.backwards, true, count);
+            return match < 0 ? offset : match;
+        }
     	int index = offset;
         int depth = count;
         int leftModifier, rightModifier, limit, indexModifier;
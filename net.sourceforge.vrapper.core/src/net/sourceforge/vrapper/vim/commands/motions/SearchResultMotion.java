@@ -8,15 +8,19 @@ import net.sourceforge.vrapper.platform.Configuration;
 import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.SearchAndReplaceService;
 import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.platform.UserInterfaceService;
 import net.sourceforge.vrapper.utils.ContentType;
+import net.sourceforge.vrapper.utils.DocumentSnapshot;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.Search;
+import net.sourceforge.vrapper.utils.SearchMatchIndex;
 import net.sourceforge.vrapper.utils.SearchOffset.Begin;
 import net.sourceforge.vrapper.utils.SearchOffset.End;
 import net.sourceforge.vrapper.utils.SearchOffset;
 import net.sourceforge.vrapper.utils.SearchResult;
 import net.sourceforge.vrapper.utils.StartEndTextRange;
 import net.sourceforge.vrapper.utils.TextRange;
+import net.sourceforge.vrapper.utils.VimRegexTranslator;
 import net.sourceforge.vrapper.utils.VimUtils;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
 import net.sourceforge.vrapper.vim.Options;
@@ -43,6 +47,10 @@ public class SearchResultMotion extends CountAwareMotion {
 
     private static final String NOT_FOUND_MESSAGE = "'%s' not found";
     private static final String NOT_FOUND_WRAP = "search hit %s without match for: %s";
+    /** Time spent counting matches for the "[3/12]" message before letting other events run. */
+    private static final long COUNT_SLICE_NANOS = 10 * 1000 * 1000;
+    /** Number of slices after which counting gives up, the count isn't shown then. */
+    private static final int MAX_COUNT_SLICES = 100;
 
     protected final boolean reverse;
     private Boolean forcedBackwards;
@@ -77,7 +85,9 @@ public class SearchResultMotion extends CountAwareMotion {
         if(search.isRegExSearch()) {
             //before attempting search, is this regex even valid?
             try {
-                Pattern.compile(search.getKeyword());
+                VimRegexTranslator.INSTANCE.compile(search.getKeyword(),
+                        editorAdaptor.getConfiguration().get(Options.KEYWORDS),
+                        search.isCaseSensitive());
             }
             catch(PatternSyntaxException e) {
                 throw new CommandExecutionException("Invalid regex search string: " + search.getKeyword());
@@ -120,9 +130,97 @@ public class SearchResultMotion extends CountAwareMotion {
             }
             position = result.getStart();
         }
+        if (editorAdaptor.getConfiguration().get(Options.SEARCH_COUNT)) {
+            showMatchCount(editorAdaptor, shouldReverse ? search.reverse() : search, result);
+        }
         return offset.apply(modelContent, result);
     }
 
+    /**
+     * Shows the search and the number of the match like "/foo  [3/12]". If the matches haven't
+     * been counted yet, they are counted in slices after this command and shown when done.
+     */
+    private static void showMatchCount(EditorAdaptor editorAdaptor, Search search, SearchResult match) {
+        TextContent content = editorAdaptor.getModelContent();
+        SearchMatchIndex index = SearchMatchIndex.of(content);
+        Pattern pattern = index == null ? null : VimUtils.getSearchPattern(editorAdaptor, search);
+        if (pattern == null) {
+            return;
+        }
+        MatchCounter counter = new MatchCounter(editorAdaptor, index, pattern, search, match);
+        // Only use what is known already, counting the rest mustn't delay this command.
+        String message = counter.count(System.nanoTime());
+        if (message != null) {
+            UserInterfaceService userInterfaceService = editorAdaptor.getUserInterfaceService();
+            userInterfaceService.setInfoSet(true);
+            userInterfaceService.setLastCommandResultValue(message);
+        } else {
+            editorAdaptor.getUserInterfaceService().runLater(0, counter);
+        }
+    }
+
+    /**
+     * Counts the matches of a search in slices on the UI thread. Stops if another search result
+     * has been found, another search (e.g. 'incsearch') used the index or the text has changed
+     * in the meantime, and gives up after {@link #MAX_COUNT_SLICES} slices.
+     */
+    private static class MatchCounter implements Runnable {
+
+        private final EditorAdaptor editorAdaptor;
+        private final SearchMatchIndex index;
+        private final Pattern pattern;
+        private final Search search;
+        private final SearchResult match;
+        private final int textLength;
+        private final long stamp;
+        private int slices;
+
+        MatchCounter(EditorAdaptor editorAdaptor, SearchMatchIndex index, Pattern pattern,
+                Search search, SearchResult match) {
+            this.editorAdaptor = editorAdaptor;
+            this.index = index;
+            this.pattern = pattern;
+            this.search = search;
+            this.match = match;
+            this.textLength = editorAdaptor.getModelContent().getTextLength();
+            this.stamp = DocumentSnapshot.stampOf(editorAdaptor.getModelContent());
+        }
+
+        @Override
+        public void run() {
+            if (editorAdaptor.getLastSearchResult() != match
+                    || ! index.isIndexing(pattern)
+                    || ++slices > MAX_COUNT_SLICES
+                    || isChanged(editorAdaptor.getModelContent())) {
+                return;
+            }
+            String message = count(System.nanoTime() + COUNT_SLICE_NANOS);
+            if (message != null) {
+                editorAdaptor.getUserInterfaceService().setInfoMessage(message);
+            } else {
+                editorAdaptor.getUserInterfaceService().runLater(0, this);
+            }
+        }
+
+        /** @return whether the text has changed, by its length if it has no modification stamp. */
+        private boolean isChanged(TextContent content) {
+            return stamp == -1
+                    ? content.getTextLength() != textLength
+                    : DocumentSnapshot.stampOf(content) != stamp;
+        }
+
+        /** @return the message, or null if the matches couldn't be counted before the deadline. */
+        String count(long deadline) {
+            int[] count = index.count(editorAdaptor.getModelContent(), pattern,
+                    match.getStart().getModelOffset(), deadline);
+            if (count[0] < 0 || count[1] < 0) {
+                return null;
+            }
+            return (search.isBackward() ? "?" : "/") + search.getKeyword()
+                    + "  [" + count[0] + "/" + count[1] + "]";
+        }
+    }
+
     public BorderPolicy borderPolicy() {
         if (lineWise) {
             return BorderPolicy.LINE_WISE;
@@ -222,9 +320,17 @@ public class SearchResultMotion extends CountAwareMotion {
             if ( ! search.isBackward()) {
                 tempSearch = search.reverse();
             }
+            Position position = editorAdaptor.getPosition();
+            TextContent content = editorAdaptor.getModelContent();
+            SearchMatchIndex index = SearchMatchIndex.of(content);
+            Pattern pattern = index == null ? null : VimUtils.getSearchPattern(editorAdaptor, search);
+            if (pattern != null) {
+                int[] match = index.findMatchAt(content, pattern, position.getModelOffset());
+                return match == null ? null : new SearchResult(position.setModelOffset(match[0]),
+                        position.setModelOffset(match[1]));
+            }
             // Search backwards but allow to hit the current position.
             SearchAndReplaceService searchService = editorAdaptor.getSearchAndReplaceService();
-            Position position = editorAdaptor.getPosition();
             SearchResult testMatch = searchService.find(tempSearch, position);
             int currentOffset = position.getModelOffset();
             if (testMatch.isFound()
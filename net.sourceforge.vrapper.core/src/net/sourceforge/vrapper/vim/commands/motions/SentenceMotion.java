@@ -1,7 +1,5 @@
 package net.sourceforge.vrapper.vim.commands.motions;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,6 +9,7 @@ import net.sourceforge.vrapper.utils.ContentType;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.StartEndTextRange;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
 import net.sourceforge.vrapper.utils.TextRange;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
 import net.sourceforge.vrapper.vim.commands.AbstractTextObject;
@@ -54,20 +53,23 @@ public class SentenceMotion extends CountAwareMotion {
 
         Position cursor = fromPosition;
         int position = cursor.getModelOffset();
+        TextContent modelContent = editorAdaptor.getModelContent();
+        //matchers run on a view of the whole text, shared by all repetitions
+        CharSequence text = new TextContentCharSequence(modelContent);
+        Matcher boundaryMatcher = pattern.matcher(text);
+        Matcher endOnSentenceMatcher = endOnSentence.matcher(text);
         for (int i = 0; i < count; i++) {
-            position = doIt(editorAdaptor, position);
+            position = doIt(modelContent, boundaryMatcher, endOnSentenceMatcher, position);
         }
 
         return cursor.setModelOffset(position);
 	}
 	
-	private int doIt(EditorAdaptor editorAdaptor, int position) {
-        TextContent modelContent = editorAdaptor.getModelContent();
-        
+	private int doIt(TextContent modelContent, Matcher boundaryMatcher, Matcher endOnSentenceMatcher, int position) {
         LineInformation line = modelContent.getLineInformationOfOffset(position);
         LineInformation lineTmp;
         int posTmp;
-        int offset = getSentenceBoundaryOffset(line, position, modelContent, includeCursor);
+        int offset = getSentenceBoundaryOffset(boundaryMatcher, line, position, includeCursor);
         
         while(offset == -1) {
         	if(forward) {
@@ -83,8 +85,7 @@ public class SentenceMotion extends CountAwareMotion {
         			}
         			else {
         			    //if this line ends on a sentence boundary, return next line start
-        			    String lineText = modelContent.getText(lineTmp.getBeginOffset(), lineTmp.getLength());
-        			    if(endOnSentence.matcher(lineText).matches()) {
+        			    if(endsOnSentence(endOnSentenceMatcher, lineTmp)) {
         			        return line.getBeginOffset();
         			    }
         			}
@@ -109,8 +110,7 @@ public class SentenceMotion extends CountAwareMotion {
         			}
         			else {
         			    //if previous line ends on a sentence boundary, return this line start
-        			    String lineText = modelContent.getText(line.getBeginOffset(), line.getLength());
-        			    if(endOnSentence.matcher(lineText).matches() && posTmp != lineTmp.getBeginOffset()) {
+        			    if(endsOnSentence(endOnSentenceMatcher, line) && posTmp != lineTmp.getBeginOffset()) {
                             //if posTmp was already at the beginning of this line, get next sentence boundary (loop again)
                             //otherwise, go to beginning of this line
         			        return lineTmp.getBeginOffset();
@@ -124,30 +124,35 @@ public class SentenceMotion extends CountAwareMotion {
         	}
         	
         	//check this new line for a sentence
-        	offset = getSentenceBoundaryOffset(line, position, modelContent, includeCursor);
+        	offset = getSentenceBoundaryOffset(boundaryMatcher, line, position, includeCursor);
         }
         
         return offset;
 	}
 
+    private boolean endsOnSentence(Matcher endOnSentenceMatcher, LineInformation line) {
+        return endOnSentenceMatcher.region(line.getBeginOffset(), line.getEndOffset()).matches();
+    }
+
     //includeEnd only applies to text objects.
 	//It refers to the end of the string (typically cursor location), not the end of the line.
-	private int getSentenceBoundaryOffset(LineInformation line, int position, TextContent modelContent, boolean includeEnd) {
-        String text;
+	private int getSentenceBoundaryOffset(Matcher match, LineInformation line, int position, boolean includeEnd) {
         int begin = line.getBeginOffset();
+        int end;
 
         if(forward) {
-        	//start at cursor, get text to end of line
-        	text = modelContent.getText(position, line.getEndOffset() - position);
+        	//start at cursor, search to end of line
+        	end = line.getEndOffset();
+        	match.region(position, end);
         }
         else {
-        	//start at beginning of line, get text to cursor
-        	text = modelContent.getText(begin, position - begin);
+        	//start at beginning of line, search to cursor
+        	end = position;
+        	match.region(begin, end);
         }
         
-        //collect start index of each match
-        List<Integer> matches = new ArrayList<Integer>();
-        Matcher match = pattern.matcher(text);
+        //match offsets are model offsets as the matcher runs on the whole text
+        int result = -1;
         while(match.find()) {
             //when moving backwards, if the cursor is *on* the beginning of a sentence
             //'(' should jump to the previous sentence, but 'is' should select this sentence.
@@ -155,19 +160,17 @@ public class SentenceMotion extends CountAwareMotion {
             //if the match is not the end of the string, add it
             //if the match *is* the end of the string *and* we want to include it, add it
             //(includeEnd is only checked if first condition is false, meaning the match *is* the end)
-            if(match.start(1) != text.length() || includeEnd) {
-                matches.add(match.start(1));
+            if(match.start(1) != end || includeEnd) {
+                result = match.start(1);
+                //first match if forward, last match if backwards
+                if(forward) {
+                    break;
+                }
             }
         }
         
-        if(matches.size() > 0) {
-        	//first match if forward, last match if backwards
-        	//(match offsets are local to this line, convert to modelContent offset)
-        	return forward ? matches.get(0) + position : matches.get( matches.size() -1 ) + begin;
-        }
-        else { //no sentence boundary found
-        	return -1;
-        }
+        //-1 if no sentence boundary found
+        return result;
 	}
 
 	public BorderPolicy borderPolicy() {
@@ -16,6 +16,7 @@ import net.sourceforge.vrapper.utils.BlockWiseSelectionArea;
 import net.sourceforge.vrapper.utils.CaretType;
 import net.sourceforge.vrapper.utils.ContentType;
 import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.SelectionArea;
 import net.sourceforge.vrapper.utils.StringUtils;
@@ -61,8 +62,8 @@ public class BlockwiseVisualMode extends AbstractVisualMode {
 
         public static final Command INSERT_INSTANCE = new BlockwiseRepeatInsertCommand(InsertModeType.INSERT);
         public static final Command APPEND_INSTANCE = new BlockwiseRepeatInsertCommand(InsertModeType.APPEND);
-        public static final Command REPEAT_INSERT_INSTANCE = new Repetition(InsertModeType.INSERT);
-        public static final Command REPEAT_APPEND_INSTANCE = new Repetition(InsertModeType.APPEND);
+        public static final Command REPEAT_INSERT_INSTANCE = new Repetition(InsertModeType.INSERT, null);
+        public static final Command REPEAT_APPEND_INSTANCE = new Repetition(InsertModeType.APPEND, null);
 
         BlockwiseRepeatInsertCommand(InsertModeType mode) {
             this.mode = mode;
@@ -109,12 +110,22 @@ public class BlockwiseVisualMode extends AbstractVisualMode {
             final Position newStart = cursorService.getMark(CursorService.LAST_CHANGE_START);
 	        editorAdaptor.setPosition(newStart, StickyColumnPolicy.NEVER);
 	        final TextContent modelContent = editorAdaptor.getModelContent();
+            // Text typed without deleting anything before the insert position can be inserted on
+            // all lines at once, anything else is replayed line by line.
+            final Position changeEnd = cursorService.getMark(CursorService.LAST_CHANGE_END);
+            final MultiEdit edits = insertion.getCount() <= 1 && changeEnd != null
+                    && changeEnd.getModelOffset() - newStart.getModelOffset() == string.length()
+                    ? new MultiEdit() : null;
             if (mode == InsertModeType.INSERT) {
                 final TextRange region = sel.getRegion(editorAdaptor, NO_COUNT_GIVEN);
                 final TextBlock block = BlockWiseSelection.getTextBlock(region.getStart(), region.getEnd(),
                         modelContent, cursorService);
                 for (int line = block.startLine + 1; line <= block.endLine; ++line) {
-                    executeInsertAtVOffset(editorAdaptor, insertion, block.startVisualOffset, line, mode);
+                    if (edits != null) {
+                        addInsertAtVOffset(editorAdaptor, string, block.startVisualOffset, line, mode, edits);
+                    } else {
+                        executeInsertAtVOffset(editorAdaptor, insertion, block.startVisualOffset, line, mode);
+                    }
                 }
 	        } else {
                 LineInformation lineInfo = modelContent.getLineInformationOfOffset(newStart.getModelOffset());
@@ -124,20 +135,32 @@ public class BlockwiseVisualMode extends AbstractVisualMode {
 	            if (bsel.isUntilEOL()) {
 	                for (int line = startLine + 1; line < endLine; ++line) {
 	                    lineInfo = modelContent.getLineInformation(line);
-                        final Position pos = cursorService.newPositionForModelOffset(lineInfo.getEndOffset());
-                        editorAdaptor.setPosition(pos, StickyColumnPolicy.NEVER);
-                        insertion.execute(editorAdaptor);
+	                    if (edits != null) {
+	                        edits.insert(lineInfo.getEndOffset(), string);
+	                    } else {
+	                        final Position pos = cursorService.newPositionForModelOffset(lineInfo.getEndOffset());
+	                        editorAdaptor.setPosition(pos, StickyColumnPolicy.NEVER);
+	                        insertion.execute(editorAdaptor);
+	                    }
 	                }
 	            } else {
 	                final int vOffset = cursorService.getVisualOffset(newStart);
 	                for (int line = startLine + 1; line < endLine; ++line) {
-	                    executeInsertAtVOffset(editorAdaptor, insertion, vOffset, line, mode);
+	                    if (edits != null) {
+	                        addInsertAtVOffset(editorAdaptor, string, vOffset, line, mode, edits);
+	                    } else {
+	                        executeInsertAtVOffset(editorAdaptor, insertion, vOffset, line, mode);
+	                    }
 	                }
 	            }
 	        }
+	        if (edits != null) {
+	            modelContent.replace(edits);
+	        }
 	        editorAdaptor.setPosition(newStart, StickyColumnPolicy.NEVER);
             
-            editorAdaptor.getRegisterManager().setLastEdit(repetition());
+            editorAdaptor.getRegisterManager().setLastEdit(
+                    edits != null ? new Repetition(mode, string) : repetition());
             finish(editorAdaptor);
         }
 
@@ -164,6 +187,24 @@ public class BlockwiseVisualMode extends AbstractVisualMode {
             }
         }
         
+        /**
+         * Adds the insertion of <code>text</code> at <code>vOffset</code> of <code>line</code>
+         * to <code>edits</code>, extending the line with spaces when appending past its end.
+         */
+        static void addInsertAtVOffset(final EditorAdaptor editorAdaptor, final String text,
+                final int vOffset, int line, final InsertModeType mode, final MultiEdit edits) {
+            final CursorService cursorService = editorAdaptor.getCursorService();
+            final Position pos = cursorService.getPositionByVisualOffset(line, vOffset);
+            if (pos != null) {
+                edits.insert(pos.getModelOffset(), text);
+            } else if (mode == InsertModeType.APPEND) {
+                final LineInformation lineInfo = editorAdaptor.getModelContent().getLineInformation(line);
+                final Position lineEnd = cursorService.newPositionForModelOffset(lineInfo.getEndOffset());
+                final int padding = cursorService.visualWidthToChars(vOffset - cursorService.getVisualOffset(lineEnd));
+                edits.insert(lineInfo.getEndOffset(), StringUtils.multiply(" ", padding) + text);
+            }
+        }
+
         private void finish(final EditorAdaptor editorAdaptor) {
             final HistoryService history = editorAdaptor.getHistory();
             history.unlock("block-action");
@@ -175,9 +216,12 @@ public class BlockwiseVisualMode extends AbstractVisualMode {
     static public class Repetition extends CountAwareCommand {
 
         final private InsertModeType mode;
+        /** Text inserted on every line, null to replay the last insertion instead. */
+        final private String text;
 
-        public Repetition(InsertModeType mode) {
+        public Repetition(InsertModeType mode, String text) {
             this.mode = mode;
+            this.text = text;
         }
 
         @Override
@@ -195,15 +239,21 @@ public class BlockwiseVisualMode extends AbstractVisualMode {
             if (mode == InsertModeType.APPEND) {
                 regionStart = regionStart.addModelOffset(1);
             }
+            final MultiEdit edits = text != null ? new MultiEdit() : null;
             history.beginCompoundChange();
             history.lock("block-action");
             if (mode == InsertModeType.INSERT) {
                 final TextBlock block = BlockWiseSelection.getTextBlock(regionStart, region.getEnd(),
                         editorAdaptor.getModelContent(), cursorService);
                 for (int line = block.startLine; line <= block.endLine; ++line) {
-                    BlockwiseRepeatInsertCommand.executeInsertAtVOffset(
-                            editorAdaptor, insertion, block.startVisualOffset,
-                            line, mode);
+                    if (edits != null) {
+                        BlockwiseRepeatInsertCommand.addInsertAtVOffset(
+                                editorAdaptor, text, block.startVisualOffset, line, mode, edits);
+                    } else {
+                        BlockwiseRepeatInsertCommand.executeInsertAtVOffset(
+                                editorAdaptor, insertion, block.startVisualOffset,
+                                line, mode);
+                    }
                 }
 	        } else {
 	            final TextContent modelContent = editorAdaptor.getModelContent();
@@ -212,10 +262,18 @@ public class BlockwiseVisualMode extends AbstractVisualMode {
 	            final int startLine = lineInfo.getNumber();
 	            final int endLine = Math.min(startLine + sel.getLinesSpanned(),  modelContent.getNumberOfLines());
 	            for (int line = startLine; line < endLine; ++line) {
-                    BlockwiseRepeatInsertCommand.executeInsertAtVOffset(
-                            editorAdaptor, insertion, vOffset, line, mode);
+	                if (edits != null) {
+	                    BlockwiseRepeatInsertCommand.addInsertAtVOffset(
+	                            editorAdaptor, text, vOffset, line, mode, edits);
+	                } else {
+	                    BlockwiseRepeatInsertCommand.executeInsertAtVOffset(
+	                            editorAdaptor, insertion, vOffset, line, mode);
+	                }
 	            }
 	        }
+	        if (edits != null) {
+	            editorAdaptor.getModelContent().replace(edits);
+	        }
             editorAdaptor.setPosition(regionStart, StickyColumnPolicy.ON_CHANGE);
             history.unlock("block-action");
             history.endCompoundChange();
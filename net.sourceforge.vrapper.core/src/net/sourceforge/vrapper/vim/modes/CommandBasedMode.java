@@ -16,6 +16,7 @@ import net.sourceforge.vrapper.keymap.SpecialKey;
 import net.sourceforge.vrapper.keymap.State;
 import net.sourceforge.vrapper.keymap.Transition;
 import net.sourceforge.vrapper.keymap.vim.ConstructorWrappers;
+import net.sourceforge.vrapper.log.LatencyStatistics;
 import net.sourceforge.vrapper.log.VrapperLog;
 import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.PlatformSpecificStateProvider;
@@ -67,6 +68,18 @@ import net.sourceforge.vrapper.vim.register.RegisterManager;
 /** Base class for normal and visual modes. */
 public abstract class CommandBasedMode extends AbstractMode {
 
+    /**
+     * Is told about every command run for typed keys, used to compile macros.
+     * @see CommandBasedMode#setCommandListener(CommandListener)
+     */
+    public interface CommandListener {
+        /**
+         * @param command the command which was run, or null if the typed keys weren't recognized.
+         * @param nextState the state in which the mode continues, null if it was reset.
+         */
+        void commandRun(Command command, State<Command> nextState);
+    }
+
     private static State<Motion> motions;
 
     protected final State<Command> initialState;
@@ -74,6 +87,7 @@ public abstract class CommandBasedMode extends AbstractMode {
     private final KeyMapResolver keyMapResolver;
     private final StringBuilder commandBuffer;
     protected int commandBufferRemapIndex = -1;
+    private CommandListener commandListener;
     private static Map<String, State<Command>> initialStateCache = new HashMap<String, State<Command>>();
 
     public CommandBasedMode(EditorAdaptor editorAdaptor) {
@@ -261,9 +275,16 @@ public abstract class CommandBasedMode extends AbstractMode {
 
     public void executeCommand(Command command)
             throws CommandExecutionException {
-        editorAdaptor.getListeners().fireCommandAboutToExecute();
-        command.execute(editorAdaptor);
-        editorAdaptor.getListeners().fireCommandExecuted();
+        LatencyStatistics.Timer timer = LatencyStatistics.start();
+        try {
+            editorAdaptor.getListeners().fireCommandAboutToExecute();
+            command.execute(editorAdaptor);
+            editorAdaptor.getListeners().fireCommandExecuted();
+        } finally {
+            if (timer != null) {
+                timer.stop(LatencyStatistics.COMMAND, LatencyStatistics.nameOf(command));
+            }
+        }
         Command repetition = command.repetition();
         if (repetition != null) {
             RegisterManager registerManager = editorAdaptor .getRegisterManager();
@@ -310,22 +331,18 @@ public abstract class CommandBasedMode extends AbstractMode {
         }
         commandBuffer.append(keyStroke.getCharacter());
         boolean recognized = false;
+        Command command = null;
         if (transition != null) {
-            Command command = transition.getValue();
+            command = transition.getValue();
             currentState = transition.getNextState();
             if (command != null) {
                 recognized = true;
-                try {
-                    executeCommand(command);
-                } catch (CommandExecutionException e) {
-                    setErrorMessage(e.getMessage());
-                    reset();
-                    editorAdaptor.getListeners().fireStateReset(true);
-                    commandDone();
-                    isEnabled = true;
-                }
+                runCommand(command);
             }
         }
+        if (commandListener != null && (command != null || currentState == null || transition == null)) {
+            commandListener.commandRun(command, transition == null ? null : transition.getNextState());
+        }
         if (transition == null || currentState == null) {
             reset();
             editorAdaptor.getListeners().fireStateReset(recognized);
@@ -360,6 +377,52 @@ public abstract class CommandBasedMode extends AbstractMode {
         return true;
     }
 
+    /**
+     * Runs a command like {@link #handleKey(KeyStroke)} does for the key completing it, without
+     * going through the key maps again. Used to play back compiled macros.
+     * @param command command reported to a {@link CommandListener}, may be null.
+     * @param nextState state reported along with it.
+     */
+    public void replayCommand(Command command, State<Command> nextState) {
+        currentState = nextState;
+        if (command != null) {
+            runCommand(command);
+        }
+        if (currentState == null) {
+            reset();
+            editorAdaptor.getListeners().fireStateReset(command != null);
+            if (isEnabled) {
+                commandDone();
+            }
+        }
+        placeCursor(StickyColumnPolicy.NEVER);
+    }
+
+    /**
+     * Sets the listener told about the commands run by {@link #handleKey(KeyStroke)}, or removes
+     * it when <code>listener</code> is null.
+     */
+    public void setCommandListener(CommandListener listener) {
+        commandListener = listener;
+    }
+
+    /** @return whether no command is partially typed. */
+    public boolean isIdle() {
+        return currentState == initialState;
+    }
+
+    private void runCommand(Command command) {
+        try {
+            executeCommand(command);
+        } catch (CommandExecutionException e) {
+            setErrorMessage(e.getMessage());
+            reset();
+            editorAdaptor.getListeners().fireStateReset(true);
+            commandDone();
+            isEnabled = true;
+        }
+    }
+
     private void setErrorMessage(String message) {
         editorAdaptor.getUserInterfaceService().setErrorMessage(message);
     }
@@ -15,9 +15,9 @@ import net.sourceforge.vrapper.platform.CommandLineUI;
 import net.sourceforge.vrapper.platform.CommandLineUI.CommandLineMode;
 import net.sourceforge.vrapper.platform.Platform;
 import net.sourceforge.vrapper.utils.ContentType;
+import net.sourceforge.vrapper.utils.KeywordClass;
 import net.sourceforge.vrapper.utils.VimUtils;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
-import net.sourceforge.vrapper.vim.Options;
 import net.sourceforge.vrapper.vim.commands.Command;
 import net.sourceforge.vrapper.vim.commands.LeaveVisualModeCommand;
 import net.sourceforge.vrapper.vim.modes.ExecuteCommandHint;
@@ -250,7 +250,7 @@ public abstract class AbstractCommandParser {
     	    if (offset > contents.length()) {
     	        offset = contents.length();
     	    }
-    	    String iskeyword = editor.getConfiguration().get(Options.KEYWORDS);
+    	    KeywordClass iskeyword = editor.getConfiguration().getKeywordClass();
     	    char c1, c2;
     	    do {
     	        offset--;
@@ -1,52 +1,115 @@
 package net.sourceforge.vrapper.vim.modes.commandline;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.vrapper.log.VrapperLog;
 
 /**
  * Stores the command line history for each mode.
+ * <p>
+ * Each mode keeps at most {@link #setCapacity(int) capacity} commands, the oldest ones
+ * are dropped first. If a storage file is set, the histories are read from it on first
+ * use and written back to it on a background thread after each change.
  */
 public class CommandLineHistory {
+	/** Same as the default of Vim's 'history' option. */
+	public static final int DEFAULT_CAPACITY = 50;
+	/** Same as the maximum of Vim's 'history' option. */
+	public static final int MAX_CAPACITY = 10000;
+
+	private static final int FILE_VERSION = 1;
+	//DataOutput.writeUTF can't write more than 65535 bytes, longer commands aren't stored
+	private static final int MAX_STORED_LENGTH = 65535 / 3;
+
 	//history of commands for each command-line mode
-	private Map<String, ArrayList<String>> modeHistory = new HashMap<String, ArrayList<String>>();
-	//current index into history
-	private int index = -1;
+	private final Map<String, ModeHistory> modeHistory = new HashMap<String, ModeHistory>();
+	//sequence number of the current entry, Long.MAX_VALUE when at the original text
+	private long position = Long.MAX_VALUE;
 	//original text entered by user before scrolling through history
-	private String original;
-	//ordered list of previously-entered commands for the current Mode
-	private List<String> history;
-	
+	private String original = "";
+	//previously-entered commands for the current Mode
+	private ModeHistory history;
+	private String modeName;
+	private int capacity = DEFAULT_CAPACITY;
+
+	private File storage;
+	private boolean loaded;
+	private boolean saveScheduled;
+	private final Object fileLock = new Object();
+	private ThreadPoolExecutor writer;
+
 	public static final CommandLineHistory INSTANCE = new CommandLineHistory();
-	
+
 	//singleton
 	private CommandLineHistory() { }
-	
+
+	/**
+	 * Sets the file the histories are kept in, or null to not keep them. Histories in
+	 * memory are dropped, those in the file are read when the history is next used.
+	 */
+	public synchronized void setStorage(File storage) {
+		this.storage = storage;
+		loaded = false;
+		modeHistory.clear();
+		history = null;
+	}
+
+	/**
+	 * Sets how many commands are kept for each mode, see Vim's 'history' option.
+	 */
+	public synchronized void setCapacity(int capacity) {
+		this.capacity = Math.max(0, Math.min(MAX_CAPACITY, capacity));
+		boolean trimmed = false;
+		for (ModeHistory modeEntries : modeHistory.values()) {
+			trimmed |= modeEntries.trim(this.capacity);
+		}
+		if (trimmed) {
+			scheduleSave();
+		}
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
 	/**
 	 * We've changed modes.  Fetch the history for this mode.
 	 * @param modeName name of now-current mode
 	 */
-	public void setMode(String modeName) {
-		index = -1;
-		if( ! modeHistory.containsKey(modeName)) {
-			modeHistory.put(modeName, new ArrayList<String>());
-		}
-		history = modeHistory.get(modeName);
+	public synchronized void setMode(String modeName) {
+		position = Long.MAX_VALUE;
+		this.modeName = modeName;
+		history = getModeHistory(modeName);
 	}
 
 	/**
 	 * User has committed a command (hit 'enter').  Add it to the history.
 	 * @param command - command to add to history
 	 */
-	public void append(String command) {
-		//remove duplicates (if any)
-		if(history.contains(command)) {
-			history.remove(command);
-		}
-		
-		history.add(0, command);
-		index = -1;
+	public synchronized void append(String command) {
+		getHistory().add(command, capacity);
+		position = Long.MAX_VALUE;
+		scheduleSave();
 	}
 
 	/**
@@ -56,9 +119,9 @@ public class CommandLineHistory {
 	 * treated as the first item in the history.
 	 * @param temp - User-entered string, may not be a full command
 	 */
-	public void setTemp(String temp) {
-		original = temp;
-		index = -1;
+	public synchronized void setTemp(String temp) {
+		original = temp == null ? "" : temp;
+		position = Long.MAX_VALUE;
 	}
 
 	/**
@@ -66,16 +129,13 @@ public class CommandLineHistory {
 	 * whatever the user had entered before scrolling through the history.
 	 * @return the command in the history or null if none found to match.
 	 */
-	public String getPrevious() {
-		String command;
-		for(int i=index+1; i < history.size(); i++) {
-			command = history.get(i);
-			if(command.startsWith(original)) {
-				index = i;
-				return command;
-			}
+	public synchronized String getPrevious() {
+		Entry<Long, String> entry = getHistory().before(position, original);
+		if (entry == null) {
+			return null;
 		}
-		return null;
+		position = entry.getKey();
+		return entry.getValue();
 	}
 
 	/**
@@ -84,16 +144,237 @@ public class CommandLineHistory {
 	 * @return the command in the history or the original command if none
 	 * found to match.
 	 */
-	public String getNext() {
-		String command;
-		for(int i=index-1; i > -1; i--) {
-			command = history.get(i);
-			if(command.startsWith(original)) {
-				index = i;
-				return command;
+	public synchronized String getNext() {
+		Entry<Long, String> entry = position == Long.MAX_VALUE
+				? null : getHistory().after(position, original);
+		if (entry == null) {
+			position = Long.MAX_VALUE;
+			return original;
+		}
+		position = entry.getKey();
+		return entry.getValue();
+	}
+
+	/**
+	 * Writes pending changes to the storage file now, on the calling thread.
+	 */
+	public void flush() {
+		synchronized (this) {
+			if ( ! saveScheduled) {
+				return;
+			}
+		}
+		save();
+	}
+
+	private ModeHistory getHistory() {
+		if (history == null) {
+			history = getModeHistory(modeName);
+		}
+		return history;
+	}
+
+	private ModeHistory getModeHistory(String name) {
+		load();
+		ModeHistory result = modeHistory.get(name);
+		if (result == null) {
+			result = new ModeHistory();
+			modeHistory.put(name, result);
+		}
+		return result;
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		if (storage == null || ! storage.isFile()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(storage)));
+			if (in.readInt() != FILE_VERSION) {
+				VrapperLog.info("Ignoring command line history of unknown version in " + storage);
+				return;
+			}
+			int modes = in.readInt();
+			for (int i = 0; i < modes; i++) {
+				ModeHistory modeEntries = new ModeHistory();
+				modeHistory.put(in.readUTF(), modeEntries);
+				int count = in.readInt();
+				for (int j = 0; j < count; j++) {
+					modeEntries.add(in.readUTF(), capacity);
+				}
+			}
+		} catch (IOException e) {
+			VrapperLog.error("Failed to read command line history from " + storage, e);
+		} finally {
+			close(in);
+		}
+	}
+
+	private void scheduleSave() {
+		if (storage == null || saveScheduled) {
+			return;
+		}
+		saveScheduled = true;
+		if (writer == null) {
+			// A single thread which goes away when there's nothing to write.
+			writer = new ThreadPoolExecutor(0, 1, 5, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Vrapper command line history writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		writer.execute(new Runnable() {
+			public void run() {
+				save();
+			}
+		});
+	}
+
+	private void save() {
+		synchronized (fileLock) {
+			File file;
+			Map<String, List<String>> snapshot = new LinkedHashMap<String, List<String>>();
+			synchronized (this) {
+				if ( ! saveScheduled) {
+					// Already written by flush().
+					return;
+				}
+				saveScheduled = false;
+				file = storage;
+				for (Entry<String, ModeHistory> entry : modeHistory.entrySet()) {
+					snapshot.put(entry.getKey(), entry.getValue().getCommands());
+				}
+			}
+			if (file == null) {
+				return;
+			}
+			File temp = new File(file.getPath() + ".tmp");
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+				out.writeInt(FILE_VERSION);
+				out.writeInt(snapshot.size());
+				for (Entry<String, List<String>> entry : snapshot.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue().size());
+					for (String command : entry.getValue()) {
+						out.writeUTF(command);
+					}
+				}
+				out.close();
+				out = null;
+				if ( ! temp.renameTo(file) && ! (file.delete() && temp.renameTo(file))) {
+					throw new IOException("Cannot rename " + temp + " to " + file);
+				}
+			} catch (IOException e) {
+				VrapperLog.error("Failed to write command line history to " + file, e);
+			} finally {
+				close(out);
+			}
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Nothing left to do.
+			}
+		}
+	}
+
+	/**
+	 * Commands of one mode. Every command gets a new sequence number when it is added,
+	 * recall walks the sequence numbers of the commands with the wanted prefix.
+	 */
+	private static class ModeHistory {
+		//sequence number of each command, for finding duplicates
+		private final Map<String, Long> sequences = new HashMap<String, Long>();
+		//commands by sequence number, oldest first
+		private final TreeMap<Long, String> byAge = new TreeMap<Long, String>();
+		//commands sorted by text, those with a common prefix are next to each other
+		private final TreeSet<String> byText = new TreeSet<String>();
+		private long nextSequence;
+
+		void add(String command, int capacity) {
+			Long previous = sequences.get(command);
+			if (previous != null) {
+				byAge.remove(previous);
+			} else {
+				byText.add(command);
+			}
+			long sequence = nextSequence++;
+			sequences.put(command, sequence);
+			byAge.put(sequence, command);
+			trim(capacity);
+		}
+
+		/** @return whether commands were dropped. */
+		boolean trim(int capacity) {
+			boolean trimmed = false;
+			while (byAge.size() > capacity) {
+				String command = byAge.pollFirstEntry().getValue();
+				sequences.remove(command);
+				byText.remove(command);
+				trimmed = true;
+			}
+			return trimmed;
+		}
+
+		/** @return the newest command older than <code>sequence</code> starting with <code>prefix</code>. */
+		Entry<Long, String> before(long sequence, String prefix) {
+			if (prefix.length() == 0) {
+				return byAge.lowerEntry(sequence);
+			}
+			Entry<Long, String> best = null;
+			for (String command : byText.tailSet(prefix)) {
+				if ( ! command.startsWith(prefix)) {
+					break;
+				}
+				long candidate = sequences.get(command);
+				if (candidate < sequence && (best == null || candidate > best.getKey())) {
+					best = byAge.floorEntry(candidate);
+				}
+			}
+			return best;
+		}
+
+		/** @return the oldest command newer than <code>sequence</code> starting with <code>prefix</code>. */
+		Entry<Long, String> after(long sequence, String prefix) {
+			if (prefix.length() == 0) {
+				return byAge.higherEntry(sequence);
+			}
+			Entry<Long, String> best = null;
+			for (String command : byText.tailSet(prefix)) {
+				if ( ! command.startsWith(prefix)) {
+					break;
+				}
+				long candidate = sequences.get(command);
+				if (candidate > sequence && (best == null || candidate < best.getKey())) {
+					best = byAge.floorEntry(candidate);
+				}
+			}
+			return best;
+		}
+
+		/** @return the commands which can be stored, oldest first. */
+		List<String> getCommands() {
+			List<String> commands = new ArrayList<String>(byAge.size());
+			for (String command : byAge.values()) {
+				if (command.length() <= MAX_STORED_LENGTH) {
+					commands.add(command);
+				}
 			}
+			return commands;
 		}
-		index = -1;
-		return original;
 	}
 }
@@ -19,6 +19,11 @@ public class CommandLineMode extends AbstractCommandLineMode {
         commands.addAll(coreCommands);
     }
 
+    /** @return the commands known to all editors, before plugins add their own. */
+    static EvaluatorMapping getCoreCommands() {
+        return coreCommands;
+    }
+
     @Override
     public CommandLineParser createParser() {
         return new CommandLineParser(editorAdaptor, commands);
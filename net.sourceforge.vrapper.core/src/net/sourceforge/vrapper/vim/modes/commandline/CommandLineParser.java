@@ -38,6 +38,7 @@ import net.sourceforge.vrapper.vim.commands.LineRangeOperationCommand;
 import net.sourceforge.vrapper.vim.commands.ListBuffersCommand;
 import net.sourceforge.vrapper.vim.commands.ListMarksCommand;
 import net.sourceforge.vrapper.vim.commands.ListRegistersCommand;
+import net.sourceforge.vrapper.vim.commands.ListStatisticsCommand;
 import net.sourceforge.vrapper.vim.commands.ListUserCommandsCommand;
 import net.sourceforge.vrapper.vim.commands.MotionCommand;
 import net.sourceforge.vrapper.vim.commands.OpenInGvimCommand;
@@ -284,6 +285,21 @@ public class CommandLineParser extends AbstractCommandParser {
                 return null;
             }
         };
+        Evaluator statistics = new Evaluator() {
+            public Object evaluate(EditorAdaptor vim, Queue<String> command) {
+                try {
+                    StringBuilder argument = new StringBuilder();
+                    while (command.size() > 0) {
+                        argument.append(command.poll());
+                    }
+                    new ListStatisticsCommand(argument.toString()).execute(vim);
+                }
+                catch (CommandExecutionException e) {
+                    vim.getUserInterfaceService().setErrorMessage(e.getMessage());
+                }
+                return null;
+            }
+        };
         Evaluator delmarks = new Evaluator() {
             public Object evaluate(EditorAdaptor vim, Queue<String> command) {
             	if(command.isEmpty()) {
@@ -470,6 +486,7 @@ public class CommandLineParser extends AbstractCommandParser {
         mapping.add("delmarks", delmarks);
         mapping.add("ls", new CommandWrapper(ListBuffersCommand.INSTANCE));
         mapping.add("buffers", new CommandWrapper(ListBuffersCommand.INSTANCE));
+        mapping.add("vrapperstats", statistics);
         return mapping;
     }
 
@@ -0,0 +1,310 @@
+package net.sourceforge.vrapper.vim.modes.commandline;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import net.sourceforge.vrapper.keymap.KeyMap;
+import net.sourceforge.vrapper.log.VrapperLog;
+import net.sourceforge.vrapper.platform.Configuration.Option;
+import net.sourceforge.vrapper.platform.Configuration.OptionScope;
+import net.sourceforge.vrapper.vim.EditorAdaptor;
+import net.sourceforge.vrapper.vim.Options;
+import net.sourceforge.vrapper.vim.commands.Command;
+import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
+
+/**
+ * Commands of a <tt>.vrapperrc</tt> file, read once and shared by all editors.
+ *
+ * <p>Files are cached by path and re-read when their modification time or size changes. Lines
+ * Vrapper doesn't support (comments, <tt>if</tt>, <tt>function</tt> and <tt>try</tt> blocks) are
+ * dropped when reading the file.
+ *
+ * <p>Mappings, <tt>let mapleader</tt> and <tt>set</tt> of options which aren't editor-local only
+ * change state shared by all editors, or give every editor the same keymaps. These global commands
+ * are run for the first editor only; later editors get a copy of the resulting keymaps. All other
+ * commands are run for every editor after the global ones, in the order of the file.
+ *
+ * <p>Running the global commands first is only done while it can't change the result: a command
+ * which may depend on them or change what they do, like <tt>source</tt>, <tt>autocmd</tt> or
+ * <tt>let g:mapleader</tt>, makes it and every command after it run for every editor. Only
+ * <tt>set</tt> and <tt>setlocal</tt> of editor-local options and <tt>let @r</tt> may be run after
+ * global commands following them.
+ *
+ * @see #get(File)
+ */
+public class CompiledConfigurationFile {
+
+    private static final Map<String, CompiledConfigurationFile> CACHE =
+            new HashMap<String, CompiledConfigurationFile>();
+
+    private final long lastModified;
+    private final long length;
+    private final List<String> commands;
+    private final int[] lineNumbers;
+    private final boolean[] global;
+    /** Names of the keymaps changed by the global commands. */
+    private final Set<String> keyMapNames;
+    /** Keymaps after the global commands ran, null if they haven't run yet. */
+    private Map<String, KeyMap> globalKeyMaps;
+
+    private CompiledConfigurationFile(File file, List<String> commands, List<Integer> lineNumbers) {
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.commands = Collections.unmodifiableList(commands);
+        this.lineNumbers = new int[commands.size()];
+        this.global = new boolean[commands.size()];
+        this.keyMapNames = new LinkedHashSet<String>();
+        boolean ordered = false;
+        for (int i = 0; i < commands.size(); i++) {
+            this.lineNumbers[i] = lineNumbers.get(i);
+            if ( ! ordered) {
+                Kind kind = classify(commands.get(i), keyMapNames);
+                this.global[i] = kind == Kind.GLOBAL;
+                ordered = kind == Kind.ORDERED;
+            }
+        }
+    }
+
+    /**
+     * @return the commands of <code>file</code>, or null if it doesn't exist.
+     * @throws IOException if the file can't be read.
+     */
+    public static CompiledConfigurationFile get(File file) throws IOException {
+        synchronized (CACHE) {
+            String path = file.getAbsolutePath();
+            if ( ! file.exists()) {
+                CACHE.remove(path);
+                return null;
+            }
+            path = file.getCanonicalPath();
+            CompiledConfigurationFile compiled = CACHE.get(path);
+            if (compiled == null || compiled.lastModified != file.lastModified()
+                    || compiled.length != file.length()) {
+                compiled = read(file);
+                CACHE.put(path, compiled);
+            }
+            return compiled;
+        }
+    }
+
+    /** @return the supported commands of the file, without a leading ':'. */
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    /** @return whether command <code>index</code> is only run for the first editor. */
+    public boolean isGlobal(int index) {
+        return global[index];
+    }
+
+    /** Runs all commands in the order of the file, like <tt>:source</tt> does. */
+    public void source(EditorAdaptor editorAdaptor, CommandLineParser parser) {
+        execute(editorAdaptor, parser, true, true);
+    }
+
+    /**
+     * Configures a new editor. Global commands are only run for the first editor configured from
+     * this version of the file, the others get copies of the keymaps they produced.
+     */
+    public void configure(EditorAdaptor editorAdaptor, CommandLineParser parser) {
+        synchronized (this) {
+            if (globalKeyMaps == null) {
+                execute(editorAdaptor, parser, true, false);
+                globalKeyMaps = new LinkedHashMap<String, KeyMap>();
+                for (String name : keyMapNames) {
+                    KeyMap copy = new KeyMap(name);
+                    copy.copyFrom(editorAdaptor.getKeyMapProvider().getKeyMap(name));
+                    globalKeyMaps.put(name, copy);
+                }
+            } else {
+                for (Map.Entry<String, KeyMap> entry : globalKeyMaps.entrySet()) {
+                    editorAdaptor.getKeyMapProvider().getKeyMap(entry.getKey()).copyFrom(entry.getValue());
+                }
+            }
+        }
+        execute(editorAdaptor, parser, false, true);
+    }
+
+    private void execute(EditorAdaptor editorAdaptor, CommandLineParser parser,
+            boolean runGlobal, boolean runLocal) {
+        int i = 0;
+        try {
+            for (; i < commands.size(); i++) {
+                if (global[i] ? runGlobal : runLocal) {
+                    Command c = parser.parseAndExecute(null, commands.get(i));
+                    if (c != null) {
+                        c.execute(editorAdaptor);
+                    }
+                }
+            }
+        } catch (CommandExecutionException e) {
+            VrapperLog.error("Failed to execute command on line " + lineNumbers[i]
+                    + " of .vrapperrc", e);
+        }
+    }
+
+    private static CompiledConfigurationFile read(File file) throws IOException {
+        List<String> commands = new ArrayList<String>();
+        List<Integer> lineNumbers = new ArrayList<Integer>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            int lineNr = 0;
+            String line;
+            String trimmed;
+            while ((line = reader.readLine()) != null) {
+                lineNr++;
+                //*** skip over everything in a .vimrc file that we don't support ***//
+                trimmed = line.trim().toLowerCase();
+                //ignore comments and key mappings we don't support
+                if (trimmed.equals("") || trimmed.startsWith("\"") || trimmed.contains("<silent>")) {
+                    continue;
+                }
+                //skip all conditional statements, function and try declarations
+                String blockEnd = null;
+                if (trimmed.startsWith("if")) {
+                    blockEnd = "endif";
+                } else if (trimmed.startsWith("func")) {
+                    blockEnd = "endfunc";
+                } else if (trimmed.startsWith("try")) {
+                    blockEnd = "endtry";
+                }
+                if (blockEnd != null) {
+                    while ((line = reader.readLine()) != null) {
+                        lineNr++;
+                        if (line.trim().toLowerCase().startsWith(blockEnd)) {
+                            break;
+                        }
+                    }
+                    continue; //skip "end..." line
+                }
+                if (trimmed.startsWith(":")) {
+                    //leading ':' is optional, skip it if it exists
+                    line = line.substring(line.indexOf(':') + 1);
+                }
+                commands.add(line.trim());
+                lineNumbers.add(lineNr);
+            }
+        } finally {
+            reader.close();
+        }
+        return new CompiledConfigurationFile(file, commands, lineNumbers);
+    }
+
+    /** How a command of the file is run, see {@link CompiledConfigurationFile}. */
+    private enum Kind {
+        /** Only changes state shared by all editors, run for the first editor only. */
+        GLOBAL,
+        /** Only changes the editor, whatever the global commands do. May run after them. */
+        LOCAL,
+        /** May depend on or change what the global commands do, keeps the file order. */
+        ORDERED
+    }
+
+    /**
+     * Classifies a command. Adds the names of the keymaps changed by a global command to
+     * <code>keyMapNames</code>.
+     */
+    private static Kind classify(String command, Set<String> keyMapNames) {
+        if (command.contains(" | ")) {
+            return Kind.ORDERED;
+        }
+        StringTokenizer tokenizer = new StringTokenizer(command);
+        List<String> tokens = new ArrayList<String>();
+        while (tokenizer.hasMoreTokens()) {
+            tokens.add(tokenizer.nextToken());
+        }
+        if (tokens.isEmpty() || tokens.get(0).endsWith("!")) {
+            return Kind.ORDERED;
+        }
+        EvaluatorMapping coreCommands = CommandLineMode.getCoreCommands();
+        String name = tokens.get(0);
+        Evaluator evaluator = coreCommands.get(name);
+        if (evaluator == null && (name = coreCommands.getNameFromPartial(name)) != null) {
+            evaluator = coreCommands.get(name);
+        }
+        if (evaluator instanceof KeyMapper) {
+            Collections.addAll(keyMapNames, ((KeyMapper) evaluator).keymaps);
+            return Kind.GLOBAL;
+        } else if (tokens.size() < 2) {
+            return Kind.ORDERED;
+        } else if (evaluator instanceof LetExpressionEvaluator) {
+            String args = command.substring(command.indexOf(tokens.get(1)));
+            if (args.toLowerCase(Locale.ENGLISH).matches("^mapleader\\s*=.*")) {
+                return Kind.GLOBAL;
+            }
+            // Registers are not used by the global commands.
+            return args.startsWith("@") ? Kind.LOCAL : Kind.ORDERED;
+        } else if ("set".equals(name) || "se".equals(name) || "setlocal".equals(name)) {
+            // Every argument must be of the same kind, or the command is split between the passes.
+            Kind kind = null;
+            for (String argument : tokens.subList(1, tokens.size())) {
+                OptionScope scope = getOptionScope(argument);
+                Kind argumentKind;
+                if (scope == null) {
+                    return Kind.ORDERED;
+                } else if (scope == OptionScope.LOCAL) {
+                    argumentKind = Kind.LOCAL;
+                } else if ("setlocal".equals(name)) {
+                    // The global value may be set again by a later global command.
+                    return Kind.ORDERED;
+                } else {
+                    argumentKind = Kind.GLOBAL;
+                }
+                if (kind != null && kind != argumentKind) {
+                    return Kind.ORDERED;
+                }
+                kind = argumentKind;
+            }
+            return kind;
+        }
+        return Kind.ORDERED;
+    }
+
+    /**
+     * @return the scope of the option changed by a <tt>:set</tt> argument, or null if it doesn't
+     *      change a known option.
+     */
+    private static OptionScope getOptionScope(String argument) {
+        String name = argument;
+        int assignment = name.indexOf('=');
+        if (assignment >= 0) {
+            name = name.substring(0, assignment);
+            if (name.endsWith("+") || name.endsWith("-")) {
+                name = name.substring(0, name.length() - 1);
+            }
+        } else if (name.endsWith("!")) {
+            name = name.substring(0, name.length() - 1);
+        } else if (name.endsWith("?")) {
+            // Only prints the value, which depends on the commands before.
+            return null;
+        }
+        List<Option<?>> options = new ArrayList<Option<?>>();
+        options.addAll(Options.BOOLEAN_OPTIONS);
+        options.addAll(Options.STRING_OPTIONS);
+        options.addAll(Options.INT_OPTIONS);
+        options.addAll(Options.STRINGSET_OPTIONS);
+        for (Option<?> option : options) {
+            for (String alias : option.getAllNames()) {
+                if (alias.equals(name) || (assignment < 0 && name.equals("no" + alias)
+                        && Options.BOOLEAN_OPTIONS.contains(option))) {
+                    return option.getScope();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,16 +1,24 @@
 package net.sourceforge.vrapper.vim.modes.commandline;
 
 import java.util.LinkedList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import net.sourceforge.vrapper.keymap.KeyStroke;
 import net.sourceforge.vrapper.platform.Configuration.Option;
 import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.SearchAndReplaceService;
+import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.platform.ViewportService;
 import net.sourceforge.vrapper.platform.VrapperPlatformException;
+import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.Search;
 import net.sourceforge.vrapper.utils.SearchOffset;
+import net.sourceforge.vrapper.utils.SearchMatchIndex;
 import net.sourceforge.vrapper.utils.SearchResult;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
+import net.sourceforge.vrapper.utils.ViewPortInformation;
 import net.sourceforge.vrapper.utils.VimUtils;
 import net.sourceforge.vrapper.vim.ConfigurationListener;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
@@ -74,9 +82,19 @@ public class SearchMode extends AbstractCommandLineMode {
     public static final String NAME = "search mode";
     public static final String DISPLAY_NAME = "SEARCH";
 
+    /** Time to wait for more keys before evaluating the incremental search. */
+    private static final int INC_SEARCH_DELAY_MILLIS = 30;
+    /** Time spent searching before letting other events, e.g. keys, be handled. */
+    private static final long INC_SEARCH_SLICE_NANOS = 10 * 1000 * 1000;
+
     private Boolean forward;
     private Position startPos;
     private int originalTopLine;
+    /** Model offsets of the text visible when entering the mode, searched first by incsearch. */
+    private int visibleStart;
+    private int visibleEnd;
+    /** Incremented by every key, a pending incremental search stops when it changes. */
+    private int incSearchGeneration;
     private Command command;
     private SearchCommandParser searchParser;
 
@@ -103,7 +121,9 @@ public class SearchMode extends AbstractCommandLineMode {
             throw new CommandExecutionException("Wrong number of hints passed to search mode!");
         }
         startPos = editorAdaptor.getCursorService().getPosition();
-        originalTopLine = editorAdaptor.getViewportService().getViewPortInformation().getTopLine();
+        ViewPortInformation view = editorAdaptor.getViewportService().getViewPortInformation();
+        originalTopLine = view.getTopLine();
+        setVisibleRange(view);
         searchParser = new SearchCommandParser(editorAdaptor, command);
         super.enterMode(args);
     }
@@ -116,6 +136,7 @@ public class SearchMode extends AbstractCommandLineMode {
     @Override
     public boolean handleKey(KeyStroke stroke) {
         boolean incsearch = editorAdaptor.getConfiguration().get(Options.INCREMENTAL_SEARCH);
+        incSearchGeneration++;
         if (incsearch &&
                 (stroke.equals(AbstractCommandParser.KEY_RETURN) ||
                     stroke.equals(AbstractCommandParser.KEY_ESCAPE))) {
@@ -124,7 +145,9 @@ public class SearchMode extends AbstractCommandLineMode {
         super.handleKey(stroke);
         if (incsearch && isEnabled) {
             // isEnabled == false indicates that super method ran a search and went to normal mode.
-            doIncSearch();
+            // Searching is left until no key has been typed for a moment, see IncSearch.
+            editorAdaptor.getUserInterfaceService().runLater(INC_SEARCH_DELAY_MILLIS,
+                    new IncSearch(incSearchGeneration));
         }
         return true;
     }
@@ -135,20 +158,134 @@ public class SearchMode extends AbstractCommandLineMode {
         editorAdaptor.getViewportService().setTopLine(originalTopLine);
     }
 
-    private void doIncSearch() {
-        String keyword = searchParser.getKeyWord();
-        Search s = SearchCommandParser.createSearch(editorAdaptor, keyword, !forward, SearchOffset.NONE);
-        CursorService cursorService = editorAdaptor.getCursorService();
-        int fixedPos = startPos.getModelOffset() + (forward ? 1 : -1);
-        Position startSearchPos = cursorService.newPositionForModelOffset(fixedPos, startPos, true);
-        SearchResult res;
-        try {
-            res = VimUtils.wrapAroundSearch(editorAdaptor, s, startSearchPos);
-        } catch (VrapperPlatformException e) {
-            // This might happen if the user is modifying a regex, making it invalid. Bail out.
-            resetIncSearch();
-            return;
+    private void setVisibleRange(ViewPortInformation view) {
+        TextContent content = editorAdaptor.getModelContent();
+        int lastLine = content.getNumberOfLines() - 1;
+        ViewportService viewport = editorAdaptor.getViewportService();
+        int topLine = Math.min(lastLine, Math.max(0, viewport.viewLine2ModelLine(view.getTopLine())));
+        int bottomLine = Math.min(lastLine, Math.max(topLine, viewport.viewLine2ModelLine(view.getBottomLine())));
+        visibleStart = content.getLineInformation(topLine).getBeginOffset();
+        LineInformation bottom = content.getLineInformation(bottomLine);
+        visibleEnd = bottom.getEndOffset();
+    }
+
+    /**
+     * Incremental search for the keyword typed so far. It runs after the key has been handled and
+     * searches in slices of {@link #INC_SEARCH_SLICE_NANOS}, so that typing is never held up by
+     * searching a large text. It stops as soon as another key is typed.
+     * <p>
+     * The text which was visible when entering search mode is searched first. If the match isn't
+     * there, the match index of the buffer is searched outward from the cursor, keeping what has
+     * been searched between the slices.
+     */
+    private class IncSearch implements Runnable {
+
+        private final int generation;
+        private Search search;
+        private Pattern pattern;
+        private Position startSearchPos;
+
+        IncSearch(int generation) {
+            this.generation = generation;
         }
+
+        @Override
+        public void run() {
+            if (generation != incSearchGeneration || ! isEnabled) {
+                return;
+            }
+            TextContent content = editorAdaptor.getModelContent();
+            SearchMatchIndex index = SearchMatchIndex.of(content);
+            if (search == null) {
+                search = SearchCommandParser.createSearch(editorAdaptor, searchParser.getKeyWord(),
+                        !forward, SearchOffset.NONE);
+                CursorService cursorService = editorAdaptor.getCursorService();
+                int fixedPos = startPos.getModelOffset() + (forward ? 1 : -1);
+                startSearchPos = cursorService.newPositionForModelOffset(fixedPos, startPos, true);
+                if (index != null) {
+                    // Null if the keyword isn't a valid regex (yet), it isn't an error while typing.
+                    pattern = VimUtils.getSearchPattern(editorAdaptor, search);
+                    if (pattern == null) {
+                        showIncSearch(new SearchResult(null, null));
+                        return;
+                    }
+                    int[] visible = findVisible(content, pattern, startSearchPos.getModelOffset());
+                    if (visible != null) {
+                        showIncSearch(toResult(visible));
+                        return;
+                    }
+                }
+            }
+            if (index == null) {
+                SearchResult res;
+                try {
+                    res = VimUtils.wrapAroundSearch(editorAdaptor, search, startSearchPos);
+                } catch (VrapperPlatformException e) {
+                    // This might happen if the user is modifying a regex, making it invalid. Bail out.
+                    resetIncSearch();
+                    return;
+                }
+                showIncSearch(res);
+                return;
+            }
+            long deadline = System.nanoTime() + INC_SEARCH_SLICE_NANOS;
+            int offset = startSearchPos.getModelOffset();
+            int[] match = forward
+                    ? index.findNext(content, pattern, offset, deadline)
+                    : index.findPrevious(content, pattern, offset, deadline);
+            if (match == null && editorAdaptor.getConfiguration().get(Options.WRAP_SCAN)) {
+                match = forward
+                        ? index.findNext(content, pattern, 0, deadline)
+                        : index.findPrevious(content, pattern, content.getTextLength(), deadline);
+            }
+            if (match == SearchMatchIndex.NOT_DONE) {
+                editorAdaptor.getUserInterfaceService().runLater(0, this);
+            } else {
+                showIncSearch(match == null ? new SearchResult(null, null) : toResult(match));
+            }
+        }
+
+        private SearchResult toResult(int[] match) {
+            return new SearchResult(startSearchPos.setModelOffset(match[0]),
+                    startSearchPos.setModelOffset(match[1]));
+        }
+    }
+
+    /**
+     * Looks for the match of an incremental search in the visible text.
+     * @return the match, or null if it isn't in the visible text or can't be told apart from
+     *      matches reaching out of it without searching the rest of the text.
+     */
+    private int[] findVisible(TextContent content, Pattern pattern, int offset) {
+        if (offset < visibleStart || offset > visibleEnd) {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(new TextContentCharSequence(content));
+        // The text around the visible range is seen by look-arounds and anchors. If a match
+        // could depend on text after the range, hitEnd() tells and the range isn't enough.
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        int position = forward ? offset : visibleStart;
+        int[] last = null;
+        while (position <= visibleEnd) {
+            matcher.region(position, visibleEnd);
+            if ( ! matcher.find() || matcher.hitEnd()) {
+                return null;
+            }
+            int[] match = new int[] { matcher.start(), matcher.end() };
+            if (forward) {
+                return match;
+            }
+            if (match[0] > offset) {
+                return last;
+            }
+            last = match;
+            position = match[0] + 1;
+        }
+        return null;
+    }
+
+    private void showIncSearch(SearchResult res) {
         boolean fromVisual = parser.isFromVisual();
         if (res.isFound()) {
             MotionCommand.gotoAndChangeViewPort(editorAdaptor, res.getStart(), StickyColumnPolicy.NEVER);
@@ -31,9 +31,12 @@ import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.prefs.BackingStoreException;
 
+import net.sourceforge.vrapper.eclipse.commands.ResolvedCommandCache;
 import net.sourceforge.vrapper.eclipse.interceptor.InputInterceptor;
 import net.sourceforge.vrapper.eclipse.interceptor.InputInterceptorManager;
 import net.sourceforge.vrapper.eclipse.interceptor.UnknownEditorException;
+import net.sourceforge.vrapper.eclipse.platform.GlobalMarkRegistry;
+import net.sourceforge.vrapper.eclipse.platform.ProjectPathIndex;
 import net.sourceforge.vrapper.log.Log;
 import net.sourceforge.vrapper.log.VrapperLog;
 import net.sourceforge.vrapper.platform.VrapperPlatformException;
@@ -41,6 +44,7 @@ import net.sourceforge.vrapper.vim.EditorAdaptor;
 import net.sourceforge.vrapper.vim.modes.InsertMode;
 import net.sourceforge.vrapper.vim.modes.NormalMode;
 import net.sourceforge.vrapper.vim.modes.VisualMode;
+import net.sourceforge.vrapper.vim.modes.commandline.CommandLineHistory;
 import net.sourceforge.vrapper.vim.modes.commandline.CommandLineMode;
 
 /**
@@ -59,6 +63,9 @@ public class VrapperPlugin extends AbstractUIPlugin implements /*IStartup,*/ Log
     private static final String KEY_VRAPPER_ENABLED = "vrapperEnabled";
 
     private static final String COMMAND_TOGGLE_VRAPPER = "net.sourceforge.vrapper.eclipse.commands.toggle";
+
+    /** File in the plugin state location which keeps the command line history. */
+    private static final String HISTORY_FILE = "history";
     
     private static final IPreferencesService PREFERENCES_SERVICE = Platform.getPreferencesService();
     // private static final IEclipsePreferences PLUGIN_PREFERENCES = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
@@ -107,6 +114,8 @@ public class VrapperPlugin extends AbstractUIPlugin implements /*IStartup,*/ Log
         super.start(context);
         plugin = this;
         VrapperLog.setImplementation(this);
+        // Only the location is set here, the history is read when first used.
+        CommandLineHistory.INSTANCE.setStorage(getStateLocation().append(HISTORY_FILE).toFile());
     }
 
 //    public void earlyStartup() {
@@ -115,6 +124,10 @@ public class VrapperPlugin extends AbstractUIPlugin implements /*IStartup,*/ Log
     @Override
     public void stop(BundleContext context) throws Exception {
         preShutdown();
+        ProjectPathIndex.disposeAll();
+        GlobalMarkRegistry.dispose();
+        ResolvedCommandCache.dispose();
+        CommandLineHistory.INSTANCE.flush();
         plugin = null;
         VrapperLog.setImplementation(null);
         super.stop(context);
@@ -1,12 +1,13 @@
 package net.sourceforge.vrapper.eclipse.commands;
 
 import net.sourceforge.vrapper.log.VrapperLog;
+import net.sourceforge.vrapper.platform.HistoryService;
+import net.sourceforge.vrapper.platform.ViewportService;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
 import net.sourceforge.vrapper.vim.commands.AbstractCommand;
 import net.sourceforge.vrapper.vim.commands.Command;
 import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
 import net.sourceforge.vrapper.vim.commands.LeaveVisualModeCommand;
-import net.sourceforge.vrapper.vim.commands.MultipleExecutionCommand;
 
 import org.eclipse.core.commands.ParameterizedCommand;
 import org.eclipse.core.commands.common.CommandException;
@@ -19,23 +20,28 @@ public class EclipseCommand extends AbstractCommand {
 
     private final String action;
     private final boolean async;
+    private final int count;
     private boolean fromVisualMode;
 
     public EclipseCommand(String action) {
-        this.action = action;
-        this.async = false;
+        this(action, false);
     }
 
     public EclipseCommand(String action, boolean async) {
+        this(action, async, 1);
+    }
+
+    private EclipseCommand(String action, boolean async, int count) {
         this.action = action;
         this.async = async;
+        this.count = count;
     }
 
     public void execute(EditorAdaptor editorAdaptor) throws CommandExecutionException {
         if (fromVisualMode) {
             editorAdaptor.rememberLastActiveSelection();
         }
-        doIt(action, editorAdaptor, async);
+        doIt(action, count, editorAdaptor, async);
 
         if (fromVisualMode) {
             LeaveVisualModeCommand.doIt(editorAdaptor);
@@ -60,6 +66,16 @@ public class EclipseCommand extends AbstractCommand {
     }
 
     public static void doIt(final String action, EditorAdaptor editorAdaptor, boolean async) {
+        doIt(action, 1, editorAdaptor, async);
+    }
+
+    /**
+     * Executes the Eclipse command <code>count</code> times. Commands which can repeat themselves
+     * (see {@link ResolvedCommandCache}) are executed once. Otherwise, all executions are a single
+     * change, and the editor is repainted once at the end.
+     */
+    public static void doIt(final String action, final int count, final EditorAdaptor editorAdaptor,
+            boolean async) {
         final IHandlerService handlerService = editorAdaptor.getService(IHandlerService.class);
         final ICommandService commandService = editorAdaptor.getService(ICommandService.class);
         if (handlerService != null && commandService != null) {
@@ -70,30 +86,61 @@ public class EclipseCommand extends AbstractCommand {
                 getDisplay().asyncExec(new Runnable() {
                     @Override
                     public void run() {
-                        executeAction(action, handlerService, commandService);
+                        executeAction(action, count, editorAdaptor, handlerService, commandService);
                     }
                 });
             } else {
-                executeAction(action, handlerService, commandService);
+                executeAction(action, count, editorAdaptor, handlerService, commandService);
             }
         } else {
             VrapperLog.error("No handler service, cannot execute: " + action);
         }
     }
 
-    private static void executeAction(final String action,
+    private static void executeAction(final String action, int count,
+            EditorAdaptor editorAdaptor,
             final IHandlerService handlerService,
             final ICommandService commandService) {
         try {
-            final ParameterizedCommand command = commandService.deserialize(action);
-            handlerService.executeCommand(command, null);
+            final ParameterizedCommand command = ResolvedCommandCache.resolve(action, commandService);
+            if (count <= 1) {
+                handlerService.executeCommand(command, null);
+                return;
+            }
+            ParameterizedCommand repeated = ResolvedCommandCache.withRepeat(command, count);
+            if (repeated != null) {
+                handlerService.executeCommand(repeated, null);
+                return;
+            }
+            ViewportService view = editorAdaptor.getViewportService();
+            HistoryService history = editorAdaptor.getHistory();
+            String historyLock = "eclipsecommand " + action;
+            try {
+                view.setRepaint(false);
+                view.lockRepaint(command);
+                history.beginCompoundChange();
+                history.lock(historyLock);
+                for (int i = 0; i < count; i++) {
+                    handlerService.executeCommand(command, null);
+                }
+            } finally {
+                history.unlock(historyLock);
+                history.endCompoundChange();
+                view.unlockRepaint(command);
+                view.setRepaint(true);
+            }
         } catch (CommandException e) {
             VrapperLog.error("Command not handled: " + action, e);
         }
     }
 
     public Command withCount(int count) {
-        return new MultipleExecutionCommand(count, this);
+        if (count == NO_COUNT_GIVEN) {
+            count = 1;
+        }
+        EclipseCommand counted = new EclipseCommand(action, async, count);
+        counted.fromVisualMode = fromVisualMode;
+        return counted;
     }
 
     /**
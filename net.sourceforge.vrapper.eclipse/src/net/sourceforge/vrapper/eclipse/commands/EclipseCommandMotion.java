@@ -33,9 +33,7 @@ public class EclipseCommandMotion extends CountAwareMotion {
         if (count == NO_COUNT_GIVEN) {
             count = 1;
         }
-        for (int i = 0; i < count; i++) {
-            EclipseCommand.doIt(motionName, editorAdaptor, false);
-        }
+        EclipseCommand.doIt(motionName, count, editorAdaptor, false);
         Position newCarretOffset = editorAdaptor.getPosition();
         editorAdaptor.setPosition(oldCarretOffset, StickyColumnPolicy.ON_CHANGE);
         return newCarretOffset;
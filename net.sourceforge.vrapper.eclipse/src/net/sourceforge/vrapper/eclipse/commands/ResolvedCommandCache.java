@@ -0,0 +1,121 @@
+package net.sourceforge.vrapper.eclipse.commands;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandEvent;
+import org.eclipse.core.commands.ICommandListener;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.core.commands.common.CommandException;
+import org.eclipse.core.commands.common.NotDefinedException;
+import org.eclipse.ui.commands.ICommandService;
+
+/**
+ * Eclipse commands by the action string used in Vrapper's key maps and <tt>:eclipseaction</tt>,
+ * so that the string isn't parsed and looked up in the command registry on every execution.
+ *
+ * <p>An entry is dropped when its command gets undefined or its parameters change.
+ *
+ * <p>A command which can repeat itself is executed once with the count in its repeat parameter,
+ * instead of once for each count. The repeat parameter of a command is {@link #REPEAT_PARAMETER}
+ * if the command defines it, or the one set by {@link #setRepeatParameter(String, String)}.
+ */
+public class ResolvedCommandCache {
+
+    /** Id of the parameter which receives the count of commands that repeat themselves. */
+    public static final String REPEAT_PARAMETER = "net.sourceforge.vrapper.repeat";
+
+    private static final Map<String, ParameterizedCommand> COMMANDS = new HashMap<String, ParameterizedCommand>();
+    /** Commands which are listened to, by id. */
+    private static final Map<String, Command> LISTENED = new HashMap<String, Command>();
+    private static final Map<String, String> REPEAT_PARAMETERS = new HashMap<String, String>();
+
+    private static final ICommandListener LISTENER = new ICommandListener() {
+        @Override
+        public void commandChanged(CommandEvent event) {
+            if (event.isDefinedChanged() || event.isParametersChanged()) {
+                evict(event.getCommand().getId());
+            }
+        }
+    };
+
+    private ResolvedCommandCache() { /* NOP */ }
+
+    /**
+     * @return the command for <code>action</code>, a command id optionally followed by parameters
+     *      as accepted by {@link ICommandService#deserialize(String)}.
+     * @throws CommandException if there is no such command.
+     */
+    public static synchronized ParameterizedCommand resolve(String action,
+            ICommandService commandService) throws CommandException {
+        ParameterizedCommand command = COMMANDS.get(action);
+        if (command == null || ! command.getCommand().isDefined()) {
+            command = commandService.deserialize(action);
+            COMMANDS.put(action, command);
+            Command base = command.getCommand();
+            if ( ! LISTENED.containsKey(base.getId())) {
+                base.addCommandListener(LISTENER);
+                LISTENED.put(base.getId(), base);
+            }
+        }
+        return command;
+    }
+
+    /**
+     * @return <code>command</code> with its repeat parameter set to <code>count</code>, or null if
+     *      the command doesn't repeat itself.
+     */
+    public static synchronized ParameterizedCommand withRepeat(ParameterizedCommand command, int count) {
+        Command base = command.getCommand();
+        String parameterId = REPEAT_PARAMETERS.get(base.getId());
+        if (parameterId == null) {
+            try {
+                if (base.getParameter(REPEAT_PARAMETER) != null) {
+                    parameterId = REPEAT_PARAMETER;
+                }
+            } catch (NotDefinedException e) {
+                return null;
+            }
+        }
+        if (parameterId == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> parameters = new HashMap<String, String>(command.getParameterMap());
+        parameters.put(parameterId, String.valueOf(count));
+        return ParameterizedCommand.generateCommand(base, parameters);
+    }
+
+    /**
+     * Makes counted executions of the command <code>commandId</code> pass the count in the
+     * parameter <code>parameterId</code>, for commands which can't define
+     * {@link #REPEAT_PARAMETER}. A <code>null</code> parameter id removes the setting.
+     */
+    public static synchronized void setRepeatParameter(String commandId, String parameterId) {
+        if (parameterId == null) {
+            REPEAT_PARAMETERS.remove(commandId);
+        } else {
+            REPEAT_PARAMETERS.put(commandId, parameterId);
+        }
+    }
+
+    /** Drops all entries and stops listening to commands. */
+    public static synchronized void dispose() {
+        for (Command command : LISTENED.values()) {
+            command.removeCommandListener(LISTENER);
+        }
+        LISTENED.clear();
+        COMMANDS.clear();
+    }
+
+    private static synchronized void evict(String commandId) {
+        Iterator<ParameterizedCommand> iterator = COMMANDS.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getId().equals(commandId)) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package net.sourceforge.vrapper.eclipse.commands;
 
 import net.sourceforge.vrapper.vim.EditorAdaptor;
+import net.sourceforge.vrapper.vim.commands.Command;
+import net.sourceforge.vrapper.vim.commands.MultipleExecutionCommand;
 
 /**
  * :[count]tabe[dit]                *:tabe* *:tabedit* *:tabnew*
@@ -34,4 +36,9 @@ public class TabNewCommand extends EclipseCommand {
     public void execute(EditorAdaptor editorAdaptor) {
         doIt(getCommandName(), editorAdaptor, true);
     }
+
+    @Override
+    public Command withCount(int count) {
+        return new MultipleExecutionCommand(count, this);
+    }
 }
\ No newline at end of file
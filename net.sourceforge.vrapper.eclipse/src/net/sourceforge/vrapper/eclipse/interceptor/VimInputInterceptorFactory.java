@@ -16,6 +16,7 @@ import net.sourceforge.vrapper.keymap.KeyStroke;
 import net.sourceforge.vrapper.keymap.KeyStroke.Modifier;
 import net.sourceforge.vrapper.keymap.SpecialKey;
 import net.sourceforge.vrapper.keymap.vim.SimpleKeyStroke;
+import net.sourceforge.vrapper.log.LatencyStatistics;
 import net.sourceforge.vrapper.log.VrapperLog;
 import net.sourceforge.vrapper.platform.BufferAndTabService;
 import net.sourceforge.vrapper.platform.Configuration.Option;
@@ -29,6 +30,7 @@ import net.sourceforge.vrapper.vim.DefaultEditorAdaptor;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
 import net.sourceforge.vrapper.vim.Options;
 import net.sourceforge.vrapper.vim.SimpleGlobalConfiguration;
+import net.sourceforge.vrapper.vim.modes.commandline.CommandLineHistory;
 import net.sourceforge.vrapper.vim.register.ReadOnlyRegister;
 import net.sourceforge.vrapper.vim.register.Register;
 import net.sourceforge.vrapper.vim.register.RegisterContent;
@@ -138,6 +140,12 @@ public class VimInputInterceptorFactory implements InputInterceptorFactory {
             public <T> void optionChanged(Option<T> option, T oldValue, T newValue) {
                 if (Options.DEBUGLOG.equals(option)) {
                     VrapperLog.setDebugEnabled(Boolean.TRUE.equals(newValue));
+                } else if (Options.VRAPPER_STATS.equals(option)) {
+                    LatencyStatistics.setEnabled(Boolean.TRUE.equals(newValue));
+                } else if (Options.VRAPPER_STATS_INTERVAL.equals(option)) {
+                    LatencyStatistics.setDumpInterval((Integer) newValue);
+                } else if (Options.HISTORY.equals(option)) {
+                    CommandLineHistory.INSTANCE.setCapacity((Integer) newValue);
                 } else if (Options.SHOW_WHITESPACE.equals(option)) {
                     Boolean show = (Boolean) newValue;
                     EditorsUI.getPreferenceStore().setValue(
@@ -309,6 +317,18 @@ public class VimInputInterceptorFactory implements InputInterceptorFactory {
             if (!VrapperPlugin.isVrapperEnabled()) {
                 return;
             }
+            LatencyStatistics.Timer timer = LatencyStatistics.start();
+            String modeName = timer == null ? null : editorAdaptor.getCurrentModeName();
+            try {
+                dispatchKey(event);
+            } finally {
+                if (timer != null) {
+                    timer.stop(LatencyStatistics.DISPATCH, String.valueOf(modeName));
+                }
+            }
+        }
+
+        private void dispatchKey(VerifyEvent event) {
             // Ignore event when modifier is held down before other key gets pressed
             if ((event.keyCode & SWT.MODIFIER_MASK) != 0) {
                 return;
@@ -621,21 +621,7 @@ public class EclipseCursorAndSelection implements CursorService, SelectionServic
     public Set<String> getAllMarks() {
         //the easy part, get all local marks
         Set<String> allMarks = new HashSet<String>(marks.keySet());
-
-        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-        // recursively find all markers in project root
-        try {
-            final IMarker[] markers = root.findMarkers(GLOBAL_MARK_TYPE, true, IResource.DEPTH_INFINITE);
-            for (final IMarker m: markers) {
-                String markName = m.getAttribute(IMarker.MESSAGE, "--");
-                if ( ! markName.equals("--")) {
-                    allMarks.add(markName);
-                }
-            }
-        } catch (CoreException e) {
-            VrapperLog.error("Failed to find markers in resource root " + root, e);
-        }
-
+        allMarks.addAll(GlobalMarkRegistry.getNames());
         return allMarks;
     }
 
@@ -688,9 +674,7 @@ public class EclipseCursorAndSelection implements CursorService, SelectionServic
      */
     @Override
     public boolean isGlobalMark(final String id) {
-        return id.length() == 1
-                && ((   id.charAt(0) >= 'A' && id.charAt(0) <= 'Z')
-                    || (id.charAt(0) >= '0' && id.charAt(0) <= '9'));
+        return GlobalMarkRegistry.isGlobalMarkName(id);
     }
 
     @Override
@@ -726,12 +710,16 @@ public class EclipseCursorAndSelection implements CursorService, SelectionServic
 
     /**
      * Lookup the specified marker recursively starting at @a resource.
-     * Use @a ResourcesPlugin.getWorkspace().getRoot() to find the marker globally.
+     * Use @a ResourcesPlugin.getWorkspace().getRoot() to find the marker globally, which is
+     * answered by the {@link GlobalMarkRegistry}.
      * @param id marker name
      * @param resource resource node.
      * @return marker or @a null if not found.
      */
     static public IMarker getGlobalMarker(String id, IResource resource) {
+        if (resource.getType() == IResource.ROOT) {
+            return GlobalMarkRegistry.getMarker(id);
+        }
         try {
             final IMarker[] markers = resource.findMarkers(GLOBAL_MARK_TYPE, true, IResource.DEPTH_INFINITE);
             for (final IMarker m: markers) {
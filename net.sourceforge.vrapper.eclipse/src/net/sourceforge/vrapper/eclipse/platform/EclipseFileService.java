@@ -3,7 +3,6 @@ package net.sourceforge.vrapper.eclipse.platform;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -15,13 +14,11 @@ import net.sourceforge.vrapper.platform.FileService;
 import org.eclipse.core.commands.common.CommandException;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.ui.IEditorDescriptor;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
@@ -238,8 +235,13 @@ public class EclipseFileService implements FileService {
      * @return filename found within one of the paths
      */
     public String findFileInPath(String filename, String previous, boolean reverse, String[] paths) {
+    	IProject project = getCurrentSelectedProject();
+    	if(project == null) {
+    		return filename;
+    	}
+    	String currentDir = getCurrentFileDirPath();
     	//expand all '**' wildcards (if any)
-    	List<String> dirs = expandPathNames(paths);
+    	List<String> dirs = expandPathNames(paths, project, currentDir);
     	
     	if(reverse) {
     		Collections.reverse(dirs);
@@ -259,10 +261,9 @@ public class EclipseFileService implements FileService {
     		}
     	}
     	
-    	IContainer dir;
     	for(String path : dirs) {
-    		dir = resolvePath(path);
-    		String fullPath = findNextMatchWithPrefix(filename, previous, reverse, dir);
+    		String dir = resolvePath(path, currentDir);
+    		String fullPath = findNextMatchWithPrefix(filename, previous, reverse, project, dir);
     		//findPath returns filename if no match found
     		if( ! fullPath.equals(filename)) {
     			lastFindPath = path;
@@ -388,51 +389,79 @@ public class EclipseFileService implements FileService {
      * @return next file/folder (after 'previous') which contains 'prefix', or 'prefix' if none found
      */
     private String findNextMatchWithPrefix(String prefix, String previous, boolean reverse, IContainer startDir) {
+    	return findNextMatchWithPrefix(prefix, previous, reverse, startDir.getProject(),
+    			startDir.getProjectRelativePath().toString());
+    }
+
+    private String findNextMatchWithPrefix(String prefix, String previous, boolean reverse, IProject project, String startDir) {
     	boolean foundPrevious = previous == null;
     	
-    	try {
-    		IResource[] toSearch = startDir.members();
-    		if(reverse) {
-    			Collections.reverse(Arrays.asList(toSearch));
+    	List<String> toSearch = getMembers(project, startDir, prefix);
+    	if(toSearch == null) {
+    		return prefix;
+    	}
+    	if(reverse) {
+    		Collections.reverse(toSearch);
+    	}
+    	for(String path : toSearch) {
+    		boolean isFolder = path.endsWith("/");
+    		String relativePath = (startDir.length() == 0 ? "" : startDir + '/')
+    				+ (isFolder ? path.substring(0, path.length() - 1) : path);
+
+    		//prefix is in this folder, go into it
+    		if(isFolder && prefix.startsWith(path)) {
+    			if(previous != null && previous.startsWith(path)) {
+    				previous = previous.substring(path.length());
+    			}
+    			return path + findNextMatchWithPrefix(prefix.substring(path.length()), previous, reverse, project, relativePath);
     		}
-			for(IResource resource : toSearch) {
-				String path = resource.getName();
-				if(resource.getType() == IResource.FOLDER) {
-					path += '/';
-				}
-				
-				//prefix is in this folder, go into it
-				if(resource.getType() == IResource.FOLDER && prefix.startsWith(path)) {
-					if(previous != null && previous.startsWith(path)) {
-						previous = previous.substring(path.length());
-					}
-					return path + findNextMatchWithPrefix(prefix.substring(path.length()), previous, reverse, (IFolder)resource);
-				}
-				//keep looping until we hit the previous match
-				else if( ! foundPrevious) {
-					if(path.equals(previous) || resource.getProjectRelativePath().toString().equals(previous)) {
-						foundPrevious = true;
-					}
-				}
-				else if(path.startsWith(prefix)) {
-					return path;
-				}
-			}
-			//if we never found the previous, try again
-			//but this time, don't look for previous
-			//(useful when 'previous' was in another path)
-			if( ! foundPrevious) {
-				return findNextMatchWithPrefix(prefix, null, reverse, startDir);
-			}
-		} catch (CoreException e) {
-			return prefix;
-		}
+    		//keep looping until we hit the previous match
+    		else if( ! foundPrevious) {
+    			if(path.equals(previous) || relativePath.equals(previous)) {
+    				foundPrevious = true;
+    			}
+    		}
+    		else if(path.startsWith(prefix)) {
+    			return path;
+    		}
+    	}
+    	//if we never found the previous, try again
+    	//but this time, don't look for previous
+    	//(useful when 'previous' was in another path)
+    	if( ! foundPrevious) {
+    		return findNextMatchWithPrefix(prefix, null, reverse, project, startDir);
+    	}
     	
     	//couldn't find a more-specific path
     	//the user needs to provide more information
     	return prefix;
     }
     
+    /**
+     * List the members of a folder, from the project's path index if it is
+     * ready or else from the resource tree.
+     * @param project project containing the folder
+     * @param folder project-relative path of the folder ("" for the project)
+     * @param prefix the index only returns members a completion of it can go through
+     * @return member names, folder names end in '/'; null if the folder doesn't exist
+     */
+    private List<String> getMembers(IProject project, String folder, String prefix) {
+    	ProjectPathIndex index = ProjectPathIndex.forProject(project);
+    	if(index.isReady()) {
+    		return index.getMembers(folder, prefix);
+    	}
+    	try {
+    		IContainer container = folder.length() == 0 ? project : project.getFolder(folder);
+    		List<String> names = new ArrayList<String>();
+    		for(IResource resource : container.members()) {
+    			names.add(resource.getType() == IResource.FOLDER ? resource.getName() + '/' : resource.getName());
+    		}
+    		return names;
+    	} catch (CoreException e) {
+    		return null;
+    	}
+    }
+    
     /**
      * Open file with default Eclipse editor.  File may
      * be found under any of the directories within 'paths'.
@@ -442,13 +471,21 @@ public class EclipseFileService implements FileService {
      * @return true if file opened successfully
      */
     public boolean findAndOpenFile(String filename, String paths[]) {
-    	List<String> expandedPaths = expandPathNames(paths);
+    	IProject project = getCurrentSelectedProject();
+    	if(project == null) {
+    		return false;
+    	}
+    	String currentDir = getCurrentFileDirPath();
+    	List<String> expandedPaths = expandPathNames(paths, project, currentDir);
+    	ProjectPathIndex index = ProjectPathIndex.forProject(project);
     	String fullPath = filename;
-    	IContainer dir;
     	for(String path : expandedPaths) {
-    		dir = resolvePath(path);
-    		if(dir.findMember(filename) != null) {
-    			fullPath = dir.getProjectRelativePath().toString() + '/' + filename;
+    		String candidate = new Path(resolvePath(path, currentDir)).append(filename).toString();
+    		//ask the index if it is ready, it doesn't create a resource handle per path
+    		boolean exists = index.isReady() ? index.contains(candidate)
+    				: project.findMember(candidate) != null;
+    		if(exists) {
+    			fullPath = candidate;
     			break;
     		}
     	}
@@ -510,20 +547,7 @@ public class EclipseFileService implements FileService {
     }
 
     public String getFileNameOfGlobalMark(String name) {
-    	IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-    	IMarker mark = null;
-        try {
-            final IMarker[] markers = root.findMarkers(IMarker.BOOKMARK, true, IResource.DEPTH_INFINITE);
-            for (final IMarker m: markers) {
-                if (m.getAttribute(IMarker.MESSAGE, "--").equals(name)) {
-                    mark = m;
-                    break;
-                }
-            }
-        } catch (CoreException e) {
-            // Ignore.
-        }
-
+    	IMarker mark = GlobalMarkRegistry.getMarker(name);
         if(mark == null) {
         	return "";
         }
@@ -537,11 +561,11 @@ public class EclipseFileService implements FileService {
      * I'm returning a List simply because I don't have a need to
      * convert it back to an array.
      */
-    private List<String> expandPathNames(String[] paths) {
+    private List<String> expandPathNames(String[] paths, IProject project, String currentDir) {
     	List<String> dirs = new ArrayList<String>();
     	for(String path : paths) {
     		if(path.endsWith("**")) {
-    			List<String> expandedDirs = getWildcardDirectoryNames(path);
+    			List<String> expandedDirs = getWildcardDirectoryNames(path, project, currentDir);
     			dirs.addAll(expandedDirs);
     		}
     		else {
@@ -556,35 +580,25 @@ public class EclipseFileService implements FileService {
      * of its parent.  Take the 'path' variable (which should end in '**')
      * and expand out all its corresponding directories.
      * @param path - a path which ends with '**'
+     * @param project - project of the current file
+     * @param currentDir - project-relative path of the current file's directory
      * @return List of path Strings representing all subdirectories of the '**'
      */
-    private List<String> getWildcardDirectoryNames(String path) {
-    	IContainer start;
+    private List<String> getWildcardDirectoryNames(String path, IProject project, String currentDir) {
+    	String start;
     	if(path.equals("**")) {
-    		start = getCurrentSelectedProject();
+    		start = "";
     	}
     	else {
     		//everything up to the '**' (/foo/bar/**)
-    		start = resolvePath( path.substring(0, path.indexOf('*')) );
+    		start = resolvePath( path.substring(0, path.indexOf('*')), currentDir );
     	}
     	
-    	ArrayList<IResource> folders = new ArrayList<IResource>();
-    	try {
-    		folders.add(start);
-    		IResource[] members = start.members();
-    		getAllDirectories(folders, members);
-    	} catch (CoreException e) {
+    	List<String> dirs = getFolderTree(project, start);
+    	if(dirs == null) {
     		//folder defined in path doesn't exist
     		return new ArrayList<String>();
-    	} 
-    	
-    	ArrayList<String> dirs = new ArrayList<String>();
-    	for(IResource folder : folders) {
-    		//note that "root" will have a path of "" which is fixed below
-    		dirs.add(folder.getProjectRelativePath().toString());
     	}
-    	//alphabetical order so we iterate correctly
-    	Collections.sort(dirs);
     	
     	if(path.equals("**") || path.equals("/**")) { //if 'root' is in this list
     		for(int i=0; i < dirs.size(); i++) {
@@ -600,6 +614,37 @@ public class EclipseFileService implements FileService {
     	return dirs;
     }
     
+    /**
+     * @return project-relative paths of 'start' and all its subfolders in
+     * alphabetical order, or null if 'start' doesn't exist
+     */
+    private List<String> getFolderTree(IProject project, String startPath) {
+    	ProjectPathIndex index = ProjectPathIndex.forProject(project);
+    	if(index.isReady()) {
+    		//note that "root" has a path of "" which is fixed by the caller
+    		return index.getFolderTree(startPath);
+    	}
+    	
+    	IContainer start = startPath.length() == 0 ? project : project.getFolder(startPath);
+    	ArrayList<IResource> folders = new ArrayList<IResource>();
+    	try {
+    		folders.add(start);
+    		IResource[] members = start.members();
+    		getAllDirectories(folders, members);
+    	} catch (CoreException e) {
+    		return null;
+    	} 
+    	
+    	ArrayList<String> dirs = new ArrayList<String>();
+    	for(IResource folder : folders) {
+    		//note that "root" will have a path of "" which is fixed by the caller
+    		dirs.add(folder.getProjectRelativePath().toString());
+    	}
+    	//alphabetical order so we iterate correctly
+    	Collections.sort(dirs);
+    	return dirs;
+    }
+    
     private void getAllDirectories(List<IResource> folders, IResource[] members) throws CoreException {
     	for(IResource member : members) {
     		if(member.getType() == IResource.FOLDER) {
@@ -611,47 +656,48 @@ public class EclipseFileService implements FileService {
     
     private IContainer resolvePath(String path) {
     	IProject project = getCurrentSelectedProject();
-    	IContainer dir;
+    	String dir = resolvePath(path, getCurrentFileDirPath());
+    	return dir.length() == 0 ? project : project.getFolder(dir);
+    }
+    
+    /**
+     * Resolves a directory name from the 'path' option without creating
+     * resource handles.
+     * @param path directory name, "/" is the project root and "." or ""
+     * the current file's directory
+     * @param currentDir project-relative path of the current file's directory
+     * @return project-relative path of the directory, "" for the project root
+     */
+    private static String resolvePath(String path, String currentDir) {
     	if(path.equals("/")) { //project root
-    		dir = project;
+    		return "";
     	}
     	else if(path.equals(".") || path.equals("")) { //current file's directory
-    		dir = getCurrentFileDir();
+    		return currentDir;
     	}
     	else if(path.contains("../")) { //path that moves into parent directories
-    		if(path.startsWith("/")) {
-    			//absolute path, start at project root
-    			dir = project;
-    		}
-    		else {
-    			//we don't know current working directory,
-    			//try current file dir instead
-    			dir = getCurrentFileDir();
-    		}
-    		
-    		String[] pieces = path.split("/");
-    		for(String piece : pieces) {
-    			if("".equals(piece)) {
+    		//absolute paths start at project root, for others we don't know
+    		//the current working directory, try current file dir instead
+    		String dir = path.startsWith("/") ? "" : currentDir;
+    		for(String piece : path.split("/")) {
+    			if("".equals(piece) || ".".equals(piece)) {
     				//go to next piece (leading '/' or intermediate '//')
     				continue;
     			}
     			
     			if("..".equals(piece)) {
     				//if we're not at project root, move up to parent dir
-    				if(! dir.getProjectRelativePath().toString().equals("")) {
-    					dir = dir.getParent();
-    				}
+    				dir = dir.substring(0, Math.max(0, dir.lastIndexOf('/')));
     			}
     			else {
     				//move down a dir
-    				dir = project.getFolder( dir.getProjectRelativePath().toString() + "/" + piece );
+    				dir = dir.length() == 0 ? piece : dir + "/" + piece;
     			}
     		}
+    		return dir;
     	}
-    	else { //normal directory
-    		dir = project.getFolder(path);
-    	}
-    	return dir;
+    	//normal directory
+    	return new Path(path).makeRelative().removeTrailingSeparator().toString();
     }
     
     private IProject getCurrentSelectedProject() {
@@ -662,6 +708,12 @@ public class EclipseFileService implements FileService {
     	return null;
     }
     
+    /** @return project-relative path of the current file's directory, or null if there is no file */
+    private String getCurrentFileDirPath() {
+    	IFile file = getCurrentFile();
+    	return file == null ? null : file.getParent().getProjectRelativePath().toString();
+    }
+    
     private IContainer getCurrentFileDir() {
     	IFile file = getCurrentFile();
     	if(file != null) {
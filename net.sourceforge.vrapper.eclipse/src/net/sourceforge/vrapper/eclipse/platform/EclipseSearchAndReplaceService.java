@@ -1,8 +1,7 @@
 package net.sourceforge.vrapper.eclipse.platform;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import org.eclipse.jface.text.BadLocationException;
@@ -19,10 +18,8 @@ import net.sourceforge.vrapper.platform.VrapperPlatformException;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.Search;
 import net.sourceforge.vrapper.utils.SearchResult;
-import net.sourceforge.vrapper.utils.Space;
-import net.sourceforge.vrapper.utils.StartEndTextRange;
 import net.sourceforge.vrapper.utils.StringUtils;
-import net.sourceforge.vrapper.utils.TextRange;
+import net.sourceforge.vrapper.utils.VimRegexTranslator;
 import net.sourceforge.vrapper.vim.Options;
 
 public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
@@ -32,7 +29,7 @@ public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
     private final HighlightingService highlightingService;
     private final Configuration configuration;
     private Search lastHighlightedSearch;
-    private List<Object> annotations;
+    private final SearchHighlighter searchHighlighter;
     private Object incSearchAnnotation;
     private ITextViewer textViewer;
 
@@ -41,7 +38,8 @@ public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
         this.textViewer = textViewer;
         this.highlightingService = highlightingService;
         this.configuration = configuration;
-        this.annotations = Collections.emptyList();
+        this.searchHighlighter = new SearchHighlighter(textViewer, highlightingService,
+                ANNOTATION_TYPE, "Vrapper Search");
     }
 
     public SearchResult find(Search search, Position start) {
@@ -97,6 +95,11 @@ public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
         return numReplaces;
     }
 
+    public Pattern getSubstitutionPattern(String toFind, String flags) {
+        return VimRegexTranslator.INSTANCE.compile(toFind, configuration.get(Options.KEYWORDS),
+                isCaseSensitive(toFind, flags));
+    }
+
     public boolean isCaseSensitive(String toFind, String flags) {
         boolean caseSensitive = !configuration.get(Options.IGNORE_CASE)
             || (configuration.get(Options.SMART_CASE)
@@ -125,18 +128,28 @@ public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
     }
 
     private IRegion find(Search search, int begin, FindReplaceDocumentAdapter adapter) throws BadLocationException {
-        if(search.isRegExSearch()) {
-            search = convertRegexSearch(search);
-        }
         IRegion result;
         try {
-            //Hardcoding wholeWord to false.  If we're doing a wholeWord search,
-            //we'll use regex so we have more control over what we consider a
-            //"word" (using the iskeyword setting).
-            result = adapter.find(
-                        begin, search.getKeyword(),
-                        !search.isBackward(), search.isCaseSensitive(),
-                        false, search.isRegExSearch());
+            if (search.isRegExSearch() && ! search.isBackward()) {
+                //Forward regex searches use the cached compiled pattern instead of letting
+                //the adapter compile it again. The adapter is a CharSequence of the document.
+                Matcher matcher = getSearchPattern(search).matcher(adapter);
+                if (begin < 0 || begin > adapter.length()) {
+                    throw new BadLocationException();
+                }
+                result = matcher.find(begin) ? new Region(matcher.start(), matcher.end() - matcher.start()) : null;
+            } else {
+                if(search.isRegExSearch()) {
+                    search = convertRegexSearch(search);
+                }
+                //Hardcoding wholeWord to false.  If we're doing a wholeWord search,
+                //we'll use regex so we have more control over what we consider a
+                //"word" (using the iskeyword setting).
+                result = adapter.find(
+                            begin, search.getKeyword(),
+                            !search.isBackward(), search.isCaseSensitive(),
+                            false, search.isRegExSearch());
+            }
         } catch (BadLocationException e) {
             throw new VrapperPlatformException("Failed to find '" + search.getKeyword() + "' at "
                     + "offset" + begin + ", offset is invalid.", e);
@@ -149,10 +162,7 @@ public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
     
     /**
      * We're using Eclipse's (Java's) Regex engine for search/replace. However,
-     * a lot of people are used to Vim's syntax for regex. So, check for Vim
-     * regex syntax and map to Eclipse's (Java's) syntax where possible.
-     * \< and \> =  \b   = word boundary
-     * (Feature pending... add support for 'magic' and 'very magic')
+     * a lot of people are used to Vim's syntax for regex, see {@link VimRegexTranslator}.
      */
     private Search convertRegexSearch(Search search) {
         String keyword = search.getKeyword();
@@ -160,27 +170,12 @@ public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
         return new Search(keyword, search.isBackward(), search.isCaseSensitive(), search.getSearchOffset(), search.isRegExSearch());
     }
     private String convertRegexSearch(String keyword) {
-        String boundaries = configuration.get(Options.KEYWORDS);
-        
-        //'\k' inserts the character class of the 'iskeyword' setting
-        keyword = keyword.replaceAll("\\\\k", "["+boundaries+"]");
-
-        //In Vim, '\<' and '\>' is the regex for word boundaries. We need to
-        //replace this with valid regex for the Java regex engine.
-        //We *could* just use '\b' for the Java equivalent 'word boundaries'
-        //regex flag but we need to use the 'iskeyword' setting in case
-        //it doesn't match any default word boundary behavior.
-
-        //using look-aheads and look-behinds to make sure we don't select
-        //the word boundary as part of the match
-        keyword = keyword.replaceAll("\\\\<", "(?<!["+boundaries+"])");
-        return keyword.replaceAll("\\\\>", "(?!["+boundaries+"])");
+        return VimRegexTranslator.INSTANCE.translate(keyword, configuration.get(Options.KEYWORDS));
     }
 
     public void removeHighlighting() {
         lastHighlightedSearch = null;
-        highlightingService.removeHighlights(annotations);
-        annotations = Collections.emptyList();
+        searchHighlighter.cancel();
     }
 
     public void highlight(Search search) {
@@ -190,26 +185,24 @@ public class EclipseSearchAndReplaceService implements SearchAndReplaceService {
             return;
         }
         removeHighlighting();
-        if (search.isBackward()) {
-            search = search.reverse();
-        }
-        IRegion result = new Region(0, 0);
-        annotations = new ArrayList<Object>();
-        lastHighlightedSearch = search;
+        Pattern pattern;
         try {
-            FindReplaceDocumentAdapter adapter = new FindReplaceDocumentAdapter(textViewer.getDocument());
-            List<TextRange> rangesToHL = new ArrayList<TextRange>();
-            TextViewerPosition temp = new TextViewerPosition(textViewer, Space.MODEL, 0);
-            while ((result = find(search, result.getOffset()+result.getLength(), adapter)) != null) {
-                Position start = temp.setModelOffset(result.getOffset());
-                Position end = temp.setModelOffset(result.getOffset() + result.getLength());
-                rangesToHL.add(StartEndTextRange.exclusive(start, end));
-            }
-            annotations = highlightingService.highlightRegions(ANNOTATION_TYPE,
-                    "Vrapper Search", rangesToHL);
-        } catch (BadLocationException e) {
+            pattern = getSearchPattern(search);
+        } catch (PatternSyntaxException e) {
             VrapperLog.error("while highlighting search", e);
+            return;
+        }
+        lastHighlightedSearch = search;
+        searchHighlighter.highlight(pattern);
+    }
+
+    public Pattern getSearchPattern(Search search) {
+        if (search.isRegExSearch()) {
+            return VimRegexTranslator.INSTANCE.compile(search.getKeyword(),
+                    configuration.get(Options.KEYWORDS), search.isCaseSensitive());
         }
+        int flags = search.isCaseSensitive() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        return Pattern.compile(Pattern.quote(search.getKeyword()), flags);
     }
 
     public void incSearchhighlight(Position start, int length) {
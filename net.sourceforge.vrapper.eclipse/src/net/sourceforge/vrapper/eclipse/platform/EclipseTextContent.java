@@ -2,14 +2,27 @@ package net.sourceforge.vrapper.eclipse.platform;
 
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.platform.VrapperPlatformException;
+import net.sourceforge.vrapper.utils.BracketIndex;
+import net.sourceforge.vrapper.utils.DocumentSnapshot;
 import net.sourceforge.vrapper.utils.LineInformation;
+import net.sourceforge.vrapper.utils.MultiEdit;
+import net.sourceforge.vrapper.utils.SearchMatchIndex;
 import net.sourceforge.vrapper.utils.Space;
 import net.sourceforge.vrapper.utils.TextRange;
+import net.sourceforge.vrapper.utils.XmlTagIndex;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentRewriteSession;
+import org.eclipse.jface.text.DocumentRewriteSessionType;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.IRewriteTarget;
+import org.eclipse.jface.text.ITextInputListener;
 import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.ITextViewerExtension;
 import org.eclipse.jface.text.ITextViewerExtension5;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.Region;
@@ -25,11 +38,59 @@ public class EclipseTextContent {
     protected int horizontalPosition;
     protected boolean lineWiseMouseSelection;
 
+    protected final BracketIndex bracketIndex = new BracketIndex();
+    protected final XmlTagIndex xmlTagIndex = new XmlTagIndex();
+    protected final SearchMatchIndex searchMatchIndex = new SearchMatchIndex();
+    /** Counts changes of the document, see {@link DocumentSnapshot}. */
+    protected long modificationStamp;
+
     public EclipseTextContent(ITextViewer textViewer) {
         this.textViewer = textViewer;
         this.converter = OffsetConverter.create(textViewer);
         modelSide = new ModelSideTextContent();
         viewSide = new ViewSideTextContent();
+        trackIndexes();
+    }
+
+    /**
+     * Keeps the bracket, tag and search match indexes and the modification stamp in sync with the
+     * document, also when the viewer's input changes.
+     */
+    private void trackIndexes() {
+        final IDocumentListener documentListener = new IDocumentListener() {
+            public void documentAboutToBeChanged(DocumentEvent event) {
+            }
+
+            public void documentChanged(DocumentEvent event) {
+                String text = event.getText();
+                int inserted = text == null ? 0 : text.length();
+                // Bump the stamp first so that the indexes don't read stale snapshots.
+                modificationStamp++;
+                bracketIndex.textChanged(event.getOffset(), event.getLength(), inserted);
+                xmlTagIndex.textChanged(event.getOffset(), event.getLength(), inserted);
+                searchMatchIndex.textChanged(event.getOffset(), event.getLength(), inserted);
+            }
+        };
+        if (textViewer.getDocument() != null) {
+            textViewer.getDocument().addDocumentListener(documentListener);
+        }
+        textViewer.addTextInputListener(new ITextInputListener() {
+            public void inputDocumentAboutToBeChanged(IDocument oldInput, IDocument newInput) {
+                if (oldInput != null) {
+                    oldInput.removeDocumentListener(documentListener);
+                }
+            }
+
+            public void inputDocumentChanged(IDocument oldInput, IDocument newInput) {
+                bracketIndex.clear();
+                xmlTagIndex.clear();
+                searchMatchIndex.clear();
+                modificationStamp++;
+                if (newInput != null) {
+                    newInput.addDocumentListener(documentListener);
+                }
+            }
+        });
     }
 
     public TextContent getModelContent() {
@@ -40,7 +101,8 @@ public class EclipseTextContent {
         return viewSide;
     }
 
-    protected class ModelSideTextContent implements TextContent {
+    protected class ModelSideTextContent implements TextContent, BracketIndex.Provider,
+            XmlTagIndex.Provider, SearchMatchIndex.Provider, DocumentSnapshot.Source {
 
         public LineInformation getLineInformation(int line) {
             try {
@@ -98,6 +160,47 @@ public class EclipseTextContent {
             }
         }
 
+        /**
+         * Applies the edits in a document rewrite session, so the viewer is only updated once,
+         * and as one compound change for the undo history. Document listeners still get one
+         * event per edit: replacing the whole span at once like <code>GapBufferTextContent</code>
+         * would drop the markers, breakpoints and folds between the edits.
+         */
+        public void replace(MultiEdit edits) {
+            if (edits.size() < 2) {
+                edits.applyEach(this);
+                return;
+            }
+            IDocument doc = textViewer.getDocument();
+            IRewriteTarget rewriteTarget = null;
+            if (textViewer instanceof ITextViewerExtension) {
+                rewriteTarget = ((ITextViewerExtension) textViewer).getRewriteTarget();
+            }
+            DocumentRewriteSession session = null;
+            if (rewriteTarget != null) {
+                rewriteTarget.beginCompoundChange();
+            }
+            try {
+                if (doc instanceof IDocumentExtension4) {
+                    session = ((IDocumentExtension4) doc).startRewriteSession(
+                            DocumentRewriteSessionType.UNRESTRICTED);
+                }
+                for (int i = edits.size() - 1; i >= 0; i--) {
+                    doc.replace(edits.getOffset(i), edits.getLength(i), edits.getText(i));
+                }
+            } catch (BadLocationException e) {
+                throw new VrapperPlatformException("Failed to apply " + edits.size()
+                        + " edits for M" + edits.getStart(), e);
+            } finally {
+                if (session != null) {
+                    ((IDocumentExtension4) doc).stopRewriteSession(session);
+                }
+                if (rewriteTarget != null) {
+                    rewriteTarget.endCompoundChange();
+                }
+            }
+        }
+
         public void smartInsert(int index, String s) {
             int offset = converter.modelOffset2WidgetOffset(index);
             // View might not have index exposed (it is in a fold or far away), check and correct.
@@ -120,6 +223,22 @@ public class EclipseTextContent {
             return Space.MODEL;
         }
 
+        public BracketIndex getBracketIndex() {
+            return bracketIndex;
+        }
+
+        public XmlTagIndex getXmlTagIndex() {
+            return xmlTagIndex;
+        }
+
+        public SearchMatchIndex getSearchMatchIndex() {
+            return searchMatchIndex;
+        }
+
+        public long getModificationStamp() {
+            return modificationStamp;
+        }
+
     }
 
     protected class ViewSideTextContent implements TextContent  {
@@ -177,6 +296,10 @@ public class EclipseTextContent {
             }
         }
 
+        public void replace(MultiEdit edits) {
+            edits.applyEach(this);
+        }
+
         public void smartInsert(int index, String s) {
             StyledText textWidget = textViewer.getTextWidget();
             int oldIndex = textWidget.getCaretOffset();
@@ -1,16 +1,28 @@
 package net.sourceforge.vrapper.eclipse.platform;
 
+import java.lang.reflect.InvocationTargetException;
+
 import net.sourceforge.vrapper.eclipse.ui.CommandLineUIFactory;
 import net.sourceforge.vrapper.eclipse.ui.ModeContributionItem;
 import net.sourceforge.vrapper.platform.CommandLineUI;
+import net.sourceforge.vrapper.platform.LongRunningTask;
 import net.sourceforge.vrapper.platform.UserInterfaceService;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
+import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.action.IStatusLineManager;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IPartListener;
 import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.progress.IProgressService;
 
 public class EclipseUserInterfaceService implements UserInterfaceService {
 
@@ -18,6 +30,7 @@ public class EclipseUserInterfaceService implements UserInterfaceService {
 
     private final CommandLineUIFactory commandLineFactory;
     private final IEditorPart editor;
+    private final ITextViewer textViewer;
     private final ModeContributionItem vimInputModeItem;
 
     private String lastInfoValue = "";
@@ -38,6 +51,7 @@ public class EclipseUserInterfaceService implements UserInterfaceService {
 
     public EclipseUserInterfaceService(final IEditorPart editor, final ITextViewer textViewer) {
         this.editor = editor;
+        this.textViewer = textViewer;
         commandLineFactory = new CommandLineUIFactory(textViewer.getTextWidget());
         vimInputModeItem = getContributionItem();
         setEditorMode(VRAPPER_DISABLED);
@@ -157,4 +171,83 @@ public class EclipseUserInterfaceService implements UserInterfaceService {
     public CommandLineUI getCommandLineUI(EditorAdaptor editorAdaptor) {
         return commandLineFactory.createCommandLineUI(editorAdaptor);
     }
+
+    /**
+     * Runs the task in a background thread while the UI keeps processing events. Eclipse shows
+     * a progress dialog with a cancel button if the task takes longer than a moment. The text
+     * widget is disabled meanwhile so that no keys reach Vrapper or the editor in the middle of
+     * the command. The document may still be changed from elsewhere; this is detected with its
+     * modification stamp.
+     */
+    @Override
+    public void runWithProgress(final String name, final LongRunningTask task) throws CommandExecutionException {
+        IProgressService progressService = PlatformUI.getWorkbench().getProgressService();
+        long stamp = getModificationStamp();
+        StyledText widget = textViewer.getTextWidget();
+        boolean hadFocus = widget.isFocusControl();
+        widget.setEnabled(false);
+        try {
+            progressService.busyCursorWhile(new IRunnableWithProgress() {
+                @Override
+                public void run(final IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                    monitor.beginTask(name, IProgressMonitor.UNKNOWN);
+                    try {
+                        task.run(new LongRunningTask.Monitor() {
+                            @Override
+                            public boolean isCanceled() {
+                                return monitor.isCanceled();
+                            }
+
+                            @Override
+                            public void setMessage(String message) {
+                                monitor.subTask(message);
+                            }
+                        });
+                    } catch (Exception e) {
+                        throw new InvocationTargetException(e);
+                    } finally {
+                        monitor.done();
+                    }
+                    if (monitor.isCanceled()) {
+                        throw new InterruptedException();
+                    }
+                }
+            });
+        } catch (InvocationTargetException e) {
+            throw new CommandExecutionException(name + " failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            throw new CommandExecutionException(name + ": canceled, buffer left unchanged");
+        } finally {
+            if ( ! widget.isDisposed()) {
+                widget.setEnabled(true);
+                if (hadFocus) {
+                    widget.setFocus();
+                }
+            }
+        }
+        if (getModificationStamp() != stamp) {
+            throw new CommandExecutionException(name + ": buffer changed while running, result discarded");
+        }
+    }
+
+    private long getModificationStamp() {
+        IDocument document = textViewer.getDocument();
+        if (document instanceof IDocumentExtension4) {
+            return ((IDocumentExtension4) document).getModificationStamp();
+        }
+        return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+
+    @Override
+    public void runLater(final int delayMillis, final Runnable task) {
+        Display display = editor.getSite().getShell().getDisplay();
+        if (display.isDisposed()) {
+            return;
+        }
+        if (delayMillis > 0) {
+            display.timerExec(delayMillis, task);
+        } else {
+            display.asyncExec(task);
+        }
+    }
 }
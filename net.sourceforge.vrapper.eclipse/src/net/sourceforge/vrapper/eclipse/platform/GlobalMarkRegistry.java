@@ -0,0 +1,159 @@
+package net.sourceforge.vrapper.eclipse.platform;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.sourceforge.vrapper.log.VrapperLog;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Markers of the global (A-Z0-9) marks by mark name, so that <tt>'A</tt> and <tt>:marks</tt>
+ * don't have to search all bookmarks of the workspace.
+ *
+ * <p>The map is built on first use and kept up to date from the marker deltas of the workspace.
+ * Other bookmarks are not kept. If a marker in the map turns out to be deleted or renamed, or a
+ * project is opened, closed or deleted, the map is built again on the next request.
+ */
+public class GlobalMarkRegistry {
+
+    private static IResourceChangeListener listener;
+    /** Marker of each global mark, null until built. */
+    private static Map<String, IMarker> markers;
+
+    private GlobalMarkRegistry() { /* NOP */ }
+
+    /** @return the marker of a global mark, or null if the mark isn't set. */
+    public static synchronized IMarker getMarker(String name) {
+        IMarker marker = getMarkers().get(name);
+        if (marker != null && ! isMarkerOf(marker, name)) {
+            VrapperLog.debug("Global mark " + name + " is out of date, searching all markers");
+            markers = null;
+            marker = getMarkers().get(name);
+        }
+        return marker;
+    }
+
+    /** @return the names of all global marks which are set. */
+    public static synchronized Set<String> getNames() {
+        return new TreeSet<String>(getMarkers().keySet());
+    }
+
+    /** Makes the next request search all markers again. */
+    public static synchronized void invalidate() {
+        markers = null;
+    }
+
+    /** Drops the map and stops listening to resource changes. */
+    public static synchronized void dispose() {
+        if (listener != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(listener);
+            listener = null;
+        }
+        markers = null;
+    }
+
+    /** @return whether <code>name</code> is the name of a global mark. */
+    public static boolean isGlobalMarkName(String name) {
+        if (name == null || name.length() != 1) {
+            return false;
+        }
+        char c = name.charAt(0);
+        return (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isMarkerOf(IMarker marker, String name) {
+        return marker.exists() && name.equals(marker.getAttribute(IMarker.MESSAGE, "--"));
+    }
+
+    private static Map<String, IMarker> getMarkers() {
+        if (markers == null) {
+            addListener();
+            markers = build();
+        }
+        return markers;
+    }
+
+    private static Map<String, IMarker> build() {
+        Map<String, IMarker> built = new HashMap<String, IMarker>();
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        try {
+            IMarker[] found = root.findMarkers(EclipseCursorAndSelection.GLOBAL_MARK_TYPE, true,
+                    IResource.DEPTH_INFINITE);
+            for (IMarker marker : found) {
+                String name = marker.getAttribute(IMarker.MESSAGE, "--");
+                // Like the search this replaces, the first marker of a name wins.
+                if (isGlobalMarkName(name) && ! built.containsKey(name)) {
+                    built.put(name, marker);
+                }
+            }
+        } catch (CoreException e) {
+            VrapperLog.error("Failed to find markers in resource root " + root, e);
+        }
+        return built;
+    }
+
+    private static synchronized void applyDeltas(IResourceChangeEvent event) {
+        if (markers == null) {
+            return;
+        }
+        IResourceDelta root = event.getDelta();
+        if (root != null) {
+            for (IResourceDelta projectDelta : root.getAffectedChildren()) {
+                if (projectDelta.getKind() == IResourceDelta.REMOVED
+                        || (projectDelta.getFlags() & IResourceDelta.OPEN) != 0) {
+                    // The markers of closed or deleted projects are gone without a marker delta.
+                    markers = null;
+                    return;
+                }
+            }
+        }
+        for (IMarkerDelta delta : event.findMarkerDeltas(
+                EclipseCursorAndSelection.GLOBAL_MARK_TYPE, true)) {
+            IMarker marker = delta.getMarker();
+            if (delta.getKind() != IMarkerDelta.ADDED) {
+                // Removed, or changed and maybe renamed.
+                removeMarker(marker);
+            }
+            if (delta.getKind() != IMarkerDelta.REMOVED) {
+                String name = marker.getAttribute(IMarker.MESSAGE, "--");
+                if (isGlobalMarkName(name) && ! markers.containsKey(name)) {
+                    markers.put(name, marker);
+                }
+            }
+        }
+    }
+
+    private static void removeMarker(IMarker marker) {
+        Iterator<IMarker> iterator = markers.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().equals(marker)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void addListener() {
+        if (listener != null) {
+            return;
+        }
+        listener = new IResourceChangeListener() {
+            @Override
+            public void resourceChanged(IResourceChangeEvent event) {
+                applyDeltas(event);
+            }
+        };
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(listener, IResourceChangeEvent.POST_CHANGE);
+    }
+}
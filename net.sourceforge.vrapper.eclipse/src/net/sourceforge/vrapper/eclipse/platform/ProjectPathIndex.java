@@ -0,0 +1,312 @@
+package net.sourceforge.vrapper.eclipse.platform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sourceforge.vrapper.log.VrapperLog;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Index of the folders and files of a project, used by <tt>:find</tt>, <tt>gf</tt> and path
+ * tab-completion so that they don't have to walk the resource tree on every call.
+ *
+ * <p>The index is built by a background {@link Job} the first time it is requested for a project
+ * and kept up to date from the workspace's resource deltas. Until it is ready, {@link #isReady()}
+ * returns false and callers should fall back to the resource tree.
+ *
+ * <p>Paths are project-relative without a leading or trailing '/'; the project itself is "".
+ * Members of a folder are listed by name in the same order as {@link IResource#members()}, with a
+ * '/' appended to the names of folders.
+ */
+public class ProjectPathIndex {
+
+    private static final ConcurrentMap<String, ProjectPathIndex> INDEXES =
+            new ConcurrentHashMap<String, ProjectPathIndex>();
+
+    private static IResourceChangeListener listener;
+
+    private final IProject project;
+    /** Members (name to isFolder) of each folder, sorted by folder path. */
+    private TreeMap<String, TreeMap<String, Boolean>> folders;
+    /** Set when the resource tree changed while the index was being built. */
+    private boolean stale;
+
+    private ProjectPathIndex(IProject project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the index of a project, scheduling a build if there is none yet. The returned index
+     * may not be ready.
+     */
+    public static ProjectPathIndex forProject(IProject project) {
+        String name = project.getName();
+        ProjectPathIndex index = INDEXES.get(name);
+        if (index == null) {
+            ProjectPathIndex newIndex = new ProjectPathIndex(project);
+            index = INDEXES.putIfAbsent(name, newIndex);
+            if (index == null) {
+                index = newIndex;
+                addListener();
+                index.scheduleBuild();
+            }
+        }
+        return index;
+    }
+
+    /** Drops all indexes and stops listening to resource changes. */
+    public static synchronized void disposeAll() {
+        if (listener != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(listener);
+            listener = null;
+        }
+        INDEXES.clear();
+    }
+
+    public synchronized boolean isReady() {
+        return folders != null;
+    }
+
+    /**
+     * Looks up the members of a folder which a completion of <code>prefix</code> may go through,
+     * from the sorted member names instead of listing all of them.
+     * @return names of the members starting with <code>prefix</code>, or if <code>prefix</code>
+     *      contains a '/', the member folder named by its first segment; folder names ending in
+     *      '/'. Null if the folder doesn't exist or the index isn't ready.
+     */
+    public synchronized List<String> getMembers(String folderPath, String prefix) {
+        if (folders == null) {
+            return null;
+        }
+        TreeMap<String, Boolean> members = folders.get(folderPath);
+        if (members == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<String>();
+        int slash = prefix.indexOf('/');
+        if (slash >= 0) {
+            // Names can't contain '/', only a subfolder can lead to a match.
+            if (Boolean.TRUE.equals(members.get(prefix.substring(0, slash)))) {
+                names.add(prefix.substring(0, slash + 1));
+            }
+            return names;
+        }
+        for (Map.Entry<String, Boolean> member
+                : members.subMap(prefix, true, prefix + Character.MAX_VALUE, true).entrySet()) {
+            names.add(member.getValue() ? member.getKey() + '/' : member.getKey());
+        }
+        return names;
+    }
+
+    /**
+     * @return whether a file or folder exists at the project-relative <code>path</code>. False
+     *      if the index isn't ready.
+     */
+    public synchronized boolean contains(String path) {
+        if (folders == null) {
+            return false;
+        } else if (path.length() == 0) {
+            return true;
+        }
+        int slash = path.lastIndexOf('/');
+        TreeMap<String, Boolean> members = folders.get(slash < 0 ? "" : path.substring(0, slash));
+        return members != null && members.containsKey(path.substring(slash + 1));
+    }
+
+    /**
+     * @return the folder itself followed by all of its subfolders, sorted by path; or null if the
+     *      folder doesn't exist or the index isn't ready.
+     */
+    public synchronized List<String> getFolderTree(String folderPath) {
+        if (folders == null || ! folders.containsKey(folderPath)) {
+            return null;
+        }
+        SortedMap<String, TreeMap<String, Boolean>> tree;
+        if (folderPath.length() == 0) {
+            tree = folders;
+        } else {
+            // Subfolders of "a/b" are the paths between "a/b/" and "a/b0" ('0' follows '/').
+            tree = folders.subMap(folderPath + '/', folderPath + '0');
+        }
+        List<String> paths = new ArrayList<String>(tree.size() + 1);
+        if (folderPath.length() > 0) {
+            paths.add(folderPath);
+        }
+        paths.addAll(tree.keySet());
+        return paths;
+    }
+
+    private void scheduleBuild() {
+        Job job = new Job("Indexing files of " + project.getName()) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                synchronized (ProjectPathIndex.this) {
+                    stale = false;
+                }
+                TreeMap<String, TreeMap<String, Boolean>> built;
+                try {
+                    built = build(monitor);
+                } catch (CoreException e) {
+                    VrapperLog.error("while indexing " + project.getName(), e);
+                    INDEXES.remove(project.getName(), ProjectPathIndex.this);
+                    return Status.OK_STATUS;
+                }
+                if (built == null) {
+                    INDEXES.remove(project.getName(), ProjectPathIndex.this);
+                    return Status.CANCEL_STATUS;
+                }
+                synchronized (ProjectPathIndex.this) {
+                    if (stale) {
+                        // Changes since the build started are not part of it, start over.
+                        schedule();
+                    } else {
+                        folders = built;
+                    }
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.setSystem(true);
+        job.setPriority(Job.LONG);
+        job.schedule();
+    }
+
+    /** @return the folder map of the project, or null if the build was canceled. */
+    private TreeMap<String, TreeMap<String, Boolean>> build(final IProgressMonitor monitor) throws CoreException {
+        final TreeMap<String, TreeMap<String, Boolean>> built = new TreeMap<String, TreeMap<String, Boolean>>();
+        built.put("", new TreeMap<String, Boolean>());
+        if ( ! project.isAccessible()) {
+            return null;
+        }
+        project.accept(new IResourceProxyVisitor() {
+            @Override
+            public boolean visit(IResourceProxy proxy) throws CoreException {
+                if (monitor.isCanceled()) {
+                    return false;
+                }
+                if (proxy.getType() == IResource.FILE || proxy.getType() == IResource.FOLDER) {
+                    // The full path starts with the project, drop it rather than creating a handle.
+                    add(built, proxy.requestFullPath().removeFirstSegments(1).toString(),
+                            proxy.getType() == IResource.FOLDER);
+                }
+                return true;
+            }
+        }, IResource.NONE);
+        return monitor.isCanceled() ? null : built;
+    }
+
+    private static void add(Map<String, TreeMap<String, Boolean>> folders, String path, boolean isFolder) {
+        int slash = path.lastIndexOf('/');
+        String parent = slash < 0 ? "" : path.substring(0, slash);
+        TreeMap<String, Boolean> members = folders.get(parent);
+        if (members != null) {
+            members.put(path.substring(slash + 1), Boolean.valueOf(isFolder));
+        }
+        if (isFolder && ! folders.containsKey(path)) {
+            folders.put(path, new TreeMap<String, Boolean>());
+        }
+    }
+
+    private static void remove(TreeMap<String, TreeMap<String, Boolean>> folders, String path) {
+        int slash = path.lastIndexOf('/');
+        TreeMap<String, Boolean> members = folders.get(slash < 0 ? "" : path.substring(0, slash));
+        if (members != null) {
+            members.remove(path.substring(slash + 1));
+        }
+        if (folders.remove(path) != null) {
+            folders.subMap(path + '/', path + '0').clear();
+        }
+    }
+
+    private synchronized void applyDelta(IResourceDelta projectDelta) throws CoreException {
+        if (folders == null) {
+            stale = true;
+            return;
+        }
+        final Map<String, Boolean> added = new HashMap<String, Boolean>();
+        final List<String> removed = new ArrayList<String>();
+        projectDelta.accept(new IResourceDeltaVisitor() {
+            @Override
+            public boolean visit(IResourceDelta delta) throws CoreException {
+                IResource resource = delta.getResource();
+                int type = resource.getType();
+                if (type != IResource.FILE && type != IResource.FOLDER) {
+                    return true;
+                }
+                String path = resource.getProjectRelativePath().toString();
+                if (delta.getKind() == IResourceDelta.ADDED) {
+                    added.put(path, Boolean.valueOf(type == IResource.FOLDER));
+                } else if (delta.getKind() == IResourceDelta.REMOVED) {
+                    removed.add(path);
+                    return false;
+                }
+                return true;
+            }
+        });
+        for (String path : removed) {
+            remove(folders, path);
+        }
+        // Parents are added before their members, visiting order is not guaranteed.
+        List<String> paths = new ArrayList<String>(added.keySet());
+        Collections.sort(paths);
+        for (String path : paths) {
+            add(folders, path, added.get(path).booleanValue());
+        }
+    }
+
+    private static synchronized void addListener() {
+        if (listener != null) {
+            return;
+        }
+        listener = new IResourceChangeListener() {
+            @Override
+            public void resourceChanged(IResourceChangeEvent event) {
+                IResourceDelta root = event.getDelta();
+                if (root == null) {
+                    return;
+                }
+                for (IResourceDelta projectDelta : root.getAffectedChildren()) {
+                    String name = projectDelta.getResource().getName();
+                    ProjectPathIndex index = INDEXES.get(name);
+                    if (index == null) {
+                        continue;
+                    }
+                    if (projectDelta.getKind() == IResourceDelta.REMOVED
+                            || (projectDelta.getFlags() & IResourceDelta.OPEN) != 0) {
+                        // Closed, reopened or deleted: rebuilt on the next request.
+                        INDEXES.remove(name, index);
+                        continue;
+                    }
+                    try {
+                        index.applyDelta(projectDelta);
+                    } catch (CoreException e) {
+                        VrapperLog.error("while updating file index of " + name, e);
+                        INDEXES.remove(name, index);
+                    }
+                }
+            }
+        };
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(listener, IResourceChangeEvent.POST_CHANGE);
+    }
+}
@@ -0,0 +1,308 @@
+package net.sourceforge.vrapper.eclipse.platform;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.FindReplaceDocumentAdapter;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.widgets.Display;
+
+import net.sourceforge.vrapper.log.VrapperLog;
+import net.sourceforge.vrapper.platform.HighlightingService;
+import net.sourceforge.vrapper.utils.Position;
+import net.sourceforge.vrapper.utils.Space;
+import net.sourceforge.vrapper.utils.StartEndTextRange;
+import net.sourceforge.vrapper.utils.TextRange;
+
+/**
+ * Highlights all matches of a search pattern ('hlsearch') without blocking the editor.
+ *
+ * <p>The visible lines are highlighted right away. The rest of the document is scanned in small
+ * time-sliced batches which are posted to the UI thread with {@link Display#asyncExec(Runnable)},
+ * so key presses are handled between two batches. Starting a new highlight or calling
+ * {@link #cancel()} stops any batch still pending.
+ *
+ * <p>Each search only looks for match starts in a chunk of {@link #CHUNK_SIZE} characters, so a
+ * single {@link Matcher#find()} can't run past the deadline on a large document. A match may
+ * extend up to {@link #MAX_MATCH_LENGTH} characters past its chunk. A longer match is missed
+ * when nothing else matches in its chunk, so that a failing search never reads up to the end of
+ * the document. If a match touches the end of the searched region, it is searched again in a
+ * region growing up to {@link #MAX_OVERHANG} characters past the chunk; a match reaching further
+ * is cut off.
+ *
+ * <p>Once the whole document has been scanned, edits only rescan the changed lines: annotations
+ * elsewhere are moved by the annotation model. The annotations are kept sorted by offset, so
+ * the ones touching the changed lines are found with a binary search. An edit while the scan is
+ * still running restarts it, since the offsets of the remaining ranges are no longer valid.
+ */
+public class SearchHighlighter implements IDocumentListener {
+
+    /** Maximum time a batch may spend on the UI thread. */
+    private static final long BATCH_NANOS = 15 * 1000 * 1000;
+    /** Number of characters in which a single search looks for match starts. */
+    private static final int CHUNK_SIZE = 16 * 1024;
+    /** Number of characters a match may extend past the chunk in which it starts. */
+    private static final int MAX_MATCH_LENGTH = 1024;
+    /** Number of characters a found match may at most extend past the chunk in which it starts. */
+    private static final int MAX_OVERHANG = 64 * MAX_MATCH_LENGTH;
+
+    private final ITextViewer textViewer;
+    private final HighlightingService highlightingService;
+    private final String annotationType;
+    private final String annotationName;
+
+    private Pattern pattern;
+    private IDocument document;
+    /** Annotations of the matches, sorted by start offset. */
+    private List<Object> annotations = new ArrayList<Object>();
+    /** Ranges still to be scanned, as {start, end} pairs of model offsets. */
+    private final LinkedList<int[]> pendingRanges = new LinkedList<int[]>();
+    /** Incremented on every (re)start so that stale batches know they have to stop. */
+    private int generation;
+
+    public SearchHighlighter(ITextViewer textViewer, HighlightingService highlightingService,
+            String annotationType, String annotationName) {
+        this.textViewer = textViewer;
+        this.highlightingService = highlightingService;
+        this.annotationType = annotationType;
+        this.annotationName = annotationName;
+    }
+
+    /**
+     * Removes the current highlighting and starts highlighting all matches of
+     * <code>pattern</code>. Must be called on the UI thread.
+     */
+    public void highlight(Pattern pattern) {
+        cancel();
+        this.pattern = pattern;
+        document = textViewer.getDocument();
+        if (document == null) {
+            return;
+        }
+        document.addDocumentListener(this);
+        start();
+    }
+
+    /** Stops pending batches and removes all highlighting. */
+    public void cancel() {
+        generation++;
+        pendingRanges.clear();
+        if (document != null) {
+            document.removeDocumentListener(this);
+            document = null;
+        }
+        pattern = null;
+        highlightingService.removeHighlights(annotations);
+        annotations = new ArrayList<Object>();
+    }
+
+    /** @return whether the whole document has been scanned. */
+    public boolean isComplete() {
+        return pendingRanges.isEmpty();
+    }
+
+    private void start() {
+        generation++;
+        pendingRanges.clear();
+        int length = document.getLength();
+        int visibleStart = 0;
+        int visibleEnd = length;
+        try {
+            visibleStart = document.getLineOffset(Math.max(0, textViewer.getTopIndex()));
+            visibleEnd = Math.max(visibleStart, getLineEnd(textViewer.getBottomIndex()));
+        } catch (BadLocationException e) {
+            // Viewer not laid out yet, just treat everything as visible.
+            visibleStart = 0;
+            visibleEnd = length;
+        }
+        int scannedEnd = scan(visibleStart, visibleEnd, Long.MAX_VALUE);
+        if (visibleStart > 0) {
+            pendingRanges.add(new int[] { 0, visibleStart });
+        }
+        // A match from the visible part may end after it, don't highlight overlapping matches.
+        if (scannedEnd < length) {
+            pendingRanges.add(new int[] { scannedEnd, length });
+        }
+        scheduleBatch();
+    }
+
+    private void scheduleBatch() {
+        if (pendingRanges.isEmpty()) {
+            return;
+        }
+        StyledText widget = textViewer.getTextWidget();
+        if (widget == null || widget.isDisposed()) {
+            return;
+        }
+        final int batchGeneration = generation;
+        widget.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                if (batchGeneration != generation || document == null) {
+                    return;
+                }
+                runBatch();
+            }
+        });
+    }
+
+    private void runBatch() {
+        long deadline = System.nanoTime() + BATCH_NANOS;
+        while ( ! pendingRanges.isEmpty() && System.nanoTime() < deadline) {
+            int[] range = pendingRanges.getFirst();
+            int scannedUpTo = scan(range[0], range[1], deadline);
+            if (scannedUpTo >= range[1]) {
+                pendingRanges.removeFirst();
+                if ( ! pendingRanges.isEmpty() && pendingRanges.getFirst()[0] < scannedUpTo) {
+                    pendingRanges.getFirst()[0] = scannedUpTo;
+                }
+            } else {
+                range[0] = scannedUpTo;
+            }
+        }
+        scheduleBatch();
+    }
+
+    /**
+     * Highlights matches starting in [<code>start</code>, <code>end</code>) until the deadline
+     * is reached.
+     * @return offset up to which the range has been scanned. When the whole range has been
+     *      scanned, this is at least <code>end</code> and may be larger if the last match ends
+     *      after the range.
+     */
+    private int scan(int start, int end, long deadline) {
+        if (start >= end) {
+            return start;
+        }
+        FindReplaceDocumentAdapter text = new FindReplaceDocumentAdapter(document);
+        int length = text.length();
+        Matcher matcher = pattern.matcher(text);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        List<TextRange> ranges = new ArrayList<TextRange>();
+        TextViewerPosition temp = new TextViewerPosition(textViewer, Space.MODEL, 0);
+        int position = start;
+        while (position < end) {
+            int chunkEnd = Math.min(end, position + CHUNK_SIZE);
+            int overhang = MAX_MATCH_LENGTH;
+            int regionEnd = Math.min(length, chunkEnd + overhang);
+            matcher.region(position, regionEnd);
+            boolean found = matcher.find();
+            while (found && matcher.hitEnd() && regionEnd < length && overhang < MAX_OVERHANG) {
+                // The match might be longer, or start earlier, with more of the document.
+                overhang *= 2;
+                regionEnd = Math.min(length, chunkEnd + overhang);
+                matcher.region(position, regionEnd);
+                found = matcher.find();
+            }
+            if ( ! found || matcher.start() >= chunkEnd) {
+                position = chunkEnd;
+            } else {
+                int matchStart = matcher.start();
+                int matchEnd = matcher.end();
+                Position startPosition = temp.setModelOffset(matchStart);
+                Position endPosition = temp.setModelOffset(matchEnd);
+                ranges.add(StartEndTextRange.exclusive(startPosition, endPosition));
+                position = Math.max(matchEnd, matchStart + 1);
+            }
+            if (position < end && System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        if ( ! ranges.isEmpty()) {
+            int index = firstStartingAfter(ranges.get(0).getLeftBound().getModelOffset() - 1);
+            annotations.addAll(index,
+                    highlightingService.highlightRegions(annotationType, annotationName, ranges));
+        }
+        return position;
+    }
+
+    /**
+     * @return index of the first annotation ending at or after <code>offset</code>. Annotations
+     *      which are no longer in the model count as ending there; they can only be found at
+     *      the location of an edit.
+     */
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = annotations.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            TextRange region = highlightingService.getHighlightedRegion(annotations.get(middle));
+            if (region != null
+                    && region.getLeftBound().getModelOffset() + region.getModelLength() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first annotation starting after <code>offset</code>. Annotations
+     *      which are no longer in the model count as starting before it.
+     */
+    private int firstStartingAfter(int offset) {
+        int low = 0;
+        int high = annotations.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            TextRange region = highlightingService.getHighlightedRegion(annotations.get(middle));
+            if (region == null || region.getLeftBound().getModelOffset() <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public void documentAboutToBeChanged(DocumentEvent event) {
+    }
+
+    @Override
+    public void documentChanged(DocumentEvent event) {
+        if (pattern == null || document == null) {
+            return;
+        }
+        if ( ! isComplete()) {
+            highlightingService.removeHighlights(annotations);
+            annotations = new ArrayList<Object>();
+            start();
+            return;
+        }
+        try {
+            int insertedLength = event.getText() == null ? 0 : event.getText().length();
+            int firstLine = document.getLineOfOffset(event.getOffset());
+            int lastLine = document.getLineOfOffset(event.getOffset() + insertedLength);
+            int start = document.getLineOffset(firstLine);
+            int end = getLineEnd(lastLine);
+            // Drop annotations touching the changed lines, the model has already moved the others.
+            int first = firstEndingAtOrAfter(start);
+            int last = Math.max(first, firstStartingAfter(end));
+            List<Object> stale = annotations.subList(first, last);
+            highlightingService.removeHighlights(new ArrayList<Object>(stale));
+            stale.clear();
+            scan(start, end + 1, Long.MAX_VALUE);
+        } catch (BadLocationException e) {
+            VrapperLog.error("while updating search highlighting", e);
+        }
+    }
+
+    /** @return end offset of a line, excluding the line delimiter. */
+    private int getLineEnd(int line) throws BadLocationException {
+        line = Math.min(Math.max(0, line), document.getNumberOfLines() - 1);
+        String delimiter = document.getLineDelimiter(line);
+        return document.getLineOffset(line) + document.getLineLength(line)
+                - (delimiter == null ? 0 : delimiter.length());
+    }
+}
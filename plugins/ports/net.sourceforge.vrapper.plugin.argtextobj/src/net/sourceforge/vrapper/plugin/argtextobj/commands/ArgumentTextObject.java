@@ -8,6 +8,7 @@ import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.ContentType;
 import net.sourceforge.vrapper.utils.LineInformation;
 import net.sourceforge.vrapper.utils.StartEndTextRange;
+import net.sourceforge.vrapper.utils.TextContentCharSequence;
 import net.sourceforge.vrapper.utils.TextRange;
 import net.sourceforge.vrapper.utils.VimUtils;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
@@ -32,6 +33,7 @@ public class ArgumentTextObject extends AbstractTextObject {
      */
     private static class ArgBoundsFinder {
         final private TextContent text;
+        final private CharSequence chars;
         private int leftBound;
         private int rightBound;
         private int leftBracket;
@@ -43,6 +45,7 @@ public class ArgumentTextObject extends AbstractTextObject {
 
         public ArgBoundsFinder(TextContent text) {
             this.text = text;
+            this.chars = new TextContentCharSequence(text);
         }
 
         /**
@@ -235,7 +238,7 @@ public class ArgumentTextObject extends AbstractTextObject {
 
         private char getCharAt(int modelOffset) {
             assert modelOffset < text.getTextLength();
-            return text.getText(modelOffset, 1).charAt(0);
+            return chars.charAt(modelOffset);
         }
 
         private int skipQuotedTextForward(final int start, final int end) {
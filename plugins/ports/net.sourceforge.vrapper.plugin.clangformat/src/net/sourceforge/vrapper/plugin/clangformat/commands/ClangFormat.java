@@ -2,11 +2,8 @@ package net.sourceforge.vrapper.plugin.clangformat.commands;
 
 import static net.sourceforge.vrapper.platform.Configuration.Option.stringNoConstraint;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Queue;
@@ -19,8 +16,8 @@ import net.sourceforge.vrapper.platform.Configuration.Option;
 import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.FileService;
 import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.ExternalFilter;
 import net.sourceforge.vrapper.utils.Position;
-import net.sourceforge.vrapper.utils.ProcessHelper;
 import net.sourceforge.vrapper.utils.StringUtils;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
 import net.sourceforge.vrapper.vim.LocalConfiguration;
@@ -32,6 +29,7 @@ import net.sourceforge.vrapper.vim.commands.motions.StickyColumnPolicy;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 /**
  * Executes LLVM's clang-format on the content of the current editor.
@@ -82,26 +80,24 @@ public class ClangFormat extends CountIgnoringNonRepeatableCommand {
                 rangeStart = 0;
                 rangeEnd = length;
             }
-            final Process p = ProcessHelper.start(args.toArray(new String[args.size()]));
-            final BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+            final String[] command = args.toArray(new String[args.size()]);
             //
             // Send full editor content
             //
-            final BufferedWriter stdOut = new BufferedWriter(new OutputStreamWriter(p.getOutputStream()));
-            stdOut.write(text);
-            stdOut.close();
+            final ExternalFilter filter = new ExternalFilter(command, text);
+            editorAdaptor.getUserInterfaceService().runWithProgress("clang-format", filter);
             //
-            // Read and parse clang-format XML output
+            // Parse clang-format XML output
             //
             final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             final DocumentBuilder builder = factory.newDocumentBuilder();
             Document replacements = null;
             try {
-                replacements = builder.parse(p.getInputStream());
+                replacements = builder.parse(new InputSource(new StringReader(filter.getOutput())));
             } catch (Exception e) { }
-            final String errors = ProcessHelper.ReadProcessOutput(stdError);
-            if (p.waitFor() != 0 || replacements == null || !errors.isEmpty()) {
-                showProcessError(StringUtils.join(" ", args), editorAdaptor, p.exitValue(), 
+            final String errors = filter.getErrors();
+            if (filter.getExitValue() != 0 || replacements == null || !errors.isEmpty()) {
+                showProcessError(StringUtils.join(" ", args), editorAdaptor, filter.getExitValue(),
                         errors);
             } else {
                 //
@@ -118,6 +114,8 @@ public class ClangFormat extends CountIgnoringNonRepeatableCommand {
                 }
                 cursorService.setPosition(cursor, StickyColumnPolicy.ON_CHANGE);
             }
+        } catch (CommandExecutionException e) {
+            throw e;
         } catch (Exception e) {
             throw new CommandExecutionException("clang-format error:" + e.getMessage());
         }
@@ -0,0 +1,110 @@
+package net.sourceforge.vrapper.plugin.sneak.commands.utils;
+
+import net.sourceforge.vrapper.platform.CursorService;
+import net.sourceforge.vrapper.platform.TextContent;
+import net.sourceforge.vrapper.utils.Search;
+import net.sourceforge.vrapper.utils.StartEndTextRange;
+import net.sourceforge.vrapper.utils.TextRange;
+import net.sourceforge.vrapper.vim.EditorAdaptor;
+
+/**
+ * Start offsets of all matches of a sneak keyword in the document, sorted and found in a single
+ * pass over the text. Jumping to the n-th next or previous match is a binary search followed by an
+ * array lookup.
+ *
+ * <p>An index describes the text it was built from. Sneak is stopped by every other command, so
+ * the text can't change while an index is used; {@link #isUsableFor(TextContent)} is a safeguard.
+ */
+public class SneakMatchIndex {
+
+    private final int[] offsets;
+    private final int size;
+    private final int keywordLength;
+    private final int textLength;
+
+    private SneakMatchIndex(int[] offsets, int size, int keywordLength, int textLength) {
+        this.offsets = offsets;
+        this.size = size;
+        this.keywordLength = keywordLength;
+        this.textLength = textLength;
+    }
+
+    /**
+     * Finds all matches of <code>search</code> in the model content of the editor.
+     * @param columnLeft left boundary for sneak-column mode, -1 if not used.
+     * @param columnRight right boundary for sneak-column mode, -1 if not used.
+     */
+    public static SneakMatchIndex build(EditorAdaptor editorAdaptor, Search search,
+            int columnLeft, int columnRight) {
+        TextContent content = editorAdaptor.getModelContent();
+        int textLength = content.getTextLength();
+        String text = content.getText(0, textLength);
+        String keyword = search.getKeyword();
+        boolean ignoreCase = ! search.isCaseSensitive();
+        int keywordLength = keyword.length();
+        SneakState.ColumnFilter columnFilter = new SneakState.ColumnFilter(editorAdaptor,
+                columnLeft, columnRight);
+
+        int[] offsets = new int[64];
+        int size = 0;
+        if (keywordLength > 0) {
+            char first = keyword.charAt(0);
+            int last = textLength - keywordLength;
+            for (int i = 0; i <= last; i++) {
+                if ((text.charAt(i) != first && ! ignoreCase)
+                        || ! text.regionMatches(ignoreCase, i, keyword, 0, keywordLength)
+                        || ! columnFilter.considerMatch(i)) {
+                    continue;
+                }
+                if (size == offsets.length) {
+                    int[] grown = new int[size * 2];
+                    System.arraycopy(offsets, 0, grown, 0, size);
+                    offsets = grown;
+                }
+                offsets[size++] = i;
+            }
+        }
+        return new SneakMatchIndex(offsets, size, keywordLength, textLength);
+    }
+
+    /** @return whether the index may still describe <code>content</code>. */
+    public boolean isUsableFor(TextContent content) {
+        return textLength == content.getTextLength();
+    }
+
+    /** @return number of matches. */
+    public int size() {
+        return size;
+    }
+
+    /** @return the start offset of match <code>index</code>. */
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    public TextRange getMatch(CursorService cursorService, int index) {
+        int offset = offsets[index];
+        return new StartEndTextRange(cursorService.newPositionForModelOffset(offset),
+                cursorService.newPositionForModelOffset(offset + keywordLength));
+    }
+
+    /** @return index of the first match starting after <code>offset</code>, or {@link #size()}. */
+    public int firstAfter(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsets[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** @return index of the last match starting before <code>offset</code>, or -1. */
+    public int lastBefore(int offset) {
+        return firstAfter(offset - 1) - 1;
+    }
+}
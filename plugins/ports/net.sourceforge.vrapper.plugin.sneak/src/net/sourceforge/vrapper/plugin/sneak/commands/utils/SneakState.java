@@ -1,19 +1,14 @@
 package net.sourceforge.vrapper.plugin.sneak.commands.utils;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import net.sourceforge.vrapper.keymap.State;
-import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.HighlightingService;
-import net.sourceforge.vrapper.platform.SearchAndReplaceService;
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.plugin.sneak.commands.motions.SneakMotion;
 import net.sourceforge.vrapper.utils.LineInformation;
-import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.Search;
-import net.sourceforge.vrapper.utils.SearchResult;
 import net.sourceforge.vrapper.utils.StringUtils;
 import net.sourceforge.vrapper.utils.TextRange;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
@@ -28,34 +23,24 @@ import net.sourceforge.vrapper.vim.register.RegisterManager;
  */
 public class SneakState {
 
-    /** Max size for the nextMatches or previousMatches lists (separately). */
-    private static final int MAX_SNEAK_CACHE_SIZE = 500;
-
-    /** Minimal number of items which should be in the cache. */
-    private static final int MIN_SNEAK_CACHE_PREFILL = 250;
+    /** Max number of matches highlighted at once. */
+    private static final int MAX_HIGHLIGHTS = 500;
 
     private static final String SNEAK_HIGHLIGHT_TYPE = "net.sourceforge.vrapper.eclipse.incsearchhighlight";
 
     private static final String NOT_FOUND_MESSAGE = "'%s' not found";
 
-    /**
-     * This indicates whether the previousMatches list contains all possible results or whether
-     * we need to fill the buffer for more.
-     */
-    private boolean allPreviousMatchesFound;
-    /**
-     * This indicates whether the nextMatches list contains all possible results or whether
-     * we need to fill the buffer for more.
-     */
-    private boolean allNextMatchesFound;
-
     /** Left boundary for sneak-column mode. */
     private int columnLeft;
     /** Right boundary for sneak-column mode. */
     private int columnRight;
-    private LinkedList<Object> nextHighlights;
-    private LinkedList<TextRange> nextMatches;
-    private LinkedList<TextRange> previousMatches;
+    private List<Object> highlights;
+    /** All matches of the current search, null when not sneaking. */
+    private SneakMatchIndex matchIndex;
+    /** Index of the match we landed on last, -1 if no jump happened yet. */
+    private int currentMatch;
+    /** Whether the next jump should skip {@link #currentMatch}. */
+    private boolean leftCurrentMatch;
 
     private Search sneakSearch;
 
@@ -74,9 +59,8 @@ public class SneakState {
         lastSneakCommandEventCounter = -1;
         columnLeft = -1;
         columnRight = -1;
-        nextHighlights = new LinkedList<Object>();
-        nextMatches = new LinkedList<TextRange>();
-        previousMatches = new LinkedList<TextRange>();
+        currentMatch = -1;
+        highlights = new ArrayList<Object>();
     }
 
     /**
@@ -118,36 +102,22 @@ public class SneakState {
         return isSneaking;
     }
 
-    private boolean hasHighlightsActive() {
-        return ! nextHighlights.isEmpty();
-    }
-
     public void deactivateSneak(HighlightingService highlightingService) {
-        if (hasHighlightsActive()) {
-            clearHighlights(highlightingService, 0, nextHighlights.size());
-        }
+        clearHighlights(highlightingService);
         isSneaking = false;
-        nextMatches.clear();
-        previousMatches.clear();
-        allPreviousMatchesFound = false;
-        allNextMatchesFound = false;
+        matchIndex = null;
+        currentMatch = -1;
     }
 
     public void keepSneakActive() {
         lastSneakCommandEventCounter = globalEventCounter;
     }
 
-    protected void clearHighlights(HighlightingService highlightingService,
-            int startindex, int numberOfItems) {
-        List<Object> highlightsToRemove;
-        if (startindex == 0 && numberOfItems >= nextHighlights.size()) {
-            highlightsToRemove = nextHighlights;
-        } else {
-           highlightsToRemove = nextHighlights.subList(startindex, numberOfItems);
+    protected void clearHighlights(HighlightingService highlightingService) {
+        if ( ! highlights.isEmpty()) {
+            highlightingService.removeHighlights(highlights);
+            highlights = new ArrayList<Object>();
         }
-
-        highlightingService.removeHighlights(highlightsToRemove);
-        highlightsToRemove.clear();
     }
 
     /**
@@ -166,41 +136,15 @@ public class SneakState {
     }
 
     public void reverseSearchDirection(EditorAdaptor editorAdaptor) {
-
-        HighlightingService highlightingService = editorAdaptor.getHighlightingService();
-        clearHighlights(highlightingService, 0, nextHighlights.size());
-
         sneakSearch = sneakSearch.reverse();
 
-        // Never stick around on the same spot when reversing (the first "previous match" is where
-        // we landed last time) by immediately transferring that match to the other list.
-        transferCurrentMatchToFuturePreviousMatches(editorAdaptor.getPosition());
-
-        LinkedList<TextRange> tempForReversal = previousMatches;
-        previousMatches = nextMatches;
-        nextMatches = tempForReversal;
-
-        boolean tempForBooleanReversal = allPreviousMatchesFound;
-        allPreviousMatchesFound = allNextMatchesFound;
-        allNextMatchesFound = tempForBooleanReversal;
-
-        highlightAdditionalMatches(nextMatches, highlightingService);
-    }
-
-    private void transferCurrentMatchToFuturePreviousMatches(Position currentPosition) {
-
-        if (previousMatches.size() > 0) {
-            Position lastDestination = previousMatches.getFirst().getLeftBound();
-            int currentPositionOffset = currentPosition.getModelOffset();
-            int distanceToLastDestination = currentPositionOffset - lastDestination.getModelOffset();
-
-            // Tolerate a slight difference, the f/t motions might have shifted the current position
-            if (Math.abs(distanceToLastDestination) <= 1) {
-                // Add it to next matches list, the next and previous lists will be swapped later
-                // so we don't need to modify any highlights on this spot
-                nextMatches.addFirst(previousMatches.remove());
-            }
-        } // else there is no current match
+        // Never stick around on the same spot when reversing. If we aren't on the last match
+        // (the f/t motions might have shifted the position slightly), jump back to it first.
+        if (currentMatch >= 0) {
+            int distance = editorAdaptor.getPosition().getModelOffset()
+                    - matchIndex.getOffset(currentMatch);
+            leftCurrentMatch = Math.abs(distance) <= 1;
+        }
     }
 
     public void runNewSearch(EditorAdaptor editorAdaptor, int count, Search searchKeyword,
@@ -213,124 +157,71 @@ public class SneakState {
         this.columnLeft = columnLeft;
         this.columnRight = columnRight;
 
-        findNextMatches(editorAdaptor, editorAdaptor.getPosition(), MIN_SNEAK_CACHE_PREFILL + count);
+        matchIndex = SneakMatchIndex.build(editorAdaptor, searchKeyword, columnLeft, columnRight);
     }
 
-    private void findNextMatches(EditorAdaptor editorAdaptor, Position startPosition,
-            int additionalItemCount) {
-        if (allNextMatchesFound) {
-            return;
-        }
-
-        int offsetShift = (sneakSearch.isBackward() ? -1 : 1);
-        SearchAndReplaceService searchAndReplaceService = editorAdaptor.getSearchAndReplaceService();
-        CursorService cursorService = editorAdaptor.getCursorService();
-
-        List<TextRange> searchHits = new ArrayList<TextRange>();
-
-        // Move position so we don't hit current match again. Shifting clips to file boundaries.
-        Position position;
-        position = cursorService.shiftPositionForModelOffset(startPosition.getModelOffset(),
-                offsetShift, true);
-
-        SearchResult searchResult = searchAndReplaceService.find(sneakSearch, position);
-        ColumnFilter columnFilter = new ColumnFilter(editorAdaptor, columnLeft, columnRight);
-
-        // Remember previous position so that we will visit offset 0 or End-of-File only once
-        Position previousPosition = startPosition;
-
-        int countResults = 0;
-        while (searchResult.isFound() && countResults < additionalItemCount
-        		&& ! previousPosition.equals(position)) {
-            if (columnFilter.considerMatch(searchResult)) {
-                searchHits.add(searchResult);
-                countResults++;
-            }
-            previousPosition = position;
-            position = cursorService.shiftPositionForModelOffset(
-                    searchResult.getLeftBound().getModelOffset(), offsetShift, true);
-            searchResult = searchAndReplaceService.find(sneakSearch, position);
+    public TextRange sneakToNextMatch(EditorAdaptor editorAdaptor, int count) throws CommandExecutionException {
+        if (matchIndex == null || ! matchIndex.isUsableFor(editorAdaptor.getModelContent())) {
+            matchIndex = SneakMatchIndex.build(editorAdaptor, sneakSearch, columnLeft, columnRight);
+            currentMatch = -1;
         }
-        storeAdditionalMatches(searchResult, searchHits);
-        highlightAdditionalMatches(searchHits, editorAdaptor.getHighlightingService());
-    }
+        boolean backward = sneakSearch.isBackward();
+        int step = backward ? -1 : 1;
 
-    private void storeAdditionalMatches(SearchResult lastSearchResult,
-            List<TextRange> additionalMatches) {
-        if ( ! lastSearchResult.isFound()) {
-            allNextMatchesFound = true;
+        // The nearest match in the search direction.
+        int nearest;
+        if (currentMatch >= 0) {
+            nearest = leftCurrentMatch ? currentMatch + step : currentMatch;
+        } else {
+            int offset = editorAdaptor.getPosition().getModelOffset();
+            nearest = backward ? matchIndex.lastBefore(offset) : matchIndex.firstAfter(offset);
         }
-        nextMatches.addAll(additionalMatches);
-    }
-
-    private void highlightAdditionalMatches(List<TextRange> searchHits,
-            HighlightingService highlightingService) {
-        List<Object> highlights;
-        highlights = highlightingService.highlightRegions(SNEAK_HIGHLIGHT_TYPE, "Sneak hit", searchHits);
-        nextHighlights.addAll(highlights);
-    }
-
-    public TextRange sneakToNextMatch(EditorAdaptor editorAdaptor, int count) throws CommandExecutionException {
-
-        prepareNextMatches(editorAdaptor, count);
-
-        if (nextMatches.size() == 0) {
+        if (nearest < 0 || nearest >= matchIndex.size()) {
             throw new CommandExecutionException(String.format(NOT_FOUND_MESSAGE,
                     sneakSearch.getKeyword()));
         }
-        if (nextMatches.size() < count) {
-            // Simply jump to last possible match
-            count = nextMatches.size();
-        }
-        TextRange result = nextMatches.get(count - 1);
-        transferNextMatchesToPreviousMatches(editorAdaptor, count);
+        // Simply jump to the last possible match if there are less than <count> matches.
+        int target = nearest + step * (count - 1);
+        target = Math.max(0, Math.min(matchIndex.size() - 1, target));
 
+        currentMatch = target;
+        leftCurrentMatch = true;
         isSneaking = true;
 
-        trimNextMatchesCache(editorAdaptor);
+        highlightNextMatches(editorAdaptor);
 
-        return result;
+        return matchIndex.getMatch(editorAdaptor.getCursorService(), target);
     }
 
-    private void prepareNextMatches(EditorAdaptor editorAdaptor, int count) {
-        // Add <count> new entries to nextMatches to keep it filled
-        if ( ! allNextMatchesFound) {
-            TextRange lastMatch = nextMatches.peekLast();
-            Position searchStartPosition;
-            // nextMatches may be empty
-            if (lastMatch == null) {
-                searchStartPosition = editorAdaptor.getPosition();
-            } else {
-                searchStartPosition = lastMatch.getLeftBound();
+    /**
+     * Replaces the highlights by those of the matches following the current one, as far as one
+     * screen height from it, in a single batch.
+     */
+    private void highlightNextMatches(EditorAdaptor editorAdaptor) {
+        HighlightingService highlightingService = editorAdaptor.getHighlightingService();
+        clearHighlights(highlightingService);
+
+        TextContent content = editorAdaptor.getModelContent();
+        int screenLines = Math.max(1, editorAdaptor.getViewportService().getViewPortInformation()
+                .getNumberOfLines());
+        int line = content.getLineInformationOfOffset(matchIndex.getOffset(currentMatch)).getNumber();
+        int step = sneakSearch.isBackward() ? -1 : 1;
+        int lastLine = Math.max(0, Math.min(content.getNumberOfLines() - 1, line + step * screenLines));
+        LineInformation last = content.getLineInformation(lastLine);
+        int limit = step > 0 ? last.getEndOffset() : last.getBeginOffset();
+
+        List<TextRange> regions = new ArrayList<TextRange>();
+        for (int i = currentMatch + step; i >= 0 && i < matchIndex.size()
+                && regions.size() < MAX_HIGHLIGHTS; i += step) {
+            int offset = matchIndex.getOffset(i);
+            if (step > 0 ? offset > limit : offset < limit) {
+                break;
             }
-            int prefillFetchCount = MIN_SNEAK_CACHE_PREFILL - nextMatches.size() + count;
-            int itemsToAddCount = Math.max(count, prefillFetchCount);
-            findNextMatches(editorAdaptor, searchStartPosition, itemsToAddCount);
-        }
-    }
-
-    private void transferNextMatchesToPreviousMatches(EditorAdaptor editorAdaptor, int count) {
-        // These matches need to be moved in reversed order so we can't use subList
-        for (int i = 0; i < count; i++) {
-            previousMatches.addFirst(nextMatches.remove());
-        }
-        clearHighlights(editorAdaptor.getHighlightingService(), 0, count);
-    }
-
-    private void trimNextMatchesCache(EditorAdaptor editorAdaptor) {
-        // This can happen when we just did a jump like 500;
-        if (nextMatches.size() > MAX_SNEAK_CACHE_SIZE) {
-            List<TextRange> itemsToTrim = nextMatches.subList(MAX_SNEAK_CACHE_SIZE, nextMatches.size());
-            List<Object> highlightsToTrim = nextHighlights.subList(MAX_SNEAK_CACHE_SIZE, nextHighlights.size());
-            editorAdaptor.getHighlightingService().removeHighlights(highlightsToTrim);
-            highlightsToTrim.clear();
-            itemsToTrim.clear();
-
-            allNextMatchesFound = false;
+            regions.add(matchIndex.getMatch(editorAdaptor.getCursorService(), i));
         }
-        if (previousMatches.size() > MAX_SNEAK_CACHE_SIZE) {
-            List<TextRange> itemsToTrim = previousMatches.subList(MAX_SNEAK_CACHE_SIZE, previousMatches.size());
-            itemsToTrim.clear();
+        if ( ! regions.isEmpty()) {
+            highlights = new ArrayList<Object>(highlightingService.highlightRegions(
+                    SNEAK_HIGHLIGHT_TYPE, "Sneak hit", regions));
         }
     }
 
@@ -351,12 +242,11 @@ public class SneakState {
             tabstopSetting = editorAdaptor.getConfiguration().get(Options.TAB_STOP);
         }
 
-        public boolean considerMatch(TextRange match) {
+        public boolean considerMatch(int matchOffset) {
             if (columnLeft == -1 || columnRight == -1) {
                 return true;
             }
 
-            int matchOffset = match.getLeftBound().getModelOffset();
             LineInformation matchLineInfo = textContent.getLineInformationOfOffset(matchOffset);
 
             if (lastLineInfo == null || lastLineInfo.getNumber() != matchLineInfo.getNumber()) {
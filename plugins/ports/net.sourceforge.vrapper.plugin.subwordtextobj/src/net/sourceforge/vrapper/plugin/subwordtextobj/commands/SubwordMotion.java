@@ -10,11 +10,11 @@ import net.sourceforge.vrapper.platform.Configuration;
 import net.sourceforge.vrapper.platform.CursorService;
 import net.sourceforge.vrapper.platform.TextContent;
 import net.sourceforge.vrapper.utils.ContentType;
+import net.sourceforge.vrapper.utils.KeywordClass;
 import net.sourceforge.vrapper.utils.Position;
 import net.sourceforge.vrapper.utils.StartEndTextRange;
 import net.sourceforge.vrapper.utils.TextRange;
 import net.sourceforge.vrapper.vim.EditorAdaptor;
-import net.sourceforge.vrapper.vim.Options;
 import net.sourceforge.vrapper.vim.commands.AbstractTextObject;
 import net.sourceforge.vrapper.vim.commands.BorderPolicy;
 import net.sourceforge.vrapper.vim.commands.CommandExecutionException;
@@ -172,7 +172,7 @@ public class SubwordMotion extends CountAwareMotion {
             Motion endMotion = SubwordMotion.SUB_WORD;
             Motion lastEndMotion = outer ? SubwordMotion.SUB_WORD : SubwordMotion.SUB_END;
 
-            String wordRegex = editorAdaptor.getConfiguration().get(Options.KEYWORDS);
+            KeywordClass wordRegex = editorAdaptor.getConfiguration().getKeywordClass();
             Position fromPosition = editorAdaptor.getPosition();
             int cursorOffset = fromPosition.getModelOffset();
 